@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ahead-of-time translation of interpreted classes. All methods of a class
+ * which can be compiled by the JIT tier are translated at once and written as
+ * an archive, the archive can be installed into the same class loaded later,
+ * so that its methods are compiled from the first call. Methods which are not
+ * in the archive stay under control of the interpreter and the JIT tier.
+ * <p>
+ * Compiled code makes field access and calls through the provider of the
+ * class it is installed into, so the archive doesn't depend on the provider
+ * used for translation.
+ * </p>
+ * <p>
+ * An archive contains host byte-code which is defined as is, it is not
+ * checked by the interpreter and not restricted by the provider policy, so
+ * archives must be loaded only from trusted sources. Lengths in an archive are
+ * checked against the archive size, so a damaged archive can't make big
+ * allocations.
+ * </p>
+ *
+ * @see JJJVMJit
+ */
+public final class JJJVMAot {
+
+    /**
+     * Version of the archive format, archives with other version are ignored.
+     * The header contains also revision of the translator, archives made by
+     * other revision are ignored too.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    /**
+     * Max size of compiled code of a method.
+     */
+    public static final int MAX_BODY_SIZE = 4 * 1024 * 1024;
+
+    private static final int MAGIC = 0x4A4A4A41;
+    // name, signature and generated class name lengths and the body length
+    private static final int MIN_RECORD_SIZE = 2 + 2 + 2 + 4;
+
+    private JJJVMAot() {
+    }
+
+    /**
+     * Translate methods of a class and write them as an archive.
+     *
+     * @param klazz the class, must not be null
+     * @param out   the stream for the archive, must not be null
+     * @return number of translated methods
+     * @throws IOException it will be thrown for transport errors
+     */
+    public static int compile(final JJJVMClass klazz, final OutputStream out) throws IOException {
+        final List<JJJVMMethod> methods = new ArrayList<JJJVMMethod>();
+        final List<String> classNames = new ArrayList<String>();
+        final List<byte[]> bodies = new ArrayList<byte[]>();
+
+        for (final JJJVMMethod method : klazz.getAllDeclaredMethods().values()) {
+            if (JJJVMJitCompiler.findProblem(method) != null) {
+                continue;
+            }
+            final JJJVMJitCompiler compiler = new JJJVMJitCompiler(method);
+            try {
+                bodies.add(compiler.translate());
+            } catch (Throwable ex) {
+                // the method will be interpreted
+                continue;
+            }
+            methods.add(method);
+            classNames.add(compiler.getClassName());
+        }
+
+        final DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(FORMAT_VERSION);
+        data.writeShort(JJJVMJitCompiler.REVISION);
+        data.writeUTF(klazz.getClassName());
+        data.writeInt(methods.size());
+        for (int i = 0; i < methods.size(); i++) {
+            data.writeUTF(methods.get(i).getName());
+            data.writeUTF(methods.get(i).getSignature());
+            data.writeUTF(classNames.get(i));
+            data.writeInt(bodies.get(i).length);
+            data.write(bodies.get(i));
+        }
+        data.flush();
+        return methods.size();
+    }
+
+    /**
+     * Install compiled methods from an archive into a class. Already compiled
+     * methods are not changed, methods whose code can't be defined or verified
+     * stay interpreted.
+     *
+     * @param klazz the class, must not be null
+     * @param in    the stream of the archive, must not be null
+     * @param size  the number of bytes in the archive
+     * @return number of installed methods
+     * @throws IOException it will be thrown for transport errors or if the
+     *                     archive is made for other class, by other version or
+     *                     it is damaged
+     */
+    public static int install(final JJJVMClass klazz, final InputStream in, final long size) throws IOException {
+        final DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new IOException("It is not a compiled class archive");
+        }
+        final int version = data.readUnsignedShort();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported archive version [" + version + ']');
+        }
+        final int revision = data.readUnsignedShort();
+        if (revision != JJJVMJitCompiler.REVISION) {
+            throw new IOException("Archive is made by other translator revision [" + revision + ']');
+        }
+        final String className = data.readUTF();
+        if (!className.equals(klazz.getClassName())) {
+            throw new IOException("Archive is made for other class [" + className + ']');
+        }
+        long remaining = size - 4 - 2 - 2 - utfSize(className);
+
+        int result = 0;
+        final int methods = data.readInt();
+        remaining -= 4;
+        if (methods < 0 || methods > remaining / MIN_RECORD_SIZE) {
+            throw new IOException("Wrong number of methods [" + methods + ']');
+        }
+        for (int i = 0; i < methods; i++) {
+            final String name = data.readUTF();
+            final String signature = data.readUTF();
+            final String generatedName = data.readUTF();
+            final int length = data.readInt();
+            remaining -= utfSize(name) + utfSize(signature) + utfSize(generatedName) + 4;
+            if (length < 0 || length > MAX_BODY_SIZE || length > remaining) {
+                throw new IOException("Wrong length of compiled code [" + length + ']');
+            }
+            final byte[] body = new byte[length];
+            data.readFully(body);
+            remaining -= length;
+
+            final JJJVMMethod method = klazz.findDeclaredMethod(name, signature);
+            if (method == null) {
+                continue;
+            }
+            final JJJVMMethodProfile profile = JJJVMMethodProfile.of(method);
+            synchronized (profile) {
+                if (profile.getCompiledCode() == null) {
+                    try {
+                        profile.setCompiledCode(JJJVMJit.define(klazz, generatedName, body), JJJVMJit.TIER_BYTECODE);
+                        result++;
+                    } catch (Throwable ex) {
+                        profile.setCompilationFailure(ex);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get number of bytes taken by a string written by
+     * {@link DataOutputStream#writeUTF(java.lang.String)}.
+     *
+     * @param text the string, must not be null
+     * @return the size of the written string including its length
+     */
+    private static int utfSize(final String text) {
+        int result = 2;
+        for (int i = 0; i < text.length(); i++) {
+            final char chr = text.charAt(i);
+            if (chr >= 0x0001 && chr <= 0x007F) {
+                result++;
+            } else if (chr <= 0x07FF) {
+                result += 2;
+            } else {
+                result += 3;
+            }
+        }
+        return result;
+    }
+}
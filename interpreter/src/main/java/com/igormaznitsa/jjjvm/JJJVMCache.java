@@ -0,0 +1,336 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Concurrent cache with optional size limit. Reads don't take any lock, when
+ * the size exceeds the limit entries are evicted by the second chance policy:
+ * entries are checked in the insertion order and an entry read since the last
+ * check is kept for one more round. Hits, misses and evictions are counted,
+ * hits and misses are counted in cells selected by thread so that caches read
+ * on every call don't make threads contend on shared counters.
+ *
+ * @param <K> type of keys
+ * @param <V> type of values
+ */
+public class JJJVMCache<K, V> {
+
+    private static final class Node<K, V> {
+
+        private final K key;
+        private final V value;
+        private volatile boolean used;
+
+        private Node(final K key, final V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Counter spread over cells selected by the current thread. Cells are
+     * placed in different cache lines.
+     */
+    private static final class StripedCounter {
+
+        private static final int CELLS = 16;
+        // longs in a cache line
+        private static final int SPACING = 8;
+
+        private final AtomicLongArray cells = new AtomicLongArray(CELLS * SPACING);
+
+        private void increment() {
+            this.cells.incrementAndGet(((int) Thread.currentThread().getId() & (CELLS - 1)) * SPACING);
+        }
+
+        private long get() {
+            long result = 0L;
+            for (int i = 0; i < CELLS; i++) {
+                result += this.cells.get(i * SPACING);
+            }
+            return result;
+        }
+    }
+
+    private final String name;
+    private final ConcurrentMap<K, Node<K, V>> map = new ConcurrentHashMap<K, Node<K, V>>();
+    // eviction order, it is filled only for bounded cache and can contain removed nodes
+    private final ConcurrentLinkedQueue<Node<K, V>> order = new ConcurrentLinkedQueue<Node<K, V>>();
+    private final AtomicInteger orderLength = new AtomicInteger();
+    private final StripedCounter hits = new StripedCounter();
+    private final StripedCounter misses = new StripedCounter();
+    private final AtomicLong evictions = new AtomicLong();
+    private volatile int maxSize;
+
+    /**
+     * Make cache.
+     *
+     * @param name    name of the cache for diagnostic, must not be null
+     * @param maxSize max number of entries, zero or negative for unbounded
+     *                cache
+     */
+    public JJJVMCache(final String name, final int maxSize) {
+        if (name == null) {
+            throw new NullPointerException("Name is null");
+        }
+        this.name = name;
+        this.maxSize = maxSize;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public int getMaxSize() {
+        return this.maxSize;
+    }
+
+    /**
+     * Change the size limit, extra entries are evicted immediately.
+     *
+     * @param maxSize max number of entries, zero or negative for unbounded
+     *                cache
+     */
+    public void setMaxSize(final int maxSize) {
+        synchronized (this.order) {
+            final boolean wasUnbounded = this.maxSize <= 0;
+            this.maxSize = maxSize;
+            if (wasUnbounded && maxSize > 0) {
+                // entries of unbounded cache are not queued
+                for (final Node<K, V> node : this.map.values()) {
+                    this.order.offer(node);
+                    this.orderLength.incrementAndGet();
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    /**
+     * Get value and count hit or miss.
+     *
+     * @param key the key, must not be null
+     * @return the value or null if there is no entry for the key
+     */
+    public V get(final K key) {
+        final Node<K, V> node = this.map.get(key);
+        if (node == null) {
+            this.misses.increment();
+            return null;
+        }
+        this.hits.increment();
+        if (!node.used) {
+            node.used = true;
+        }
+        return node.value;
+    }
+
+    /**
+     * Get value without counting and without marking the entry as used.
+     *
+     * @param key the key, must not be null
+     * @return the value or null if there is no entry for the key
+     */
+    public V peek(final K key) {
+        final Node<K, V> node = this.map.get(key);
+        return node == null ? null : node.value;
+    }
+
+    public boolean containsKey(final K key) {
+        return this.map.containsKey(key);
+    }
+
+    /**
+     * Put value.
+     *
+     * @param key   the key, must not be null
+     * @param value the value, must not be null
+     * @return the previous value or null
+     */
+    public V put(final K key, final V value) {
+        final Node<K, V> node = new Node<K, V>(key, value);
+        final Node<K, V> previous = this.map.put(key, node);
+        enqueue(node);
+        return previous == null ? null : previous.value;
+    }
+
+    /**
+     * Put value if there is no value for the key.
+     *
+     * @param key   the key, must not be null
+     * @param value the value, must not be null
+     * @return the current value or null if the value has been put
+     */
+    public V putIfAbsent(final K key, final V value) {
+        final Node<K, V> node = new Node<K, V>(key, value);
+        final Node<K, V> current = this.map.putIfAbsent(key, node);
+        if (current == null) {
+            enqueue(node);
+            return null;
+        }
+        return current.value;
+    }
+
+    public V remove(final K key) {
+        final Node<K, V> removed = this.map.remove(key);
+        return removed == null ? null : removed.value;
+    }
+
+    /**
+     * Remove entry only if it has the value.
+     *
+     * @param key   the key, must not be null
+     * @param value the expected value
+     * @return true if the entry has been removed
+     */
+    public boolean remove(final K key, final V value) {
+        final Node<K, V> node = this.map.get(key);
+        return node != null && node.value.equals(value) && this.map.remove(key, node);
+    }
+
+    public void clear() {
+        synchronized (this.order) {
+            this.map.clear();
+            this.order.clear();
+            this.orderLength.set(0);
+        }
+    }
+
+    public int size() {
+        return this.map.size();
+    }
+
+    /**
+     * Get live view of keys, removal through the view removes entries.
+     *
+     * @return set of keys, must not be null
+     */
+    public Set<K> keySet() {
+        return this.map.keySet();
+    }
+
+    /**
+     * Get values of all entries.
+     *
+     * @return snapshot of values, must not be null
+     */
+    public Collection<V> values() {
+        final Collection<V> result = new ArrayList<V>(this.map.size());
+        for (final Node<K, V> node : this.map.values()) {
+            result.add(node.value);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    public long getEvictions() {
+        return this.evictions.get();
+    }
+
+    /**
+     * Check that an entry can be evicted. Not evictable entries are moved to
+     * the end of the eviction order.
+     *
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     * @return true if the entry can be evicted, true by default
+     */
+    protected boolean isEvictable(final K key, final V value) {
+        return true;
+    }
+
+    /**
+     * Called after eviction of an entry.
+     *
+     * @param key   the key of the evicted entry
+     * @param value the value of the evicted entry
+     */
+    protected void evicted(final K key, final V value) {
+    }
+
+    private void enqueue(final Node<K, V> node) {
+        if (this.maxSize <= 0) {
+            return;
+        }
+        this.order.offer(node);
+        if (this.orderLength.incrementAndGet() > this.map.size() * 2 + 16) {
+            // drop nodes of replaced and removed entries
+            synchronized (this.order) {
+                for (final Iterator<Node<K, V>> iterator = this.order.iterator(); iterator.hasNext();) {
+                    final Node<K, V> queued = iterator.next();
+                    if (this.map.get(queued.key) != queued) {
+                        iterator.remove();
+                        this.orderLength.decrementAndGet();
+                    }
+                }
+            }
+        }
+        evictIfNeeded();
+    }
+
+    private void evictIfNeeded() {
+        final int limit = this.maxSize;
+        if (limit <= 0 || this.map.size() <= limit) {
+            return;
+        }
+        synchronized (this.order) {
+            // every entry gets at most one second chance so the loop is finite
+            int attempts = this.orderLength.get() * 2;
+            while (this.map.size() > limit && attempts-- > 0) {
+                final Node<K, V> node = this.order.poll();
+                if (node == null) {
+                    break;
+                }
+                this.orderLength.decrementAndGet();
+                if (this.map.get(node.key) != node) {
+                    // the entry has been replaced or removed
+                    continue;
+                }
+                if (node.used || !isEvictable(node.key, node.value)) {
+                    node.used = false;
+                    this.order.offer(node);
+                    this.orderLength.incrementAndGet();
+                } else if (this.map.remove(node.key, node)) {
+                    this.evictions.incrementAndGet();
+                    evicted(node.key, node.value);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getCanonicalName() + '[' + this.name + ", size=" + size() + ", maxSize=" + this.maxSize + ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + ']';
+    }
+}
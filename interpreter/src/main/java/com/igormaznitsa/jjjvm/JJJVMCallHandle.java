@@ -0,0 +1,238 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Pre-bound handle of an interpreted method for repeated calls from host code.
+ * The method is resolved once, every thread reuses its own stack and local
+ * variable arrays, so the handle can be shared between threads.
+ * <p>
+ * Arguments and results are in the interpreter format, i.e. boolean, byte,
+ * char and short values are represented by Integer.
+ * </p>
+ * <p>
+ * Methods found for subclasses of the bound class are cached by the handle.
+ * Both the subclasses and the cached methods are weakly referenced, so the
+ * handle doesn't keep unloaded or collected classes alive.
+ * </p>
+ *
+ * @see com.igormaznitsa.jjjvm.impl.JJJVMClassImpl#bind(java.lang.String, java.lang.String)
+ */
+public final class JJJVMCallHandle {
+
+    /**
+     * Weak identity key of a receiver class in the dispatch cache.
+     */
+    private static final class ReceiverKey extends WeakReference<JJJVMClass> {
+
+        private final int hash;
+
+        private ReceiverKey(final JJJVMClass klazz, final ReferenceQueue<JJJVMClass> queue) {
+            super(klazz, queue);
+            this.hash = System.identityHashCode(klazz);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof ReceiverKey) {
+                final JJJVMClass klazz = get();
+                return klazz != null && klazz == ((ReceiverKey) obj).get();
+            }
+            return false;
+        }
+    }
+
+    private final JJJVMClass boundClass;
+    private final JJJVMFramePool target;
+    private final boolean virtual;
+    private final int numberOfArgs;
+    private final ConcurrentMap<ReceiverKey, WeakReference<JJJVMFramePool>> overridden = new ConcurrentHashMap<ReceiverKey, WeakReference<JJJVMFramePool>>();
+    private final ReferenceQueue<JJJVMClass> collectedReceivers = new ReferenceQueue<JJJVMClass>();
+    private final ThreadLocal<Object[]> argumentBuffers = new ThreadLocal<Object[]>() {
+        @Override
+        protected Object[] initialValue() {
+            return numberOfArgs == 0 ? JJJVMConstants.EMPTY_OBJECT_ARRAY : new Object[numberOfArgs];
+        }
+    };
+
+    /**
+     * Make handle for a method.
+     *
+     * @param boundClass class used for the method search, must not be null
+     * @param method     resolved method, must not be null
+     * @throws IllegalArgumentException if the method is abstract
+     */
+    public JJJVMCallHandle(final JJJVMClass boundClass, final JJJVMMethod method) {
+        if (boundClass == null) {
+            throw new NullPointerException("Class is null");
+        }
+        if (method == null) {
+            throw new NullPointerException("Method is null");
+        }
+        final int flags = method.getFlags();
+        if ((flags & JJJVMConstants.ACC_ABSTRACT) != 0) {
+            throw new IllegalArgumentException("Method must not be abstract [" + method + ']');
+        }
+        this.boundClass = boundClass;
+        this.target = new JJJVMFramePool(method);
+        this.virtual = (flags & (JJJVMConstants.ACC_STATIC | JJJVMConstants.ACC_PRIVATE)) == 0 && !"<init>".equals(method.getName());
+        this.numberOfArgs = JJJVMInterpreter.extractArgTypes(method.getSignature()).length;
+    }
+
+    public JJJVMMethod getMethod() {
+        return this.target.getMethod();
+    }
+
+    public JJJVMClass getBoundClass() {
+        return this.boundClass;
+    }
+
+    public int getNumberOfArgs() {
+        return this.numberOfArgs;
+    }
+
+    /**
+     * Get the argument array of the current thread. It can be filled and
+     * passed to invoke methods to avoid array allocation for every call. The
+     * array is cleared after the call.
+     *
+     * @return the argument array of the current thread, must not be null
+     */
+    public Object[] getArgumentBuffer() {
+        return this.argumentBuffers.get();
+    }
+
+    private JJJVMFramePool findTarget(final JJJVMObject instance) throws Throwable {
+        if (!this.virtual) {
+            return this.target;
+        }
+        if (instance == null) {
+            throw new NullPointerException("Instance is null for non-static method [" + this.target.getMethod() + ']');
+        }
+
+        final JJJVMClass instanceClass = instance.getDeclaringClass();
+        if (instanceClass == this.boundClass) {
+            return this.target;
+        }
+
+        final WeakReference<JJJVMFramePool> cached = this.overridden.get(new ReceiverKey(instanceClass, null));
+        JJJVMFramePool result = cached == null ? null : cached.get();
+        if (result == null) {
+            expungeCollectedReceivers();
+            final JJJVMMethod method = this.target.getMethod();
+            final JJJVMMethod found = instanceClass.findMethod(method.getName(), method.getSignature());
+            result = found == null || found == method ? this.target : new JJJVMFramePool(found);
+            // the found method refers its class, so it is weakly referenced too
+            this.overridden.put(new ReceiverKey(instanceClass, this.collectedReceivers), new WeakReference<JJJVMFramePool>(result));
+        }
+        return result;
+    }
+
+    private void expungeCollectedReceivers() {
+        Object key;
+        while ((key = this.collectedReceivers.poll()) != null) {
+            this.overridden.remove(key);
+        }
+    }
+
+    /**
+     * Forget methods found for subclasses of the bound class. It is called when
+     * classes are unloaded, so that reloaded classes are searched again.
+     */
+    public void clearDispatchCache() {
+        this.overridden.clear();
+    }
+
+    /**
+     * Invoke the method.
+     *
+     * @param instance  the 'this' object, null for static method
+     * @param arguments arguments in the interpreter format, can be null
+     * @return result in the interpreter format, null for void method
+     * @throws Throwable it will be thrown for errors
+     */
+    public Object invoke(final JJJVMObject instance, final Object... arguments) throws Throwable {
+        try {
+            return findTarget(instance).invoke(instance, arguments);
+        } finally {
+            if (arguments != null && arguments.length != 0 && arguments == this.argumentBuffers.get()) {
+                // don't keep references to arguments of the finished call
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Invoke the method returning object.
+     *
+     * @param instance  the 'this' object, null for static method
+     * @param arguments arguments in the interpreter format, can be null
+     * @return result of the method
+     * @throws Throwable it will be thrown for errors
+     */
+    public Object invokeObject(final JJJVMObject instance, final Object... arguments) throws Throwable {
+        return invoke(instance, arguments);
+    }
+
+    /**
+     * Invoke the method returning int, boolean, byte, char or short value.
+     *
+     * @param instance  the 'this' object, null for static method
+     * @param arguments arguments in the interpreter format, can be null
+     * @return result of the method
+     * @throws Throwable it will be thrown for errors
+     */
+    public int invokeInt(final JJJVMObject instance, final Object... arguments) throws Throwable {
+        return ((Integer) invoke(instance, arguments));
+    }
+
+    /**
+     * Invoke the method returning long value.
+     *
+     * @param instance  the 'this' object, null for static method
+     * @param arguments arguments in the interpreter format, can be null
+     * @return result of the method
+     * @throws Throwable it will be thrown for errors
+     */
+    public long invokeLong(final JJJVMObject instance, final Object... arguments) throws Throwable {
+        return ((Long) invoke(instance, arguments));
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getCanonicalName() + '[' + this.boundClass.getClassName() + '#' + this.target.getMethod().getName() + this.target.getMethod().getSignature() + ']';
+    }
+}
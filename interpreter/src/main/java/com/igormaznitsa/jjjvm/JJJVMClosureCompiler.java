@@ -0,0 +1,1598 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPool;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+import com.igormaznitsa.jjjvm.model.JJJVMTryCatchRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Translator of interpreted method byte-code into register code executed by a
+ * graph of pre-decoded nodes, it doesn't define classes so it works on
+ * platforms where the byte-code tier can't be used. Stack depth of every
+ * instruction is computed in advance, so local variables and stack slots
+ * become fixed registers of a frame where primitive values are kept unboxed.
+ * Every instruction becomes a small node object specialized by operand type
+ * and registers, constants, jump targets and member references are resolved
+ * during translation.
+ * <p>
+ * Loads, stores and stack shuffles are mostly removed by
+ * {@link JJJVMRegisterOptimizer}, so arithmetic nodes read local variables
+ * and write results directly into them.
+ * </p>
+ * <p>
+ * It supports the same instructions as the byte-code tier plus exception
+ * handlers and ATHROW, handlers are searched in the same way as the
+ * interpreter does.
+ * </p>
+ *
+ * @see JJJVMJitCompiler
+ */
+final class JJJVMClosureCompiler {
+
+    private static final int[] NO_REGISTERS = new int[0];
+
+    /**
+     * Frame of a compiled method call, local variables are followed by stack
+     * slots and one scratch slot. Every slot keeps either primitive value bits
+     * or a reference, long and double values take the lower slot of two.
+     */
+    static final class Frame {
+
+        final long[] values;
+        final Object[] refs;
+        Object result;
+
+        Frame(final int size) {
+            this.values = new long[size];
+            this.refs = new Object[size];
+        }
+    }
+
+    /**
+     * Register instruction. Nodes read all their registers before writing the
+     * result register, so the same register can be both source and result.
+     */
+    abstract static class Node {
+
+        final int pc;
+        int next;
+
+        Node(final int pc) {
+            this.pc = pc;
+        }
+
+        /**
+         * Link the node with other nodes of the method.
+         *
+         * @param indexes index of the first node for every byte-code address
+         * @param next    index of the next node in code order, negative one for
+         *                the last node
+         */
+        void resolve(final int[] indexes, final int next) {
+            this.next = next;
+        }
+
+        /**
+         * Execute the instruction.
+         *
+         * @param frame the frame of the call, must not be null
+         * @return index of the next node, negative one to return from the method
+         * @throws Throwable it will be thrown for errors
+         */
+        abstract int execute(Frame frame) throws Throwable;
+
+        /**
+         * Get register written by the node.
+         *
+         * @return the register or negative one if the node doesn't write any
+         */
+        int getDef() {
+            return -1;
+        }
+
+        void setDef(final int register) {
+            throw new UnsupportedOperationException("Node doesn't write registers");
+        }
+
+        /**
+         * Get registers read by the node.
+         *
+         * @return array of registers, must not be null
+         */
+        int[] getUses() {
+            return NO_REGISTERS;
+        }
+
+        void setUse(final int index, final int register) {
+            throw new UnsupportedOperationException("Node doesn't read registers");
+        }
+
+        /**
+         * Check that the node does anything besides writing its register, such
+         * node can't be removed even if the result is not used.
+         *
+         * @return true if the node can throw or has effects outside the frame
+         */
+        boolean hasSideEffects() {
+            return true;
+        }
+
+        /**
+         * Check that the next node in code order can be executed after the node.
+         *
+         * @return false for unconditional jumps, returns and throws
+         */
+        boolean isFallThrough() {
+            return true;
+        }
+
+        /**
+         * Get byte-code addresses where the node can jump to.
+         *
+         * @return array of addresses, must not be null
+         */
+        int[] getTargetPcs() {
+            return NO_REGISTERS;
+        }
+    }
+
+    /**
+     * Node with one source register and one result register.
+     */
+    abstract static class Unary extends Node {
+
+        int src;
+        int dst;
+
+        Unary(final int pc, final int src, final int dst) {
+            super(pc);
+            this.src = src;
+            this.dst = dst;
+        }
+
+        @Override
+        int getDef() {
+            return this.dst;
+        }
+
+        @Override
+        void setDef(final int register) {
+            this.dst = register;
+        }
+
+        @Override
+        int[] getUses() {
+            return new int[]{this.src};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            this.src = register;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return false;
+        }
+    }
+
+    /**
+     * Node with two source registers and one result register.
+     */
+    abstract static class Binary extends Node {
+
+        final int instruction;
+        int a;
+        int b;
+        int dst;
+
+        Binary(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc);
+            this.instruction = instruction;
+            this.a = a;
+            this.b = b;
+            this.dst = dst;
+        }
+
+        @Override
+        int getDef() {
+            return this.dst;
+        }
+
+        @Override
+        void setDef(final int register) {
+            this.dst = register;
+        }
+
+        @Override
+        int[] getUses() {
+            return new int[]{this.a, this.b};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            if (index == 0) {
+                this.a = register;
+            } else {
+                this.b = register;
+            }
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return false;
+        }
+    }
+
+    /**
+     * Node jumping to an address.
+     */
+    abstract static class Branch extends Node {
+
+        final int targetPc;
+        int target;
+
+        Branch(final int pc, final int targetPc) {
+            super(pc);
+            this.targetPc = targetPc;
+        }
+
+        @Override
+        void resolve(final int[] indexes, final int next) {
+            super.resolve(indexes, next);
+            this.target = indexes[this.targetPc];
+        }
+
+        @Override
+        int[] getTargetPcs() {
+            return new int[]{this.targetPc};
+        }
+    }
+
+    /**
+     * Conditional jump, the second register is negative for comparison with
+     * zero or null.
+     */
+    abstract static class Condition extends Branch {
+
+        final int instruction;
+        int a;
+        int b;
+
+        Condition(final int pc, final int targetPc, final int instruction, final int a, final int b) {
+            super(pc, targetPc);
+            this.instruction = instruction;
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        int[] getUses() {
+            return this.b < 0 ? new int[]{this.a} : new int[]{this.a, this.b};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            if (index == 0) {
+                this.a = register;
+            } else {
+                this.b = register;
+            }
+        }
+    }
+
+    static final class PrimitiveConstant extends Node {
+
+        private final long value;
+        private int dst;
+
+        PrimitiveConstant(final int pc, final int dst, final long value) {
+            super(pc);
+            this.dst = dst;
+            this.value = value;
+        }
+
+        int execute(final Frame frame) {
+            frame.values[this.dst] = this.value;
+            return this.next;
+        }
+
+        @Override
+        int getDef() {
+            return this.dst;
+        }
+
+        @Override
+        void setDef(final int register) {
+            this.dst = register;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return false;
+        }
+    }
+
+    static final class ReferenceConstant extends Node {
+
+        private final Object value;
+        private int dst;
+
+        ReferenceConstant(final int pc, final int dst, final Object value) {
+            super(pc);
+            this.dst = dst;
+            this.value = value;
+        }
+
+        int execute(final Frame frame) {
+            frame.refs[this.dst] = this.value;
+            return this.next;
+        }
+
+        @Override
+        int getDef() {
+            return this.dst;
+        }
+
+        @Override
+        void setDef(final int register) {
+            this.dst = register;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            return false;
+        }
+    }
+
+    static final class Move extends Unary {
+
+        Move(final int pc, final int src, final int dst) {
+            super(pc, src, dst);
+        }
+
+        int execute(final Frame frame) {
+            frame.values[this.dst] = frame.values[this.src];
+            frame.refs[this.dst] = frame.refs[this.src];
+            return this.next;
+        }
+    }
+
+    static final class IntOperation extends Binary {
+
+        IntOperation(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc, instruction, a, b, dst);
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final int x = (int) values[this.a];
+            final int y = (int) values[this.b];
+            final int result;
+            switch (this.instruction) {
+                case 96: // IADD
+                    result = x + y;
+                    break;
+                case 100: // ISUB
+                    result = x - y;
+                    break;
+                case 104: // IMUL
+                    result = x * y;
+                    break;
+                case 108: // IDIV
+                    result = x / y;
+                    break;
+                case 112: // IREM
+                    result = x % y;
+                    break;
+                case 120: // ISHL
+                    result = x << y;
+                    break;
+                case 122: // ISHR
+                    result = x >> y;
+                    break;
+                case 124: // IUSHR
+                    result = x >>> y;
+                    break;
+                case 126: // IAND
+                    result = x & y;
+                    break;
+                case 128: // IOR
+                    result = x | y;
+                    break;
+                default: // IXOR
+                    result = x ^ y;
+                    break;
+            }
+            values[this.dst] = result;
+            return this.next;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            // division by zero
+            return this.instruction == 108 || this.instruction == 112;
+        }
+    }
+
+    static final class LongOperation extends Binary {
+
+        LongOperation(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc, instruction, a, b, dst);
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final long x = values[this.a];
+            final long y = values[this.b];
+            final long result;
+            switch (this.instruction) {
+                case 97: // LADD
+                    result = x + y;
+                    break;
+                case 101: // LSUB
+                    result = x - y;
+                    break;
+                case 105: // LMUL
+                    result = x * y;
+                    break;
+                case 109: // LDIV
+                    result = x / y;
+                    break;
+                case 113: // LREM
+                    result = x % y;
+                    break;
+                case 121: // LSHL
+                    result = x << (int) y;
+                    break;
+                case 123: // LSHR
+                    result = x >> (int) y;
+                    break;
+                case 125: // LUSHR
+                    result = x >>> (int) y;
+                    break;
+                case 127: // LAND
+                    result = x & y;
+                    break;
+                case 129: // LOR
+                    result = x | y;
+                    break;
+                default: // LXOR
+                    result = x ^ y;
+                    break;
+            }
+            values[this.dst] = result;
+            return this.next;
+        }
+
+        @Override
+        boolean hasSideEffects() {
+            // division by zero
+            return this.instruction == 109 || this.instruction == 113;
+        }
+    }
+
+    static final class FloatOperation extends Binary {
+
+        FloatOperation(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc, instruction, a, b, dst);
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final float x = Float.intBitsToFloat((int) values[this.a]);
+            final float y = Float.intBitsToFloat((int) values[this.b]);
+            final float result;
+            switch (this.instruction) {
+                case 98: // FADD
+                    result = x + y;
+                    break;
+                case 102: // FSUB
+                    result = x - y;
+                    break;
+                case 106: // FMUL
+                    result = x * y;
+                    break;
+                case 110: // FDIV
+                    result = x / y;
+                    break;
+                default: // FREM
+                    result = x % y;
+                    break;
+            }
+            values[this.dst] = Float.floatToRawIntBits(result);
+            return this.next;
+        }
+    }
+
+    static final class DoubleOperation extends Binary {
+
+        DoubleOperation(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc, instruction, a, b, dst);
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final double x = Double.longBitsToDouble(values[this.a]);
+            final double y = Double.longBitsToDouble(values[this.b]);
+            final double result;
+            switch (this.instruction) {
+                case 99: // DADD
+                    result = x + y;
+                    break;
+                case 103: // DSUB
+                    result = x - y;
+                    break;
+                case 107: // DMUL
+                    result = x * y;
+                    break;
+                case 111: // DDIV
+                    result = x / y;
+                    break;
+                default: // DREM
+                    result = x % y;
+                    break;
+            }
+            values[this.dst] = Double.doubleToRawLongBits(result);
+            return this.next;
+        }
+    }
+
+    // negations and conversions
+    static final class Conversion extends Unary {
+
+        private final int instruction;
+
+        Conversion(final int pc, final int instruction, final int src, final int dst) {
+            super(pc, src, dst);
+            this.instruction = instruction;
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final long value = values[this.src];
+            final long result;
+            switch (this.instruction) {
+                case 116: // INEG
+                    result = -(int) value;
+                    break;
+                case 117: // LNEG
+                    result = -value;
+                    break;
+                case 118: // FNEG
+                    result = Float.floatToRawIntBits(-Float.intBitsToFloat((int) value));
+                    break;
+                case 119: // DNEG
+                    result = Double.doubleToRawLongBits(-Double.longBitsToDouble(value));
+                    break;
+                case 133: // I2L
+                    result = (int) value;
+                    break;
+                case 134: // I2F
+                    result = Float.floatToRawIntBits((float) (int) value);
+                    break;
+                case 135: // I2D
+                    result = Double.doubleToRawLongBits((double) (int) value);
+                    break;
+                case 136: // L2I
+                    result = (int) value;
+                    break;
+                case 137: // L2F
+                    result = Float.floatToRawIntBits((float) value);
+                    break;
+                case 138: // L2D
+                    result = Double.doubleToRawLongBits((double) value);
+                    break;
+                case 139: // F2I
+                    result = (int) Float.intBitsToFloat((int) value);
+                    break;
+                case 140: // F2L
+                    result = (long) Float.intBitsToFloat((int) value);
+                    break;
+                case 141: // F2D
+                    result = Double.doubleToRawLongBits((double) Float.intBitsToFloat((int) value));
+                    break;
+                case 142: // D2I
+                    result = (int) Double.longBitsToDouble(value);
+                    break;
+                case 143: // D2L
+                    result = (long) Double.longBitsToDouble(value);
+                    break;
+                case 144: // D2F
+                    result = Float.floatToRawIntBits((float) Double.longBitsToDouble(value));
+                    break;
+                case 145: // I2B
+                    result = (byte) value;
+                    break;
+                case 146: // I2C
+                    result = (char) value;
+                    break;
+                default: // I2S
+                    result = (short) value;
+                    break;
+            }
+            values[this.dst] = result;
+            return this.next;
+        }
+    }
+
+    static final class Comparison extends Binary {
+
+        Comparison(final int pc, final int instruction, final int a, final int b, final int dst) {
+            super(pc, instruction, a, b, dst);
+        }
+
+        int execute(final Frame frame) {
+            final long[] values = frame.values;
+            final int result;
+            switch (this.instruction) {
+                case 148: { // LCMP
+                    final long x = values[this.a];
+                    final long y = values[this.b];
+                    result = x < y ? -1 : (x == y ? 0 : 1);
+                }
+                break;
+                case 149: // FCMPL
+                case 150: { // FCMPG
+                    final float x = Float.intBitsToFloat((int) values[this.a]);
+                    final float y = Float.intBitsToFloat((int) values[this.b]);
+                    if (Float.isNaN(x) || Float.isNaN(y)) {
+                        result = this.instruction == 150 ? 1 : -1;
+                    } else {
+                        result = x < y ? -1 : (x == y ? 0 : 1);
+                    }
+                }
+                break;
+                default: { // DCMPL, DCMPG
+                    final double x = Double.longBitsToDouble(values[this.a]);
+                    final double y = Double.longBitsToDouble(values[this.b]);
+                    if (Double.isNaN(x) || Double.isNaN(y)) {
+                        result = this.instruction == 152 ? 1 : -1;
+                    } else {
+                        result = x < y ? -1 : (x == y ? 0 : 1);
+                    }
+                }
+                break;
+            }
+            values[this.dst] = result;
+            return this.next;
+        }
+    }
+
+    static final class Increment extends Unary {
+
+        private final int delta;
+
+        Increment(final int pc, final int src, final int dst, final int delta) {
+            super(pc, src, dst);
+            this.delta = delta;
+        }
+
+        int execute(final Frame frame) {
+            frame.values[this.dst] = (int) frame.values[this.src] + this.delta;
+            return this.next;
+        }
+    }
+
+    static final class IntCondition extends Condition {
+
+        IntCondition(final int pc, final int targetPc, final int instruction, final int a, final int b) {
+            super(pc, targetPc, instruction, a, b);
+        }
+
+        int execute(final Frame frame) {
+            final int x = (int) frame.values[this.a];
+            final int y = this.b < 0 ? 0 : (int) frame.values[this.b];
+            final boolean result;
+            switch (this.instruction) {
+                case 153: // IFEQ
+                case 159: // IF_ICMPEQ
+                    result = x == y;
+                    break;
+                case 154: // IFNE
+                case 160: // IF_ICMPNE
+                    result = x != y;
+                    break;
+                case 155: // IFLT
+                case 161: // IF_ICMPLT
+                    result = x < y;
+                    break;
+                case 156: // IFGE
+                case 162: // IF_ICMPGE
+                    result = x >= y;
+                    break;
+                case 157: // IFGT
+                case 163: // IF_ICMPGT
+                    result = x > y;
+                    break;
+                default: // IFLE, IF_ICMPLE
+                    result = x <= y;
+                    break;
+            }
+            return result ? this.target : this.next;
+        }
+    }
+
+    static final class ReferenceCondition extends Condition {
+
+        ReferenceCondition(final int pc, final int targetPc, final int instruction, final int a, final int b) {
+            super(pc, targetPc, instruction, a, b);
+        }
+
+        int execute(final Frame frame) {
+            final Object x = frame.refs[this.a];
+            final Object y = this.b < 0 ? null : frame.refs[this.b];
+            final boolean equal = x == y;
+            return equal == (this.instruction == 165 || this.instruction == 198) ? this.target : this.next;
+        }
+    }
+
+    static final class Jump extends Branch {
+
+        Jump(final int pc, final int targetPc) {
+            super(pc, targetPc);
+        }
+
+        int execute(final Frame frame) {
+            return this.target;
+        }
+
+        @Override
+        boolean isFallThrough() {
+            return false;
+        }
+    }
+
+    static final class Switch extends Node {
+
+        private final int[] keys;
+        private final int[] targetPcs;
+        private final int defaultPc;
+        private final int[] targets;
+        private int defaultTarget;
+        private int src;
+
+        // keys are sorted in ascending order
+        Switch(final int pc, final int src, final int[] keys, final int[] targetPcs, final int defaultPc) {
+            super(pc);
+            this.src = src;
+            this.keys = keys;
+            this.targetPcs = targetPcs;
+            this.defaultPc = defaultPc;
+            this.targets = new int[targetPcs.length];
+        }
+
+        @Override
+        void resolve(final int[] indexes, final int next) {
+            for (int i = 0; i < this.targets.length; i++) {
+                this.targets[i] = indexes[this.targetPcs[i]];
+            }
+            this.defaultTarget = indexes[this.defaultPc];
+        }
+
+        int execute(final Frame frame) {
+            final int index = Arrays.binarySearch(this.keys, (int) frame.values[this.src]);
+            return index < 0 ? this.defaultTarget : this.targets[index];
+        }
+
+        @Override
+        int[] getUses() {
+            return new int[]{this.src};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            this.src = register;
+        }
+
+        @Override
+        boolean isFallThrough() {
+            return false;
+        }
+
+        @Override
+        int[] getTargetPcs() {
+            final int[] result = new int[this.targetPcs.length + 1];
+            System.arraycopy(this.targetPcs, 0, result, 0, this.targetPcs.length);
+            result[this.targetPcs.length] = this.defaultPc;
+            return result;
+        }
+    }
+
+    static final class Return extends Node {
+
+        private final char type;
+        private int src;
+
+        Return(final int pc, final char type, final int src) {
+            super(pc);
+            this.type = type;
+            this.src = src;
+        }
+
+        int execute(final Frame frame) {
+            frame.result = box(frame, this.type, this.src);
+            return -1;
+        }
+
+        @Override
+        int[] getUses() {
+            return this.type == JJJVMConstants.TYPE_VOID ? NO_REGISTERS : new int[]{this.src};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            this.src = register;
+        }
+
+        @Override
+        boolean isFallThrough() {
+            return false;
+        }
+    }
+
+    static final class Throw extends Node {
+
+        private final JJJVMClass caller;
+        private int src;
+
+        Throw(final int pc, final JJJVMClass caller, final int src) {
+            super(pc);
+            this.caller = caller;
+            this.src = src;
+        }
+
+        int execute(final Frame frame) throws Throwable {
+            final Object throwable = frame.refs[this.src];
+            if (throwable == null) {
+                throw new NullPointerException("ATHROW NULL");
+            }
+            if (throwable instanceof Throwable) {
+                throw (Throwable) throwable;
+            }
+            this.caller.getProvider().doThrow(this.caller, throwable);
+            return -1;
+        }
+
+        @Override
+        int[] getUses() {
+            return new int[]{this.src};
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            this.src = register;
+        }
+
+        @Override
+        boolean isFallThrough() {
+            return false;
+        }
+    }
+
+    // field access and method calls through the same code as the interpreter
+    static final class Call extends Node {
+
+        private final JJJVMJit.Link link;
+        private final char[] argTypes;
+        private final int[] args;
+        private final char resultType;
+        private int instance;
+        private int dst;
+
+        Call(final int pc, final JJJVMJit.Link link, final int instance, final char[] argTypes, final int[] args, final char resultType, final int dst) {
+            super(pc);
+            this.link = link;
+            this.instance = instance;
+            this.argTypes = argTypes;
+            this.args = args;
+            this.resultType = resultType;
+            this.dst = dst;
+        }
+
+        int execute(final Frame frame) throws Throwable {
+            final Object[] arguments;
+            if (this.args.length == 0) {
+                arguments = null;
+            } else {
+                arguments = new Object[this.args.length];
+                for (int i = 0; i < arguments.length; i++) {
+                    arguments[i] = box(frame, this.argTypes[i], this.args[i]);
+                }
+            }
+            final Object result = this.link.call(this.instance < 0 ? null : frame.refs[this.instance], arguments);
+            if (this.resultType != JJJVMConstants.TYPE_VOID) {
+                unbox(frame, this.resultType, this.dst, result);
+            }
+            return this.next;
+        }
+
+        @Override
+        int getDef() {
+            return this.resultType == JJJVMConstants.TYPE_VOID ? -1 : this.dst;
+        }
+
+        @Override
+        void setDef(final int register) {
+            this.dst = register;
+        }
+
+        @Override
+        int[] getUses() {
+            if (this.instance < 0) {
+                return this.args.clone();
+            }
+            final int[] result = new int[this.args.length + 1];
+            result[0] = this.instance;
+            System.arraycopy(this.args, 0, result, 1, this.args.length);
+            return result;
+        }
+
+        @Override
+        void setUse(final int index, final int register) {
+            if (this.instance < 0) {
+                this.args[index] = register;
+            } else if (index == 0) {
+                this.instance = register;
+            } else {
+                this.args[index - 1] = register;
+            }
+        }
+    }
+
+    /**
+     * Compiled code of a method.
+     */
+    static final class Code implements JJJVMJit.Entry {
+
+        private final JJJVMClass caller;
+        private final JJJVMTryCatchRecord[] handlers;
+        private final Node[] nodes;
+        private final int[] indexes;
+        private final int frameSize;
+        private final int stackBase;
+        private final boolean instanceMethod;
+        private final char[] argTypes;
+
+        private Code(final JJJVMMethod method, final Node[] nodes, final int[] indexes) {
+            this.caller = method.getDeclaringClass();
+            this.handlers = method.getTryCatchRecords();
+            this.nodes = nodes;
+            this.indexes = indexes;
+            this.stackBase = method.getMaxLocals();
+            this.frameSize = method.getMaxLocals() + method.getMaxStackDepth() + 1;
+            this.instanceMethod = (method.getFlags() & JJJVMConstants.ACC_STATIC) == 0;
+            this.argTypes = JJJVMInterpreter.extractArgTypes(method.getSignature());
+        }
+
+        public Object invoke(final JJJVMObject instance, final Object[] args) throws Throwable {
+            final Frame frame = new Frame(this.frameSize);
+            int slot = 0;
+            if (this.instanceMethod) {
+                frame.refs[slot++] = instance;
+            }
+            for (int i = 0; i < this.argTypes.length; i++) {
+                unbox(frame, this.argTypes[i], slot, args[i]);
+                slot += isWide(this.argTypes[i]) ? 2 : 1;
+            }
+
+            final Node[] code = this.nodes;
+            int index = 0;
+            while (true) {
+                try {
+                    while (index >= 0) {
+                        index = code[index].execute(frame);
+                    }
+                    return frame.result;
+                } catch (Throwable thr) {
+                    index = findHandler(code[index].pc, thr);
+                    if (index < 0) {
+                        throw thr;
+                    }
+                    frame.refs[this.stackBase] = thr;
+                }
+            }
+        }
+
+        private int findHandler(final int pc, final Throwable thr) throws Throwable {
+            for (final JJJVMTryCatchRecord record : this.handlers) {
+                if (record.isActiveForAddress(pc)) {
+                    final String exceptionClassName = record.getJvmFormattedClassName();
+                    if (exceptionClassName == null || this.caller.getProvider().checkCast(this.caller, exceptionClassName, thr)) {
+                        return this.indexes[record.getCodeAddress()];
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Get number of nodes, every node is one dispatch.
+         *
+         * @return number of nodes of the compiled code
+         */
+        int getNumberOfNodes() {
+            return this.nodes.length;
+        }
+    }
+
+    private final JJJVMMethod method;
+    private final JJJVMClass klazz;
+    private final JJJVMConstantPool cpool;
+    private final byte[] bytecode;
+    private final int stackBase;
+    private final int scratch;
+    private boolean optimize = true;
+
+    JJJVMClosureCompiler(final JJJVMMethod method) {
+        this.method = method;
+        this.klazz = method.getDeclaringClass();
+        this.cpool = this.klazz.getConstantPool();
+        this.bytecode = method.getBytecode();
+        this.stackBase = method.getMaxLocals();
+        this.scratch = method.getMaxLocals() + method.getMaxStackDepth();
+    }
+
+    /**
+     * Switch off register optimizations, every instruction keeps its loads and
+     * stores.
+     *
+     * @return the compiler
+     */
+    JJJVMClosureCompiler withoutOptimization() {
+        this.optimize = false;
+        return this;
+    }
+
+    /**
+     * Translate the method.
+     *
+     * @return compiled code, must not be null
+     * @throws Throwable it will be thrown if the method can't be translated
+     */
+    Code translate() throws Throwable {
+        final String problem = JJJVMJitCompiler.findProblem(this.method, true);
+        if (problem != null) {
+            throw new UnsupportedOperationException("Can't compile " + this.method + ": " + problem);
+        }
+
+        final int[] depths = computeDepths();
+
+        List<Node> code = new ArrayList<Node>();
+        for (int pc = 0; pc < this.bytecode.length; pc += length(pc)) {
+            if (depths[pc] >= 0) {
+                makeNodes(pc, depths[pc], code);
+            }
+        }
+
+        if (this.optimize) {
+            code = new JJJVMRegisterOptimizer(code, this.method.getTryCatchRecords(), this.bytecode.length, this.scratch + 1, this.stackBase).optimize();
+        }
+
+        final Node[] nodes = code.toArray(new Node[code.size()]);
+        final int[] indexes = makeIndexes(nodes, this.bytecode.length);
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i].resolve(indexes, i + 1 < nodes.length ? i + 1 : -1);
+        }
+        return new Code(this.method, nodes, indexes);
+    }
+
+    /**
+     * Make table of the first node for every byte-code address, addresses of
+     * removed nodes get the next remaining node.
+     *
+     * @param nodes        nodes in code order, must not be null
+     * @param bytecodeSize size of the method byte-code
+     * @return index of the first node for every address
+     */
+    static int[] makeIndexes(final Node[] nodes, final int bytecodeSize) {
+        final int[] result = new int[bytecodeSize + 1];
+        int index = nodes.length;
+        for (int pc = bytecodeSize; pc >= 0; pc--) {
+            while (index > 0 && nodes[index - 1].pc >= pc) {
+                index--;
+            }
+            result[pc] = index;
+        }
+        return result;
+    }
+
+    private int length(final int pc) {
+        final int instruction = this.bytecode[pc] & 0xFF;
+        final int result = JJJVMJitCompiler.simpleLength(instruction);
+        if (result != 0) {
+            return result;
+        }
+        if (JJJVMJitCompiler.isJump(instruction)) {
+            return 3;
+        }
+        switch (instruction) {
+            case 18: // LDC
+                return 2;
+            case 185: // INVOKEINTERFACE
+            case 200: // GOTO_W
+                return 5;
+            case 170: // TABLESWITCH
+            case 171: // LOOKUPSWITCH
+                return JJJVMJitCompiler.switchLength(this.bytecode, pc);
+            case 191: // ATHROW
+                return 1;
+            case 196: // WIDE
+                return (this.bytecode[pc + 1] & 0xFF) == 132 ? 6 : 4;
+            default:
+                return 3;
+        }
+    }
+    // stack depth before every reachable instruction, -1 for unreachable ones
+    private int[] computeDepths() throws Throwable {
+        final int[] depths = new int[this.bytecode.length];
+        Arrays.fill(depths, -1);
+        final int[] queue = new int[this.bytecode.length + this.method.getTryCatchRecords().length + 1];
+        int queueSize = 0;
+
+        depths[0] = 0;
+        queue[queueSize++] = 0;
+        for (final JJJVMTryCatchRecord record : this.method.getTryCatchRecords()) {
+            // handler gets the exception on empty stack
+            depths[record.getCodeAddress()] = 1;
+            queue[queueSize++] = record.getCodeAddress();
+        }
+
+        while (queueSize > 0) {
+            final int pc = queue[--queueSize];
+            final int depth = depths[pc] + stackDelta(pc);
+            if (depth < 0 || depth > this.method.getMaxStackDepth()) {
+                throw new UnsupportedOperationException("Wrong stack depth at " + pc);
+            }
+            for (final int successor : successors(pc)) {
+                if (successor < 0 || successor >= this.bytecode.length) {
+                    throw new UnsupportedOperationException("Wrong jump target " + successor);
+                }
+                if (depths[successor] < 0) {
+                    depths[successor] = depth;
+                    queue[queueSize++] = successor;
+                } else if (depths[successor] != depth) {
+                    throw new UnsupportedOperationException("Inconsistent stack depth at " + successor);
+                }
+            }
+        }
+        return depths;
+    }
+
+    private int[] successors(final int pc) {
+        final int instruction = this.bytecode[pc] & 0xFF;
+        final int nextPc = pc + length(pc);
+        if (JJJVMJitCompiler.isJump(instruction)) {
+            final int target = pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1);
+            return instruction == 167 ? new int[]{target} : new int[]{nextPc, target};
+        }
+        switch (instruction) {
+            case 200: // GOTO_W
+                return new int[]{pc + JJJVMJitCompiler.readInt(this.bytecode, pc + 1)};
+            case 170: // TABLESWITCH
+            case 171: // LOOKUPSWITCH
+            {
+                final int[][] table = readSwitch(pc);
+                final int[] result = new int[table[1].length + 1];
+                System.arraycopy(table[1], 0, result, 0, table[1].length);
+                result[table[1].length] = table[2][0];
+                return result;
+            }
+            case 172: // IRETURN
+            case 173: // LRETURN
+            case 174: // FRETURN
+            case 175: // DRETURN
+            case 176: // ARETURN
+            case 177: // RETURN
+            case 191: // ATHROW
+                return new int[0];
+            default:
+                return new int[]{nextPc};
+        }
+    }
+
+    // keys, absolute targets and default target of a switch
+    private int[][] readSwitch(final int pc) {
+        int offset = (pc + 4) & ~3;
+        final int defaultPc = pc + JJJVMJitCompiler.readInt(this.bytecode, offset);
+        final int[] keys;
+        final int[] targets;
+        if ((this.bytecode[pc] & 0xFF) == 170) {
+            final int low = JJJVMJitCompiler.readInt(this.bytecode, offset + 4);
+            final int high = JJJVMJitCompiler.readInt(this.bytecode, offset + 8);
+            keys = new int[high - low + 1];
+            targets = new int[keys.length];
+            offset += 12;
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = low + i;
+                targets[i] = pc + JJJVMJitCompiler.readInt(this.bytecode, offset);
+                offset += 4;
+            }
+        } else {
+            final int pairs = JJJVMJitCompiler.readInt(this.bytecode, offset + 4);
+            keys = new int[pairs];
+            targets = new int[pairs];
+            offset += 8;
+            for (int i = 0; i < pairs; i++) {
+                keys[i] = JJJVMJitCompiler.readInt(this.bytecode, offset);
+                targets[i] = pc + JJJVMJitCompiler.readInt(this.bytecode, offset + 4);
+                offset += 8;
+            }
+        }
+        return new int[][]{keys, targets, {defaultPc}};
+    }
+
+    private static int width(final char type) {
+        return type == JJJVMConstants.TYPE_VOID ? 0 : (isWide(type) ? 2 : 1);
+    }
+
+    private static boolean isWide(final char type) {
+        return type == JJJVMConstants.TYPE_LONG || type == JJJVMConstants.TYPE_DOUBLE;
+    }
+
+    private static char fieldType(final String signature) {
+        final char result = signature.charAt(0);
+        return result == JJJVMConstants.TYPE_ARRAY ? JJJVMConstants.TYPE_CLASS : result;
+    }
+
+    private static char returnType(final String signature) {
+        final char result = signature.charAt(signature.indexOf(')') + 1);
+        return result == JJJVMConstants.TYPE_ARRAY ? JJJVMConstants.TYPE_CLASS : result;
+    }
+
+    // wide type of typed load, store, arithmetic and return instructions, order is I, J, F, D, A
+    private static final char[] TYPES = {JJJVMConstants.TYPE_INT, JJJVMConstants.TYPE_LONG, JJJVMConstants.TYPE_FLOAT, JJJVMConstants.TYPE_DOUBLE, JJJVMConstants.TYPE_CLASS};
+
+    private static final int[] CONVERSION_DELTAS = {
+        1, 0, 1, // I2L, I2F, I2D
+        -1, -1, 0, // L2I, L2F, L2D
+        0, 1, 1, // F2I, F2L, F2D
+        -1, 0, -1, // D2I, D2L, D2F
+        0, 0, 0 // I2B, I2C, I2S
+    };
+
+    private int stackDelta(final int pc) throws Throwable {
+        final int instruction = this.bytecode[pc] & 0xFF;
+        if (instruction == 0 || instruction == 95 || instruction == 132 || instruction == 167 || instruction == 200 || (instruction >= 116 && instruction <= 119)) {
+            // NOP, SWAP, IINC, GOTO, GOTO_W, negations
+            return 0;
+        }
+        if (instruction <= 8) {
+            return 1; // ACONST_NULL, ICONST
+        }
+        if (instruction <= 15) {
+            return instruction == 9 || instruction == 10 || instruction == 14 || instruction == 15 ? 2 : 1;
+        }
+        if (instruction <= 19) {
+            return 1; // BIPUSH, SIPUSH, LDC
+        }
+        if (instruction == 20) {
+            return 2; // LDC2_W
+        }
+        if (instruction <= 25) {
+            return width(TYPES[instruction - 21]);
+        }
+        if (instruction <= 45) {
+            return width(TYPES[(instruction - 26) / 4]);
+        }
+        if (instruction >= 54 && instruction <= 58) {
+            return -width(TYPES[instruction - 54]);
+        }
+        if (instruction >= 59 && instruction <= 78) {
+            return -width(TYPES[(instruction - 59) / 4]);
+        }
+        switch (instruction) {
+            case 87: // POP
+                return -1;
+            case 88: // POP2
+                return -2;
+            case 89: // DUP
+            case 90: // DUP_X1
+            case 91: // DUP_X2
+                return 1;
+            case 92: // DUP2
+            case 93: // DUP2_X1
+            case 94: // DUP2_X2
+                return 2;
+            case 148: // LCMP
+            case 151: // DCMPL
+            case 152: // DCMPG
+                return -3;
+            case 149: // FCMPL
+            case 150: // FCMPG
+                return -1;
+            case 170: // TABLESWITCH
+            case 171: // LOOKUPSWITCH
+            case 198: // IFNULL
+            case 199: // IFNONNULL
+            case 191: // ATHROW
+                return -1;
+            case 196: { // WIDE
+                final int modified = this.bytecode[pc + 1] & 0xFF;
+                if (modified == 132) {
+                    return 0;
+                }
+                return modified <= 25 ? width(TYPES[modified - 21]) : -width(TYPES[modified - 54]);
+            }
+            default:
+                break;
+        }
+        if (instruction >= 96 && instruction <= 115) {
+            return -width(TYPES[(instruction - 96) % 4]);
+        }
+        if (instruction >= 120 && instruction <= 125) {
+            return -1; // shift distance is int
+        }
+        if (instruction >= 126 && instruction <= 131) {
+            return (instruction & 1) == 0 ? -1 : -2;
+        }
+        if (instruction >= 133 && instruction <= 147) {
+            return CONVERSION_DELTAS[instruction - 133];
+        }
+        if (instruction >= 153 && instruction <= 158) {
+            return -1;
+        }
+        if (instruction >= 159 && instruction <= 166) {
+            return -2;
+        }
+        if (instruction >= 172 && instruction <= 177) {
+            return 0;
+        }
+
+        // field access and calls
+        final JJJVMMemberRef record = this.cpool.getMemberRefAt(JJJVMJitCompiler.readShort(this.bytecode, pc + 1) & 0xFFFF);
+        final String signature = record.getSignature();
+        switch (instruction) {
+            case 178: // GETSTATIC
+                return width(fieldType(signature));
+            case 179: // PUTSTATIC
+                return -width(fieldType(signature));
+            case 180: // GETFIELD
+                return width(fieldType(signature)) - 1;
+            case 181: // PUTFIELD
+                return -width(fieldType(signature)) - 1;
+            default: {
+                int result = width(returnType(signature));
+                for (final char type : JJJVMInterpreter.extractArgTypes(signature)) {
+                    result -= width(type);
+                }
+                return instruction == 184 ? result : result - 1;
+            }
+        }
+    }
+
+    private void makeNodes(final int pc, final int depth, final List<Node> code) throws Throwable {
+        final int instruction = this.bytecode[pc] & 0xFF;
+        final int top = this.stackBase + depth;
+
+        if (instruction == 0 || instruction == 87 || instruction == 88) {
+            // NOP, POP and POP2 don't make any node
+            return;
+        }
+        if (instruction == 1) {
+            code.add(new ReferenceConstant(pc, top, null));
+        } else if (instruction <= 8) {
+            code.add(new PrimitiveConstant(pc, top, instruction - 3));
+        } else if (instruction <= 10) {
+            code.add(new PrimitiveConstant(pc, top, instruction - 9));
+        } else if (instruction <= 13) {
+            code.add(new PrimitiveConstant(pc, top, Float.floatToRawIntBits(instruction - 11)));
+        } else if (instruction <= 15) {
+            code.add(new PrimitiveConstant(pc, top, Double.doubleToRawLongBits(instruction - 14)));
+        } else if (instruction == 16) {
+            code.add(new PrimitiveConstant(pc, top, this.bytecode[pc + 1]));
+        } else if (instruction == 17) {
+            code.add(new PrimitiveConstant(pc, top, JJJVMJitCompiler.readShort(this.bytecode, pc + 1)));
+        } else if (instruction <= 20) {
+            final int index = instruction == 18 ? this.bytecode[pc + 1] & 0xFF : JJJVMJitCompiler.readShort(this.bytecode, pc + 1) & 0xFFFF;
+            final JJJVMConstantPoolItem item = this.cpool.getItemAt(index);
+            switch (item.getType()) {
+                case JJJVMConstantPoolItem.CONSTANT_INTEGER:
+                    code.add(new PrimitiveConstant(pc, top, (Integer) item.getValue()));
+                    break;
+                case JJJVMConstantPoolItem.CONSTANT_FLOAT:
+                    code.add(new PrimitiveConstant(pc, top, Float.floatToRawIntBits((Float) item.getValue())));
+                    break;
+                case JJJVMConstantPoolItem.CONSTANT_LONG:
+                    code.add(new PrimitiveConstant(pc, top, (Long) item.getValue()));
+                    break;
+                case JJJVMConstantPoolItem.CONSTANT_DOUBLE:
+                    code.add(new PrimitiveConstant(pc, top, Double.doubleToRawLongBits((Double) item.getValue())));
+                    break;
+                default:
+                    code.add(new ReferenceConstant(pc, top, item.asString()));
+                    break;
+            }
+        } else if (instruction <= 25) {
+            code.add(new Move(pc, this.bytecode[pc + 1] & 0xFF, top));
+        } else if (instruction <= 45) {
+            code.add(new Move(pc, (instruction - 26) % 4, top));
+        } else if (instruction >= 54 && instruction <= 58) {
+            code.add(new Move(pc, top - width(TYPES[instruction - 54]), this.bytecode[pc + 1] & 0xFF));
+        } else if (instruction >= 59 && instruction <= 78) {
+            code.add(new Move(pc, top - width(TYPES[(instruction - 59) / 4]), (instruction - 59) % 4));
+        } else if (instruction >= 89 && instruction <= 94) {
+            makeDup(pc, instruction, top, code);
+        } else if (instruction == 95) {
+            // SWAP through the scratch register
+            code.add(new Move(pc, top - 1, this.scratch));
+            code.add(new Move(pc, top - 2, top - 1));
+            code.add(new Move(pc, this.scratch, top - 2));
+        } else if (instruction >= 116 && instruction <= 119) {
+            // negations keep the value in place
+            final int src = top - ((instruction & 1) == 0 ? 1 : 2);
+            code.add(new Conversion(pc, instruction, src, src));
+        } else if (instruction >= 96 && instruction <= 131) {
+            code.add(makeArithmetic(pc, instruction, top));
+        } else if (instruction == 132) {
+            final int slot = this.bytecode[pc + 1] & 0xFF;
+            code.add(new Increment(pc, slot, slot, this.bytecode[pc + 2]));
+        } else if (instruction >= 133 && instruction <= 147) {
+            // long and double values are converted from two slots
+            final boolean wideSource = (instruction >= 136 && instruction <= 138) || (instruction >= 142 && instruction <= 144);
+            final int src = top - (wideSource ? 2 : 1);
+            code.add(new Conversion(pc, instruction, src, src));
+        } else if (instruction == 148 || instruction == 151 || instruction == 152) {
+            code.add(new Comparison(pc, instruction, top - 4, top - 2, top - 4));
+        } else if (instruction == 149 || instruction == 150) {
+            code.add(new Comparison(pc, instruction, top - 2, top - 1, top - 2));
+        } else if (instruction >= 153 && instruction <= 158) {
+            code.add(new IntCondition(pc, pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1), instruction, top - 1, -1));
+        } else if (instruction >= 159 && instruction <= 164) {
+            code.add(new IntCondition(pc, pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1), instruction, top - 2, top - 1));
+        } else if (instruction == 165 || instruction == 166) {
+            code.add(new ReferenceCondition(pc, pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1), instruction, top - 2, top - 1));
+        } else if (instruction == 198 || instruction == 199) {
+            code.add(new ReferenceCondition(pc, pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1), instruction, top - 1, -1));
+        } else if (instruction == 167) {
+            code.add(new Jump(pc, pc + JJJVMJitCompiler.readShort(this.bytecode, pc + 1)));
+        } else if (instruction == 200) {
+            code.add(new Jump(pc, pc + JJJVMJitCompiler.readInt(this.bytecode, pc + 1)));
+        } else if (instruction == 170 || instruction == 171) {
+            // lookupswitch keys are sorted, tableswitch keys are ascending
+            final int[][] table = readSwitch(pc);
+            code.add(new Switch(pc, top - 1, table[0], table[1], table[2][0]));
+        } else if (instruction >= 172 && instruction <= 177) {
+            final char type = instruction == 177 ? JJJVMConstants.TYPE_VOID : TYPES[instruction - 172];
+            code.add(new Return(pc, type, top - width(type)));
+        } else if (instruction == 191) {
+            code.add(new Throw(pc, this.klazz, top - 1));
+        } else if (instruction == 196) {
+            final int modified = this.bytecode[pc + 1] & 0xFF;
+            final int index = ((this.bytecode[pc + 2] & 0xFF) << 8) | (this.bytecode[pc + 3] & 0xFF);
+            if (modified == 132) {
+                code.add(new Increment(pc, index, index, JJJVMJitCompiler.readShort(this.bytecode, pc + 4)));
+            } else if (modified <= 25) {
+                code.add(new Move(pc, index, top));
+            } else {
+                code.add(new Move(pc, top - width(TYPES[modified - 54]), index));
+            }
+        } else {
+            code.add(makeCall(pc, instruction, top));
+        }
+    }
+
+    private void makeDup(final int pc, final int instruction, final int top, final List<Node> code) {
+        // size of duplicated values and size of values to be skipped
+        final int size = instruction <= 91 ? 1 : 2;
+        final int skip = instruction == 89 || instruction == 92 ? 0 : (instruction == 90 || instruction == 93 ? 1 : 2);
+        final int bottom = top - size - skip;
+
+        // shift values up starting from the top one
+        for (int i = top - 1; i >= bottom; i--) {
+            code.add(new Move(pc, i, i + size));
+        }
+        // copy the duplicated values into the gap
+        for (int i = 0; i < size; i++) {
+            if (top + i != bottom + i + size) {
+                code.add(new Move(pc, top + i, bottom + i));
+            }
+        }
+    }
+
+    private Node makeArithmetic(final int pc, final int instruction, final int top) {
+        if (instruction >= 120 && instruction <= 125) {
+            // shifts, the distance is int
+            final int valueWidth = (instruction & 1) == 0 ? 1 : 2;
+            final int a = top - 1 - valueWidth;
+            return valueWidth == 1 ? new IntOperation(pc, instruction, a, top - 1, a) : new LongOperation(pc, instruction, a, top - 1, a);
+        }
+        final int type = instruction >= 126 ? (instruction & 1) : (instruction - 96) % 4;
+        switch (type) {
+            case 0:
+                return new IntOperation(pc, instruction, top - 2, top - 1, top - 2);
+            case 1:
+                return new LongOperation(pc, instruction, top - 4, top - 2, top - 4);
+            case 2:
+                return new FloatOperation(pc, instruction, top - 2, top - 1, top - 2);
+            default:
+                return new DoubleOperation(pc, instruction, top - 4, top - 2, top - 4);
+        }
+    }
+
+    private Node makeCall(final int pc, final int instruction, final int top) throws Throwable {
+        final int cpIndex = JJJVMJitCompiler.readShort(this.bytecode, pc + 1) & 0xFFFF;
+        final JJJVMMemberRef record = this.cpool.getMemberRefAt(cpIndex);
+        final String signature = record.getSignature();
+
+        final char[] argTypes;
+        final char resultType;
+        if (instruction <= 181) {
+            final char type = fieldType(signature);
+            argTypes = instruction == 179 || instruction == 181 ? new char[]{type} : new char[0];
+            resultType = instruction == 178 || instruction == 180 ? type : JJJVMConstants.TYPE_VOID;
+        } else {
+            argTypes = JJJVMInterpreter.extractArgTypes(signature);
+            resultType = returnType(signature);
+        }
+        final boolean hasInstance = instruction != 178 && instruction != 179 && instruction != 184;
+
+        int slot = top;
+        final int[] args = new int[argTypes.length];
+        for (int i = argTypes.length - 1; i >= 0; i--) {
+            slot -= width(argTypes[i]);
+            args[i] = slot;
+        }
+        final int instance = hasInstance ? --slot : -1;
+        return new Call(pc, new JJJVMJit.Link(this.klazz, instruction, record), instance, argTypes, args, resultType, slot);
+    }
+    static Object box(final Frame frame, final char type, final int slot) {
+        switch (type) {
+            case JJJVMConstants.TYPE_VOID:
+                return null;
+            case JJJVMConstants.TYPE_LONG:
+                return frame.values[slot];
+            case JJJVMConstants.TYPE_FLOAT:
+                return Float.intBitsToFloat((int) frame.values[slot]);
+            case JJJVMConstants.TYPE_DOUBLE:
+                return Double.longBitsToDouble(frame.values[slot]);
+            case JJJVMConstants.TYPE_CLASS:
+                return frame.refs[slot];
+            default:
+                return (int) frame.values[slot];
+        }
+    }
+
+    static void unbox(final Frame frame, final char type, final int slot, final Object value) {
+        switch (type) {
+            case JJJVMConstants.TYPE_LONG:
+                frame.values[slot] = JJJVMJit.toLong(value);
+                break;
+            case JJJVMConstants.TYPE_FLOAT:
+                frame.values[slot] = Float.floatToRawIntBits(JJJVMJit.toFloat(value));
+                break;
+            case JJJVMConstants.TYPE_DOUBLE:
+                frame.values[slot] = Double.doubleToRawLongBits(JJJVMJit.toDouble(value));
+                break;
+            case JJJVMConstants.TYPE_CLASS:
+                frame.refs[slot] = value;
+                break;
+            default:
+                frame.values[slot] = JJJVMJit.toInt(value);
+                break;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Calls of default methods of host interfaces through lambda proxies. The
+ * class is loaded only when such a method is called, so it is never touched on
+ * platforms without default methods. The java.lang.invoke package is not a
+ * part of the Java 1.5 and Android class libraries, so it is used through
+ * reflection.
+ */
+final class JJJVMDefaultMethods {
+
+    // InvocationHandler.invokeDefault of Java 16 and later
+    private static final Method INVOKE_DEFAULT;
+    // private constructor of lookup used on Java 8
+    private static final Constructor<?> LOOKUP_CONSTRUCTOR;
+    private static final Method LOOKUP;
+    private static final Method METHOD_TYPE;
+    private static final Method FIND_SPECIAL;
+    private static final Method BIND_TO;
+    private static final Method INVOKE_WITH_ARGUMENTS;
+
+    static {
+        INVOKE_DEFAULT = findMethod(InvocationHandler.class, "invokeDefault", Object.class, Method.class, Object[].class);
+        if (INVOKE_DEFAULT == null) {
+            try {
+                final Class<?> methodHandles = Class.forName("java.lang.invoke.MethodHandles");
+                final Class<?> lookup = Class.forName("java.lang.invoke.MethodHandles$Lookup");
+                final Class<?> methodHandle = Class.forName("java.lang.invoke.MethodHandle");
+                final Class<?> methodType = Class.forName("java.lang.invoke.MethodType");
+                if (findMethod(methodHandles, "privateLookupIn", Class.class, lookup) == null) {
+                    // Java 8 allows special calls only through a lookup made for the interface
+                    final Constructor<?> constructor = lookup.getDeclaredConstructor(Class.class, int.class);
+                    constructor.setAccessible(true);
+                    LOOKUP_CONSTRUCTOR = constructor;
+                } else {
+                    // Java 9 and later allow special calls of interface methods
+                    LOOKUP_CONSTRUCTOR = null;
+                }
+                LOOKUP = methodHandles.getMethod("lookup");
+                METHOD_TYPE = methodType.getMethod("methodType", Class.class, Class[].class);
+                FIND_SPECIAL = lookup.getMethod("findSpecial", Class.class, String.class, methodType, Class.class);
+                BIND_TO = methodHandle.getMethod("bindTo", Object.class);
+                INVOKE_WITH_ARGUMENTS = methodHandle.getMethod("invokeWithArguments", Object[].class);
+            } catch (Exception ex) {
+                throw new Error("Can't find method handles of the platform", ex);
+            }
+        } else {
+            LOOKUP_CONSTRUCTOR = null;
+            LOOKUP = null;
+            METHOD_TYPE = null;
+            FIND_SPECIAL = null;
+            BIND_TO = null;
+            INVOKE_WITH_ARGUMENTS = null;
+        }
+    }
+
+    private JJJVMDefaultMethods() {
+    }
+
+    private static Method findMethod(final Class<?> klazz, final String name, final Class<?>... args) {
+        try {
+            return klazz.getMethod(name, args);
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Call default method of a host interface for a proxy.
+     *
+     * @param proxy  the proxy, must not be null
+     * @param method the default method, must not be null
+     * @param args   arguments, can be null
+     * @return result of the call
+     * @throws Throwable it will be thrown for errors
+     */
+    static Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        final Object[] arguments = args == null ? JJJVMConstants.EMPTY_OBJECT_ARRAY : args;
+        try {
+            if (INVOKE_DEFAULT != null) {
+                return INVOKE_DEFAULT.invoke(null, proxy, method, arguments);
+            }
+            final Class<?> declaringClass = method.getDeclaringClass();
+            final Object lookup = LOOKUP_CONSTRUCTOR == null ? LOOKUP.invoke(null) : LOOKUP_CONSTRUCTOR.newInstance(declaringClass, 2 /* Lookup.PRIVATE */);
+            final Object type = METHOD_TYPE.invoke(null, method.getReturnType(), method.getParameterTypes());
+            final Object handle = BIND_TO.invoke(FIND_SPECIAL.invoke(lookup, declaringClass, method.getName(), type, declaringClass), proxy);
+            return INVOKE_WITH_ARGUMENTS.invoke(handle, (Object) arguments);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+}
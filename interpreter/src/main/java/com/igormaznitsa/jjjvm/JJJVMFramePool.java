@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+
+import java.util.Arrays;
+
+/**
+ * Keeps per-thread stack and local variable arrays for a method, so that
+ * repeated calls of the method from host code don't allocate a frame for every
+ * call. Recursive calls from the same thread get a fresh frame.
+ */
+public final class JJJVMFramePool {
+
+    private static final class Frame {
+
+        private final Object[] stack;
+        private final Object[] vars;
+        private boolean busy;
+
+        private Frame(final JJJVMMethod method) {
+            this.stack = new Object[Math.max(method.getMaxStackDepth(), 0)];
+            this.vars = new Object[Math.max(method.getMaxLocals(), 0)];
+        }
+
+        private void clear() {
+            // don't keep references to objects of the finished call
+            Arrays.fill(this.stack, null);
+            Arrays.fill(this.vars, null);
+        }
+    }
+
+    private final JJJVMMethod method;
+    private final ThreadLocal<Frame> frames = new ThreadLocal<Frame>() {
+        @Override
+        protected Frame initialValue() {
+            return new Frame(method);
+        }
+    };
+
+    public JJJVMFramePool(final JJJVMMethod method) {
+        if (method == null) {
+            throw new NullPointerException("Method is null");
+        }
+        this.method = method;
+    }
+
+    public JJJVMMethod getMethod() {
+        return this.method;
+    }
+
+    /**
+     * Invoke the method with a reused frame.
+     *
+     * @param instance  the 'this' object or null for static method
+     * @param arguments arguments in the interpreter format, can be null
+     * @return result of invocation in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    public Object invoke(final JJJVMObject instance, final Object[] arguments) throws Throwable {
+        final Frame frame = this.frames.get();
+        if (frame.busy) {
+            return JJJVMInterpreter.invoke(this.method.getDeclaringClass(), instance, this.method, arguments, null, null);
+        }
+        frame.busy = true;
+        try {
+            return JJJVMInterpreter.invoke(this.method.getDeclaringClass(), instance, this.method, arguments, frame.stack, frame.vars);
+        } finally {
+            frame.clear();
+            frame.busy = false;
+        }
+    }
+}
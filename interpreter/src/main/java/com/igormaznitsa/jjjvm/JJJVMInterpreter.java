@@ -26,13 +26,9 @@ import com.igormaznitsa.jjjvm.model.JJJVMField;
 import com.igormaznitsa.jjjvm.model.*;
 
 import java.lang.reflect.Array;
-import java.util.HashMap;
-import java.util.Map;
 
 public abstract class JJJVMInterpreter {
 
-    protected static final Map<String, Integer> CACHED_NUMBER_OF_ARGS = new HashMap<>();
-
     /**
      * Invoke a method.
      *
@@ -51,8 +47,10 @@ public abstract class JJJVMInterpreter {
      */
     public static Object invoke(final JJJVMClass caller, final JJJVMObject instance, final JJJVMMethod methodToInvoke, final Object[] args, final Object[] stack, final Object[] vars) throws Throwable {
         final int methodFlags = methodToInvoke.getFlags();
-        if ((methodFlags & JJJVMConstants.ACC_NATIVE) != 0) {
-            throw new IllegalArgumentException("Method must not be native [" + methodToInvoke + ']');
+
+        if ((methodFlags & JJJVMConstants.ACC_STATIC) != 0) {
+            // static call is an active use of the class
+            methodToInvoke.getDeclaringClass().initialize();
         }
 
         // implementation of synchronization mechanism
@@ -79,8 +77,161 @@ public abstract class JJJVMInterpreter {
         }
     }
 
+    private static Object invokeNative(final JJJVMObject instance, final JJJVMMethod method, final Object[] args) throws Throwable {
+        final JJJVMNativeMethod implementation = method.getNativeImplementation();
+        if (implementation == null) {
+            throw new UnsatisfiedLinkError(method.getDeclaringClass().getName() + '.' + method.getName() + method.getSignature());
+        }
+        return implementation.invoke(instance, args == null ? JJJVMConstants.EMPTY_OBJECT_ARRAY : args);
+    }
+
+    /**
+     * Invoke a method referenced by an invoke instruction, the method can be
+     * either interpreted or host one.
+     *
+     * @param caller      the class containing the instruction, must not be null
+     * @param instruction code of the invoke instruction
+     * @param record      the method reference, must not be null
+     * @param objInstance the 'this' object, null for static methods
+     * @param argsArray   arguments in the interpreter format, must not be null
+     * @param regSP       offset of free part of the caller stack
+     * @param stack       the caller stack to be reused by the method, can be null
+     * @return result of invocation, null for void method
+     * @throws Throwable it will be thrown for errors
+     */
+    static Object invokeMember(final JJJVMClass caller, final int instruction, final JJJVMMemberRef record, final Object objInstance, final Object[] argsArray, final int regSP, final Object[] stack) throws Throwable {
+        final String methodName = record.getName();
+
+        final JJJVMLambda lambda = instruction == 185 || instruction == 182 ? JJJVMLambda.asLambda(objInstance) : null;
+        if (lambda != null && lambda.getFactory().isFunctionalMethod(methodName, record.getSignature())) {
+            // direct call of lambda implementation
+            return lambda.call(argsArray);
+        } else if (objInstance instanceof JJJVMLambda) {
+            return toInterpreterValue(((JJJVMLambda) objInstance).invokeMethod(methodName, record.getSignature(), argsArray), getReturnType(record.getSignature()));
+        }
+
+        final JJJVMProvider provider = caller.getProvider();
+        final String klazzName = record.getClassName();
+        if (lambda != null || (instruction == 185 && !(objInstance instanceof JJJVMObject))) {
+            // host objects, including lambda proxies with their default methods, are called through the host interface
+            return toInterpreterValue(provider.invoke(caller, objInstance, klazzName, methodName, record.getSignature(), argsArray), getReturnType(record.getSignature()));
+        }
+        final Object resolvedKlazz;
+        if (instruction == 185) {
+            // INOKEINTERFACE
+            resolvedKlazz = ((JJJVMObject) objInstance).getDeclaringClass();
+        } else {
+            resolvedKlazz = klazzName.equals(caller.getClassName()) ? caller : provider.resolveClass(klazzName);
+        }
+        if (resolvedKlazz instanceof JJJVMClass) {
+            final JJJVMMethod foundMethod = ((JJJVMClass) resolvedKlazz).findMethod(record.getNameSymbol(), record.getSignatureSymbol());
+            final JJJVMClass jjjvmclazz = foundMethod.getDeclaringClass();
+            if (instruction == 184 && !jjjvmclazz.isInitialized()) {
+                jjjvmclazz.initialize();
+            }
+            return _invoke(jjjvmclazz, (JJJVMObject) objInstance, foundMethod, argsArray, regSP, stack, null);
+        } else {
+            return provider.invoke(caller, objInstance, klazzName, methodName, record.getSignature(), argsArray);
+        }
+    }
+
+    /**
+     * Get the JVM type char of the result of a method.
+     *
+     * @param methodSignature the method signature, must not be null
+     * @return the type char of the returned value
+     */
+    private static char getReturnType(final String methodSignature) {
+        return methodSignature.charAt(methodSignature.indexOf(')') + 1);
+    }
+
+    /**
+     * Read value of a static field for GETSTATIC.
+     *
+     * @param caller   the class containing the instruction, must not be null
+     * @param fieldRef the field reference, must not be null
+     * @return value of the field in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    static Object getStaticValue(final JJJVMClass caller, final JJJVMMemberRef fieldRef) throws Throwable {
+        final String className = fieldRef.getClassName();
+        final JJJVMProvider provider = caller.getProvider();
+        final Object resolvedClass = className.equals(caller.getClassName()) ? caller : provider.resolveClass(className);
+        if (resolvedClass instanceof JJJVMClass) {
+            return ((JJJVMClass) resolvedClass).findField(fieldRef.getName()).getStaticValue();
+        } else {
+            return provider.getStatic(caller, className, fieldRef.getName(), fieldRef.getSignature());
+        }
+    }
+
+    /**
+     * Write value of a static field for PUTSTATIC.
+     *
+     * @param caller   the class containing the instruction, must not be null
+     * @param fieldRef the field reference, must not be null
+     * @param value    new value in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    static void setStaticValue(final JJJVMClass caller, final JJJVMMemberRef fieldRef, final Object value) throws Throwable {
+        final String className = fieldRef.getClassName();
+        final JJJVMProvider provider = caller.getProvider();
+        final Object resolvedClass = className.equals(caller.getClassName()) ? caller : provider.resolveClass(className);
+        if (resolvedClass instanceof JJJVMClass) {
+            ((JJJVMClass) resolvedClass).findField(fieldRef.getName()).setStaticValue(value);
+        } else {
+            provider.setStatic(caller, className, fieldRef.getName(), fieldRef.getSignature(), value);
+        }
+    }
+
+    /**
+     * Read value of an object field for GETFIELD.
+     *
+     * @param caller         the class containing the instruction, must not be null
+     * @param objectInstance the object, interpreted or host one
+     * @param fieldRef       the field reference, must not be null
+     * @return value of the field
+     * @throws Throwable it will be thrown for errors
+     */
+    static Object getFieldValue(final JJJVMClass caller, final Object objectInstance, final JJJVMMemberRef fieldRef) throws Throwable {
+        if (objectInstance instanceof JJJVMObject) {
+            return ((JJJVMObject) objectInstance).getFieldValue(fieldRef.getName(), true);
+        } else {
+            return caller.getProvider().get(caller, objectInstance, fieldRef.getName(), fieldRef.getSignature());
+        }
+    }
+
+    /**
+     * Write value of an object field for PUTFIELD.
+     *
+     * @param caller         the class containing the instruction, must not be null
+     * @param objectInstance the object, interpreted or host one
+     * @param fieldRef       the field reference, must not be null
+     * @param value          new value in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    static void setFieldValue(final JJJVMClass caller, final Object objectInstance, final JJJVMMemberRef fieldRef, final Object value) throws Throwable {
+        if (objectInstance instanceof JJJVMObject) {
+            ((JJJVMObject) objectInstance).setFieldValue(fieldRef.getName(), value, true);
+        } else {
+            caller.getProvider().set(caller, objectInstance, fieldRef.getName(), fieldRef.getSignature(), value);
+        }
+    }
+
     // the Heart of the interpreter, it processes byte-code of method {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.7.3}
     protected static Object _invoke(final JJJVMClass caller, final JJJVMObject instance, final JJJVMMethod method, final Object[] args, final int initialStackOffset, final Object[] stack, final Object[] vars) throws Throwable {
+        if ((method.getFlags() & JJJVMConstants.ACC_NATIVE) != 0) {
+            return invokeNative(instance, method, args);
+        }
+
+        // read once, back edges are only counted when the JIT tier can use them
+        final boolean jitEnabled = JJJVMJit.isEnabled();
+        if (jitEnabled) {
+            final JJJVMJit.Entry compiled = JJJVMJit.enter(method);
+            if (compiled != null) {
+                return compiled.invoke(instance, args);
+            }
+        }
+
         final Object[] localVars = vars == null || vars.length < method.getMaxLocals() ? new Object[method.getMaxLocals()] : vars;
 
         final Object[] localMethodStack;
@@ -127,10 +278,17 @@ public abstract class JJJVMInterpreter {
             firstArgument = 1;
         }
 
-        // fill the method stack with arguments
+        // counts backward jumps for the JIT tier and keeps parsed argument types
+        final JJJVMMethodProfile profile = JJJVMMethodProfile.of(method);
+
+        // fill the method stack with arguments, long and double values take two local variables
         if (args != null) {
-            for (final Object arg : args) {
-                localVars[firstArgument++] = arg;
+            final char[] argTypes = profile.getArgTypes();
+            for (int i = 0; i < args.length; i++) {
+                localVars[firstArgument++] = args[i];
+                if (i < argTypes.length && isWideType(argTypes[i])) {
+                    firstArgument++;
+                }
             }
         }
 
@@ -350,16 +508,24 @@ public abstract class JJJVMInterpreter {
                     case 46: // IALOAD
                     {
                         final int index = ((Integer) localMethodStack[--regSP]);
-                        final int[] array = (int[]) localMethodStack[--regSP];
-                        localMethodStack[regSP++] = array[index];
+                        final Object arrayObj = localMethodStack[--regSP];
+                        if (arrayObj instanceof int[]) {
+                            localMethodStack[regSP++] = ((int[]) arrayObj)[index];
+                        } else {
+                            localMethodStack[regSP++] = ((JJJVMBufferArray) arrayObj).getInt(index);
+                        }
                     }
                     break;
                     case 47: // LALOAD
                     {
                         int index = ((Integer) localMethodStack[--regSP]);
-                        final long[] array = (long[]) localMethodStack[--regSP];
+                        final Object arrayObj = localMethodStack[--regSP];
                         localMethodStack[regSP++] = null;
-                        localMethodStack[regSP++] = array[index];
+                        if (arrayObj instanceof long[]) {
+                            localMethodStack[regSP++] = ((long[]) arrayObj)[index];
+                        } else {
+                            localMethodStack[regSP++] = ((JJJVMBufferArray) arrayObj).getLong(index);
+                        }
                     }
                     break;
                     case 48: // FALOAD
@@ -388,13 +554,15 @@ public abstract class JJJVMInterpreter {
                     {
                         final int index = ((Integer) localMethodStack[--regSP]);
                         final Object arrayObj = localMethodStack[--regSP];
-                        if (arrayObj instanceof boolean[]) {
+                        if (arrayObj instanceof byte[]) {
+                            final byte[] byteArray = (byte[]) arrayObj;
+                            localMethodStack[regSP++] = (int) byteArray[index];
+                        } else if (arrayObj instanceof boolean[]) {
                             final boolean[] boolArray = (boolean[]) arrayObj;
                             localMethodStack[regSP++] = boolArray[index] ? 1 : 0;
                         } else {
-                            // byte
-                            final byte[] byteArray = (byte[]) arrayObj;
-                            localMethodStack[regSP++] = (int) byteArray[index];
+                            // byte buffer
+                            localMethodStack[regSP++] = ((JJJVMBufferArray) arrayObj).getInt(index);
                         }
                     }
                     break;
@@ -456,6 +624,7 @@ public abstract class JJJVMInterpreter {
                     {
                         final Long longValue = (Long) localMethodStack[--regSP];
                         localVars[instruction - 63] = longValue;
+                        --regSP;
                     }
                     break;
                     case 67: // FSTORE_0
@@ -474,6 +643,7 @@ public abstract class JJJVMInterpreter {
                     {
                         final Double dblValue = (Double) localMethodStack[--regSP];
                         localVars[instruction - 71] = dblValue;
+                        --regSP;
                     }
                     break;
                     case 75: // ASTORE_0
@@ -489,7 +659,12 @@ public abstract class JJJVMInterpreter {
                     {
                         final Integer value = (Integer) localMethodStack[--regSP];
                         final Integer index = (Integer) localMethodStack[--regSP];
-                        ((int[]) localMethodStack[--regSP])[index] = value;
+                        final Object array = localMethodStack[--regSP];
+                        if (array instanceof int[]) {
+                            ((int[]) array)[index] = value;
+                        } else {
+                            ((JJJVMBufferArray) array).setInt(index, value);
+                        }
                     }
                     break;
                     case 80: // LASTORE
@@ -497,7 +672,12 @@ public abstract class JJJVMInterpreter {
                         final Long value = (Long) localMethodStack[--regSP];
                         --regSP;
                         final Integer index = (Integer) localMethodStack[--regSP];
-                        ((long[]) localMethodStack[--regSP])[index] = value;
+                        final Object array = localMethodStack[--regSP];
+                        if (array instanceof long[]) {
+                            ((long[]) array)[index] = value;
+                        } else {
+                            ((JJJVMBufferArray) array).setLong(index, value);
+                        }
                     }
                     break;
                     // FASTORE
@@ -529,10 +709,12 @@ public abstract class JJJVMInterpreter {
                         final Integer index = (Integer) localMethodStack[--regSP];
 
                         Object array = localMethodStack[--regSP];
-                        if (array instanceof boolean[]) {
+                        if (array instanceof byte[]) {
+                            ((byte[]) array)[index] = ((Integer) value).byteValue();
+                        } else if (array instanceof boolean[]) {
                             ((boolean[]) array)[index] = (Boolean) value;
                         } else {
-                            ((byte[]) array)[index] = ((Integer) value).byteValue();
+                            ((JJJVMBufferArray) array).setInt(index, (Integer) value);
                         }
                     }
                     break;
@@ -1093,6 +1275,9 @@ public abstract class JJJVMInterpreter {
                                 throw new Error("Unexpected code");
                         }
                         if (doJump) {
+                            if (jitEnabled && jumpOffset < 0) {
+                                profile.countBackEdge();
+                            }
                             regPC = lastPC + jumpOffset;
                         }
                     }
@@ -1141,6 +1326,9 @@ public abstract class JJJVMInterpreter {
                                 throw new Error("unexpected code");
                         }
                         if (doJump) {
+                            if (jitEnabled && jumpOffset < 0) {
+                                profile.countBackEdge();
+                            }
                             regPC = lastPC + jumpOffset;
                         }
                     }
@@ -1169,6 +1357,9 @@ public abstract class JJJVMInterpreter {
                                 throw new Error("unexpected code");
                         }
                         if (doJump) {
+                            if (jitEnabled && jumpOffset < 0) {
+                                profile.countBackEdge();
+                            }
                             regPC = lastPC + jumpOffset;
                         }
                     }
@@ -1176,7 +1367,11 @@ public abstract class JJJVMInterpreter {
                     case 167: // GOTO
                     case 200: // GOTO_2
                     {
-                        regPC = lastPC + ((instruction == 200) ? readIntFromArray(methodBytecodes, regPC) : readShortValueFromArray(methodBytecodes, regPC));
+                        final int jumpOffset = (instruction == 200) ? readIntFromArray(methodBytecodes, regPC) : readShortValueFromArray(methodBytecodes, regPC);
+                        if (jitEnabled && jumpOffset < 0) {
+                            profile.countBackEdge();
+                        }
+                        regPC = lastPC + jumpOffset;
                     }
                     break;
                     case 168: // JSR
@@ -1275,37 +1470,16 @@ public abstract class JJJVMInterpreter {
                     {
                         final int poolIndex = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
                         regPC += 2;
-                        final JJJVMConstantPoolItem fieldRef = cpool.getItemAt(poolIndex);
-
-                        final String className = fieldRef.getClassName();
-                        final String fieldName = fieldRef.getName();
-                        final String fieldSignature = fieldRef.getSignature();
-                        final Object resolvedClass = className.equals(caller.getClassName()) ? caller : provider.resolveClass(className);
-                        final Object value;
-
-                        if (resolvedClass instanceof JJJVMClass) {
-                            final JJJVMClass theclass = (JJJVMClass) resolvedClass;
-                            final JJJVMField thefield = theclass.findField(fieldName);
-                            if (instruction == 178) {
-                                value = thefield.getStaticValue();
-                                if (isCategory2(value)) {
-                                    localMethodStack[regSP++] = null;
-                                }
-                                localMethodStack[regSP++] = value;
-                            } else {
-                                thefield.setStaticValue(localMethodStack[--regSP]);
+                        final JJJVMMemberRef fieldRef = cpool.getMemberRefAt(poolIndex);
+
+                        if (instruction == 178) {
+                            final Object value = getStaticValue(caller, fieldRef);
+                            if (isCategory2(value)) {
+                                localMethodStack[regSP++] = null;
                             }
+                            localMethodStack[regSP++] = value;
                         } else {
-                            if (instruction == 178) {
-                                value = provider.getStatic(caller, className, fieldName, fieldSignature);
-                                if (isCategory2(value)) {
-                                    localMethodStack[regSP++] = null;
-                                }
-                                localMethodStack[regSP++] = value;
-                            } else {
-                                value = localMethodStack[--regSP];
-                                provider.setStatic(caller, className, fieldName, fieldSignature, value);
-                            }
+                            setStaticValue(caller, fieldRef, localMethodStack[--regSP]);
                         }
                     }
                     break;
@@ -1315,23 +1489,16 @@ public abstract class JJJVMInterpreter {
                         final int poolIndex = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
                         regPC += 2;
 
-                        final JJJVMConstantPoolItem fieldRef = cpool.getItemAt(poolIndex);
-                        final String fieldName = fieldRef.getName();
+                        final JJJVMMemberRef fieldRef = cpool.getMemberRefAt(poolIndex);
 
                         if (instruction == 180) {
                             // GET
-                            final Object value = localMethodStack[--regSP];
-
-                            if (value instanceof JJJVMObject) {
-                                final Object result = ((JJJVMObject) value).getFieldValue(fieldName, true);
-                                if (isCategory2(result)) {
-                                    localMethodStack[regSP++] = null;
-                                }
-                                localMethodStack[regSP++] = result;
-                            } else {
-                                final String fieldSignature = fieldRef.getSignature();
-                                localMethodStack[regSP++] = provider.get(caller, value, fieldName, fieldSignature);
+                            final Object objectInstance = localMethodStack[--regSP];
+                            final Object result = getFieldValue(caller, objectInstance, fieldRef);
+                            if (isCategory2(result)) {
+                                localMethodStack[regSP++] = null;
                             }
+                            localMethodStack[regSP++] = result;
                         } else {
                             // PUT
                             final Object value = localMethodStack[regSP - 1];
@@ -1341,14 +1508,7 @@ public abstract class JJJVMInterpreter {
                                 regSP--;
                             }
 
-                            final Object objectINstance = localMethodStack[--regSP];
-
-                            if (objectINstance instanceof JJJVMObject) {
-                                ((JJJVMObject) objectINstance).setFieldValue(fieldName, value, true);
-                            } else {
-                                final String fieldSignature = fieldRef.getSignature();
-                                provider.set(caller, objectINstance, fieldName, fieldSignature, value);
-                            }
+                            setFieldValue(caller, localMethodStack[--regSP], fieldRef, value);
                         }
 
                     }
@@ -1361,14 +1521,18 @@ public abstract class JJJVMInterpreter {
                         final int methodRef = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
                         regPC += 2;
 
-                        final JJJVMConstantPoolItem record = cpool.getItemAt(methodRef);
+                        final JJJVMMemberRef record = cpool.getMemberRefAt(methodRef);
 
-                        int argsNumber = extractArgsNumber(record.getSignature());
+                        final char[] argTypes = record.getArgTypes();
+                        int argsNumber = argTypes.length;
 
                         final Object[] argsArray = new Object[argsNumber];
                         while (argsNumber > 0) {
                             argsNumber--;
                             argsArray[argsNumber] = localMethodStack[--regSP];
+                            if (isWideType(argTypes[argsNumber])) {
+                                localMethodStack[--regSP] = null;
+                            }
                         }
 
                         Object objInstance = null;
@@ -1382,48 +1546,59 @@ public abstract class JJJVMInterpreter {
                             }
                         }
 
-                        final String methodName = record.getName();
-                        final String signature = record.getSignature();
-                        final String klazzName = record.getClassName();
-
-                        final Object resolvedKlazz;
-                        if (instruction == 185) {
-                            // INOKEINTERFACE
-                            resolvedKlazz = objInstance instanceof JJJVMObject ? ((JJJVMObject) objInstance).getDeclaringClass() : provider.resolveClass(objInstance.getClass().getName().replace('.', '/'));
-                        } else {
-                            resolvedKlazz = klazzName.equals(caller.getClassName()) ? caller : provider.resolveClass(klazzName);
-                        }
-                        final Object result;
-                        if (resolvedKlazz instanceof JJJVMClass) {
-                            final JJJVMMethod foundMethod = ((JJJVMClass) resolvedKlazz).findMethod(methodName, signature);
-                            final JJJVMClass jjjvmclazz = foundMethod.getDeclaringClass();
-                            result = _invoke(jjjvmclazz, (JJJVMObject) objInstance, foundMethod, argsArray, regSP, localMethodStack, null);
-                        } else {
-                            result = provider.invoke(caller, objInstance, klazzName, methodName, signature, argsArray);
-                            if (result != null && "<init>".equals(methodName)) {
-                                // replace all instances by new one
-                                for (int i = 0; i < localMethodStack.length; i++) {
-                                    if (localMethodStack[i] == objInstance) {
-                                        localMethodStack[i] = result;
-                                    }
+                        final Object result = invokeMember(caller, instruction, record, objInstance, argsArray, regSP, localMethodStack);
+                        if (result != null && instruction == 183 && "<init>".equals(record.getName())) {
+                            // host constructor made new object, replace all instances by new one
+                            for (int i = 0; i < localMethodStack.length; i++) {
+                                if (localMethodStack[i] == objInstance) {
+                                    localMethodStack[i] = result;
                                 }
                             }
                         }
 
-                        if (signature.charAt(signature.length() - 1) != JJJVMConstants.TYPE_VOID) {
+                        final String signature = record.getSignature();
+                        final int signatureLength = signature.length();
+                        final char returnType = signature.charAt(signatureLength - 1);
+                        if (returnType != JJJVMConstants.TYPE_VOID) {
+                            if (isWideType(returnType) && signature.charAt(signatureLength - 2) == ')') {
+                                localMethodStack[regSP++] = null;
+                            }
                             localMethodStack[regSP++] = result;
                         }
                     }
                     break;
                     case 186: // INVOKEDYNAMIC
+                    {
+                        final int callSiteIndex = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
+                        // skip index and two zero bytes
+                        regPC += 4;
 
-                        throw new UnsupportedOperationException("INVOKEDYNAMIC is not supported");
+                        final JJJVMLambdaFactory factory = JJJVMLambdaFactory.link(caller, callSiteIndex);
+
+                        int capturedNumber = factory.getNumberOfCapturedArgs();
+                        final Object[] captured;
+                        if (capturedNumber == 0) {
+                            captured = null;
+                        } else {
+                            final char[] capturedTypes = factory.getCapturedArgTypes();
+                            captured = new Object[capturedNumber];
+                            while (capturedNumber > 0) {
+                                capturedNumber--;
+                                captured[capturedNumber] = localMethodStack[--regSP];
+                                if (isWideType(capturedTypes[capturedNumber])) {
+                                    localMethodStack[--regSP] = null;
+                                }
+                            }
+                        }
+                        localMethodStack[regSP++] = factory.newInstance(captured);
+                    }
+                    break;
 
                     case 187: // NEW
                     {
                         final int classRef = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
                         regPC += 2;
-                        localMethodStack[regSP++] = provider.allocate(caller, cpool.getItemAt(classRef).asString());
+                        localMethodStack[regSP++] = provider.allocate(caller, cpool.getUtf8At(cpool.getIntAt(classRef)));
                     }
                     break;
                     case 188: // NEWARRAY
@@ -1472,7 +1647,7 @@ public abstract class JJJVMInterpreter {
                         regPC += 2;
 
                         final int count = ((Integer) localMethodStack[--regSP]);
-                        final String className = cpool.getItemAt(index).getClassName();
+                        final String className = cpool.getUtf8At(cpool.getIntAt(index));
                         final Object[] objArray = provider.newObjectArray(caller, className, count);
 
                         localMethodStack[regSP++] = objArray;
@@ -1481,7 +1656,8 @@ public abstract class JJJVMInterpreter {
                     case 190: // ARRAYLENGTH
                     {
                         final int topIndex = regSP - 1;
-                        localMethodStack[topIndex] = Array.getLength(localMethodStack[topIndex]);
+                        final Object array = localMethodStack[topIndex];
+                        localMethodStack[topIndex] = array instanceof JJJVMBufferArray ? ((JJJVMBufferArray) array).getLength() : Array.getLength(array);
                     }
                     break;
                     case 191: // ATWHROW
@@ -1504,7 +1680,7 @@ public abstract class JJJVMInterpreter {
                     {
                         final int cpIndex = readShortValueFromArray(methodBytecodes, regPC) & 0xFFFF;
                         regPC += 2;
-                        final String rawClassName = cpool.getItemAt(cpIndex).getClassName();
+                        final String rawClassName = cpool.getUtf8At(cpool.getIntAt(cpIndex));
                         final int index = regSP - 1;
                         final Object object = localMethodStack[index];
 
@@ -1567,7 +1743,7 @@ public abstract class JJJVMInterpreter {
                             localMethodStack[--regSP] = null;
                         }
 
-                        localMethodStack[regSP++] = provider.newMultidimensional(caller, cpool.getItemAt(classRefIndex).asString(), dimensions);
+                        localMethodStack[regSP++] = provider.newMultidimensional(caller, cpool.getUtf8At(cpool.getIntAt(classRefIndex)), dimensions);
                     }
                     break;
                     case 198: // IFNULL
@@ -1625,46 +1801,81 @@ public abstract class JJJVMInterpreter {
         }
     }
 
-    private static int extractArgsNumber(final String methodSignature) {
-        synchronized (CACHED_NUMBER_OF_ARGS) {
-            if (CACHED_NUMBER_OF_ARGS.containsKey(methodSignature)) {
-                return CACHED_NUMBER_OF_ARGS.get(methodSignature);
-            } else {
-                final int len = methodSignature.length();
-                boolean objFlag = false;
-                int counter = 0;
-                boolean work = true;
-                for (int li = 0; li < len && work; li++) {
-                    switch (methodSignature.charAt(li)) {
-                        case '(':
-                            continue;
-                        case ')':
-                            work = false;
-                            break;
-                        case '[':
-                            continue;
-                        case JJJVMConstants.TYPE_CLASS:
-                            counter++;
-                            objFlag = true;
-                            break;
-                        case ';':
-                            objFlag = false;
-                            break;
-                        default: {
-                            if (!objFlag) {
-                                counter++;
-                            }
-                        }
-                        break;
-                    }
-                }
+    /**
+     * Get types of method arguments, object and array arguments are presented
+     * by 'L'. The signature is parsed on every call so it is used only for
+     * linking, the interpreter takes parsed types from member references and
+     * method profiles.
+     *
+     * @param methodSignature the method signature, must not be null
+     * @return array of argument types, must not be null
+     */
+    static char[] extractArgTypes(final String methodSignature) {
+        return JJJVMMemberRef.parseArgTypes(methodSignature);
+    }
 
-                if (work) {
-                    throw new IllegalArgumentException("Wrong signature [" + methodSignature + ']');
+    private static boolean isWideType(final char type) {
+        return type == JJJVMConstants.TYPE_LONG || type == JJJVMConstants.TYPE_DOUBLE;
+    }
+
+    /**
+     * Convert a value provided by host code into the interpreter format, the
+     * interpreter keeps boolean, byte, char and short values as Integer.
+     *
+     * @param value the value to be converted, can be null
+     * @param type  the JVM type char of the target
+     * @return converted value
+     */
+    public static Object toInterpreterValue(final Object value, final char type) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case JJJVMConstants.TYPE_BOOLEAN:
+                return value instanceof Boolean ? (((Boolean) value) ? 1 : 0) : value;
+            case JJJVMConstants.TYPE_CHAR:
+            case JJJVMConstants.TYPE_BYTE:
+            case JJJVMConstants.TYPE_SHORT:
+            case JJJVMConstants.TYPE_INT:
+                if (value instanceof Character) {
+                    return (int) (Character) value;
                 }
-                CACHED_NUMBER_OF_ARGS.put(methodSignature, counter);
-                return counter;
-            }
+                return value instanceof Byte || value instanceof Short ? ((Number) value).intValue() : value;
+            case JJJVMConstants.TYPE_LONG:
+                return value instanceof Number && !(value instanceof Long) ? ((Number) value).longValue() : value;
+            case JJJVMConstants.TYPE_FLOAT:
+                return value instanceof Number && !(value instanceof Float) ? ((Number) value).floatValue() : value;
+            case JJJVMConstants.TYPE_DOUBLE:
+                return value instanceof Number && !(value instanceof Double) ? ((Number) value).doubleValue() : value;
+            default:
+                return value;
+        }
+    }
+
+    /**
+     * Convert a value made by interpreted code into the host format.
+     *
+     * @param value the value to be converted, can be null
+     * @param type  the JVM type char of the target
+     * @return converted value
+     * @see #toInterpreterValue(java.lang.Object, char)
+     */
+    public static Object toHostValue(final Object value, final char type) {
+        if (!(value instanceof Integer)) {
+            return value;
+        }
+        final int intValue = (Integer) value;
+        switch (type) {
+            case JJJVMConstants.TYPE_BOOLEAN:
+                return intValue != 0;
+            case JJJVMConstants.TYPE_CHAR:
+                return (char) intValue;
+            case JJJVMConstants.TYPE_BYTE:
+                return (byte) intValue;
+            case JJJVMConstants.TYPE_SHORT:
+                return (short) intValue;
+            default:
+                return value;
         }
     }
 
@@ -0,0 +1,406 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPool;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * JIT tier of the interpreter. When sum of call and backward jump counters of
+ * an interpreted method reaches the threshold, the method is compiled and the
+ * compiled code processes all next calls of the method.
+ * <p>
+ * There are two compiled tiers, the byte-code tier translates a method into a
+ * host class defined by a private class loader and the closure tier translates
+ * it into a graph of pre-decoded node objects, the last one doesn't define
+ * classes so it works on Android too. The tier is selected per method by
+ * {@link Policy}, if the selected tier can't translate a method then the next
+ * lower tier is tried.
+ * </p>
+ * <p>
+ * Compiled code keeps semantic of the interpreter, field access and calls of
+ * other methods are made through the same provider calls as the interpreter
+ * makes. If a method can't be translated, it stays interpreted forever.
+ * </p>
+ * <p>
+ * The tier is optional and switched off by default, it can be switched on by
+ * the system property 'jjjvm.jit' set to 'true' or by
+ * {@link #setEnabled(boolean)}. Compiled code keeps its own frames, so a
+ * caller can't share its stack and variable arrays with a compiled method.
+ * </p>
+ *
+ * @see JJJVMMethodProfile
+ */
+public final class JJJVMJit {
+
+    /**
+     * Calls are processed by the interpreter.
+     */
+    public static final int TIER_INTERPRETER = 0;
+    /**
+     * Calls are processed by a graph of pre-decoded nodes.
+     */
+    public static final int TIER_CLOSURES = 1;
+    /**
+     * Calls are processed by generated host byte-code.
+     */
+    public static final int TIER_BYTECODE = 2;
+
+    /**
+     * Selector of the tier for a hot method.
+     */
+    public interface Policy {
+
+        /**
+         * Select tier to compile a method.
+         *
+         * @param method the hot method, must not be null
+         * @return one of TIER_INTERPRETER, TIER_CLOSURES and TIER_BYTECODE
+         */
+        int selectTier(JJJVMMethod method);
+    }
+
+    /**
+     * Default policy, it selects the byte-code tier on platforms which can
+     * define classes at runtime and the closure tier otherwise.
+     */
+    public static final Policy DEFAULT_POLICY = new Policy() {
+        public int selectTier(final JJJVMMethod method) {
+            return isSupported() ? TIER_BYTECODE : TIER_CLOSURES;
+        }
+    };
+
+    /**
+     * Compiled code of a method, implemented by generated classes.
+     */
+    public interface Entry {
+
+        /**
+         * Call compiled method.
+         *
+         * @param instance the 'this' object, null for static method
+         * @param args     arguments in the interpreter format, can be null for
+         *                 method without arguments
+         * @return result in the interpreter format, null for void method
+         * @throws Throwable it will be thrown for errors
+         */
+        Object invoke(JJJVMObject instance, Object[] args) throws Throwable;
+    }
+
+    /**
+     * Linked field access or method call made by compiled code, it is used by
+     * generated classes and must not be used directly.
+     */
+    public static final class Link {
+
+        private final JJJVMClass caller;
+        private final int instruction;
+        private final JJJVMMemberRef record;
+
+        Link(final JJJVMClass caller, final int instruction, final JJJVMMemberRef record) {
+            this.caller = caller;
+            this.instruction = instruction;
+            this.record = record;
+        }
+
+        /**
+         * Make the linked operation.
+         *
+         * @param instance the object for instance field or method, can be null
+         * @param args     value to be written or method arguments in the
+         *                 interpreter format, can be null
+         * @return read value or result of call, null for void operations
+         * @throws Throwable it will be thrown for errors
+         */
+        public Object call(final Object instance, final Object[] args) throws Throwable {
+            switch (this.instruction) {
+                case 178: // GETSTATIC
+                    return JJJVMInterpreter.getStaticValue(this.caller, this.record);
+                case 179: // PUTSTATIC
+                    JJJVMInterpreter.setStaticValue(this.caller, this.record, args[0]);
+                    return null;
+                case 180: // GETFIELD
+                    return JJJVMInterpreter.getFieldValue(this.caller, instance, this.record);
+                case 181: // PUTFIELD
+                    JJJVMInterpreter.setFieldValue(this.caller, instance, this.record, args[0]);
+                    return null;
+                default:
+                    return JJJVMInterpreter.invokeMember(this.caller, this.instruction, this.record, instance, args == null ? JJJVMConstants.EMPTY_OBJECT_ARRAY : args, 0, null);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return this.getClass().getCanonicalName() + '[' + this.instruction + ' ' + this.record + ']';
+        }
+    }
+
+    private static final class HostLoader extends ClassLoader {
+
+        private HostLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(final String name, final byte[] classData) {
+            return defineClass(name, classData, 0, classData.length);
+        }
+    }
+
+    private static final int DEFAULT_THRESHOLD = 1000;
+
+    private static final AtomicLong COMPILED = new AtomicLong();
+    private static final AtomicLong FAILED = new AtomicLong();
+
+    private static volatile boolean enabled = readEnabled();
+    private static volatile int threshold = readThreshold();
+    private static volatile Policy policy = DEFAULT_POLICY;
+
+    private JJJVMJit() {
+    }
+
+    private static boolean readEnabled() {
+        try {
+            return Boolean.parseBoolean(System.getProperty("jjjvm.jit"));
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+
+    private static int readThreshold() {
+        try {
+            return Integer.parseInt(System.getProperty("jjjvm.jit.threshold", Integer.toString(DEFAULT_THRESHOLD)));
+        } catch (SecurityException ex) {
+            return DEFAULT_THRESHOLD;
+        } catch (NumberFormatException ex) {
+            return DEFAULT_THRESHOLD;
+        }
+    }
+
+    /**
+     * Check that the platform can execute host byte-code made at runtime, the
+     * byte-code tier can't be used if it can't.
+     *
+     * @return false for Android (Dalvik and ART), true otherwise
+     */
+    public static boolean isSupported() {
+        try {
+            final String vmName = System.getProperty("java.vm.name", "");
+            final String vendor = System.getProperty("java.vendor", "");
+            return !(vmName.contains("Dalvik") || vendor.contains("Android"));
+        } catch (SecurityException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Check that the tier is switched on.
+     *
+     * @return true if the tier is switched on, false by default
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switch the JIT tier on or off. Switched off tier neither compiles methods
+     * nor uses already compiled code.
+     *
+     * @param flag true to switch the tier on, false to switch it off
+     */
+    public static void setEnabled(final boolean flag) {
+        enabled = flag;
+    }
+
+    public static int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Set number of calls and backward jumps making a method hot.
+     *
+     * @param value the threshold, must be positive
+     * @throws IllegalArgumentException if the value is not positive
+     */
+    public static void setThreshold(final int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Threshold must be positive [" + value + ']');
+        }
+        threshold = value;
+    }
+
+    public static Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Set policy selecting tier for hot methods, already compiled methods are
+     * not affected.
+     *
+     * @param value the policy, null to restore the default one
+     */
+    public static void setPolicy(final Policy value) {
+        policy = value == null ? DEFAULT_POLICY : value;
+    }
+
+    /**
+     * Get number of compiled methods since start.
+     *
+     * @return number of compiled methods
+     */
+    public static long getCompiledMethods() {
+        return COMPILED.get();
+    }
+
+    /**
+     * Get number of methods which could not be compiled since start.
+     *
+     * @return number of failed compilations
+     */
+    public static long getFailedMethods() {
+        return FAILED.get();
+    }
+
+    /**
+     * Get compiled code for a method to be called, counts the call and compiles
+     * the method if it has become hot.
+     *
+     * @param method the method to be called, must not be null
+     * @return compiled code or null if the method must be interpreted
+     */
+    static Entry enter(final JJJVMMethod method) {
+        final JJJVMMethodProfile profile = JJJVMMethodProfile.of(method);
+        Entry result = profile.getCompiledCode();
+        if (result == null && !profile.isCompilationFailed() && profile.countInvocation() >= threshold) {
+            result = compile(method);
+        }
+        return result;
+    }
+
+    /**
+     * Compile a method immediately without checking its counters.
+     *
+     * @param method the method to be compiled, must not be null
+     * @return compiled code or null if the method can't be compiled, the reason
+     * is kept in the method profile
+     */
+    public static Entry compile(final JJJVMMethod method) {
+        final JJJVMMethodProfile profile = JJJVMMethodProfile.of(method);
+        synchronized (profile) {
+            Entry result = profile.getCompiledCode();
+            if (result == null && !profile.isCompilationFailed()) {
+                Throwable failure = null;
+                int tier = policy.selectTier(method);
+                if (tier >= TIER_BYTECODE) {
+                    try {
+                        final JJJVMJitCompiler compiler = new JJJVMJitCompiler(method);
+                        result = define(method.getDeclaringClass(), compiler.getClassName(), compiler.translate());
+                    } catch (Throwable ex) {
+                        failure = ex;
+                        tier = TIER_CLOSURES;
+                    }
+                }
+                if (result == null && tier == TIER_CLOSURES) {
+                    try {
+                        result = new JJJVMClosureCompiler(method).translate();
+                    } catch (Throwable ex) {
+                        failure = ex;
+                    }
+                }
+
+                if (result != null) {
+                    profile.setCompiledCode(result, tier);
+                    COMPILED.incrementAndGet();
+                } else if (failure == null) {
+                    profile.setCompilationFailure(new UnsupportedOperationException("Interpreter tier is selected for " + method));
+                } else {
+                    profile.setCompilationFailure(failure);
+                    FAILED.incrementAndGet();
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Define class made by the translator and link it with a class.
+     *
+     * @param klazz     the class whose method is compiled, must not be null
+     * @param className jvm formatted name of the generated class, must not be
+     *                  null
+     * @param classData body of the generated class, must not be null
+     * @return compiled code, must not be null
+     * @throws Throwable it will be thrown for errors, including verification
+     *                   errors
+     */
+    static Entry define(final JJJVMClass klazz, final String className, final byte[] classData) throws Throwable {
+        final ClassLoader parent = JJJVMJit.class.getClassLoader();
+        final Class<?> generated = new HostLoader(parent).define(className.replace('/', '.'), classData);
+
+        final String linkage = (String) generated.getField(JJJVMJitCompiler.LINKAGE_FIELD).get(null);
+        final JJJVMConstantPool cpool = klazz.getConstantPool();
+        final Link[] links;
+        if (linkage.length() == 0) {
+            links = new Link[0];
+        } else {
+            final String[] records = linkage.split(",");
+            links = new Link[records.length];
+            for (int i = 0; i < records.length; i++) {
+                final int separator = records[i].indexOf(':');
+                final int instruction = Integer.parseInt(records[i].substring(0, separator));
+                final int cpIndex = Integer.parseInt(records[i].substring(separator + 1));
+                links[i] = new Link(klazz, instruction, cpool.getMemberRefAt(cpIndex));
+            }
+        }
+        generated.getField(JJJVMJitCompiler.LINKS_FIELD).set(null, links);
+        return (Entry) generated.newInstance();
+    }
+
+    /**
+     * Convert value in the interpreter format into int, used by generated code.
+     *
+     * @param value the value, must not be null
+     * @return the int value
+     */
+    public static int toInt(final Object value) {
+        if (value instanceof Integer) {
+            return (Integer) value;
+        } else if (value instanceof Boolean) {
+            return ((Boolean) value) ? 1 : 0;
+        } else if (value instanceof Character) {
+            return (Character) value;
+        } else {
+            return ((Number) value).intValue();
+        }
+    }
+
+    public static long toLong(final Object value) {
+        return ((Number) value).longValue();
+    }
+
+    public static float toFloat(final Object value) {
+        return ((Number) value).floatValue();
+    }
+
+    public static double toDouble(final Object value) {
+        return ((Number) value).doubleValue();
+    }
+}
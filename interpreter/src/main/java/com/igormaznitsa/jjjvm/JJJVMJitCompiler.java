@@ -0,0 +1,917 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPool;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translator of interpreted method byte-code into a host class. The generated
+ * class implements {@link JJJVMJit.Entry}, the method itself and static methods
+ * of the same class called by it directly are copied into private static
+ * methods with relocated jumps. Field access and other calls are replaced by
+ * calls of {@link JJJVMJit.Link} objects, references are typed as Object.
+ * <p>
+ * Methods with exception handlers, array and object creation instructions,
+ * monitors, subroutines and invokedynamic are not supported. The class is made
+ * in the class file version 49 format which is checked by the type inferencing
+ * verifier, so that stack map frames are not needed.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html}
+ * </p>
+ */
+final class JJJVMJitCompiler {
+
+    /**
+     * Revision of the generated code, it must be increased with every change
+     * of the generated code because archives of other revisions are ignored.
+     */
+    static final int REVISION = 1;
+
+    static final String LINKS_FIELD = "$links";
+    static final String LINKAGE_FIELD = "$linkage";
+
+    private static final String OBJECT_CLASS = "java/lang/Object";
+    private static final String JIT_CLASS = "com/igormaznitsa/jjjvm/JJJVMJit";
+    private static final String ENTRY_CLASS = JIT_CLASS + "$Entry";
+    private static final String LINK_CLASS = JIT_CLASS + "$Link";
+    private static final String LINKS_SIGNATURE = "[L" + LINK_CLASS + ';';
+    private static final String ENTRY_SIGNATURE = "(Lcom/igormaznitsa/jjjvm/model/JJJVMObject;[Ljava/lang/Object;)Ljava/lang/Object;";
+    private static final String LINK_CALL_SIGNATURE = "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final int CLASS_VERSION = 49;
+    private static final int EXTRA_STACK = 8;
+
+    /**
+     * Growable byte buffer with patching of already written values.
+     */
+    private static final class Code {
+
+        private byte[] data = new byte[256];
+        private int length;
+
+        private void u1(final int value) {
+            if (this.length == this.data.length) {
+                final byte[] newData = new byte[this.data.length << 1];
+                System.arraycopy(this.data, 0, newData, 0, this.length);
+                this.data = newData;
+            }
+            this.data[this.length++] = (byte) value;
+        }
+
+        private void u2(final int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        private void u4(final int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        private void patch2(final int offset, final int value) {
+            this.data[offset] = (byte) (value >>> 8);
+            this.data[offset + 1] = (byte) value;
+        }
+
+        private void patch4(final int offset, final int value) {
+            patch2(offset, value >>> 16);
+            patch2(offset + 2, value);
+        }
+    }
+
+    private final JJJVMClass klazz;
+    private final JJJVMMethod root;
+    private final String className;
+
+    private final List<JJJVMMethod> methods = new ArrayList<JJJVMMethod>();
+    private final List<String> linkage = new ArrayList<String>();
+    private final Map<String, Integer> linkIndexes = new HashMap<String, Integer>();
+
+    private final ByteArrayOutputStream poolBuffer = new ByteArrayOutputStream(1024);
+    private final DataOutputStream pool = new DataOutputStream(poolBuffer);
+    private final Map<String, Integer> poolIndexes = new HashMap<String, Integer>();
+    private int poolSize = 1;
+
+    JJJVMJitCompiler(final JJJVMMethod method) {
+        this.root = method;
+        this.klazz = method.getDeclaringClass();
+        this.className = "jjjvm/jit/" + this.klazz.getClassName() + '$' + method.getName();
+    }
+
+    /**
+     * Get jvm formatted name of the generated class.
+     *
+     * @return the class name, must not be null
+     */
+    String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Find reason why a method can't be compiled.
+     *
+     * @param method the method to be checked, must not be null
+     * @return text describing the reason or null if the method can be compiled
+     */
+    static String findProblem(final JJJVMMethod method) {
+        return findProblem(method, false);
+    }
+
+    /**
+     * Find reason why a method can't be compiled.
+     *
+     * @param method         the method to be checked, must not be null
+     * @param allowExceptions true if exception handlers and ATHROW are allowed
+     * @return text describing the reason or null if the method can be compiled
+     */
+    static String findProblem(final JJJVMMethod method, final boolean allowExceptions) {
+        if ((method.getFlags() & (JJJVMConstants.ACC_ABSTRACT | JJJVMConstants.ACC_NATIVE | JJJVMConstants.ACC_STRICT)) != 0) {
+            return "abstract, native or strict method";
+        }
+        if (method.getName().charAt(0) == '<') {
+            return "constructor or class initializer";
+        }
+        if (!allowExceptions && method.getTryCatchRecords().length != 0) {
+            return "exception handlers";
+        }
+
+        final byte[] code = method.getBytecode();
+        final JJJVMConstantPool cpool = method.getDeclaringClass().getConstantPool();
+        int pc = 0;
+        while (pc < code.length) {
+            final int instruction = code[pc] & 0xFF;
+            int length = simpleLength(instruction);
+            if (length == 0) {
+                if (isJump(instruction)) {
+                    length = 3;
+                } else {
+                    switch (instruction) {
+                        case 18: // LDC
+                        case 19: // LDC_W
+                        {
+                            final int index = instruction == 18 ? code[pc + 1] & 0xFF : readShort(code, pc + 1) & 0xFFFF;
+                            final int type = cpool.getItemAt(index).getType();
+                            if (type != JJJVMConstantPoolItem.CONSTANT_INTEGER && type != JJJVMConstantPoolItem.CONSTANT_FLOAT && type != JJJVMConstantPoolItem.CONSTANT_STRING) {
+                                return "constant type " + type + " at " + pc;
+                            }
+                            length = instruction == 18 ? 2 : 3;
+                        }
+                        break;
+                        case 20: // LDC2_W
+                        case 178: // GETSTATIC
+                        case 179: // PUTSTATIC
+                        case 180: // GETFIELD
+                        case 181: // PUTFIELD
+                        case 182: // INVOKEVIRTUAL
+                        case 184: // INVOKESTATIC
+                        {
+                            length = 3;
+                        }
+                        break;
+                        case 183: // INVOKESPECIAL
+                        {
+                            if ("<init>".equals(cpool.getMemberRefAt(readShort(code, pc + 1) & 0xFFFF).getName())) {
+                                return "constructor call at " + pc;
+                            }
+                            length = 3;
+                        }
+                        break;
+                        case 185: // INVOKEINTERFACE
+                        case 200: // GOTO_W
+                        {
+                            length = 5;
+                        }
+                        break;
+                        case 170: // TABLESWITCH
+                        case 171: // LOOKUPSWITCH
+                        {
+                            length = switchLength(code, pc);
+                        }
+                        break;
+                        case 196: // WIDE
+                        {
+                            final int modified = code[pc + 1] & 0xFF;
+                            if (modified == 132) {
+                                length = 6;
+                            } else if (simpleLength(modified) == 2) {
+                                length = 4;
+                            } else {
+                                return "wide instruction " + modified + " at " + pc;
+                            }
+                        }
+                        break;
+                        case 191: // ATHROW
+                        {
+                            if (!allowExceptions) {
+                                return "instruction " + instruction + " at " + pc;
+                            }
+                            length = 1;
+                        }
+                        break;
+                        default:
+                            return "instruction " + instruction + " at " + pc;
+                    }
+                }
+            }
+            pc += length;
+        }
+        return null;
+    }
+
+    /**
+     * Make body of the generated class.
+     *
+     * @return the class body, must not be null
+     * @throws Throwable it will be thrown if the method can't be translated
+     */
+    byte[] translate() throws Throwable {
+        final String problem = findProblem(this.root);
+        if (problem != null) {
+            throw new UnsupportedOperationException("Can't compile " + this.root + ": " + problem);
+        }
+
+        final ByteArrayOutputStream members = new ByteArrayOutputStream(4096);
+        final DataOutputStream out = new DataOutputStream(members);
+
+        this.methods.add(this.root);
+        final List<byte[]> compiledMethods = new ArrayList<byte[]>();
+        // the list can grow during translation
+        for (int i = 0; i < this.methods.size(); i++) {
+            compiledMethods.add(translateMethod(this.methods.get(i)));
+        }
+
+        final int thisClass = classRef(this.className);
+        final int superClass = classRef(OBJECT_CLASS);
+        final int entryInterface = classRef(ENTRY_CLASS);
+
+        // fields
+        out.writeShort(2);
+        out.writeShort(JJJVMConstants.ACC_PUBLIC | JJJVMConstants.ACC_STATIC);
+        out.writeShort(utf8(LINKS_FIELD));
+        out.writeShort(utf8(LINKS_SIGNATURE));
+        out.writeShort(0);
+
+        final StringBuilder linkageText = new StringBuilder();
+        for (final String link : this.linkage) {
+            if (linkageText.length() > 0) {
+                linkageText.append(',');
+            }
+            linkageText.append(link);
+        }
+        out.writeShort(JJJVMConstants.ACC_PUBLIC | JJJVMConstants.ACC_STATIC | JJJVMConstants.ACC_FINAL);
+        out.writeShort(utf8(LINKAGE_FIELD));
+        out.writeShort(utf8("Ljava/lang/String;"));
+        out.writeShort(1);
+        out.writeShort(utf8("ConstantValue"));
+        out.writeInt(2);
+        out.writeShort(string(linkageText.toString()));
+
+        // methods
+        out.writeShort(2 + compiledMethods.size());
+        writeConstructor(out);
+        writeEntry(out);
+        for (final byte[] method : compiledMethods) {
+            out.write(method);
+        }
+
+        // no class attributes
+        out.writeShort(0);
+        out.flush();
+
+        if (this.poolSize > 0xFFFF) {
+            throw new UnsupportedOperationException("Too big constant pool");
+        }
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(this.poolBuffer.size() + members.size() + 32);
+        final DataOutputStream header = new DataOutputStream(result);
+        header.writeInt(0xCAFEBABE);
+        header.writeShort(0);
+        header.writeShort(CLASS_VERSION);
+        header.writeShort(this.poolSize);
+        this.pool.flush();
+        this.poolBuffer.writeTo(header);
+        // ACC_SUPER is 0x20
+        header.writeShort(JJJVMConstants.ACC_PUBLIC | JJJVMConstants.ACC_FINAL | 0x20);
+        header.writeShort(thisClass);
+        header.writeShort(superClass);
+        header.writeShort(1);
+        header.writeShort(entryInterface);
+        members.writeTo(header);
+        header.flush();
+        return result.toByteArray();
+    }
+
+    private void writeConstructor(final DataOutputStream out) throws IOException {
+        final Code code = new Code();
+        code.u1(42); // ALOAD_0
+        code.u1(183); // INVOKESPECIAL
+        code.u2(methodRef(OBJECT_CLASS, "<init>", "()V"));
+        code.u1(177); // RETURN
+        writeMethod(out, JJJVMConstants.ACC_PUBLIC, "<init>", "()V", 1, 1, code);
+    }
+
+    private void writeEntry(final DataOutputStream out) throws IOException {
+        final Code code = new Code();
+        if ((this.root.getFlags() & JJJVMConstants.ACC_STATIC) == 0) {
+            code.u1(43); // ALOAD_1
+        }
+        final char[] argTypes = JJJVMInterpreter.extractArgTypes(this.root.getSignature());
+        for (int i = 0; i < argTypes.length; i++) {
+            code.u1(44); // ALOAD_2
+            pushInt(code, i);
+            code.u1(50); // AALOAD
+            unbox(code, argTypes[i]);
+        }
+        code.u1(184); // INVOKESTATIC
+        code.u2(methodRef(this.className, "m0", makeDescriptor(this.root)));
+        final char returnType = getReturnType(this.root.getSignature());
+        if (returnType == JJJVMConstants.TYPE_VOID) {
+            code.u1(1); // ACONST_NULL
+        } else {
+            box(code, returnType);
+        }
+        code.u1(176); // ARETURN
+        writeMethod(out, JJJVMConstants.ACC_PUBLIC, "invoke", ENTRY_SIGNATURE, 4 + argTypes.length * 2, 3, code);
+    }
+
+    private byte[] translateMethod(final JJJVMMethod method) throws Throwable {
+        final byte[] bytecode = method.getBytecode();
+        final JJJVMConstantPool cpool = this.klazz.getConstantPool();
+        final Code code = new Code();
+
+        final int[] positions = new int[bytecode.length];
+        final List<int[]> jumps = new ArrayList<int[]>();
+
+        final int tempBase = method.getMaxLocals();
+        int maxLocals = tempBase;
+
+        int pc = 0;
+        while (pc < bytecode.length) {
+            positions[pc] = code.length;
+            final int instruction = bytecode[pc] & 0xFF;
+            final int length = simpleLength(instruction);
+            if (length != 0) {
+                for (int i = 0; i < length; i++) {
+                    code.u1(bytecode[pc + i]);
+                }
+                pc += length;
+                continue;
+            }
+
+            if (isJump(instruction)) {
+                code.u1(instruction);
+                jumps.add(new int[]{code.length, positions[pc], pc + readShort(bytecode, pc + 1), 2});
+                code.u2(0);
+                pc += 3;
+                continue;
+            }
+
+            switch (instruction) {
+                case 18: // LDC
+                case 19: // LDC_W
+                {
+                    final int index = instruction == 18 ? bytecode[pc + 1] & 0xFF : readShort(bytecode, pc + 1) & 0xFFFF;
+                    final JJJVMConstantPoolItem item = cpool.getItemAt(index);
+                    final int constant;
+                    switch (item.getType()) {
+                        case JJJVMConstantPoolItem.CONSTANT_INTEGER:
+                            constant = integer((Integer) item.getValue());
+                            break;
+                        case JJJVMConstantPoolItem.CONSTANT_FLOAT:
+                            constant = floatConstant((Float) item.getValue());
+                            break;
+                        default:
+                            constant = string(item.asString());
+                            break;
+                    }
+                    ldc(code, constant);
+                    pc += instruction == 18 ? 2 : 3;
+                }
+                break;
+                case 20: // LDC2_W
+                {
+                    final Object value = cpool.getItemAt(readShort(bytecode, pc + 1) & 0xFFFF).getValue();
+                    code.u1(20);
+                    code.u2(value instanceof Long ? longConstant((Long) value) : doubleConstant((Double) value));
+                    pc += 3;
+                }
+                break;
+                case 200: // GOTO_W
+                {
+                    code.u1(200);
+                    jumps.add(new int[]{code.length, positions[pc], pc + readInt(bytecode, pc + 1), 4});
+                    code.u4(0);
+                    pc += 5;
+                }
+                break;
+                case 170: // TABLESWITCH
+                case 171: // LOOKUPSWITCH
+                {
+                    final int start = positions[pc];
+                    int offset = (pc + 4) & ~3;
+                    code.u1(instruction);
+                    while ((code.length & 3) != 0) {
+                        code.u1(0);
+                    }
+                    jumps.add(new int[]{code.length, start, pc + readInt(bytecode, offset), 4});
+                    code.u4(0);
+                    if (instruction == 170) {
+                        final int low = readInt(bytecode, offset + 4);
+                        final int high = readInt(bytecode, offset + 8);
+                        code.u4(low);
+                        code.u4(high);
+                        offset += 12;
+                        for (int i = low; i <= high; i++) {
+                            jumps.add(new int[]{code.length, start, pc + readInt(bytecode, offset), 4});
+                            code.u4(0);
+                            offset += 4;
+                        }
+                    } else {
+                        final int pairs = readInt(bytecode, offset + 4);
+                        code.u4(pairs);
+                        offset += 8;
+                        for (int i = 0; i < pairs; i++) {
+                            code.u4(readInt(bytecode, offset));
+                            jumps.add(new int[]{code.length, start, pc + readInt(bytecode, offset + 4), 4});
+                            code.u4(0);
+                            offset += 8;
+                        }
+                    }
+                    pc = offset;
+                }
+                break;
+                case 196: // WIDE
+                {
+                    final int wideLength = (bytecode[pc + 1] & 0xFF) == 132 ? 6 : 4;
+                    for (int i = 0; i < wideLength; i++) {
+                        code.u1(bytecode[pc + i]);
+                    }
+                    pc += wideLength;
+                }
+                break;
+                case 178: // GETSTATIC
+                case 179: // PUTSTATIC
+                case 180: // GETFIELD
+                case 181: // PUTFIELD
+                case 182: // INVOKEVIRTUAL
+                case 183: // INVOKESPECIAL
+                case 184: // INVOKESTATIC
+                case 185: // INVOKEINTERFACE
+                {
+                    final int index = readShort(bytecode, pc + 1) & 0xFFFF;
+                    maxLocals = Math.max(maxLocals, link(code, instruction, index, tempBase));
+                    pc += instruction == 185 ? 5 : 3;
+                }
+                break;
+                default:
+                    throw new UnsupportedOperationException("Unsupported instruction " + instruction + " at " + pc);
+            }
+        }
+
+        for (final int[] jump : jumps) {
+            final int target = jump[2];
+            if (target < 0 || target >= bytecode.length || (target != 0 && positions[target] == 0)) {
+                throw new UnsupportedOperationException("Wrong jump target " + target);
+            }
+            final int offset = positions[target] - jump[1];
+            if (jump[3] == 2) {
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new UnsupportedOperationException("Too long jump after translation");
+                }
+                code.patch2(jump[0], offset);
+            } else {
+                code.patch4(jump[0], offset);
+            }
+        }
+
+        if (code.length > 0xFFFF) {
+            throw new UnsupportedOperationException("Too big method after translation");
+        }
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(code.length + 32);
+        final DataOutputStream out = new DataOutputStream(result);
+        writeMethod(out, JJJVMConstants.ACC_PRIVATE | JJJVMConstants.ACC_STATIC, "m" + this.methods.indexOf(method), makeDescriptor(method), method.getMaxStackDepth() + EXTRA_STACK, maxLocals, code);
+        out.flush();
+        return result.toByteArray();
+    }
+
+    /**
+     * Translate field access or method call.
+     *
+     * @return number of local variables needed by the translated code
+     */
+    private int link(final Code code, final int instruction, final int cpIndex, final int tempBase) throws Throwable {
+        final JJJVMMemberRef record = this.klazz.getConstantPool().getMemberRefAt(cpIndex);
+
+        if (instruction == 184) {
+            final JJJVMMethod target = findDirectTarget(record);
+            if (target != null) {
+                int index = this.methods.indexOf(target);
+                if (index < 0) {
+                    this.methods.add(target);
+                    index = this.methods.size() - 1;
+                }
+                code.u1(184);
+                code.u2(methodRef(this.className, "m" + index, makeDescriptor(target)));
+                return tempBase;
+            }
+        }
+
+        final String signature = record.getSignature();
+        final char[] argTypes;
+        final char resultType;
+        if (instruction <= 181) {
+            final char fieldType = signature.charAt(0) == JJJVMConstants.TYPE_ARRAY ? JJJVMConstants.TYPE_CLASS : signature.charAt(0);
+            argTypes = instruction == 179 || instruction == 181 ? new char[]{fieldType} : new char[0];
+            resultType = instruction == 178 || instruction == 180 ? fieldType : JJJVMConstants.TYPE_VOID;
+        } else {
+            argTypes = JJJVMInterpreter.extractArgTypes(signature);
+            resultType = getReturnType(signature);
+        }
+        final boolean hasInstance = instruction == 180 || instruction == 181 || instruction == 182 || instruction == 183 || instruction == 185;
+
+        // move operands from the stack into temporary local variables
+        final int[] slots = new int[argTypes.length];
+        int slot = hasInstance ? tempBase + 1 : tempBase;
+        for (int i = 0; i < argTypes.length; i++) {
+            slots[i] = slot;
+            slot += isWide(argTypes[i]) ? 2 : 1;
+        }
+        for (int i = argTypes.length - 1; i >= 0; i--) {
+            variable(code, 54 + typeOffset(argTypes[i]), slots[i]);
+        }
+        if (hasInstance) {
+            variable(code, 58, tempBase);
+        }
+
+        code.u1(178); // GETSTATIC
+        code.u2(fieldRef(this.className, LINKS_FIELD, LINKS_SIGNATURE));
+        pushInt(code, linkIndex(instruction, cpIndex));
+        code.u1(50); // AALOAD
+
+        if (hasInstance) {
+            variable(code, 25, tempBase);
+        } else {
+            code.u1(1); // ACONST_NULL
+        }
+
+        if (argTypes.length == 0) {
+            code.u1(1); // ACONST_NULL
+        } else {
+            pushInt(code, argTypes.length);
+            code.u1(189); // ANEWARRAY
+            code.u2(classRef(OBJECT_CLASS));
+            for (int i = 0; i < argTypes.length; i++) {
+                code.u1(89); // DUP
+                pushInt(code, i);
+                variable(code, 21 + typeOffset(argTypes[i]), slots[i]);
+                box(code, argTypes[i]);
+                code.u1(83); // AASTORE
+            }
+        }
+
+        code.u1(182); // INVOKEVIRTUAL
+        code.u2(methodRef(LINK_CLASS, "call", LINK_CALL_SIGNATURE));
+        if (resultType == JJJVMConstants.TYPE_VOID) {
+            code.u1(87); // POP
+        } else {
+            unbox(code, resultType);
+        }
+        return slot;
+    }
+
+    private JJJVMMethod findDirectTarget(final JJJVMMemberRef record) throws Throwable {
+        if (!record.getClassName().equals(this.klazz.getClassName())) {
+            return null;
+        }
+        final JJJVMMethod target = this.klazz.findMethod(record.getNameSymbol(), record.getSignatureSymbol());
+        if (target == null || target.getDeclaringClass() != this.klazz || (target.getFlags() & JJJVMConstants.ACC_STATIC) == 0) {
+            return null;
+        }
+        return this.methods.contains(target) || findProblem(target) == null ? target : null;
+    }
+
+    private int linkIndex(final int instruction, final int cpIndex) {
+        final String key = Integer.toString(instruction) + ':' + cpIndex;
+        Integer result = this.linkIndexes.get(key);
+        if (result == null) {
+            result = this.linkage.size();
+            this.linkage.add(key);
+            this.linkIndexes.put(key, result);
+        }
+        return result;
+    }
+
+    private void writeMethod(final DataOutputStream out, final int flags, final String name, final String descriptor, final int maxStack, final int maxLocals, final Code code) throws IOException {
+        out.writeShort(flags);
+        out.writeShort(utf8(name));
+        out.writeShort(utf8(descriptor));
+        out.writeShort(1);
+        out.writeShort(utf8("Code"));
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code.data, 0, code.length);
+        // neither exception table nor attributes
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private static String makeDescriptor(final JJJVMMethod method) {
+        final StringBuilder result = new StringBuilder().append('(');
+        if ((method.getFlags() & JJJVMConstants.ACC_STATIC) == 0) {
+            result.append("Ljava/lang/Object;");
+        }
+        for (final char type : JJJVMInterpreter.extractArgTypes(method.getSignature())) {
+            result.append(hostType(type));
+        }
+        return result.append(')').append(hostType(getReturnType(method.getSignature()))).toString();
+    }
+
+    private static String hostType(final char type) {
+        switch (type) {
+            case JJJVMConstants.TYPE_BOOLEAN:
+            case JJJVMConstants.TYPE_BYTE:
+            case JJJVMConstants.TYPE_CHAR:
+            case JJJVMConstants.TYPE_SHORT:
+            case JJJVMConstants.TYPE_INT:
+                return "I";
+            case JJJVMConstants.TYPE_LONG:
+                return "J";
+            case JJJVMConstants.TYPE_FLOAT:
+                return "F";
+            case JJJVMConstants.TYPE_DOUBLE:
+                return "D";
+            case JJJVMConstants.TYPE_VOID:
+                return "V";
+            default:
+                return "Ljava/lang/Object;";
+        }
+    }
+
+    private static char getReturnType(final String signature) {
+        final char result = signature.charAt(signature.indexOf(')') + 1);
+        return result == JJJVMConstants.TYPE_ARRAY ? JJJVMConstants.TYPE_CLASS : result;
+    }
+
+    private static boolean isWide(final char type) {
+        return type == JJJVMConstants.TYPE_LONG || type == JJJVMConstants.TYPE_DOUBLE;
+    }
+
+    // offset of typed variant of load and store instructions
+    private static int typeOffset(final char type) {
+        switch (type) {
+            case JJJVMConstants.TYPE_LONG:
+                return 1;
+            case JJJVMConstants.TYPE_FLOAT:
+                return 2;
+            case JJJVMConstants.TYPE_DOUBLE:
+                return 3;
+            case JJJVMConstants.TYPE_CLASS:
+                return 4;
+            default:
+                return 0;
+        }
+    }
+
+    private void box(final Code code, final char type) throws IOException {
+        switch (type) {
+            case JJJVMConstants.TYPE_LONG:
+                code.u1(184);
+                code.u2(methodRef("java/lang/Long", "valueOf", "(J)Ljava/lang/Long;"));
+                break;
+            case JJJVMConstants.TYPE_FLOAT:
+                code.u1(184);
+                code.u2(methodRef("java/lang/Float", "valueOf", "(F)Ljava/lang/Float;"));
+                break;
+            case JJJVMConstants.TYPE_DOUBLE:
+                code.u1(184);
+                code.u2(methodRef("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;"));
+                break;
+            case JJJVMConstants.TYPE_CLASS:
+                break;
+            default:
+                code.u1(184);
+                code.u2(methodRef("java/lang/Integer", "valueOf", "(I)Ljava/lang/Integer;"));
+                break;
+        }
+    }
+
+    private void unbox(final Code code, final char type) throws IOException {
+        switch (type) {
+            case JJJVMConstants.TYPE_LONG:
+                code.u1(184);
+                code.u2(methodRef(JIT_CLASS, "toLong", "(Ljava/lang/Object;)J"));
+                break;
+            case JJJVMConstants.TYPE_FLOAT:
+                code.u1(184);
+                code.u2(methodRef(JIT_CLASS, "toFloat", "(Ljava/lang/Object;)F"));
+                break;
+            case JJJVMConstants.TYPE_DOUBLE:
+                code.u1(184);
+                code.u2(methodRef(JIT_CLASS, "toDouble", "(Ljava/lang/Object;)D"));
+                break;
+            case JJJVMConstants.TYPE_CLASS:
+                break;
+            default:
+                code.u1(184);
+                code.u2(methodRef(JIT_CLASS, "toInt", "(Ljava/lang/Object;)I"));
+                break;
+        }
+    }
+
+    private void pushInt(final Code code, final int value) throws IOException {
+        if (value >= -1 && value <= 5) {
+            code.u1(3 + value); // ICONST_<i>
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.u1(16); // BIPUSH
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.u1(17); // SIPUSH
+            code.u2(value);
+        } else {
+            ldc(code, integer(value));
+        }
+    }
+
+    private static void ldc(final Code code, final int poolIndex) {
+        if (poolIndex < 256) {
+            code.u1(18); // LDC
+            code.u1(poolIndex);
+        } else {
+            code.u1(19); // LDC_W
+            code.u2(poolIndex);
+        }
+    }
+
+    private static void variable(final Code code, final int instruction, final int index) {
+        if (index < 256) {
+            code.u1(instruction);
+            code.u1(index);
+        } else {
+            code.u1(196); // WIDE
+            code.u1(instruction);
+            code.u2(index);
+        }
+    }
+
+    // length of instructions copied without changes, zero for other instructions
+    static int simpleLength(final int instruction) {
+        if (instruction <= 15 || (instruction >= 26 && instruction <= 45) || (instruction >= 59 && instruction <= 78)
+                || (instruction >= 87 && instruction <= 131) || (instruction >= 133 && instruction <= 152) || (instruction >= 172 && instruction <= 177)) {
+            return 1;
+        }
+        if (instruction == 16 || (instruction >= 21 && instruction <= 25) || (instruction >= 54 && instruction <= 58)) {
+            return 2;
+        }
+        if (instruction == 17 || instruction == 132) {
+            return 3;
+        }
+        return 0;
+    }
+
+    // jumps with 16 bit offset, JSR is not supported
+    static boolean isJump(final int instruction) {
+        return (instruction >= 153 && instruction <= 167) || instruction == 198 || instruction == 199;
+    }
+
+    static int switchLength(final byte[] code, final int pc) {
+        final int offset = (pc + 4) & ~3;
+        if ((code[pc] & 0xFF) == 170) {
+            return offset + 12 + (readInt(code, offset + 8) - readInt(code, offset + 4) + 1) * 4 - pc;
+        } else {
+            return offset + 8 + readInt(code, offset + 4) * 8 - pc;
+        }
+    }
+
+    static int readShort(final byte[] code, final int offset) {
+        return (short) (((code[offset] & 0xFF) << 8) | (code[offset + 1] & 0xFF));
+    }
+
+    static int readInt(final byte[] code, final int offset) {
+        return ((code[offset] & 0xFF) << 24) | ((code[offset + 1] & 0xFF) << 16) | ((code[offset + 2] & 0xFF) << 8) | (code[offset + 3] & 0xFF);
+    }
+
+    private int utf8(final String text) throws IOException {
+        final String key = "U" + text;
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(JJJVMConstantPoolItem.CONSTANT_UTF8);
+            this.pool.writeUTF(text);
+            result = register(key, 1);
+        }
+        return result;
+    }
+
+    private int classRef(final String name) throws IOException {
+        return reference("C" + name, JJJVMConstantPoolItem.CONSTANT_CLASSREF, utf8(name), -1);
+    }
+
+    private int string(final String text) throws IOException {
+        return reference("S" + text, JJJVMConstantPoolItem.CONSTANT_STRING, utf8(text), -1);
+    }
+
+    private int fieldRef(final String owner, final String name, final String signature) throws IOException {
+        return reference("F" + owner + '.' + name + ':' + signature, JJJVMConstantPoolItem.CONSTANT_FIELDREF, classRef(owner), nameAndType(name, signature));
+    }
+
+    private int methodRef(final String owner, final String name, final String signature) throws IOException {
+        return reference("M" + owner + '.' + name + signature, JJJVMConstantPoolItem.CONSTANT_METHODREF, classRef(owner), nameAndType(name, signature));
+    }
+
+    private int nameAndType(final String name, final String signature) throws IOException {
+        return reference("N" + name + ':' + signature, JJJVMConstantPoolItem.CONSTANT_NAMETYPEREF, utf8(name), utf8(signature));
+    }
+
+    private int reference(final String key, final int tag, final int first, final int second) throws IOException {
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(tag);
+            this.pool.writeShort(first);
+            if (second >= 0) {
+                this.pool.writeShort(second);
+            }
+            result = register(key, 1);
+        }
+        return result;
+    }
+
+    private int integer(final int value) throws IOException {
+        final String key = "I" + value;
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(JJJVMConstantPoolItem.CONSTANT_INTEGER);
+            this.pool.writeInt(value);
+            result = register(key, 1);
+        }
+        return result;
+    }
+
+    private int floatConstant(final float value) throws IOException {
+        final int bits = Float.floatToRawIntBits(value);
+        final String key = "F" + bits;
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(JJJVMConstantPoolItem.CONSTANT_FLOAT);
+            this.pool.writeInt(bits);
+            result = register(key, 1);
+        }
+        return result;
+    }
+
+    private int longConstant(final long value) throws IOException {
+        final String key = "J" + value;
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(JJJVMConstantPoolItem.CONSTANT_LONG);
+            this.pool.writeLong(value);
+            result = register(key, 2);
+        }
+        return result;
+    }
+
+    private int doubleConstant(final double value) throws IOException {
+        final long bits = Double.doubleToRawLongBits(value);
+        final String key = "D" + bits;
+        Integer result = this.poolIndexes.get(key);
+        if (result == null) {
+            this.pool.writeByte(JJJVMConstantPoolItem.CONSTANT_DOUBLE);
+            this.pool.writeLong(bits);
+            result = register(key, 2);
+        }
+        return result;
+    }
+
+    private Integer register(final String key, final int slots) {
+        final Integer result = this.poolSize;
+        this.poolSize += slots;
+        this.poolIndexes.put(key, result);
+        return result;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+
+/**
+ * Lambda object made by a linked invokedynamic call site. For host functional
+ * interfaces it is used as the handler of a proxy, for interpreted interfaces
+ * it is used directly and called by the interpreter without any lookup.
+ *
+ * @see JJJVMLambdaFactory
+ */
+public final class JJJVMLambda implements InvocationHandler {
+
+    private final JJJVMLambdaFactory factory;
+    private final Object[] captured;
+    private volatile Method functionalMethod;
+
+    JJJVMLambda(final JJJVMLambdaFactory factory, final Object[] captured) {
+        this.factory = factory;
+        this.captured = captured == null ? JJJVMConstants.EMPTY_OBJECT_ARRAY : captured;
+    }
+
+    /**
+     * Get lambda for an object.
+     *
+     * @param obj object to be checked, can be null
+     * @return the lambda if the object is either lambda or lambda proxy, null
+     * otherwise
+     */
+    public static JJJVMLambda asLambda(final Object obj) {
+        if (obj instanceof JJJVMLambda) {
+            return (JJJVMLambda) obj;
+        }
+        if (obj instanceof Proxy) {
+            final InvocationHandler handler = Proxy.getInvocationHandler(obj);
+            if (handler instanceof JJJVMLambda) {
+                return (JJJVMLambda) handler;
+            }
+        }
+        return null;
+    }
+
+    public JJJVMLambdaFactory getFactory() {
+        return this.factory;
+    }
+
+    /**
+     * Check that the lambda can be casted to a class.
+     *
+     * @param jvmFormattedClassName jvm formatted name of the target class, must
+     *                              not be null
+     * @return true if the lambda implements the class, false otherwise
+     * @throws Throwable it will be thrown for errors
+     */
+    public boolean isInstanceOf(final String jvmFormattedClassName) throws Throwable {
+        if ("java/lang/Object".equals(jvmFormattedClassName)) {
+            return true;
+        }
+        for (final JJJVMClass iface : this.factory.getInterpretedInterfaces()) {
+            if (isInterfaceOf(iface, jvmFormattedClassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isInterfaceOf(final JJJVMClass iface, final String jvmFormattedClassName) throws Throwable {
+        if (jvmFormattedClassName.equals(iface.getClassName())) {
+            return true;
+        }
+        for (final String parent : iface.getImplementedInterfaceNames()) {
+            if (parent.equals(jvmFormattedClassName)) {
+                return true;
+            }
+            final Object resolved = iface.getProvider().resolveClass(parent);
+            if (resolved instanceof JJJVMClass && isInterfaceOf((JJJVMClass) resolved, jvmFormattedClassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Call the lambda implementation with arguments in the interpreter format.
+     *
+     * @param args arguments of the functional method, can be null
+     * @return result of the call in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    public Object call(final Object[] args) throws Throwable {
+        final JJJVMLambdaFactory theFactory = this.factory;
+
+        final Object[] fullArgs;
+        if (this.captured.length == 0) {
+            fullArgs = args == null ? JJJVMConstants.EMPTY_OBJECT_ARRAY : args;
+        } else if (args == null || args.length == 0) {
+            fullArgs = this.captured;
+        } else {
+            fullArgs = new Object[this.captured.length + args.length];
+            System.arraycopy(this.captured, 0, fullArgs, 0, this.captured.length);
+            System.arraycopy(args, 0, fullArgs, this.captured.length, args.length);
+        }
+
+        final JJJVMClass implClass = theFactory.getImplClass();
+
+        switch (theFactory.getImplKind()) {
+            case JJJVMConstantPoolItem.REF_INVOKESTATIC: {
+                final JJJVMMethod method = theFactory.getImplMethod();
+                if (method == null) {
+                    return theFactory.getCaller().getProvider().invoke(theFactory.getCaller(), null, theFactory.getImplClassName(), theFactory.getImplName(), theFactory.getImplSignature(), fullArgs);
+                }
+                return JJJVMInterpreter.invoke(method.getDeclaringClass(), null, method, fullArgs, null, null);
+            }
+            case JJJVMConstantPoolItem.REF_NEWINVOKESPECIAL: {
+                if (implClass == null) {
+                    return theFactory.getCaller().getProvider().invoke(theFactory.getCaller(), null, theFactory.getImplClassName(), "<init>", theFactory.getImplSignature(), fullArgs);
+                }
+                return implClass.newInstance(theFactory.getImplSignature(), fullArgs, null, null);
+            }
+            default: {
+                final Object receiver = fullArgs[0];
+                if (receiver == null) {
+                    throw new NullPointerException("Lambda receiver is null [" + theFactory + ']');
+                }
+                final Object[] methodArgs = new Object[fullArgs.length - 1];
+                System.arraycopy(fullArgs, 1, methodArgs, 0, methodArgs.length);
+
+                if (receiver instanceof JJJVMObject) {
+                    final JJJVMObject obj = (JJJVMObject) receiver;
+                    JJJVMMethod method = theFactory.getImplMethod();
+                    if (method == null || (theFactory.getImplKind() != JJJVMConstantPoolItem.REF_INVOKESPECIAL && obj.getDeclaringClass() != implClass)) {
+                        method = obj.getDeclaringClass().findMethod(theFactory.getImplName(), theFactory.getImplSignature());
+                    }
+                    return JJJVMInterpreter.invoke(method.getDeclaringClass(), obj, method, methodArgs, null, null);
+                } else {
+                    return theFactory.getCaller().getProvider().invoke(theFactory.getCaller(), receiver, theFactory.getImplClassName(), theFactory.getImplName(), theFactory.getImplSignature(), methodArgs);
+                }
+            }
+        }
+    }
+
+    /**
+     * Call a method of the lambda from interpreted code.
+     *
+     * @param methodName      the method name, must not be null
+     * @param methodSignature jvm formatted method signature, must not be null
+     * @param args            arguments in the interpreter format, can be null
+     * @return result of the call in the interpreter format
+     * @throws Throwable it will be thrown for errors
+     */
+    public Object invokeMethod(final String methodName, final String methodSignature, final Object[] args) throws Throwable {
+        if (this.factory.isFunctionalMethod(methodName, methodSignature)) {
+            return call(args);
+        }
+        if ("hashCode".equals(methodName)) {
+            return hashCode();
+        }
+        if ("equals".equals(methodName)) {
+            return this == args[0] ? 1 : 0;
+        }
+        if ("toString".equals(methodName)) {
+            return toString();
+        }
+        throw new UnsupportedOperationException("Only the functional method is supported for lambda [" + this.factory.getInterfaceName() + '.' + methodName + methodSignature + ']');
+    }
+
+    private boolean isFunctionalMethod(final Method method) {
+        if (method == this.functionalMethod) {
+            return true;
+        }
+        if (Modifier.isAbstract(method.getModifiers()) && method.getDeclaringClass() != Object.class && this.factory.isFunctionalMethod(method.getName(), makeArgsSignature(method))) {
+            this.functionalMethod = method;
+            return true;
+        }
+        return false;
+    }
+
+    private static String makeArgsSignature(final Method method) {
+        final StringBuilder result = new StringBuilder().append('(');
+        for (final Class<?> type : method.getParameterTypes()) {
+            appendType(result, type);
+        }
+        return result.append(')').toString();
+    }
+
+    private static void appendType(final StringBuilder buffer, final Class<?> type) {
+        if (type.isArray()) {
+            buffer.append(type.getName().replace('.', '/'));
+        } else if (!type.isPrimitive()) {
+            buffer.append('L').append(type.getName().replace('.', '/')).append(';');
+        } else if (type == long.class) {
+            buffer.append(JJJVMConstants.TYPE_LONG);
+        } else if (type == boolean.class) {
+            buffer.append(JJJVMConstants.TYPE_BOOLEAN);
+        } else {
+            // names of other primitive types start with their signature letter
+            buffer.append(Character.toUpperCase(type.getName().charAt(0)));
+        }
+    }
+
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+        if (isFunctionalMethod(method)) {
+            final boolean interpreted = this.factory.getImplClass() != null;
+            if (interpreted && args != null) {
+                final char[] types = this.factory.getImplArgTypes();
+                final int shift = this.captured.length - (this.factory.getImplKind() == JJJVMConstantPoolItem.REF_INVOKESTATIC || this.factory.getImplKind() == JJJVMConstantPoolItem.REF_NEWINVOKESPECIAL ? 0 : 1);
+                for (int i = 0; i < args.length; i++) {
+                    final int typeIndex = i + shift;
+                    if (typeIndex >= 0 && typeIndex < types.length) {
+                        args[i] = JJJVMInterpreter.toInterpreterValue(args[i], types[typeIndex]);
+                    }
+                }
+            }
+            final Object result = call(args);
+            return interpreted ? toHost(result) : result;
+        }
+
+        final String name = method.getName();
+        if ("hashCode".equals(name)) {
+            return System.identityHashCode(proxy);
+        }
+        if ("equals".equals(name)) {
+            return proxy == args[0];
+        }
+        if ("toString".equals(name)) {
+            return toString();
+        }
+        final int modifiers = method.getModifiers();
+        if (method.getDeclaringClass().isInterface() && (modifiers & (Modifier.ABSTRACT | Modifier.STATIC)) == 0) {
+            // default method, it is loaded lazily because the platform can have no method handles
+            return JJJVMDefaultMethods.invoke(proxy, method, args);
+        }
+        throw new UnsupportedOperationException("Only the functional method is supported for lambda [" + method + ']');
+    }
+
+    private Object toHost(final Object value) {
+        final char samType = this.factory.getMethodReturnType();
+        return JJJVMInterpreter.toHostValue(value, samType == JJJVMConstants.TYPE_CLASS || samType == JJJVMConstants.TYPE_ARRAY ? this.factory.getImplReturnType() : samType);
+    }
+
+    @Override
+    public String toString() {
+        return this.factory.getInterfaceName().replace('/', '.') + "$$Lambda@" + Integer.toHexString(System.identityHashCode(this));
+    }
+}
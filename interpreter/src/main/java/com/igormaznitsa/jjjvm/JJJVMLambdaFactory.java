@@ -0,0 +1,286 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMBootstrapMethodRecord;
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMProvider;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Linked invokedynamic call site produced by LambdaMetafactory. The factory is
+ * linked once per call site and cached in the constant pool item, it produces
+ * lambda objects implementing the functional interface.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-6.html#jvms-6.5.invokedynamic}
+ *
+ * @see JJJVMLambda
+ */
+public final class JJJVMLambdaFactory {
+
+    private static final String LAMBDA_METAFACTORY = "java/lang/invoke/LambdaMetafactory";
+
+    private static final int FLAG_MARKERS = 2;
+    private static final int FLAG_BRIDGES = 4;
+
+    private final JJJVMClass caller;
+    private final String interfaceName;
+    private final Class<?>[] hostInterfaces;
+    private final JJJVMClass[] interpretedInterfaces;
+    private final String samName;
+    private final String[] samSignatures;
+    private final char samReturnType;
+    private final int implKind;
+    private final String implClassName;
+    private final String implName;
+    private final String implSignature;
+    private final char[] implArgTypes;
+    private final char implReturnType;
+    private final JJJVMClass implClass;
+    private final JJJVMMethod implMethod;
+    private final int numberOfCapturedArgs;
+    private final char[] capturedArgTypes;
+    private final Object singleton;
+
+    private JJJVMLambdaFactory(final JJJVMClass caller, final JJJVMConstantPoolItem callSite) throws Throwable {
+        final JJJVMProvider provider = caller.getProvider();
+        final JJJVMBootstrapMethodRecord bootstrap = caller.getBootstrapMethods()[callSite.getBootstrapMethodIndex()];
+
+        final JJJVMConstantPoolItem bootstrapRef = bootstrap.getMethodHandle().getMethodHandleReference();
+        final String bootstrapName = bootstrapRef.getName();
+        if (!LAMBDA_METAFACTORY.equals(bootstrapRef.getClassName()) || !("metafactory".equals(bootstrapName) || "altMetafactory".equals(bootstrapName))) {
+            throw new UnsupportedOperationException("Only LambdaMetafactory call sites are supported [" + bootstrapRef.getClassName() + '.' + bootstrapName + ']');
+        }
+
+        final String callSiteSignature = callSite.getSignature();
+
+        this.caller = caller;
+        this.samName = callSite.getName();
+        this.interfaceName = callSiteSignature.substring(callSiteSignature.indexOf(')') + 2, callSiteSignature.length() - 1);
+        this.capturedArgTypes = JJJVMInterpreter.extractArgTypes(callSiteSignature);
+        this.numberOfCapturedArgs = this.capturedArgTypes.length;
+
+        final String samSignature = bootstrap.getArgument(0).asString();
+        this.samReturnType = samSignature.charAt(samSignature.indexOf(')') + 1);
+
+        final JJJVMConstantPoolItem implHandle = bootstrap.getArgument(1);
+        final JJJVMConstantPoolItem implRef = implHandle.getMethodHandleReference();
+        this.implKind = implHandle.getMethodHandleKind();
+        this.implClassName = implRef.getClassName();
+        this.implName = implRef.getName();
+        this.implSignature = implRef.getSignature();
+        this.implArgTypes = JJJVMInterpreter.extractArgTypes(this.implSignature);
+        this.implReturnType = this.implSignature.charAt(this.implSignature.indexOf(')') + 1);
+
+        final List<Object> interfaces = new ArrayList<Object>();
+        final List<String> signatures = new ArrayList<String>();
+        interfaces.add(provider.resolveClass(this.interfaceName));
+        signatures.add(samSignature);
+        if ("altMetafactory".equals(bootstrapName) && bootstrap.getNumberOfArguments() > 3) {
+            final int flags = bootstrap.getArgument(3).asInt();
+            int argIndex = 4;
+            if ((flags & FLAG_MARKERS) != 0) {
+                final int markers = bootstrap.getArgument(argIndex++).asInt();
+                for (int i = 0; i < markers; i++) {
+                    interfaces.add(provider.resolveClass(bootstrap.getArgument(argIndex++).getClassName()));
+                }
+            }
+            if ((flags & FLAG_BRIDGES) != 0) {
+                // erased signatures of the same method inherited from other interfaces
+                final int bridges = bootstrap.getArgument(argIndex++).asInt();
+                for (int i = 0; i < bridges; i++) {
+                    signatures.add(bootstrap.getArgument(argIndex++).asString());
+                }
+            }
+        }
+        this.samSignatures = signatures.toArray(new String[signatures.size()]);
+
+        final List<Class<?>> hostList = new ArrayList<Class<?>>();
+        final List<JJJVMClass> interpretedList = new ArrayList<JJJVMClass>();
+        for (final Object iface : interfaces) {
+            if (iface instanceof JJJVMClass) {
+                interpretedList.add((JJJVMClass) iface);
+            } else {
+                hostList.add((Class<?>) iface);
+            }
+        }
+        this.hostInterfaces = hostList.toArray(new Class<?>[hostList.size()]);
+        this.interpretedInterfaces = interpretedList.toArray(new JJJVMClass[interpretedList.size()]);
+
+        final Object resolvedImplClass = this.implClassName.equals(caller.getClassName()) ? caller : provider.resolveClass(this.implClassName);
+        if (resolvedImplClass instanceof JJJVMClass) {
+            this.implClass = (JJJVMClass) resolvedImplClass;
+            if (this.implKind == JJJVMConstantPoolItem.REF_NEWINVOKESPECIAL) {
+                this.implMethod = null;
+            } else {
+                this.implMethod = this.implClass.findMethod(this.implName, this.implSignature);
+                if (this.implMethod == null) {
+                    throw new NoSuchMethodException("Can't find lambda implementation [" + this.implClassName + '.' + this.implName + this.implSignature + ']');
+                }
+            }
+        } else {
+            this.implClass = null;
+            this.implMethod = null;
+        }
+
+        this.singleton = this.numberOfCapturedArgs == 0 ? makeInstance(JJJVMConstants.EMPTY_OBJECT_ARRAY) : null;
+    }
+
+    /**
+     * Link invokedynamic call site or get already linked one.
+     *
+     * @param caller    the class containing the call site, must not be null
+     * @param cpIndex   index of the invokedynamic item in the class constant pool
+     * @return the linked factory, must not be null
+     * @throws Throwable it will be thrown for errors
+     */
+    public static JJJVMLambdaFactory link(final JJJVMClass caller, final int cpIndex) throws Throwable {
+        final JJJVMConstantPoolItem callSite = caller.getConstantPool().getItemAt(cpIndex);
+        Object linked = callSite.getLinkedObject();
+        if (linked == null) {
+            synchronized (callSite) {
+                linked = callSite.getLinkedObject();
+                if (linked == null) {
+                    linked = new JJJVMLambdaFactory(caller, callSite);
+                    callSite.setLinkedObject(linked);
+                }
+            }
+        }
+        return (JJJVMLambdaFactory) linked;
+    }
+
+    private Object makeInstance(final Object[] captured) {
+        final JJJVMLambda lambda = new JJJVMLambda(this, captured);
+        if (this.hostInterfaces.length == 0) {
+            return lambda;
+        }
+        final ClassLoader hostLoader = this.hostInterfaces[0].getClassLoader();
+        return Proxy.newProxyInstance(hostLoader == null ? JJJVMLambdaFactory.class.getClassLoader() : hostLoader, this.hostInterfaces, lambda);
+    }
+
+    /**
+     * Make lambda object for captured arguments.
+     *
+     * @param captured captured arguments, can be null for non-capturing lambda
+     * @return the lambda object, the same instance for non-capturing lambda
+     */
+    public Object newInstance(final Object[] captured) {
+        return this.singleton == null ? makeInstance(captured) : this.singleton;
+    }
+
+    public JJJVMClass getCaller() {
+        return this.caller;
+    }
+
+    /**
+     * Get jvm formatted name of the functional interface.
+     *
+     * @return the interface name, must not be null
+     */
+    public String getInterfaceName() {
+        return this.interfaceName;
+    }
+
+    public JJJVMClass[] getInterpretedInterfaces() {
+        return this.interpretedInterfaces;
+    }
+
+    /**
+     * Get name of the single abstract method of the functional interface.
+     *
+     * @return the method name, must not be null
+     */
+    public String getMethodName() {
+        return this.samName;
+    }
+
+    /**
+     * Check that a method is the functional method of the lambda. Methods are
+     * compared by name and argument types of erased signatures, so that
+     * overloaded and default methods with the same name are not taken for the
+     * functional one.
+     *
+     * @param methodName      the method name, must not be null
+     * @param methodSignature jvm formatted method signature, must not be null
+     * @return true if the method is implemented by the lambda body
+     */
+    public boolean isFunctionalMethod(final String methodName, final String methodSignature) {
+        if (!methodName.equals(this.samName)) {
+            return false;
+        }
+        final int argsEnd = methodSignature.indexOf(')');
+        for (final String signature : this.samSignatures) {
+            if (argsEnd == signature.indexOf(')') && methodSignature.regionMatches(0, signature, 0, argsEnd)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getNumberOfCapturedArgs() {
+        return this.numberOfCapturedArgs;
+    }
+
+    char[] getCapturedArgTypes() {
+        return this.capturedArgTypes;
+    }
+
+    int getImplKind() {
+        return this.implKind;
+    }
+
+    String getImplClassName() {
+        return this.implClassName;
+    }
+
+    String getImplName() {
+        return this.implName;
+    }
+
+    String getImplSignature() {
+        return this.implSignature;
+    }
+
+    char[] getImplArgTypes() {
+        return this.implArgTypes;
+    }
+
+    char getImplReturnType() {
+        return this.implReturnType;
+    }
+
+    char getMethodReturnType() {
+        return this.samReturnType;
+    }
+
+    JJJVMClass getImplClass() {
+        return this.implClass;
+    }
+
+    JJJVMMethod getImplMethod() {
+        return this.implMethod;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getCanonicalName() + '[' + this.interfaceName + '#' + this.samName + " -> " + this.implClassName + '.' + this.implName + this.implSignature + ']';
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+
+/**
+ * Execution profile of an interpreted method. The interpreter counts calls of
+ * the method and backward jumps made by its byte-code, the JIT tier uses the
+ * counters to find hot methods and keeps the compiled code of the method in
+ * the profile. Argument types of the method are parsed once and kept in the
+ * profile for the interpreter.
+ * <p>
+ * Counters are not synchronized, lost updates only make compilation a bit
+ * later.
+ * </p>
+ *
+ * @see JJJVMJit
+ * @see #of(com.igormaznitsa.jjjvm.model.JJJVMMethod)
+ */
+public final class JJJVMMethodProfile {
+
+    /**
+     * Implemented by methods which keep their own profile.
+     */
+    public interface Holder {
+
+        /**
+         * Get the profile of the method.
+         *
+         * @return the profile, must not be null
+         */
+        JJJVMMethodProfile getProfile();
+    }
+
+    private static final Throwable NOT_PROFILED = new UnsupportedOperationException("Method doesn't keep profile");
+
+    private final char[] argTypes;
+    private int invocations;
+    private int backEdges;
+    private volatile JJJVMJit.Entry compiledCode;
+    private volatile int compiledTier = JJJVMJit.TIER_INTERPRETER;
+    private volatile Throwable compilationFailure;
+
+    /**
+     * Make profile of a method.
+     *
+     * @param methodSignature the method signature, must not be null
+     */
+    public JJJVMMethodProfile(final String methodSignature) {
+        this.argTypes = JJJVMMemberRef.parseArgTypes(methodSignature);
+    }
+
+    /**
+     * Get profile of a method. Methods which don't keep own profile get a new
+     * one on every request, such profile is marked as failed for compilation
+     * so that the method is always interpreted.
+     *
+     * @param method the method, must not be null
+     * @return the profile, must not be null
+     * @see Holder
+     */
+    public static JJJVMMethodProfile of(final JJJVMMethod method) {
+        if (method instanceof Holder) {
+            return ((Holder) method).getProfile();
+        }
+        final JJJVMMethodProfile result = new JJJVMMethodProfile(method.getSignature());
+        result.compilationFailure = NOT_PROFILED;
+        return result;
+    }
+
+    /**
+     * Get number of interpreted calls of the method.
+     *
+     * @return number of calls
+     */
+    public int getInvocations() {
+        return this.invocations;
+    }
+
+    /**
+     * Get number of backward jumps made by interpreted byte-code of the method.
+     *
+     * @return number of backward jumps
+     */
+    public int getBackEdges() {
+        return this.backEdges;
+    }
+
+    /**
+     * Check that the method has been compiled.
+     *
+     * @return true if calls of the method are processed by compiled code
+     */
+    public boolean isCompiled() {
+        return this.compiledCode != null;
+    }
+
+    /**
+     * Get tier processing calls of the method.
+     *
+     * @return one of JJJVMJit.TIER_INTERPRETER, JJJVMJit.TIER_CLOSURES and
+     * JJJVMJit.TIER_BYTECODE
+     */
+    public int getCompiledTier() {
+        return this.compiledTier;
+    }
+
+    /**
+     * Check that compilation of the method has failed, such method is always
+     * interpreted.
+     *
+     * @return true if the method can't be compiled
+     */
+    public boolean isCompilationFailed() {
+        return this.compilationFailure != null;
+    }
+
+    /**
+     * Get reason of failed compilation.
+     *
+     * @return the error or null if there was not any failure
+     */
+    public Throwable getCompilationFailure() {
+        return this.compilationFailure;
+    }
+
+    /**
+     * Reset counters and forget both compiled code and compilation failure, so
+     * that the method is interpreted again until it becomes hot.
+     */
+    public synchronized void reset() {
+        this.invocations = 0;
+        this.backEdges = 0;
+        this.compiledCode = null;
+        this.compiledTier = JJJVMJit.TIER_INTERPRETER;
+        this.compilationFailure = null;
+    }
+
+    /**
+     * Get types of the method arguments parsed once from its signature.
+     *
+     * @return array of argument types, object and array arguments are
+     * presented by 'L', must not be changed
+     */
+    char[] getArgTypes() {
+        return this.argTypes;
+    }
+
+    JJJVMJit.Entry getCompiledCode() {
+        return this.compiledCode;
+    }
+
+    void setCompiledCode(final JJJVMJit.Entry code, final int tier) {
+        this.compiledTier = tier;
+        this.compiledCode = code;
+    }
+
+    void setCompilationFailure(final Throwable failure) {
+        this.compilationFailure = failure;
+    }
+
+    int countInvocation() {
+        return ++this.invocations + this.backEdges;
+    }
+
+    void countBackEdge() {
+        this.backEdges++;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Warms up classes before use. Classes are resolved and pre-linked in parallel
+ * on a supplied executor and the result of every class is reported.
+ *
+ * @see JJJVMClass#prelink()
+ */
+public final class JJJVMPrelinker {
+
+    /**
+     * Result of pre-linking of a class.
+     */
+    public static final class Result {
+
+        private final String className;
+        private final Object resolvedClass;
+        private final long timeNanos;
+        private final Throwable failure;
+
+        private Result(final String className, final Object resolvedClass, final long timeNanos, final Throwable failure) {
+            this.className = className;
+            this.resolvedClass = resolvedClass;
+            this.timeNanos = timeNanos;
+            this.failure = failure;
+        }
+
+        /**
+         * Get jvm formatted name of the class.
+         *
+         * @return the class name, must not be null
+         */
+        public String getClassName() {
+            return this.className;
+        }
+
+        /**
+         * Get resolved class.
+         *
+         * @return either JJJVMClass or host class, null if the class can't be
+         * resolved
+         */
+        public Object getResolvedClass() {
+            return this.resolvedClass;
+        }
+
+        /**
+         * Get time spent to resolve and pre-link the class, it includes time to
+         * load not loaded referenced classes.
+         *
+         * @return time in nanoseconds
+         */
+        public long getTimeNanos() {
+            return this.timeNanos;
+        }
+
+        /**
+         * Get error thrown during pre-linking.
+         *
+         * @return the error or null if the class has been pre-linked successfully
+         */
+        public Throwable getFailure() {
+            return this.failure;
+        }
+
+        public boolean isSuccessful() {
+            return this.failure == null;
+        }
+
+        @Override
+        public String toString() {
+            return this.className + ' ' + (this.failure == null ? "OK" : "FAILED " + this.failure) + " in " + (this.timeNanos / 1000L) + " us";
+        }
+    }
+
+    private JJJVMPrelinker() {
+    }
+
+    /**
+     * Resolve and pre-link a class in the current thread.
+     *
+     * @param provider              provider to resolve the class, must not be
+     *                              null
+     * @param jvmFormattedClassName the class name, must not be null
+     * @return result for the class, must not be null
+     */
+    public static Result prelink(final JJJVMProvider provider, final String jvmFormattedClassName) {
+        final long start = System.nanoTime();
+        Object resolved = null;
+        Throwable failure = null;
+        try {
+            resolved = provider.resolveClass(jvmFormattedClassName);
+            if (resolved instanceof JJJVMClass) {
+                ((JJJVMClass) resolved).prelink();
+            }
+        } catch (Throwable thr) {
+            failure = thr;
+        }
+        return new Result(jvmFormattedClassName, resolved, System.nanoTime() - start, failure);
+    }
+
+    /**
+     * Resolve and pre-link classes in parallel. The method waits for all
+     * classes, failure of a class doesn't stop processing of other ones.
+     *
+     * @param provider   provider to resolve classes, must not be null
+     * @param classNames jvm formatted names of classes, must not be null
+     * @param executor   executor to run tasks, must not be null
+     * @return results in the order of class names, must not be null
+     * @throws InterruptedException if the current thread has been interrupted
+     *                              during waiting
+     */
+    public static List<Result> prelink(final JJJVMProvider provider, final Collection<String> classNames, final Executor executor) throws InterruptedException {
+        final List<FutureTask<Result>> tasks = new ArrayList<FutureTask<Result>>(classNames.size());
+        for (final String name : classNames) {
+            final FutureTask<Result> task = new FutureTask<Result>(new Callable<Result>() {
+                @Override
+                public Result call() {
+                    return prelink(provider, name);
+                }
+            });
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        final List<Result> result = new ArrayList<Result>(tasks.size());
+        for (final FutureTask<Result> task : tasks) {
+            try {
+                result.add(task.get());
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Unexpected error during pre-linking", ex.getCause());
+            }
+        }
+        return result;
+    }
+}
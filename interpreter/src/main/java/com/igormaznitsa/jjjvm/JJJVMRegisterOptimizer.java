@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm;
+
+import com.igormaznitsa.jjjvm.JJJVMClosureCompiler.Move;
+import com.igormaznitsa.jjjvm.JJJVMClosureCompiler.Node;
+import com.igormaznitsa.jjjvm.model.JJJVMTryCatchRecord;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Optimizer of register code made by the closure compiler. Translated stack
+ * byte-code moves every operand through stack registers, the optimizer makes
+ * nodes read local variables directly and write results directly into local
+ * variables, so most of loads, stores and stack shuffles disappear and the
+ * method needs less dispatches.
+ * <p>
+ * Passes are copy propagation inside extended basic blocks, dead store
+ * elimination based on liveness of registers and merging of a result with the
+ * store following it. Exception handlers are taken into account, a handler
+ * sees all local variables written before the failed node.
+ * </p>
+ *
+ * @see JJJVMClosureCompiler
+ */
+final class JJJVMRegisterOptimizer {
+
+    private final JJJVMTryCatchRecord[] handlers;
+    private final int bytecodeSize;
+    private final int registers;
+    private final int exceptionRegister;
+    private List<Node> code;
+
+    /**
+     * Constructor.
+     *
+     * @param code              nodes in code order, must not be null
+     * @param handlers          exception handlers of the method, must not be
+     *                          null
+     * @param bytecodeSize      size of the method byte-code
+     * @param registers         number of registers in the frame
+     * @param exceptionRegister register getting caught exception
+     */
+    JJJVMRegisterOptimizer(final List<Node> code, final JJJVMTryCatchRecord[] handlers, final int bytecodeSize, final int registers, final int exceptionRegister) {
+        this.code = code;
+        this.handlers = handlers;
+        this.bytecodeSize = bytecodeSize;
+        this.registers = registers;
+        this.exceptionRegister = exceptionRegister;
+    }
+
+    /**
+     * Make all passes.
+     *
+     * @return optimized nodes in code order, must not be null
+     */
+    List<Node> optimize() {
+        propagateCopies();
+        BitSet[] liveOut = computeLiveness();
+        while (removeDeadStores(liveOut)) {
+            liveOut = computeLiveness();
+        }
+        mergeStores(liveOut);
+        return this.code;
+    }
+
+    // flags of nodes which can be entered not only from the previous node
+    private boolean[] findBlockStarts(final int[] indexes) {
+        final int size = this.code.size();
+        final boolean[] result = new boolean[size + 1];
+        result[0] = true;
+        for (int i = 0; i < size; i++) {
+            final Node node = this.code.get(i);
+            if (!node.isFallThrough()) {
+                result[i + 1] = true;
+            }
+            for (final int targetPc : node.getTargetPcs()) {
+                result[indexes[targetPc]] = true;
+            }
+        }
+        for (final JJJVMTryCatchRecord record : this.handlers) {
+            result[indexes[record.getCodeAddress()]] = true;
+        }
+        return result;
+    }
+
+    private int[] makeIndexes() {
+        return JJJVMClosureCompiler.makeIndexes(this.code.toArray(new Node[this.code.size()]), this.bytecodeSize);
+    }
+
+    private void propagateCopies() {
+        final boolean[] starts = findBlockStarts(makeIndexes());
+        // source of the value for every register or negative one
+        final int[] copyOf = new int[this.registers];
+        Arrays.fill(copyOf, -1);
+
+        for (int i = 0; i < this.code.size(); i++) {
+            if (starts[i]) {
+                Arrays.fill(copyOf, -1);
+            }
+            final Node node = this.code.get(i);
+            final int[] uses = node.getUses();
+            for (int j = 0; j < uses.length; j++) {
+                final int source = copyOf[uses[j]];
+                if (source >= 0) {
+                    node.setUse(j, source);
+                }
+            }
+            final int def = node.getDef();
+            if (def >= 0) {
+                copyOf[def] = -1;
+                for (int r = 0; r < copyOf.length; r++) {
+                    if (copyOf[r] == def) {
+                        copyOf[r] = -1;
+                    }
+                }
+                if (node instanceof Move) {
+                    final int source = ((Move) node).src;
+                    if (source != def) {
+                        copyOf[def] = source;
+                    }
+                }
+            }
+        }
+    }
+
+    // registers live after every node on normal exit, exits to handlers are
+    // included into live registers before the node
+    private BitSet[] computeLiveness() {
+        final int size = this.code.size();
+        final int[] indexes = makeIndexes();
+        final BitSet[] liveIn = new BitSet[size + 1];
+        final BitSet[] liveOut = new BitSet[size];
+        for (int i = 0; i <= size; i++) {
+            liveIn[i] = new BitSet(this.registers);
+        }
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--) {
+                final Node node = this.code.get(i);
+                final BitSet out = new BitSet(this.registers);
+                if (node.isFallThrough()) {
+                    out.or(liveIn[i + 1]);
+                }
+                for (final int targetPc : node.getTargetPcs()) {
+                    out.or(liveIn[indexes[targetPc]]);
+                }
+                liveOut[i] = out;
+
+                final BitSet in = (BitSet) out.clone();
+                final int def = node.getDef();
+                if (def >= 0) {
+                    in.clear(def);
+                }
+                for (final int use : node.getUses()) {
+                    in.set(use);
+                }
+                for (final JJJVMTryCatchRecord record : this.handlers) {
+                    if (record.isActiveForAddress(node.pc)) {
+                        final BitSet handler = (BitSet) liveIn[indexes[record.getCodeAddress()]].clone();
+                        handler.clear(this.exceptionRegister);
+                        in.or(handler);
+                    }
+                }
+                if (!in.equals(liveIn[i])) {
+                    liveIn[i] = in;
+                    changed = true;
+                }
+            }
+        }
+        return liveOut;
+    }
+
+    private boolean removeDeadStores(final BitSet[] liveOut) {
+        final List<Node> result = new ArrayList<Node>(this.code.size());
+        for (int i = 0; i < this.code.size(); i++) {
+            final Node node = this.code.get(i);
+            final int def = node.getDef();
+            final boolean selfMove = node instanceof Move && ((Move) node).src == def;
+            if (selfMove || (!node.hasSideEffects() && def >= 0 && !liveOut[i].get(def))) {
+                continue;
+            }
+            result.add(node);
+        }
+        final boolean changed = result.size() != this.code.size();
+        this.code = result;
+        return changed;
+    }
+
+    // a node writing a register which is only moved into another register by
+    // the next node writes the result directly into the target register
+    private void mergeStores(final BitSet[] liveOut) {
+        final boolean[] starts = findBlockStarts(makeIndexes());
+        final List<Node> result = new ArrayList<Node>(this.code.size());
+        for (int i = 0; i < this.code.size(); i++) {
+            final Node node = this.code.get(i);
+            result.add(node);
+            final int def = node.getDef();
+            if (def >= 0 && i + 1 < this.code.size() && !starts[i + 1]) {
+                final Node nextNode = this.code.get(i + 1);
+                if (nextNode instanceof Move && ((Move) nextNode).src == def && !liveOut[i + 1].get(def)) {
+                    node.setDef(((Move) nextNode).dst);
+                    i++;
+                }
+            }
+        }
+        this.code = result;
+    }
+}
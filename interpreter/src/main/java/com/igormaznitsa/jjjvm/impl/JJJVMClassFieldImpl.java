@@ -19,8 +19,6 @@ import com.igormaznitsa.jjjvm.model.JJJVMConstants;
 import com.igormaznitsa.jjjvm.model.JJJVMField;
 import com.igormaznitsa.jjjvm.model.JJJVMClass;
 import com.igormaznitsa.jjjvm.model.JJJVMObject;
-import java.io.DataInputStream;
-import java.io.IOException;
 
 /**
  * Describes a class field.
@@ -29,11 +27,9 @@ import java.io.IOException;
 public final class JJJVMClassFieldImpl implements JJJVMField {
 
   private final JJJVMClassImpl declaringClass;
+  private final JJJVMClassImage.FieldImage image;
   private final int flags;
   private final String name;
-  private final String signature;
-  private final int constantIndexInPool;
-  private final int fieldUID;
   private volatile Object staticValue;
 
   /**
@@ -46,7 +42,9 @@ public final class JJJVMClassFieldImpl implements JJJVMField {
     if ((this.flags & JJJVMConstants.ACC_STATIC) == 0) {
       throw new IllegalStateException("Field '" + this.name + "' is not static");
     } else {
-      if ((this.flags & JJJVMConstants.ACC_FINAL) == 0) {
+      this.declaringClass.initialize();
+      // final fields can be set only by <clinit>
+      if ((this.flags & JJJVMConstants.ACC_FINAL) == 0 || this.declaringClass.isInitializingByCurrentThread()) {
         this.staticValue = value;
       } else {
         throw new IllegalStateException("Field '" + this.name + "' is final");
@@ -64,58 +62,31 @@ public final class JJJVMClassFieldImpl implements JJJVMField {
     if ((this.flags & JJJVMConstants.ACC_STATIC) == 0) {
       throw new IllegalStateException("Field '" + this.name + "' is not static");
     } else {
+      this.declaringClass.initialize();
       return this.staticValue;
     }
   }
 
-  JJJVMClassFieldImpl(final JJJVMClassImpl declaringClass, final DataInputStream inStream) throws IOException {
+  JJJVMClassFieldImpl(final JJJVMClassImpl declaringClass, final JJJVMClassImage.FieldImage image) {
     this.declaringClass = declaringClass;
-    int theConstantValueIndex = -1;
-    this.staticValue = null;
-    
-    // flags
-    this.flags = inStream.readUnsignedShort();
-    
-    // name
-    final int nameIndex = inStream.readUnsignedShort();
-    this.name = (String) declaringClass.getConstantPool().getItemAt(nameIndex).asString();
-    
-    // type
-    final int typeIndex = inStream.readUnsignedShort();
-    this.signature = (String) declaringClass.getConstantPool().getItemAt(typeIndex).asString();
-    this.fieldUID = (nameIndex << 16) | typeIndex;
-    
-    // attributes
-    int attributesCounter = inStream.readUnsignedShort();
-    
-    while (--attributesCounter >= 0) {
-      final String attrName = (String) declaringClass.getConstantPool().getItemAt(inStream.readUnsignedShort()).asString();
-      if (JJJVMConstants.ATRNAME_CONSTANTVALUE.equals(attrName)) {
-        final int attributeSize = inStream.readInt();
-        if (attributeSize != 2) {
-          throw new IOException("Wrong size for constant value attribute [" + attributeSize + ']');
-        }
-        theConstantValueIndex = inStream.readUnsignedShort();
-      } else {
-        // ignore all other attributes
-        JJJVMImplUtils.skip(inStream, inStream.readInt());
-      }
-    }
-
-    this.constantIndexInPool = theConstantValueIndex;
-    if ((this.flags & JJJVMConstants.ACC_STATIC) != 0 && theConstantValueIndex >= 0) {
+    this.image = image;
+    // often used values are copied from the image
+    this.flags = image.flags;
+    this.name = image.name;
+    if ((this.flags & JJJVMConstants.ACC_STATIC) != 0 && image.constantIndex >= 0) {
       this.staticValue = this.getConstantValue();
     }
   }
 
   public int getUID() {
-    return fieldUID;
+    return this.image.uid;
   }
 
   public Object get(final JJJVMObject instance) {
     if ((flags & JJJVMConstants.ACC_STATIC) == 0) {
       return instance.getFieldValue(this.name, true);
     } else {
+      this.declaringClass.initialize();
       return this.staticValue;
     }
   }
@@ -124,15 +95,16 @@ public final class JJJVMClassFieldImpl implements JJJVMField {
     if ((flags & JJJVMConstants.ACC_STATIC) == 0) {
       instance.setFieldValue(this.name, value, true);
     } else {
+      this.declaringClass.initialize();
       this.staticValue = value;
     }
   }
 
   public Object getConstantValue() {
-    if (this.constantIndexInPool <= 0) {
+    if (this.image.constantIndex <= 0) {
       return null;
     }
-    return this.declaringClass.getConstantPool().getItemAt(this.constantIndexInPool).asObject();
+    return this.declaringClass.getConstantPool().getItemAt(this.image.constantIndex).asObject();
   }
 
   public JJJVMClass getDeclaringClass() {
@@ -148,7 +120,7 @@ public final class JJJVMClassFieldImpl implements JJJVMField {
   }
 
   public String getSignature() {
-    return this.signature;
+    return this.image.signature;
   }
 
   @Override
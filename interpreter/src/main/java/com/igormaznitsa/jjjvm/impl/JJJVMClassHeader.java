@@ -0,0 +1,330 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl;
+
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Header of a class file: names of the class, its super class, interfaces and
+ * referenced classes, names and descriptors of fields and methods. It is read
+ * without making class objects, without symbol interning and without any
+ * linking or initialization, so it is suitable for fast scanning of big class
+ * sets. Attributes are skipped.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.1}
+ *
+ * @see com.igormaznitsa.jjjvm.impl.jse.JSEClassScanner
+ */
+public final class JJJVMClassHeader {
+
+    /**
+     * Field or method of the class.
+     */
+    public static final class Member {
+
+        private final int flags;
+        private final String name;
+        private final String descriptor;
+
+        private Member(final int flags, final String name, final String descriptor) {
+            this.flags = flags;
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        public int getFlags() {
+            return this.flags;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getDescriptor() {
+            return this.descriptor;
+        }
+
+        @Override
+        public String toString() {
+            return this.name + ' ' + this.descriptor;
+        }
+    }
+
+    private final int classFormatVersion;
+    private final int flags;
+    private final String className;
+    private final String superClassName;
+    private final List<String> interfaceNames;
+    private final Set<String> referencedClassNames;
+    private final List<Member> fields;
+    private final List<Member> methods;
+
+    /**
+     * Strings and class references of the constant pool, strings are decoded
+     * only if requested.
+     */
+    private static final class Strings {
+
+        private final ByteBuffer buffer;
+        private final byte[] tags;
+        // buffer offsets of UTF8 items, name indexes of class references
+        private final int[] values;
+        private final String[] decoded;
+
+        private Strings(final ByteBuffer inBuffer) throws IOException {
+            this.buffer = inBuffer;
+            final int itemsNumber = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.tags = new byte[itemsNumber];
+            this.values = new int[itemsNumber];
+            this.decoded = new String[itemsNumber];
+
+            for (int index = 1; index < itemsNumber; index++) {
+                final int tag = JJJVMImplUtils.readUnsignedByte(inBuffer);
+                this.tags[index] = (byte) tag;
+                switch (tag) {
+                    case JJJVMConstantPoolItem.CONSTANT_UTF8: {
+                        this.values[index] = inBuffer.position();
+                        JJJVMImplUtils.skip(inBuffer, JJJVMImplUtils.readUnsignedShort(inBuffer));
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_UNICODE: {
+                        JJJVMImplUtils.skip(inBuffer, JJJVMImplUtils.readUnsignedShort(inBuffer) << 1);
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_LONG:
+                    case JJJVMConstantPoolItem.CONSTANT_DOUBLE: {
+                        JJJVMImplUtils.skip(inBuffer, 8);
+                        index++;
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_INTEGER:
+                    case JJJVMConstantPoolItem.CONSTANT_FLOAT:
+                    case JJJVMConstantPoolItem.CONSTANT_FIELDREF:
+                    case JJJVMConstantPoolItem.CONSTANT_METHODREF:
+                    case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD:
+                    case JJJVMConstantPoolItem.CONSTANT_NAMETYPEREF:
+                    case JJJVMConstantPoolItem.CONSTANT_INVOKEDYNAMIC: {
+                        JJJVMImplUtils.skip(inBuffer, 4);
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_METHODHANDLE: {
+                        JJJVMImplUtils.skip(inBuffer, 3);
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_CLASSREF: {
+                        this.values[index] = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    }
+                    break;
+                    case JJJVMConstantPoolItem.CONSTANT_STRING:
+                    case JJJVMConstantPoolItem.CONSTANT_METHODTYPE: {
+                        JJJVMImplUtils.skip(inBuffer, 2);
+                    }
+                    break;
+                    default: {
+                        throw new IOException("Unsupported constant pool item [" + tag + ']');
+                    }
+                }
+            }
+        }
+
+        private String utf8(final int index) throws IOException {
+            if (index <= 0 || index >= this.tags.length || this.tags[index] != JJJVMConstantPoolItem.CONSTANT_UTF8) {
+                throw new IOException("Constant pool item is not UTF8 [" + index + ']');
+            }
+            String result = this.decoded[index];
+            if (result == null) {
+                final int offset = this.values[index];
+                result = JJJVMImplUtils.readUtf8(this.buffer, offset + 2, this.buffer.getShort(offset) & 0xFFFF);
+                this.decoded[index] = result;
+            }
+            return result;
+        }
+
+        private String className(final int index) throws IOException {
+            if (index <= 0 || index >= this.tags.length || this.tags[index] != JJJVMConstantPoolItem.CONSTANT_CLASSREF) {
+                throw new IOException("Constant pool item is not class reference [" + index + ']');
+            }
+            return utf8(this.values[index]);
+        }
+    }
+
+    private JJJVMClassHeader(final ByteBuffer buffer) throws IOException {
+        final ByteBuffer inBuffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        if (inBuffer.getInt() != 0xCAFEBABE) {
+            throw new IOException("Not Java class");
+        }
+        this.classFormatVersion = inBuffer.getInt();
+
+        final Strings strings = new Strings(inBuffer);
+        this.flags = JJJVMImplUtils.readUnsignedShort(inBuffer);
+        this.className = strings.className(JJJVMImplUtils.readUnsignedShort(inBuffer));
+        final int superIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+        this.superClassName = superIndex == 0 ? null : strings.className(superIndex);
+
+        final int numberOfInterfaces = JJJVMImplUtils.readUnsignedShort(inBuffer);
+        final List<String> interfaces = new ArrayList<String>(numberOfInterfaces);
+        for (int i = 0; i < numberOfInterfaces; i++) {
+            interfaces.add(strings.className(JJJVMImplUtils.readUnsignedShort(inBuffer)));
+        }
+        this.interfaceNames = Collections.unmodifiableList(interfaces);
+
+        this.fields = readMembers(strings, inBuffer);
+        this.methods = readMembers(strings, inBuffer);
+
+        final Set<String> referenced = new LinkedHashSet<String>();
+        for (int i = 1; i < strings.tags.length; i++) {
+            if (strings.tags[i] == JJJVMConstantPoolItem.CONSTANT_CLASSREF) {
+                String name = strings.className(i);
+                if (name.charAt(0) == '[') {
+                    // only classes of object arrays are referenced
+                    final int start = name.lastIndexOf('[') + 1;
+                    if (name.charAt(start) != JJJVMConstants.TYPE_CLASS) {
+                        continue;
+                    }
+                    name = name.substring(start + 1, name.length() - 1);
+                }
+                if (!name.equals(this.className)) {
+                    referenced.add(name);
+                }
+            }
+        }
+        this.referencedClassNames = Collections.unmodifiableSet(referenced);
+    }
+
+    private static List<Member> readMembers(final Strings strings, final ByteBuffer inBuffer) throws IOException {
+        final int number = JJJVMImplUtils.readUnsignedShort(inBuffer);
+        final List<Member> result = new ArrayList<Member>(number);
+        for (int i = 0; i < number; i++) {
+            final int memberFlags = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            final String name = strings.utf8(JJJVMImplUtils.readUnsignedShort(inBuffer));
+            final String descriptor = strings.utf8(JJJVMImplUtils.readUnsignedShort(inBuffer));
+            JJJVMClassImpl.skipAllAttributes(inBuffer);
+            result.add(new Member(memberFlags, name, descriptor));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Read header of a class file. The buffer position is not changed.
+     *
+     * @param buffer buffer contains a compiled java class between its position
+     *               and limit, must not be null
+     * @return the header, must not be null
+     * @throws IOException it will be thrown for wrong class format
+     */
+    public static JJJVMClassHeader read(final ByteBuffer buffer) throws IOException {
+        JJJVMImplUtils.assertNotNull("ByteBuffer is null", buffer);
+        try {
+            return new JJJVMClassHeader(buffer);
+        } catch (BufferUnderflowException ex) {
+            throw makeIOException("Unexpected end of class data", ex);
+        } catch (IllegalStateException ex) {
+            throw makeIOException("Malformed class data", ex);
+        }
+    }
+
+    // IOException(String, Throwable) is not available on Java 1.5
+    private static IOException makeIOException(final String message, final Throwable cause) {
+        final IOException result = new IOException(message);
+        result.initCause(cause);
+        return result;
+    }
+
+    /**
+     * Get class format version.
+     *
+     * @return the class format version, minor version in the high word
+     */
+    public int getClassFormatVersion() {
+        return this.classFormatVersion;
+    }
+
+    public int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Get jvm formatted name of the class.
+     *
+     * @return the class name, must not be null
+     */
+    public String getClassName() {
+        return this.className;
+    }
+
+    /**
+     * Get jvm formatted name of the super class.
+     *
+     * @return the super class name, null only for java/lang/Object
+     */
+    public String getSuperClassName() {
+        return this.superClassName;
+    }
+
+    public List<String> getInterfaceNames() {
+        return this.interfaceNames;
+    }
+
+    /**
+     * Get names of all classes referenced by the constant pool except the
+     * class itself. For arrays of objects the element class is referenced,
+     * arrays of primitives are ignored.
+     *
+     * @return set of jvm formatted class names, must not be null
+     */
+    public Set<String> getReferencedClassNames() {
+        return this.referencedClassNames;
+    }
+
+    public List<Member> getFields() {
+        return this.fields;
+    }
+
+    public List<Member> getMethods() {
+        return this.methods;
+    }
+
+    /**
+     * Find method by name and descriptor.
+     *
+     * @param name       the method name, must not be null
+     * @param descriptor the method descriptor, must not be null
+     * @return found method or null
+     */
+    public Member findMethod(final String name, final String descriptor) {
+        for (final Member method : this.methods) {
+            if (method.name.equals(name) && method.descriptor.equals(descriptor)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return this.getClass().getCanonicalName() + '[' + this.className + ']';
+    }
+}
@@ -0,0 +1,511 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl;
+
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMSymbol;
+import com.igormaznitsa.jjjvm.model.JJJVMTryCatchRecord;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable parsed content of a class file: constant pool, fields, methods
+ * with their byte code and class attributes. An image doesn't contain any
+ * runtime state, so it is shared by all classes made from the same class file
+ * content in all providers, every {@link JJJVMClassImpl} keeps its own static
+ * field values, initialization state and linked objects. Images are cached
+ * process-wide by SHA-256 hash of the class file content and kept while there
+ * are classes using them, in addition a limited number of recently used images
+ * is kept strongly so that byte identical class files submitted again are not
+ * parsed even if their previous classes have been unloaded.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html}
+ *
+ * @see JJJVMClassImpl#JJJVMClassImpl(com.igormaznitsa.jjjvm.impl.JJJVMClassImage, com.igormaznitsa.jjjvm.model.JJJVMProvider)
+ */
+public final class JJJVMClassImage {
+
+    /**
+     * Parsed field_info structure.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.5}
+     */
+    static final class FieldImage {
+
+        final int flags;
+        final String name;
+        final String signature;
+        final int uid;
+        final int constantIndex;
+
+        private FieldImage(final JJJVMConstantPoolImpl.Table cpool, final ByteBuffer inBuffer) throws IOException {
+            int theConstantValueIndex = -1;
+
+            this.flags = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            final int nameIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.name = cpool.getSymbolAt(nameIndex).getText();
+            final int typeIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.signature = cpool.getSymbolAt(typeIndex).getText();
+            this.uid = (nameIndex << 16) | typeIndex;
+
+            int attributesCounter = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            while (--attributesCounter >= 0) {
+                final String attrName = cpool.getTextAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+                if (JJJVMConstants.ATRNAME_CONSTANTVALUE.equals(attrName)) {
+                    final int attributeSize = inBuffer.getInt();
+                    if (attributeSize != 2) {
+                        throw new IOException("Wrong size for constant value attribute [" + attributeSize + ']');
+                    }
+                    theConstantValueIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                } else {
+                    // ignore all other attributes
+                    JJJVMImplUtils.skip(inBuffer, inBuffer.getInt());
+                }
+            }
+            this.constantIndex = theConstantValueIndex;
+        }
+    }
+
+    /**
+     * Decoded content of the Code attribute.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html#jvms-4.7.3}
+     */
+    static final class Body {
+
+        final int maxStackDepth;
+        final int maxLocals;
+        final byte[] bytecode;
+        final JJJVMTryCatchRecord[] catchBlocks;
+
+        private Body(final int maxStackDepth, final int maxLocals, final byte[] bytecode, final JJJVMTryCatchRecord[] catchBlocks) {
+            this.maxStackDepth = maxStackDepth;
+            this.maxLocals = maxLocals;
+            this.bytecode = bytecode;
+            this.catchBlocks = catchBlocks;
+        }
+    }
+
+    private static final Body NO_BODY = new Body(-1, -1, null, JJJVMConstants.EMPTY_CATCBLOCK_ARRAY);
+
+    /**
+     * Parsed method_info structure, the Code attribute is decoded on the first
+     * request.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.6}
+     */
+    static final class MethodImage {
+
+        final int flags;
+        final JJJVMSymbol name;
+        final JJJVMSymbol signature;
+        final String[] declaredExceptions;
+        private final JJJVMClassImage owner;
+        private ByteBuffer codeAttribute;
+        private volatile Body body;
+
+        private MethodImage(final JJJVMClassImage owner, final JJJVMConstantPoolImpl.Table cpool, final ByteBuffer inBuffer) throws IOException {
+            this.owner = owner;
+            this.flags = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.name = cpool.getSymbolAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+            this.signature = cpool.getSymbolAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+
+            int numberOfAttrs = JJJVMImplUtils.readUnsignedShort(inBuffer);
+
+            String[] declExceptions = JJJVMConstants.EMPTY_STRING_ARRAY;
+            ByteBuffer lcodeAttribute = null;
+
+            while (--numberOfAttrs >= 0) {
+                final String attrName = cpool.getTextAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+                // read the size of the attribute data
+                final int attributeDataLen = inBuffer.getInt();
+                if (JJJVMConstants.ATTRNAME_EXCEPTIONS.equals(attrName)) {
+                    // read exceptions table for the method i.e. the tail contains exceptions which can be thrown by the method
+                    final int numberOfExceptions = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    declExceptions = numberOfExceptions == 0 ? JJJVMConstants.EMPTY_STRING_ARRAY : new String[numberOfExceptions];
+                    for (int li = 0; li < numberOfExceptions; li++) {
+                        declExceptions[li] = cpool.getClassNameAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+                    }
+                } else {
+                    if (JJJVMConstants.ATTRNAME_CODE.equals(attrName)) {
+                        // only remember where the code is, it will be decoded during the first call
+                        lcodeAttribute = inBuffer.slice();
+                        lcodeAttribute.limit(Math.min(attributeDataLen, lcodeAttribute.limit()));
+                    }
+                    // skip attribute data
+                    JJJVMImplUtils.skip(inBuffer, attributeDataLen);
+                }
+            }
+
+            this.declaredExceptions = declExceptions;
+            this.codeAttribute = lcodeAttribute;
+            if (lcodeAttribute == null) {
+                this.body = NO_BODY;
+            }
+        }
+
+        Body getBody() {
+            Body result = this.body;
+            if (result == null) {
+                synchronized (this) {
+                    result = this.body;
+                    if (result == null) {
+                        result = decodeBody(this.codeAttribute);
+                        this.body = result;
+                        // the class buffer slice is not needed anymore
+                        this.codeAttribute = null;
+                    }
+                }
+            }
+            return result;
+        }
+
+        private Body decodeBody(final ByteBuffer code) {
+            final ByteBuffer inBuffer = code.duplicate();
+            try {
+                // read the method bytecode and its attributes
+                final int maxStack = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                final int maxLocals = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                final byte[] bytecode = new byte[inBuffer.getInt()];
+                inBuffer.get(bytecode);
+                // read the table of exception processors for the bytecode
+                final int catchBlockNumber = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                final JJJVMTryCatchRecord[] catchBlocks = catchBlockNumber == 0 ? JJJVMConstants.EMPTY_CATCBLOCK_ARRAY : new JJJVMTryCatchRecord[catchBlockNumber];
+                for (int li = 0; li < catchBlocks.length; li++) {
+                    final int startPc = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    final int endPc = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    final int handlerPc = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    final int catchType = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    catchBlocks[li] = new JJJVMTryCatchRecord(startPc, endPc, handlerPc, catchType == 0 ? null : this.owner.constantPool.getClassNameAt(catchType));
+                }
+                return new Body(maxStack, maxLocals, bytecode, catchBlocks);
+            } catch (BufferUnderflowException ex) {
+                throw new IllegalStateException("Malformed code attribute of method [" + this.owner.getClassName() + '#' + this.name + this.signature + ']', ex);
+            }
+        }
+    }
+
+    /**
+     * Weak reference to a cached image.
+     */
+    private static final class ImageReference extends WeakReference<JJJVMClassImage> {
+
+        private final String hash;
+
+        private ImageReference(final JJJVMClassImage image, final ReferenceQueue<JJJVMClassImage> queue) {
+            super(image, queue);
+            this.hash = image.hash;
+        }
+    }
+
+    private static final ConcurrentMap<String, ImageReference> IMAGES = new ConcurrentHashMap<String, ImageReference>();
+    private static final ReferenceQueue<JJJVMClassImage> COLLECTED_IMAGES = new ReferenceQueue<JJJVMClassImage>();
+
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong CACHE_MISSES = new AtomicLong();
+    private static final AtomicLong CACHE_EVICTIONS = new AtomicLong();
+
+    private static final int DEFAULT_RETAINED_IMAGES = 256;
+    private static int retainedImagesLimit = DEFAULT_RETAINED_IMAGES;
+    // recently used images in access order, guarded by itself
+    private static final Map<String, JJJVMClassImage> RETAINED_IMAGES = new LinkedHashMap<String, JJJVMClassImage>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, JJJVMClassImage> eldest) {
+            if (size() > retainedImagesLimit) {
+                CACHE_EVICTIONS.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private final String hash;
+    private final ByteBuffer classData;
+    final int classFileFormatVersion;
+    final int flags;
+    final int classNameIndex;
+    final int superClassNameIndex;
+    final String[] implementedInterfaces;
+    final JJJVMConstantPoolImpl.Table constantPool;
+    final FieldImage[] fields;
+    final MethodImage[] methods;
+    // four u2 values per record
+    final int[] innerClasses;
+    final int[] bootstrapMethodRefs;
+    final int[][] bootstrapArguments;
+    final String sourceFile;
+
+    private JJJVMClassImage(final ByteBuffer buffer, final String hash) throws IOException {
+        this.hash = hash;
+
+        final ByteBuffer inBuffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        try {
+            if (inBuffer.getInt() != 0xCAFEBABE) {
+                throw new IOException("Not Java class");
+            }
+
+            this.classFileFormatVersion = inBuffer.getInt();
+            this.constantPool = new JJJVMConstantPoolImpl.Table(inBuffer);
+            this.flags = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.classNameIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.superClassNameIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+
+            final int numberOfInterfaces = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            this.implementedInterfaces = numberOfInterfaces == 0 ? JJJVMConstants.EMPTY_STRING_ARRAY : new String[numberOfInterfaces];
+            for (int i = 0; i < numberOfInterfaces; i++) {
+                this.implementedInterfaces[i] = this.constantPool.getClassNameAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+            }
+
+            this.fields = new FieldImage[JJJVMImplUtils.readUnsignedShort(inBuffer)];
+            for (int i = 0; i < this.fields.length; i++) {
+                this.fields[i] = new FieldImage(this.constantPool, inBuffer);
+            }
+
+            this.methods = new MethodImage[JJJVMImplUtils.readUnsignedShort(inBuffer)];
+            for (int i = 0; i < this.methods.length; i++) {
+                this.methods[i] = new MethodImage(this, this.constantPool, inBuffer);
+            }
+
+            int[] detectedInnerClasses = null;
+            int[] detectedBootstrapRefs = null;
+            int[][] detectedBootstrapArgs = null;
+            String sourceFileName = null;
+            int classAttributeNumber = JJJVMImplUtils.readUnsignedShort(inBuffer);
+            while (--classAttributeNumber >= 0) {
+                final int nameIndex = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                final int dataSize = inBuffer.getInt();
+                final String attrName = this.constantPool.getTextAt(nameIndex);
+                if (JJJVMConstants.ATTRNAME_INNERCLASSES.equals(attrName)) {
+                    detectedInnerClasses = new int[JJJVMImplUtils.readUnsignedShort(inBuffer) * 4];
+                    for (int i = 0; i < detectedInnerClasses.length; i++) {
+                        detectedInnerClasses[i] = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    }
+                } else if (JJJVMConstants.ATTRNAME_SOURCEFILE.equals(attrName)) {
+                    sourceFileName = this.constantPool.getTextAt(JJJVMImplUtils.readUnsignedShort(inBuffer));
+                } else if (JJJVMConstants.ATTRNAME_BOOTSTRAPMETHODS.equals(attrName)) {
+                    final int numberOfMethods = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                    detectedBootstrapRefs = new int[numberOfMethods];
+                    detectedBootstrapArgs = new int[numberOfMethods][];
+                    for (int i = 0; i < numberOfMethods; i++) {
+                        detectedBootstrapRefs[i] = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                        final int[] args = new int[JJJVMImplUtils.readUnsignedShort(inBuffer)];
+                        for (int j = 0; j < args.length; j++) {
+                            args[j] = JJJVMImplUtils.readUnsignedShort(inBuffer);
+                        }
+                        detectedBootstrapArgs[i] = args;
+                    }
+                } else {
+                    JJJVMImplUtils.skip(inBuffer, dataSize);
+                }
+            }
+            this.sourceFile = sourceFileName;
+            this.innerClasses = detectedInnerClasses == null ? new int[0] : detectedInnerClasses;
+            this.bootstrapMethodRefs = detectedBootstrapRefs == null ? new int[0] : detectedBootstrapRefs;
+            this.bootstrapArguments = detectedBootstrapArgs == null ? new int[0][] : detectedBootstrapArgs;
+        } catch (BufferUnderflowException ex) {
+            final IOException error = new IOException("Unexpected end of class data");
+            error.initCause(ex);
+            throw error;
+        }
+
+        final ByteBuffer data = inBuffer.duplicate();
+        data.flip();
+        this.classData = data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get image for class file content. If there is cached image for the same
+     * content then it is returned, otherwise the content is parsed and the new
+     * image is cached. Images are shared by all providers, so the content is
+     * copied into an own buffer before hashing and the caller can reuse or
+     * change its buffer after the call, its position is not changed.
+     *
+     * @param buffer buffer contains a compiled java class between its position
+     *               and limit, must not be null
+     * @return the image, must not be null
+     * @throws IOException it will be thrown for wrong class format
+     */
+    public static JJJVMClassImage of(final ByteBuffer buffer) throws IOException {
+        JJJVMImplUtils.assertNotNull("ByteBuffer is null", buffer);
+        expungeCollectedImages();
+
+        // strings and method bodies are decoded lazily, so the image must not depend on the caller's buffer
+        final ByteBuffer ownData = ByteBuffer.allocate(buffer.remaining());
+        ownData.put(buffer.duplicate());
+        ownData.flip();
+
+        final String hash = makeHash(ownData);
+        ImageReference reference = IMAGES.get(hash);
+        JJJVMClassImage result = reference == null ? null : reference.get();
+        if (result == null) {
+            CACHE_MISSES.incrementAndGet();
+            final JJJVMClassImage parsed = new JJJVMClassImage(ownData, hash);
+            final ImageReference newReference = new ImageReference(parsed, COLLECTED_IMAGES);
+            while (result == null) {
+                reference = IMAGES.putIfAbsent(hash, newReference);
+                if (reference == null) {
+                    result = parsed;
+                } else {
+                    // other thread has parsed the same content
+                    result = reference.get();
+                    if (result == null) {
+                        IMAGES.remove(hash, reference);
+                    }
+                }
+            }
+        } else {
+            CACHE_HITS.incrementAndGet();
+        }
+
+        synchronized (RETAINED_IMAGES) {
+            RETAINED_IMAGES.put(hash, result);
+        }
+        return result;
+    }
+
+    /**
+     * Set max number of recently used images kept in the cache even if there
+     * are no classes using them. Extra images are evicted in the least
+     * recently used order.
+     *
+     * @param limit max number of retained images, zero to keep images only
+     *              while they are in use
+     */
+    public static void setRetainedImagesLimit(final int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative [" + limit + ']');
+        }
+        synchronized (RETAINED_IMAGES) {
+            retainedImagesLimit = limit;
+            for (final Iterator<JJJVMClassImage> iterator = RETAINED_IMAGES.values().iterator(); RETAINED_IMAGES.size() > limit && iterator.hasNext();) {
+                iterator.next();
+                iterator.remove();
+                CACHE_EVICTIONS.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Get max number of retained images.
+     *
+     * @return the limit of recently used images kept in the cache
+     */
+    public static int getRetainedImagesLimit() {
+        synchronized (RETAINED_IMAGES) {
+            return retainedImagesLimit;
+        }
+    }
+
+    /**
+     * Number of class data parsings avoided by the image cache.
+     *
+     * @return number of cache hits
+     */
+    public static long getCacheHits() {
+        return CACHE_HITS.get();
+    }
+
+    /**
+     * Number of class data parsings.
+     *
+     * @return number of cache misses
+     */
+    public static long getCacheMisses() {
+        return CACHE_MISSES.get();
+    }
+
+    /**
+     * Number of images removed from the retained images because of the limit.
+     *
+     * @return number of evictions
+     */
+    public static long getCacheEvictions() {
+        return CACHE_EVICTIONS.get();
+    }
+
+    /**
+     * Get number of cached images.
+     *
+     * @return number of images in the process-wide cache
+     */
+    public static int getNumberOfCachedImages() {
+        expungeCollectedImages();
+        return IMAGES.size();
+    }
+
+    private static void expungeCollectedImages() {
+        ImageReference reference;
+        while ((reference = (ImageReference) COLLECTED_IMAGES.poll()) != null) {
+            IMAGES.remove(reference.hash, reference);
+        }
+    }
+
+    private static String makeHash(final ByteBuffer buffer) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new Error("SHA-256 is not supported", ex);
+        }
+        digest.update(buffer.duplicate());
+
+        final byte[] hash = digest.digest();
+        final char[] result = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            result[i * 2] = Character.forDigit((hash[i] >> 4) & 0xF, 16);
+            result[i * 2 + 1] = Character.forDigit(hash[i] & 0xF, 16);
+        }
+        return new String(result);
+    }
+
+    /**
+     * Get SHA-256 hash of the class file content.
+     *
+     * @return the hash as hex string, must not be null
+     */
+    public String getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Get jvm formatted name of the class.
+     *
+     * @return the class name, must not be null
+     */
+    public String getClassName() {
+        return this.constantPool.getClassNameAt(this.classNameIndex);
+    }
+
+    /**
+     * Get the class file content the image was parsed from.
+     *
+     * @return read only buffer contains the class file, must not be null
+     */
+    public ByteBuffer getClassData() {
+        return this.classData.duplicate();
+    }
+}
@@ -20,10 +20,9 @@ import static com.igormaznitsa.jjjvm.impl.JJJVMImplUtils.assertNotNull;
 import com.igormaznitsa.jjjvm.model.*;
 import com.igormaznitsa.jjjvm.*;
 
-import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
@@ -40,105 +39,175 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass {
 
-    private final int classFileFormatVersion;
+    private final JJJVMClassImage image;
     private final int flags;
-    private final int classNameIndex;
-    private final int superClassNameIndex;
     private final String[] implementedInterfaces;
     private final Map<String, JJJVMField> declaredFields;
-    private final Map<String, JJJVMMethod> declaredMethods;
+    private final JJJVMClassMethodImpl[] declaredMethods;
+    private final JJJVMMethodTable methodTable;
+    private volatile Map<String, JJJVMMethod> declaredMethodsMap;
     private final JJJVMProvider provider;
     private final JJJVMConstantPoolImpl constantPool;
     private final JJJVMInnerClassRecord[] innerClasses;
-    private final String sourceFile;
+    private final JJJVMBootstrapMethodRecord[] bootstrapMethods;
 
-    private static final Map<String, String> loadingClasses = new ConcurrentHashMap<String, String>();
+    private static final int INIT_NONE = 0;
+    private static final int INIT_IN_PROGRESS = 1;
+    private static final int INIT_DONE = 2;
+    private static final int INIT_ERROR = 3;
+
+    private final Object initLock = new Object();
+    private volatile int initState = INIT_NONE;
+    private Thread initThread;
+    private Throwable initError;
+
+    private final Map<JJJVMMethod, JJJVMCallHandle> callHandles = new ConcurrentHashMap<JJJVMMethod, JJJVMCallHandle>();
+    private final Map<Class<?>, JJJVMInterfaceBinding> interfaceBindings = new ConcurrentHashMap<Class<?>, JJJVMInterfaceBinding>();
+
+    private static final Map<LoadingKey, JJJVMClassImpl> loadingClasses = new ConcurrentHashMap<LoadingKey, JJJVMClassImpl>();
+
+    // loading classes are tracked per provider, the same name can be loaded by several providers at once
+    private static final class LoadingKey {
+
+        private final JJJVMProvider provider;
+        private final String className;
+
+        private LoadingKey(final JJJVMProvider provider, final String className) {
+            this.provider = provider;
+            this.className = className;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(this.provider) * 31 + this.className.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof LoadingKey) {
+                final LoadingKey that = (LoadingKey) obj;
+                return this.provider == that.provider && this.className.equals(that.className);
+            }
+            return false;
+        }
+    }
 
     // constructor for test purposes
     public JJJVMClassImpl() {
-        this.classFileFormatVersion = 0;
+        this.image = null;
         this.flags = 0;
-        this.classNameIndex = 0;
-        this.superClassNameIndex = 0;
         this.implementedInterfaces = null;
         this.provider = null;
         this.constantPool = null;
         this.declaredMethods = null;
+        this.methodTable = null;
         this.declaredFields = null;
         this.innerClasses = JJJVMConstants.EMPTY_INNERCLASS_ARRAY;
-        this.sourceFile = null;
+        this.bootstrapMethods = JJJVMConstants.EMPTY_BOOTSTRAP_ARRAY;
     }
 
     /**
      * It parses and create instance of class which represented by input stream.
+     * The stream is read fully and parsed as a byte buffer.
      *
      * @param in       stream contains array describing a compiled java class, must not
      *                 be null
      * @param provider a provider which implements misc service methods to process
      *                 byte code and resolve classes, must not be null
      * @throws Throwable it will be thrown for errors
+     * @see #JJJVMClassImpl(java.nio.ByteBuffer, com.igormaznitsa.jjjvm.model.JJJVMProvider)
      */
     public JJJVMClassImpl(final InputStream in, final JJJVMProvider provider) throws Throwable {
+        this(ByteBuffer.wrap(JJJVMImplUtils.readAll(assertStream(in))), provider);
+    }
+
+    /**
+     * It parses and create instance of class which represented by byte buffer.
+     * The content is copied into the class image, constant pool strings are
+     * decoded on demand and method byte code is kept as slices of the image
+     * buffer. The buffer can be reused by the caller, its position is not
+     * changed. If the same content has already been parsed then the cached
+     * class image is used.
+     *
+     * @param buffer   buffer contains a compiled java class between its position
+     *                 and limit, must not be null
+     * @param provider a provider which implements misc service methods to process
+     *                 byte code and resolve classes, must not be null
+     * @throws Throwable it will be thrown for errors
+     * @see JJJVMClassImage#of(java.nio.ByteBuffer)
+     */
+    public JJJVMClassImpl(final ByteBuffer buffer, final JJJVMProvider provider) throws Throwable {
+        this(JJJVMClassImage.of(buffer), provider);
+    }
+
+    /**
+     * Create class from parsed class image. The image is shared, the class has
+     * its own static fields, initialization state and linked objects.
+     *
+     * @param image    the class image, must not be null
+     * @param provider a provider which implements misc service methods to process
+     *                 byte code and resolve classes, must not be null
+     * @throws Throwable it will be thrown for errors
+     */
+    public JJJVMClassImpl(final JJJVMClassImage image, final JJJVMProvider provider) throws Throwable {
         assertNotNull("Provider is not defined", provider);
-        assertNotNull("InputStream is null", in);
+        assertNotNull("Image is null", image);
 
         this.provider = provider;
+        this.image = image;
+        this.flags = image.flags;
+        this.constantPool = new JJJVMConstantPoolImpl(this, image.constantPool);
 
-        final DataInputStream inStream = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        final String className = getClassName();
+        final LoadingKey loadingKey = new LoadingKey(provider, className);
+        loadingClasses.put(loadingKey, this);
 
-        if (inStream.readInt() != 0xCAFEBABE) {
-            throw new IOException("Not Java class");
-        }
-
-        this.classFileFormatVersion = inStream.readInt();
-        this.constantPool = new JJJVMConstantPoolImpl(this, inStream);
-        this.flags = inStream.readUnsignedShort();
-        this.classNameIndex = inStream.readUnsignedShort();
+        try {
+            // interfaces are resolved when they are needed
+            this.implementedInterfaces = image.implementedInterfaces;
 
-        loadingClasses.put(this.getClassName(), this.getClassName());
+            this.declaredFields = new HashMap<String, JJJVMField>(image.fields.length);
+            for (final JJJVMClassImage.FieldImage field : image.fields) {
+                this.declaredFields.put(field.name, new JJJVMClassFieldImpl(this, field));
+            }
 
-        try {
-            this.superClassNameIndex = inStream.readUnsignedShort();
-            final int numberOfInterfaces = inStream.readUnsignedShort();
-            this.implementedInterfaces = numberOfInterfaces == 0 ? JJJVMConstants.EMPTY_STRING_ARRAY : new String[numberOfInterfaces];
-            for (int i = 0; i < numberOfInterfaces; i++) {
-                final String interfaceClassName = this.constantPool.getItemAt(inStream.readUnsignedShort()).asString();
-                this.implementedInterfaces[i] = interfaceClassName;
-                this.provider.resolveClass(interfaceClassName);
+            this.declaredMethods = new JJJVMClassMethodImpl[image.methods.length];
+            for (int i = 0; i < image.methods.length; i++) {
+                final JJJVMClassMethodImpl newMethod = new JJJVMClassMethodImpl(this, image.methods[i]);
+                if ((newMethod.getFlags() & JJJVMConstants.ACC_NATIVE) != 0) {
+                    newMethod.bindNativeImplementation();
+                }
+                this.declaredMethods[i] = newMethod;
             }
-            this.declaredFields = loadFields(inStream);
-            this.declaredMethods = loadMethods(inStream);
-
-            JJJVMInnerClassRecord[] detectedInnerClassess = null;
-            String sourceFileName = null;
-            int classAttributeNumber = inStream.readUnsignedShort();
-            while (--classAttributeNumber >= 0) {
-                final int nameIndex = inStream.readUnsignedShort();
-                final int dataSize = inStream.readInt();
-                final String attrName = this.constantPool.getItemAt(nameIndex).asString();
-                if (JJJVMConstants.ATTRNAME_INNERCLASSES.equals(attrName)) {
-                    detectedInnerClassess = readInnerClasses(inStream);
-                } else if (JJJVMConstants.ATTRNAME_SOURCEFILE.equals(attrName)) {
-                    sourceFileName = this.constantPool.getItemAt(inStream.readUnsignedShort()).asString();
-                } else {
-                    JJJVMImplUtils.skip(inStream, dataSize);
+            this.methodTable = new JJJVMMethodTable(this.declaredMethods);
+
+            final int[] innerClassData = image.innerClasses;
+            if (innerClassData.length == 0) {
+                this.innerClasses = JJJVMConstants.EMPTY_INNERCLASS_ARRAY;
+            } else {
+                this.innerClasses = new JJJVMInnerClassRecord[innerClassData.length / 4];
+                for (int i = 0; i < this.innerClasses.length; i++) {
+                    final int offset = i * 4;
+                    this.innerClasses[i] = new JJJVMInnerClassRecord(this, innerClassData[offset], innerClassData[offset + 1], innerClassData[offset + 2], innerClassData[offset + 3]);
                 }
             }
-            this.sourceFile = sourceFileName;
-            this.innerClasses = detectedInnerClassess == null ? JJJVMConstants.EMPTY_INNERCLASS_ARRAY : detectedInnerClassess;
 
-            final JJJVMMethod clinitMethod = findMethod("<clinit>", "()V");
-            if (clinitMethod != null && (clinitMethod.getFlags() & JJJVMConstants.ACC_NATIVE) == 0) {
-                try {
-                    clinitMethod.invoke(null, null);
-                } catch (Throwable thr) {
-                    throw new InvocationTargetException(thr, "Error during <clinit> [" + clinitMethod.getDeclaringClass().getName() + ']');
+            if (image.bootstrapMethodRefs.length == 0) {
+                this.bootstrapMethods = JJJVMConstants.EMPTY_BOOTSTRAP_ARRAY;
+            } else {
+                this.bootstrapMethods = new JJJVMBootstrapMethodRecord[image.bootstrapMethodRefs.length];
+                for (int i = 0; i < this.bootstrapMethods.length; i++) {
+                    this.bootstrapMethods[i] = new JJJVMBootstrapMethodRecord(this, image.bootstrapMethodRefs[i], image.bootstrapArguments[i]);
                 }
             }
 
-            this.provider.registerExternalClass(this.getClassName(), this);
+            // nested classes are resolved and <clinit> is called on demand
+            this.provider.registerExternalClass(className, this);
         } finally {
-            loadingClasses.remove(getClassName());
+            loadingClasses.remove(loadingKey);
         }
     }
 
@@ -146,6 +215,25 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
         return this.provider;
     }
 
+    /**
+     * Get the class file content the class was parsed from.
+     *
+     * @return read only buffer contains the class file, must not be null
+     */
+    public ByteBuffer getClassData() {
+        return this.image.getClassData();
+    }
+
+    /**
+     * Get the parsed class image shared by all classes made from the same
+     * class file content.
+     *
+     * @return the class image, must not be null
+     */
+    public JJJVMClassImage getImage() {
+        return this.image;
+    }
+
     /**
      * Get the source file name for the class.
      * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.7.10}
@@ -153,34 +241,221 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * @return the found source name or null if there was not any definition.
      */
     public String getSourceFileName() {
-        return this.sourceFile;
+        return this.image.sourceFile;
     }
 
-    private JJJVMInnerClassRecord[] readInnerClasses(final DataInputStream inStream) throws Throwable {
-        final int numberOfClassess = inStream.readUnsignedShort();
+    /**
+     * Prepare the class for execution in advance. Bodies of all methods are
+     * decoded, all class, field and method references of the constant pool are
+     * resolved and the class is initialized.
+     *
+     * @throws Throwable it will be thrown if any reference can't be resolved or
+     *                   the class initialization failed
+     */
+    public void prelink() throws Throwable {
+        for (final JJJVMClassMethodImpl method : this.declaredMethods) {
+            method.getBytecode();
+        }
 
-        final JJJVMInnerClassRecord[] result = new JJJVMInnerClassRecord[numberOfClassess];
-        for (int i = 0; i < numberOfClassess; i++) {
-            final JJJVMInnerClassRecord record = new JJJVMInnerClassRecord(this, inStream);
-            result[i] = record;
-            if (isClassLoading(record.getInnerClassInfo().asString())) {
-                continue;
+        final JJJVMConstantPoolImpl cpool = this.constantPool;
+        for (int i = 1; i < cpool.size(); i++) {
+            switch (cpool.getTagAt(i)) {
+                case JJJVMConstantPoolItem.CONSTANT_CLASSREF: {
+                    final String className = cpool.getUtf8At(cpool.getIntAt(i));
+                    if (className.charAt(0) != '[' && !className.equals(getClassName())) {
+                        this.provider.resolveClass(className);
+                    }
+                }
+                break;
+                case JJJVMConstantPoolItem.CONSTANT_FIELDREF: {
+                    final JJJVMMemberRef ref = cpool.getMemberRefAt(i);
+                    final Object owner = this.provider.resolveClass(ref.getClassName());
+                    if (owner instanceof JJJVMClass && ((JJJVMClass) owner).findField(ref.getName()) == null) {
+                        throw new NoSuchFieldError(ref.toString());
+                    }
+                }
+                break;
+                case JJJVMConstantPoolItem.CONSTANT_METHODREF:
+                case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD: {
+                    final JJJVMMemberRef ref = cpool.getMemberRefAt(i);
+                    if (ref.getClassName().charAt(0) == '[') {
+                        // methods of arrays like clone()
+                        break;
+                    }
+                    final Object owner = this.provider.resolveClass(ref.getClassName());
+                    // abstract classes and interfaces can get methods from super interfaces
+                    if (owner instanceof JJJVMClass && (((JJJVMClass) owner).getFlags() & JJJVMConstants.ACC_ABSTRACT) == 0
+                            && !hasMethod(owner, ref.getNameSymbol(), ref.getSignatureSymbol())) {
+                        throw new NoSuchMethodError(ref.toString());
+                    }
+                }
+                break;
+                case JJJVMConstantPoolItem.CONSTANT_UTF8:
+                case JJJVMConstantPoolItem.CONSTANT_UNICODE: {
+                    cpool.getUtf8At(i);
+                }
+                break;
+                default: {
+                    // nothing to resolve
+                }
+                break;
             }
-            this.provider.resolveInnerClass(this, record);
         }
 
-        return result;
+        initialize();
+    }
+
+    // the method can be declared by the class, its superclasses or as default one by their interfaces,
+    // host interfaces are not inspected and their methods are checked during invocation
+    private boolean hasMethod(final Object owner, final JJJVMSymbol methodName, final JJJVMSymbol methodSignature) throws Throwable {
+        if (owner instanceof Class) {
+            return ((Class<?>) owner).isInterface();
+        }
+        if (!(owner instanceof JJJVMClass)) {
+            return false;
+        }
+        final JJJVMClass klazz = (JJJVMClass) owner;
+        if (klazz.findDeclaredMethod(methodName, methodSignature) != null) {
+            return true;
+        }
+        if ((klazz.getFlags() & JJJVMConstants.ACC_INTERFACE) == 0 && hasMethod(klazz.resolveSuperclass(), methodName, methodSignature)) {
+            return true;
+        }
+        for (final String inter : klazz.getImplementedInterfaceNames()) {
+            if (hasMethod(this.provider.resolveClass(inter), methodName, methodSignature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check that the class has been initialized.
+     *
+     * @return true if &lt;clinit&gt; of the class has been completed
+     */
+    public boolean isInitialized() {
+        return this.initState == INIT_DONE;
+    }
+
+    boolean isInitializingByCurrentThread() {
+        synchronized (this.initLock) {
+            return this.initState == INIT_IN_PROGRESS && this.initThread == Thread.currentThread();
+        }
     }
 
     /**
-     * Check, is the class still in loading mode.
+     * Initialize the class if it has not been initialized yet. The super class
+     * is initialized first and then &lt;clinit&gt; is called. Concurrent threads
+     * wait for the initialization, recursive request from the initializing
+     * thread returns immediately.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-5.html#jvms-5.5}
+     *
+     * @throws ExceptionInInitializerError if &lt;clinit&gt; has thrown exception
+     * @throws NoClassDefFoundError        if the class initialization failed
+     *                                     before
+     */
+    public void initialize() {
+        if (this.initState == INIT_DONE) {
+            return;
+        }
+
+        final Thread current = Thread.currentThread();
+        synchronized (this.initLock) {
+            boolean interrupted = false;
+            try {
+                while (this.initState != INIT_NONE) {
+                    if (this.initState == INIT_DONE || this.initThread == current) {
+                        return;
+                    }
+                    if (this.initState == INIT_ERROR) {
+                        final NoClassDefFoundError error = new NoClassDefFoundError("Could not initialize class " + getName());
+                        error.initCause(this.initError);
+                        throw error;
+                    }
+                    try {
+                        this.initLock.wait();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+                this.initState = INIT_IN_PROGRESS;
+                this.initThread = current;
+            } finally {
+                if (interrupted) {
+                    current.interrupt();
+                }
+            }
+        }
+
+        Throwable error = null;
+        try {
+            final Object superClass = resolveSuperclass();
+            if (superClass instanceof JJJVMClass) {
+                ((JJJVMClass) superClass).initialize();
+            }
+            final JJJVMMethod clinitMethod = findDeclaredMethod("<clinit>", "()V");
+            if (clinitMethod != null && (clinitMethod.getFlags() & JJJVMConstants.ACC_NATIVE) == 0) {
+                invoke(this, null, clinitMethod, null, null, null);
+            }
+        } catch (Throwable thr) {
+            error = thr;
+        }
+
+        synchronized (this.initLock) {
+            this.initThread = null;
+            if (error == null) {
+                this.initState = INIT_DONE;
+            } else {
+                this.initError = error;
+                this.initState = INIT_ERROR;
+            }
+            this.initLock.notifyAll();
+        }
+
+        if (error instanceof Error) {
+            throw (Error) error;
+        } else if (error != null) {
+            throw new ExceptionInInitializerError(error);
+        }
+    }
+
+    /**
+     * Get records describing bootstrap methods of the class.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.7.21}
+     *
+     * @return array of the bootstrap method records, must not be null
+     */
+    public JJJVMBootstrapMethodRecord[] getBootstrapMethods() {
+        return this.bootstrapMethods;
+    }
+
+    /**
+     * Check, is the class still in loading mode for any provider.
      *
      * @param qualifiedClassName class name to check, must not be null
      * @return true if the class with the name is still in the loading list, false
      * otherwise
      */
     public static boolean isClassLoading(final String qualifiedClassName) {
-        return loadingClasses.containsKey(qualifiedClassName);
+        for (final LoadingKey key : loadingClasses.keySet()) {
+            if (key.className.equals(qualifiedClassName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check, is the class still in loading mode for a provider.
+     *
+     * @param provider           the provider loading the class, must not be null
+     * @param qualifiedClassName class name to check, must not be null
+     * @return true if the provider is still loading the class with the name,
+     * false otherwise
+     */
+    public static boolean isClassLoading(final JJJVMProvider provider, final String qualifiedClassName) {
+        return loadingClasses.containsKey(new LoadingKey(provider, qualifiedClassName));
     }
 
     /**
@@ -210,7 +485,7 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      *                   errors
      */
     public Object resolveSuperclass() throws Throwable {
-        return this.provider.resolveClass(this.constantPool.getItemAt(this.superClassNameIndex).asString());
+        return this.provider.resolveClass(this.constantPool.getUtf8At(this.constantPool.getIntAt(this.image.superClassNameIndex)));
     }
 
     /**
@@ -234,7 +509,7 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * @return class name in jvm format like "java/lang/Object$1"
      */
     public String getClassName() {
-        return this.constantPool.getItemAt(this.classNameIndex).asString();
+        return this.image.getClassName();
     }
 
     /**
@@ -262,7 +537,7 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.1}
      */
     public int getClassFormatVersion() {
-        return this.classFileFormatVersion;
+        return this.image.classFileFormatVersion;
     }
 
     /**
@@ -275,37 +550,18 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
         return this.constantPool;
     }
 
-    private static String makeMethodUID(final String methodName, final String methodSignature) {
-        return methodName + '.' + methodSignature;
-    }
-
-    private Map<String, JJJVMMethod> loadMethods(final DataInputStream inStream) throws IOException {
-        final int numberOfMethods = inStream.readUnsignedShort();
-        final Map<String, JJJVMMethod> result = new HashMap<>(numberOfMethods);
-        for (int i = 0; i < numberOfMethods; i++) {
-            final JJJVMMethod newMethod = new JJJVMClassMethodImpl(this, inStream);
-            result.put(makeMethodUID(newMethod.getName(), newMethod.getSignature()), newMethod);
-        }
-        return result;
-    }
-
-    private Map<String, JJJVMField> loadFields(final DataInputStream inStream) throws Throwable {
-        final int numberOfFields = inStream.readUnsignedShort();
-        final Map<String, JJJVMField> result = new HashMap<>(numberOfFields);
-        for (int i = 0; i < numberOfFields; i++) {
-            final JJJVMField newField = new JJJVMClassFieldImpl(this, inStream);
-            result.put(newField.getName(), newField);
-        }
-        return result;
+    private static InputStream assertStream(final InputStream in) {
+        assertNotNull("InputStream is null", in);
+        return in;
     }
 
-    static void skipAllAttributesInStream(final DataInputStream inStream) throws IOException {
-        int numberOfAttributes = inStream.readUnsignedShort();
+    static void skipAllAttributes(final ByteBuffer inBuffer) throws IOException {
+        int numberOfAttributes = JJJVMImplUtils.readUnsignedShort(inBuffer);
         while (--numberOfAttributes >= 0) {
             // skip name
-            JJJVMImplUtils.skip(inStream, 2);
+            JJJVMImplUtils.skip(inBuffer, 2);
             //skip data
-            JJJVMImplUtils.skip(inStream, inStream.readInt());
+            JJJVMImplUtils.skip(inBuffer, inBuffer.getInt());
         }
     }
 
@@ -370,6 +626,21 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * @throws Throwable it will be thrown for errors
      */
     public final JJJVMMethod findMethod(final String methodName, final String methodSignature) throws Throwable {
+        final JJJVMSymbol name = JJJVMSymbol.find(methodName);
+        final JJJVMSymbol signature = JJJVMSymbol.find(methodSignature);
+        // if there is no symbol then no loaded class has such method
+        return name == null || signature == null ? null : findMethod(name, signature);
+    }
+
+    /**
+     * Find for method defined by the class or in its ancestors.
+     *
+     * @param methodName      the method name symbol, must not be null
+     * @param methodSignature the method signature symbol, must not be null
+     * @return found method object or null if not found
+     * @throws Throwable it will be thrown for errors
+     */
+    public final JJJVMMethod findMethod(final JJJVMSymbol methodName, final JJJVMSymbol methodSignature) throws Throwable {
         JJJVMMethod result = findDeclaredMethod(methodName, methodSignature);
         if (result == null) {
             final Object resolvedClass = this.resolveSuperclass();
@@ -388,7 +659,20 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * @return found method object or null if not found
      */
     public final JJJVMMethod findDeclaredMethod(final String methodName, final String methodSignature) {
-        return this.declaredMethods.get(makeMethodUID(methodName, methodSignature));
+        final JJJVMSymbol name = JJJVMSymbol.find(methodName);
+        final JJJVMSymbol signature = JJJVMSymbol.find(methodSignature);
+        return name == null || signature == null ? null : findDeclaredMethod(name, signature);
+    }
+
+    /**
+     * Find for method declared only in the class.
+     *
+     * @param methodName      the method name symbol, must not be null
+     * @param methodSignature the method signature symbol, must not be null
+     * @return found method object or null if not found
+     */
+    public final JJJVMMethod findDeclaredMethod(final JJJVMSymbol methodName, final JJJVMSymbol methodSignature) {
+        return this.methodTable.get(methodName, methodSignature);
     }
 
     private void assertCanBeInstantiated() {
@@ -406,6 +690,7 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      * @throws Throwable it will be thrown for errors
      */
     public JJJVMObject newInstance(final boolean invokeDefaultConstructor) throws Throwable {
+        initialize();
         final JJJVMObject result = new JJJVMObject(this, null);
         initInstanceFields(result);
         if (invokeDefaultConstructor && !this.getClassName().equals("java/lang/Object")) {
@@ -433,6 +718,7 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
      */
     public JJJVMObject newInstance(final String constructorSignature, final Object[] args, final Object[] stack, final Object[] vars) throws Throwable {
         assertCanBeInstantiated();
+        initialize();
         final JJJVMMethod constructor = this.findMethod("<init>", constructorSignature);
         if (constructor == null) {
             throw new IllegalAccessException("Can't find the constructor [" + getClassName() + ' ' + constructorSignature + ']');
@@ -528,11 +814,84 @@ public final class JJJVMClassImpl extends JJJVMInterpreter implements JJJVMClass
         field.setStaticValue(value);
     }
 
+    /**
+     * Get implementation of a host interface for an instance of the class.
+     * Interface methods are bound to the class methods once and the binding is
+     * cached, so calls through the result object don't make any method search.
+     *
+     * @param <T>           type of the interface
+     * @param instance      instance of the class, must not be null
+     * @param hostInterface the host interface, must not be null
+     * @return object implementing the interface, must not be null
+     * @throws Throwable it will be thrown for errors
+     */
+    public <T> T asInterface(final JJJVMObject instance, final Class<T> hostInterface) throws Throwable {
+        assertNotNull("Instance is null", instance);
+        assertNotNull("Interface is null", hostInterface);
+
+        if (instance.getDeclaringClass() != this) {
+            return instance.getDeclaringClass().asInterface(instance, hostInterface);
+        }
+
+        JJJVMInterfaceBinding binding = this.interfaceBindings.get(hostInterface);
+        if (binding == null) {
+            binding = new JJJVMInterfaceBinding(this, hostInterface);
+            this.interfaceBindings.put(hostInterface, binding);
+        }
+        return hostInterface.cast(binding.makeProxy(instance));
+    }
+
+    /**
+     * Get pre-bound handle of a method for repeated calls. The method is
+     * searched only once and the handle is cached by the class.
+     *
+     * @param methodName      the method name, must not be null
+     * @param methodSignature the method signature, must not be null
+     * @return the handle, must not be null
+     * @throws Throwable it will be thrown for errors
+     * @see JJJVMCallHandle
+     */
+    public JJJVMCallHandle bind(final String methodName, final String methodSignature) throws Throwable {
+        assertNotNull("Method name is null", methodName);
+        assertNotNull("Method signature is null", methodSignature);
+
+        final JJJVMMethod method = findMethod(methodName, methodSignature);
+        if (method == null) {
+            throw new NoSuchMethodException("Can't find method [" + getClassName() + '#' + methodName + methodSignature + ']');
+        }
+        JJJVMCallHandle result = this.callHandles.get(method);
+        if (result == null) {
+            result = new JJJVMCallHandle(this, method);
+            this.callHandles.put(method, result);
+        }
+        return result;
+    }
+
+    /**
+     * Clear caches of virtual dispatch of all handles made by the class. It is
+     * called by the provider when classes are unloaded.
+     */
+    public void clearDispatchCaches() {
+        for (final JJJVMCallHandle handle : this.callHandles.values()) {
+            handle.clearDispatchCache();
+        }
+    }
+
     public Map<String, JJJVMField> getAllDeclaredFields() {
         return this.declaredFields;
     }
 
     public Map<String, JJJVMMethod> getAllDeclaredMethods() {
-        return this.declaredMethods;
+        Map<String, JJJVMMethod> result = this.declaredMethodsMap;
+        if (result == null) {
+            // the map is needed rarely so it is made only by request
+            final Map<String, JJJVMMethod> map = new LinkedHashMap<String, JJJVMMethod>();
+            for (final JJJVMClassMethodImpl method : this.declaredMethods) {
+                map.put(method.getName() + '.' + method.getSignature(), method);
+            }
+            result = Collections.unmodifiableMap(map);
+            this.declaredMethodsMap = result;
+        }
+        return result;
     }
 }
@@ -17,92 +17,31 @@ package com.igormaznitsa.jjjvm.impl;
 
 import com.igormaznitsa.jjjvm.model.*;
 import com.igormaznitsa.jjjvm.*;
-import java.io.DataInputStream;
-import java.io.IOException;
 
-public final class JJJVMClassMethodImpl implements JJJVMMethod {
-
-  private final JJJVMClass declaringClass;
-  private final int flags;
-  private final String name;
-  private final String signature;
-  private final String[] declaredExceptions;
-  private final JJJVMTryCatchRecord[] catchBlocks;
-  private final int maxStackDepth;
-  private final int maxLocals;
-  private final byte[] bytecode;
+/**
+ * Method of a class. Parsed data and byte code are taken from the shared class
+ * image, only the native implementation is bound per class.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.6}
+ */
+public final class JJJVMClassMethodImpl implements JJJVMMethod, JJJVMMethodProfile.Holder {
 
-  JJJVMClassMethodImpl(final JJJVMClassImpl declaringClass, final DataInputStream inStream) throws IOException {
-    final JJJVMConstantPoolImpl cpool = declaringClass.getConstantPool();
+  private final JJJVMClassImpl declaringClass;
+  private final JJJVMClassImage.MethodImage image;
+  private volatile JJJVMNativeMethod nativeImplementation;
+  private final JJJVMMethodProfile profile;
 
+  JJJVMClassMethodImpl(final JJJVMClassImpl declaringClass, final JJJVMClassImage.MethodImage image) {
     this.declaringClass = declaringClass;
-    this.flags = inStream.readUnsignedShort();
-    final int nameIndex = inStream.readUnsignedShort();
-    final int descriptorIndex = inStream.readUnsignedShort();
-    this.name = cpool.getItemAt(nameIndex).asString();
-    this.signature = cpool.getItemAt(descriptorIndex).asString();
-
-    int numberOfAttrs = inStream.readUnsignedShort();
-
-    String[] declExceptions = null;
-    int lmaxStackDepth = -1;
-    int lmaxLocalVars = -1;
-    byte[] lbytecode = null;
-    JJJVMTryCatchRecord[] lcatchBlocks = null;
-
-    while (--numberOfAttrs >= 0) {
-      final String attrName = cpool.getItemAt(inStream.readUnsignedShort()).asString();
-      // read the size of the attribute data
-      final int attributeDataLen = inStream.readInt();
-      if (JJJVMConstants.ATTRNAME_EXCEPTIONS.equals(attrName)) {
-        // read exceptions table for the method i.e. the tail contains exceptions which can be thrown by the method
-        final int numberOfExceptions = inStream.readUnsignedShort();
-        declExceptions = numberOfExceptions == 0 ? JJJVMConstants.EMPTY_STRING_ARRAY : new String[numberOfExceptions];
-        for (int li = 0; li < numberOfExceptions; li++) {
-          declExceptions[li] = cpool.getItemAt(inStream.readUnsignedShort()).asString();
-        }
-      } else {
-        if (JJJVMConstants.ATTRNAME_CODE.equals(attrName)) {
-          // read the method bytecode and its attributes
-          lmaxStackDepth = inStream.readUnsignedShort();
-          lmaxLocalVars = inStream.readUnsignedShort();
-          lbytecode = new byte[inStream.readInt()];
-          inStream.readFully(lbytecode);
-          // read the table of exception processors for the bytecode
-          final int catchBlockNumber = inStream.readUnsignedShort();
-          lcatchBlocks = catchBlockNumber == 0 ? JJJVMConstants.EMPTY_CATCBLOCK_ARRAY : new JJJVMTryCatchRecord[catchBlockNumber];
-          for (int li = 0; li < lcatchBlocks.length; li++) {
-            lcatchBlocks[li] = new JJJVMTryCatchRecord(cpool, inStream);
-          }
-          // skip all other attributes in the code attribute
-          JJJVMClassImpl.skipAllAttributesInStream(inStream);
-        } else {
-          // skip other attribute data
-          JJJVMImplUtils.skip(inStream, attributeDataLen);
-        }
-      }
-    }
-    // it would be good for us to keep arrays as objects but null
-    if (declExceptions == null) {
-      declExceptions = new String[0];
-    }
-    if (lcatchBlocks == null) {
-      lcatchBlocks = new JJJVMTryCatchRecord[0];
-    }
-
-    this.declaredExceptions = declExceptions;
-    this.catchBlocks = lcatchBlocks;
-    this.maxStackDepth = lmaxStackDepth;
-    this.maxLocals = lmaxLocalVars;
-    this.bytecode = lbytecode;
+    this.image = image;
+    this.profile = new JJJVMMethodProfile(image.signature.getText());
   }
 
   public String[] getDeclaredExceptions() {
-    return this.declaredExceptions;
+    return this.image.declaredExceptions;
   }
 
   public Object invoke(final JJJVMObject instance, final Object[] arguments) throws Throwable {
-    if ((this.flags & JJJVMConstants.ACC_STATIC) == 0 && instance == null) {
+    if ((this.image.flags & JJJVMConstants.ACC_STATIC) == 0 && instance == null) {
       throw new NullPointerException("'this' can't be null for non-static method");
     }
     return JJJVMInterpreter.invoke(this.declaringClass, instance, this, arguments, null, null);
@@ -113,31 +52,58 @@ public final class JJJVMClassMethodImpl implements JJJVMMethod {
   }
 
   public JJJVMTryCatchRecord[] getTryCatchRecords() {
-    return this.catchBlocks;
+    return this.image.getBody().catchBlocks;
   }
 
   public String getName() {
-    return this.name;
+    return this.image.name.getText();
   }
 
   public String getSignature() {
-    return this.signature;
+    return this.image.signature.getText();
+  }
+
+  JJJVMSymbol getNameSymbol() {
+    return this.image.name;
+  }
+
+  JJJVMSymbol getSignatureSymbol() {
+    return this.image.signature;
   }
 
   public int getFlags() {
-    return this.flags;
+    return this.image.flags;
   }
 
   public int getMaxStackDepth() {
-    return this.maxStackDepth;
+    return this.image.getBody().maxStackDepth;
   }
 
   public int getMaxLocals() {
-    return this.maxLocals;
+    return this.image.getBody().maxLocals;
   }
 
   public byte[] getBytecode() {
-    return this.bytecode;
+    return this.image.getBody().bytecode;
+  }
+
+  public JJJVMMethodProfile getProfile() {
+    return this.profile;
+  }
+
+  public JJJVMNativeMethod getNativeImplementation() {
+    JJJVMNativeMethod result = this.nativeImplementation;
+    if (result == null && (this.image.flags & JJJVMConstants.ACC_NATIVE) != 0) {
+      // the implementation can be registered after the class loading
+      result = bindNativeImplementation();
+    }
+    return result;
+  }
+
+  JJJVMNativeMethod bindNativeImplementation() {
+    final JJJVMNativeMethod result = this.declaringClass.getProvider().findNativeMethod(this.declaringClass, this.image.name.getText(), this.image.signature.getText());
+    this.nativeImplementation = result;
+    return result;
   }
 
   @Override
@@ -18,108 +18,239 @@ package com.igormaznitsa.jjjvm.impl;
 import com.igormaznitsa.jjjvm.model.JJJVMClass;
 import com.igormaznitsa.jjjvm.model.JJJVMConstantPool;
 import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
-import java.io.DataInputStream;
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
+import com.igormaznitsa.jjjvm.model.JJJVMSymbol;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
+/**
+ * Compact constant pool. Item types are kept in a byte array, indexes and
+ * numeric values in an int array, strings are decoded from the class buffer on
+ * the first request, class and member names into canonical symbols and other
+ * strings into strings interned by the platform. Member references are
+ * resolved once into immutable records. Item objects are made only if
+ * requested.
+ */
 public class JJJVMConstantPoolImpl implements JJJVMConstantPool {
 
-  private final JJJVMConstantPoolItem[] records;
-  private final JJJVMClass klazz;
+  /**
+   * Immutable part of the constant pool which can be shared by classes made
+   * from the same class image. Lazily filled symbols and member references are
+   * canonical, so they are safe to publish through data race.
+   *
+   * @see JJJVMClassImage
+   */
+  static final class Table {
 
-  public JJJVMConstantPoolImpl(final JJJVMClass klazz, final DataInputStream inStream) throws IOException {
-    int index = 0;
+    private final ByteBuffer buffer;
+    private final byte[] tags;
+    // packed indexes and numeric values, buffer offsets for strings, two ints for long and double
+    private final int[] values;
+    private final JJJVMSymbol[] symbols;
+    // strings which are not names, like string literals and attribute names
+    private final String[] texts;
+    private final JJJVMMemberRef[] memberRefs;
 
-    this.klazz = klazz;
+    Table(final ByteBuffer inBuffer) throws IOException {
+      int index = 1;
 
-    int itemsNumber = inStream.readUnsignedShort();
-    this.records = new JJJVMConstantPoolItem[itemsNumber];
-    this.records[index++] = null;
-    itemsNumber--;
+      this.buffer = inBuffer.duplicate();
 
-    final StringBuilder strBuffer = new StringBuilder(128);
+      final int itemsNumber = JJJVMImplUtils.readUnsignedShort(inBuffer);
+      this.tags = new byte[itemsNumber];
+      this.values = new int[itemsNumber];
+      this.symbols = new JJJVMSymbol[itemsNumber];
+      this.texts = new String[itemsNumber];
+      this.memberRefs = new JJJVMMemberRef[itemsNumber];
+
+      while (index < itemsNumber) {
+        final int recordType = JJJVMImplUtils.readUnsignedByte(inBuffer);
+        this.tags[index] = (byte) recordType;
+        switch (recordType) {
+          case JJJVMConstantPoolItem.CONSTANT_UTF8: {
+            this.values[index] = inBuffer.position();
+            JJJVMImplUtils.skip(inBuffer, JJJVMImplUtils.readUnsignedShort(inBuffer));
+          }
+          break;
+          case JJJVMConstantPoolItem.CONSTANT_UNICODE: {
+            this.values[index] = inBuffer.position();
+            JJJVMImplUtils.skip(inBuffer, JJJVMImplUtils.readUnsignedShort(inBuffer) << 1);
+          }
+          break;
+          case JJJVMConstantPoolItem.CONSTANT_LONG:
+          case JJJVMConstantPoolItem.CONSTANT_DOUBLE: {
+            this.values[index++] = inBuffer.getInt();
+            this.values[index] = inBuffer.getInt();
+          }
+          break;
+          case JJJVMConstantPoolItem.CONSTANT_INTEGER:
+          case JJJVMConstantPoolItem.CONSTANT_FLOAT:
+          case JJJVMConstantPoolItem.CONSTANT_FIELDREF:
+          case JJJVMConstantPoolItem.CONSTANT_METHODREF:
+          case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD:
+          case JJJVMConstantPoolItem.CONSTANT_NAMETYPEREF:
+          case JJJVMConstantPoolItem.CONSTANT_INVOKEDYNAMIC: {
+            // two u2 indexes are packed into int
+            this.values[index] = inBuffer.getInt();
+          }
+          break;
+          case JJJVMConstantPoolItem.CONSTANT_METHODHANDLE: {
+            // reference kind is u1 and reference index is u2
+            final int kind = JJJVMImplUtils.readUnsignedByte(inBuffer);
+            this.values[index] = (kind << 16) | JJJVMImplUtils.readUnsignedShort(inBuffer);
+          }
+          break;
+          case JJJVMConstantPoolItem.CONSTANT_CLASSREF:
+          case JJJVMConstantPoolItem.CONSTANT_STRING:
+          case JJJVMConstantPoolItem.CONSTANT_METHODTYPE: {
+            this.values[index] = JJJVMImplUtils.readUnsignedShort(inBuffer);
+          }
+          break;
+          default: {
+            throw new IOException("Unsupported constant pool item [" + recordType + ']');
+          }
+        }
+        index++;
+      }
+    }
 
-    while (itemsNumber > 0) {
-      boolean doubleRecordItem = false;
-      final int recordType = inStream.readUnsignedByte();
-      final Object recordValue;
-      switch (recordType) {
+    int size() {
+      return this.tags.length;
+    }
+
+    String getClassNameAt(final int index) {
+      return getSymbolAt(this.values[index]).getText();
+    }
+
+    JJJVMSymbol getSymbolAt(final int index) {
+      JJJVMSymbol result = this.symbols[index];
+      if (result == null) {
+        // symbols are canonical so concurrent decoding gives the same object
+        result = JJJVMSymbol.of(decode(index));
+        this.symbols[index] = result;
+      }
+      return result;
+    }
+
+    String getTextAt(final int index) {
+      final JJJVMSymbol symbol = this.symbols[index];
+      if (symbol != null) {
+        return symbol.getText();
+      }
+      String result = this.texts[index];
+      if (result == null) {
+        // string literals must be the same object in all classes, the platform doesn't keep unused ones
+        result = decode(index).intern();
+        this.texts[index] = result;
+      }
+      return result;
+    }
+
+    private String decode(final int index) {
+      final ByteBuffer buf = this.buffer;
+      final int offset = this.values[index];
+      final int length = buf.getShort(offset) & 0xFFFF;
+      switch (this.tags[index]) {
         case JJJVMConstantPoolItem.CONSTANT_UTF8: {
-          recordValue = inStream.readUTF();
+          return JJJVMImplUtils.readUtf8(buf, offset + 2, length);
         }
-        break;
         case JJJVMConstantPoolItem.CONSTANT_UNICODE: {
-          final int len = inStream.readUnsignedShort();
-          for (int i = 0; i < len; i++) {
-            char ch_char = (char) inStream.readUnsignedShort();
-            strBuffer.append(ch_char);
+          final char[] chars = new char[length];
+          for (int i = 0; i < length; i++) {
+            chars[i] = buf.getChar(offset + 2 + (i << 1));
           }
-          recordValue = strBuffer.toString();
-          strBuffer.setLength(0);
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_INTEGER: {
-          recordValue = inStream.readInt();
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_FLOAT: {
-          recordValue = inStream.readFloat();
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_LONG: {
-          recordValue = inStream.readLong();
-          doubleRecordItem = true;
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_DOUBLE: {
-          recordValue = inStream.readDouble();
-          doubleRecordItem = true;
+          return new String(chars);
         }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_CLASSREF:
-        case JJJVMConstantPoolItem.CONSTANT_STRING: {
-          recordValue = inStream.readUnsignedShort();
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_FIELDREF:
-        case JJJVMConstantPoolItem.CONSTANT_METHODREF:
-        case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD:
-        case JJJVMConstantPoolItem.CONSTANT_NAMETYPEREF:
-        case JJJVMConstantPoolItem.CONSTANT_METHODHANDLE:
-        case JJJVMConstantPoolItem.CONSTANT_INVOKEDYNAMIC: {
-          final int high = inStream.readUnsignedShort();
-          final int low = inStream.readUnsignedShort();
-          recordValue = (high << 16) | low;
-        }
-        break;
-        case JJJVMConstantPoolItem.CONSTANT_METHODTYPE: {
-          final int descIndex = inStream.readUnsignedShort();
-          recordValue = descIndex;
-        }
-        break;
         default: {
-          throw new IOException("Unsupported constant pool item [" + recordType + ']');
+          throw new IllegalArgumentException("Constant pool item is not string [" + index + ']');
         }
       }
+    }
 
-      this.records[index++] = new JJJVMConstantPoolItem(this, recordType, recordValue);
-      if (doubleRecordItem) {
-        itemsNumber--;
-        index++;
+    JJJVMMemberRef getMemberRefAt(final int index) {
+      JJJVMMemberRef result = this.memberRefs[index];
+      if (result == null) {
+        final int type = this.tags[index];
+        switch (type) {
+          case JJJVMConstantPoolItem.CONSTANT_FIELDREF:
+          case JJJVMConstantPoolItem.CONSTANT_METHODREF:
+          case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD: {
+            final int packed = this.values[index];
+            final int nameAndType = this.values[packed & 0xFFFF];
+            result = new JJJVMMemberRef(type, getClassNameAt(packed >>> 16), getSymbolAt(nameAndType >>> 16), getSymbolAt(nameAndType & 0xFFFF));
+          }
+          break;
+          default: {
+            throw new IllegalArgumentException("Constant pool item is not member reference [" + index + ']');
+          }
+        }
+        // the record is immutable so it can be safely published through data race
+        this.memberRefs[index] = result;
       }
-      itemsNumber--;
+      return result;
     }
   }
 
+  private final Table table;
+  private final JJJVMConstantPoolItem[] records;
+  private final JJJVMClass klazz;
+
+  public JJJVMConstantPoolImpl(final JJJVMClass klazz, final ByteBuffer inBuffer) throws IOException {
+    this(klazz, new Table(inBuffer));
+  }
+
+  JJJVMConstantPoolImpl(final JJJVMClass klazz, final Table table) {
+    this.klazz = klazz;
+    this.table = table;
+    this.records = new JJJVMConstantPoolItem[table.size()];
+  }
+
   public JJJVMClass getDeclaringClass() {
     return this.klazz;
   }
 
   public JJJVMConstantPoolItem getItemAt(final int index) {
-    return this.records[index];
+    JJJVMConstantPoolItem result = this.records[index];
+    if (result == null && this.table.tags[index] != 0) {
+      // items can have linked objects so only one item must be made for index
+      synchronized (this.records) {
+        result = this.records[index];
+        if (result == null) {
+          result = new JJJVMConstantPoolItem(this, index);
+          this.records[index] = result;
+        }
+      }
+    }
+    return result;
+  }
+
+  public int getTagAt(final int index) {
+    return this.table.tags[index];
+  }
+
+  public int getIntAt(final int index) {
+    return this.table.values[index];
+  }
+
+  public long getLongAt(final int index) {
+    final int[] values = this.table.values;
+    return ((long) values[index] << 32) | (values[index + 1] & 0xFFFFFFFFL);
+  }
+
+  public String getUtf8At(final int index) {
+    return this.table.getTextAt(index);
+  }
+
+  public JJJVMSymbol getSymbolAt(final int index) {
+    return this.table.getSymbolAt(index);
+  }
+
+  public JJJVMMemberRef getMemberRefAt(final int index) {
+    return this.table.getMemberRefAt(index);
   }
 
   public int size() {
-    return this.records.length;
+    return this.table.size();
   }
 
 }
@@ -1,8 +1,11 @@
 package com.igormaznitsa.jjjvm.impl;
 
-import java.io.DataInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 
@@ -26,9 +29,157 @@ public abstract class JJJVMImplUtils {
         }
     }
 
-    public static void skip(final DataInputStream stream, final int bytesToSkip) throws IOException {
-        if (stream.skipBytes(bytesToSkip) != bytesToSkip) {
+    /**
+     * Make JVM formatted signature for a class.
+     *
+     * @param klazz the class, must not be null
+     * @return the signature like "I" or "Ljava/lang/String;"
+     */
+    public static String makeSignature(final Class<?> klazz) {
+        if (klazz.isArray()) {
+            return klazz.getName().replace('.', '/');
+        }
+        if (klazz.isPrimitive()) {
+            if (klazz == int.class) {
+                return "I";
+            } else if (klazz == long.class) {
+                return "J";
+            } else if (klazz == boolean.class) {
+                return "Z";
+            } else if (klazz == byte.class) {
+                return "B";
+            } else if (klazz == char.class) {
+                return "C";
+            } else if (klazz == short.class) {
+                return "S";
+            } else if (klazz == float.class) {
+                return "F";
+            } else if (klazz == double.class) {
+                return "D";
+            } else {
+                return "V";
+            }
+        }
+        return 'L' + klazz.getName().replace('.', '/') + ';';
+    }
+
+    /**
+     * Make JVM formatted signature for a method.
+     *
+     * @param method the method, must not be null
+     * @return the signature like "(ILjava/lang/String;)V"
+     */
+    public static String makeSignature(final Method method) {
+        final StringBuilder result = new StringBuilder().append('(');
+        for (final Class<?> param : method.getParameterTypes()) {
+            result.append(makeSignature(param));
+        }
+        return result.append(')').append(makeSignature(method.getReturnType())).toString();
+    }
+
+    public static void skip(final ByteBuffer buffer, final int bytesToSkip) throws IOException {
+        if (buffer.remaining() < bytesToSkip) {
             throw new IOException("Can't skip " + bytesToSkip + " byte(s)");
         }
+        buffer.position(buffer.position() + bytesToSkip);
+    }
+
+    public static int readUnsignedByte(final ByteBuffer buffer) {
+        return buffer.get() & 0xFF;
+    }
+
+    public static int readUnsignedShort(final ByteBuffer buffer) {
+        return buffer.getShort() & 0xFFFF;
+    }
+
+    /**
+     * Read whole stream into byte array.
+     *
+     * @param in the stream, must not be null
+     * @return read bytes, must not be null
+     * @throws IOException it will be thrown for transport errors
+     */
+    public static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream(Math.max(in.available(), 1024));
+        final byte[] chunk = new byte[8192];
+        while (true) {
+            final int read = in.read(chunk);
+            if (read < 0) {
+                break;
+            }
+            result.write(chunk, 0, read);
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Decode modified UTF-8 string from a buffer without changing its position.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html#jvms-4.4.7}
+     *
+     * @param buffer the buffer, must not be null
+     * @param offset absolute offset of the first byte of the string
+     * @param length number of bytes in the string
+     * @return decoded string, must not be null
+     */
+    public static String readUtf8(final ByteBuffer buffer, final int offset, final int length) {
+        final char[] chars = new char[length];
+        final int end = offset + length;
+        int pos = offset;
+        int count = 0;
+
+        // most of names and signatures are pure ASCII
+        while (pos < end) {
+            final int b = buffer.get(pos);
+            if (b < 0) {
+                break;
+            }
+            chars[count++] = (char) b;
+            pos++;
+        }
+
+        while (pos < end) {
+            final int b = buffer.get(pos++) & 0xFF;
+            switch (b >> 4) {
+                case 0:
+                case 1:
+                case 2:
+                case 3:
+                case 4:
+                case 5:
+                case 6:
+                case 7: {
+                    chars[count++] = (char) b;
+                }
+                break;
+                case 12:
+                case 13: {
+                    if (pos >= end) {
+                        throw new IllegalStateException("Malformed UTF-8 string at " + offset);
+                    }
+                    final int b2 = buffer.get(pos++);
+                    if ((b2 & 0xC0) != 0x80) {
+                        throw new IllegalStateException("Malformed UTF-8 string at " + offset);
+                    }
+                    chars[count++] = (char) (((b & 0x1F) << 6) | (b2 & 0x3F));
+                }
+                break;
+                case 14: {
+                    if (pos + 1 >= end) {
+                        throw new IllegalStateException("Malformed UTF-8 string at " + offset);
+                    }
+                    final int b2 = buffer.get(pos++);
+                    final int b3 = buffer.get(pos++);
+                    if ((b2 & 0xC0) != 0x80 || (b3 & 0xC0) != 0x80) {
+                        throw new IllegalStateException("Malformed UTF-8 string at " + offset);
+                    }
+                    chars[count++] = (char) (((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F));
+                }
+                break;
+                default: {
+                    throw new IllegalStateException("Malformed UTF-8 string at " + offset);
+                }
+            }
+        }
+        return new String(chars, 0, count);
     }
 }
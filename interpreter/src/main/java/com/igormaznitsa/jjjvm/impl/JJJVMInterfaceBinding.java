@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl;
+
+import com.igormaznitsa.jjjvm.JJJVMFramePool;
+import com.igormaznitsa.jjjvm.JJJVMInterpreter;
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+import com.igormaznitsa.jjjvm.model.JJJVMConstants;
+import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMObject;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Table binding methods of a host interface to methods of an interpreted
+ * class. Every interface method is resolved once, so calls through the proxy
+ * made for an interpreted object don't need any name lookup.
+ *
+ * @see JJJVMClassImpl#asInterface(com.igormaznitsa.jjjvm.model.JJJVMObject, java.lang.Class)
+ */
+final class JJJVMInterfaceBinding {
+
+    private static final int INDEX_EQUALS = 0;
+    private static final int INDEX_HASHCODE = 1;
+    private static final int INDEX_TOSTRING = 2;
+
+    private final Class<?> hostInterface;
+    private final Constructor<?> proxyConstructor;
+    private final Method[] methods;
+    private final JJJVMFramePool[] targets;
+    private final char[][] argTypes;
+    private final char[] returnTypes;
+
+    JJJVMInterfaceBinding(final JJJVMClass klazz, final Class<?> hostInterface) throws Throwable {
+        if (!hostInterface.isInterface()) {
+            throw new IllegalArgumentException("Not interface [" + hostInterface.getName() + ']');
+        }
+        this.hostInterface = hostInterface;
+
+        final List<Method> methodList = new ArrayList<Method>();
+        methodList.add(Object.class.getMethod("equals", Object.class));
+        methodList.add(Object.class.getMethod("hashCode"));
+        methodList.add(Object.class.getMethod("toString"));
+        for (final Method m : hostInterface.getMethods()) {
+            if (!Modifier.isStatic(m.getModifiers()) && !isObjectMethod(m)) {
+                methodList.add(m);
+            }
+        }
+
+        this.methods = methodList.toArray(new Method[methodList.size()]);
+        this.targets = new JJJVMFramePool[this.methods.length];
+        this.argTypes = new char[this.methods.length][];
+        this.returnTypes = new char[this.methods.length];
+
+        for (int i = 0; i < this.methods.length; i++) {
+            final Method m = this.methods[i];
+            final Class<?>[] params = m.getParameterTypes();
+            final char[] types = new char[params.length];
+            for (int p = 0; p < params.length; p++) {
+                types[p] = JJJVMImplUtils.makeSignature(params[p]).charAt(0);
+            }
+            this.argTypes[i] = types;
+            this.returnTypes[i] = JJJVMImplUtils.makeSignature(m.getReturnType()).charAt(0);
+
+            final JJJVMMethod found = klazz.findMethod(m.getName(), JJJVMImplUtils.makeSignature(m));
+            if (found != null && (found.getFlags() & (JJJVMConstants.ACC_ABSTRACT | JJJVMConstants.ACC_STATIC)) == 0) {
+                this.targets[i] = new JJJVMFramePool(found);
+            }
+        }
+
+        ClassLoader loader = hostInterface.getClassLoader();
+        if (loader == null) {
+            loader = JJJVMInterfaceBinding.class.getClassLoader();
+        }
+        this.proxyConstructor = Proxy.getProxyClass(loader, hostInterface).getConstructor(InvocationHandler.class);
+    }
+
+    private static boolean isObjectMethod(final Method method) {
+        final String name = method.getName();
+        final Class<?>[] params = method.getParameterTypes();
+        if (params.length == 0) {
+            return "hashCode".equals(name) || "toString".equals(name);
+        }
+        return params.length == 1 && params[0] == Object.class && "equals".equals(name);
+    }
+
+    Class<?> getHostInterface() {
+        return this.hostInterface;
+    }
+
+    Object makeProxy(final JJJVMObject instance) throws Throwable {
+        return this.proxyConstructor.newInstance(new Handler(this, instance));
+    }
+
+    private int indexOf(final Method method) {
+        final Method[] array = this.methods;
+        for (int i = 0; i < array.length; i++) {
+            if (array[i] == method) {
+                return i;
+            }
+        }
+        // proxy classes keep their own Method instances, remember them to find them by identity next time
+        for (int i = 0; i < array.length; i++) {
+            if (array[i].equals(method)) {
+                array[i] = method;
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private Object call(final Object proxy, final JJJVMObject instance, final Method method, final Object[] args) throws Throwable {
+        final int index = indexOf(method);
+        if (index < 0) {
+            throw new UnsupportedOperationException("Unexpected method [" + method + ']');
+        }
+
+        final JJJVMFramePool target = this.targets[index];
+        if (target == null) {
+            switch (index) {
+                case INDEX_EQUALS:
+                    return proxy == args[0];
+                case INDEX_HASHCODE:
+                    return System.identityHashCode(instance);
+                case INDEX_TOSTRING:
+                    return instance.getDeclaringClass().getName() + '@' + Integer.toHexString(System.identityHashCode(instance));
+                default:
+                    throw new UnsupportedOperationException("Method is not implemented by interpreted class [" + instance.getDeclaringClass().getName() + '#' + method.getName() + ']');
+            }
+        }
+
+        if (args != null) {
+            final char[] types = this.argTypes[index];
+            for (int i = 0; i < args.length; i++) {
+                final Object arg = args[i];
+                args[i] = arg == proxy ? instance : JJJVMInterpreter.toInterpreterValue(arg, types[i]);
+            }
+        }
+        return JJJVMInterpreter.toHostValue(target.invoke(instance, args), this.returnTypes[index]);
+    }
+
+    private static final class Handler implements InvocationHandler {
+
+        private final JJJVMInterfaceBinding binding;
+        private final JJJVMObject instance;
+
+        private Handler(final JJJVMInterfaceBinding binding, final JJJVMObject instance) {
+            this.binding = binding;
+            this.instance = instance;
+        }
+
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+            return this.binding.call(proxy, this.instance, method, args);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl;
+
+import com.igormaznitsa.jjjvm.model.JJJVMSymbol;
+
+/**
+ * Immutable open addressing table of class methods keyed by pair of name and
+ * signature symbols, the symbols are compared by identity.
+ */
+final class JJJVMMethodTable {
+
+  private final JJJVMSymbol[] names;
+  private final JJJVMSymbol[] signatures;
+  private final JJJVMClassMethodImpl[] methods;
+  private final int mask;
+
+  JJJVMMethodTable(final JJJVMClassMethodImpl[] methods) {
+    int capacity = 4;
+    while (capacity < methods.length * 2) {
+      capacity <<= 1;
+    }
+    this.mask = capacity - 1;
+    this.names = new JJJVMSymbol[capacity];
+    this.signatures = new JJJVMSymbol[capacity];
+    this.methods = new JJJVMClassMethodImpl[capacity];
+
+    for (final JJJVMClassMethodImpl method : methods) {
+      final JJJVMSymbol name = method.getNameSymbol();
+      final JJJVMSymbol signature = method.getSignatureSymbol();
+      int index = hash(name, signature) & this.mask;
+      while (this.names[index] != null && (this.names[index] != name || this.signatures[index] != signature)) {
+        index = (index + 1) & this.mask;
+      }
+      this.names[index] = name;
+      this.signatures[index] = signature;
+      this.methods[index] = method;
+    }
+  }
+
+  private static int hash(final JJJVMSymbol name, final JJJVMSymbol signature) {
+    final int h = name.hashCode() * 31 + signature.hashCode();
+    return h ^ (h >>> 16);
+  }
+
+  JJJVMClassMethodImpl get(final JJJVMSymbol name, final JJJVMSymbol signature) {
+    int index = hash(name, signature) & this.mask;
+    JJJVMSymbol current;
+    while ((current = this.names[index]) != null) {
+      if (current == name && this.signatures[index] == signature) {
+        return this.methods[index];
+      }
+      index = (index + 1) & this.mask;
+    }
+    return null;
+  }
+}
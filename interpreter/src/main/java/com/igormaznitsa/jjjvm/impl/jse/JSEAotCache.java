@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl.jse;
+
+import com.igormaznitsa.jjjvm.JJJVMAot;
+import com.igormaznitsa.jjjvm.impl.JJJVMClassImpl;
+import com.igormaznitsa.jjjvm.impl.JJJVMImplUtils;
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Disk cache of classes translated ahead of time. Every class is kept in its
+ * own file named by hash of the class data, so a changed class never gets
+ * stale compiled code. The cache can be filled by the command line tool
+ * {@link #main(java.lang.String[])} during build and attached to a provider by
+ * {@link JSEProviderImpl#setAotCache(JSEAotCache)}.
+ * <p>
+ * Files of the cache contain host byte-code which is executed without checks
+ * of the interpreter and without restrictions of the provider policy, so the
+ * cache directory must be writable only by trusted users and filled only by
+ * trusted tools.
+ * </p>
+ *
+ * @see JJJVMAot
+ */
+public final class JSEAotCache {
+
+    private static final String EXTENSION = ".jjjaot";
+
+    private final File directory;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Make cache in a directory, the directory is created if it doesn't exist.
+     *
+     * @param directory the cache directory, must not be null
+     * @throws IOException if the directory can't be created
+     */
+    public JSEAotCache(final File directory) throws IOException {
+        JJJVMImplUtils.assertNotNull("Directory is null", directory);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Can't create directory [" + directory + ']');
+        }
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return this.directory;
+    }
+
+    /**
+     * Get file which keeps compiled code of a class.
+     *
+     * @param klazz the class, must not be null
+     * @return the file, it can be absent
+     */
+    public File getFile(final JJJVMClassImpl klazz) {
+        return new File(this.directory, klazz.getImage().getHash() + EXTENSION);
+    }
+
+    /**
+     * Translate a class and save its compiled code.
+     *
+     * @param klazz the class, must not be null
+     * @return number of translated methods
+     * @throws IOException it will be thrown for transport errors
+     */
+    public int store(final JJJVMClassImpl klazz) throws IOException {
+        final File file = getFile(klazz);
+        final File temp = new File(this.directory, file.getName() + ".tmp");
+        final int result;
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+        try {
+            result = JJJVMAot.compile(klazz, out);
+        } finally {
+            out.close();
+        }
+        // readers never see partially written file
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Can't write file [" + file + ']');
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Install saved compiled code into a class. Broken or outdated files are
+     * ignored and the class stays interpreted.
+     *
+     * @param klazz the class, must not be null
+     * @return number of installed methods, zero if there is no saved code
+     */
+    public int install(final JJJVMClassImpl klazz) {
+        final File file = getFile(klazz);
+        if (!file.isFile()) {
+            this.misses.incrementAndGet();
+            return 0;
+        }
+        try {
+            final InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                final int result = JJJVMAot.install(klazz, in, file.length());
+                this.hits.incrementAndGet();
+                return result;
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            this.misses.incrementAndGet();
+            return 0;
+        } catch (RuntimeException ex) {
+            // damaged file
+            this.misses.incrementAndGet();
+            return 0;
+        }
+    }
+
+    /**
+     * Get number of classes whose compiled code was found.
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Get number of classes without usable compiled code.
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Command line tool to translate classes into the cache.
+     * <pre>
+     * java com.igormaznitsa.jjjvm.impl.jse.JSEAotCache &lt;cache directory&gt; &lt;jar or class file&gt;...
+     * </pre>
+     *
+     * @param args the cache directory and files to be translated
+     * @throws Exception it will be thrown for errors
+     */
+    public static void main(final String... args) throws Exception {
+        if (args.length < 2) {
+            System.err.println("Usage: JSEAotCache <cache directory> <jar or class file>...");
+            System.exit(1);
+            return;
+        }
+        final JSEAotCache cache = new JSEAotCache(new File(args[0]));
+        int classes = 0;
+        int methods = 0;
+        for (int i = 1; i < args.length; i++) {
+            final File file = new File(args[i]);
+            try {
+                if (file.getName().endsWith(".class")) {
+                    final byte[] body;
+                    final InputStream in = new FileInputStream(file);
+                    try {
+                        body = JJJVMImplUtils.readAll(in);
+                    } finally {
+                        in.close();
+                    }
+                    methods += cache.store(new JJJVMClassImpl(ByteBuffer.wrap(body), new JSEProviderImpl()));
+                    classes++;
+                } else {
+                    final JSEJarClassDataLoader loader = new JSEJarClassDataLoader(file);
+                    final JSEProviderImpl provider = new JSEProviderImpl(loader);
+                    for (final String className : loader.getClassNames()) {
+                        methods += cache.store(new JJJVMClassImpl(loader.loadClassBuffer(className), provider));
+                        classes++;
+                    }
+                }
+            } catch (Throwable ex) {
+                System.err.println("Can't translate " + file + ": " + ex);
+            }
+        }
+        System.out.println("Translated " + methods + " method(s) of " + classes + " class(es) into " + cache.getDirectory());
+    }
+
+    /**
+     * Install compiled code into a class if it is an interpreted one.
+     *
+     * @param klazz the class, can be null
+     */
+    void installInto(final JJJVMClass klazz) {
+        if (klazz instanceof JJJVMClassImpl) {
+            install((JJJVMClassImpl) klazz);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl.jse;
+
+/**
+ * Sizes of caches of a provider. Zero or negative size means unbounded cache.
+ *
+ * @see JSEProviderImpl#JSEProviderImpl(com.igormaznitsa.jjjvm.impl.jse.JSEProviderImpl.ClassDataLoader, com.igormaznitsa.jjjvm.impl.jse.JSECacheConfig)
+ * @see com.igormaznitsa.jjjvm.JJJVMCache
+ */
+public final class JSECacheConfig {
+
+    private int classCacheSize = 0;
+    private int parsedArgsCacheSize = 1024;
+    private int castCacheSize = 4096;
+
+    public int getClassCacheSize() {
+        return this.classCacheSize;
+    }
+
+    /**
+     * Set max number of resolved classes kept by the provider. An evicted
+     * interpreted class is loaded again on demand and gets new static state,
+     * so the limit suits stateless code only. Unbounded by default.
+     *
+     * @param size max number of classes
+     */
+    public void setClassCacheSize(final int size) {
+        this.classCacheSize = size;
+    }
+
+    public int getParsedArgsCacheSize() {
+        return this.parsedArgsCacheSize;
+    }
+
+    /**
+     * Set max number of method signatures with parsed host argument classes.
+     *
+     * @param size max number of signatures, 1024 by default
+     */
+    public void setParsedArgsCacheSize(final int size) {
+        this.parsedArgsCacheSize = size;
+    }
+
+    public int getCastCacheSize() {
+        return this.castCacheSize;
+    }
+
+    /**
+     * Set max number of cached results of type checks.
+     *
+     * @param size max number of pairs of checked and target classes, 4096 by
+     *             default
+     */
+    public void setCastCacheSize(final int size) {
+        this.castCacheSize = size;
+    }
+}
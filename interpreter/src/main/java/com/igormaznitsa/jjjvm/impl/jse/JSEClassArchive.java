@@ -0,0 +1,326 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl.jse;
+
+import com.igormaznitsa.jjjvm.impl.JJJVMClassImpl;
+import com.igormaznitsa.jjjvm.impl.JJJVMImplUtils;
+import com.igormaznitsa.jjjvm.model.JJJVMClass;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Archive of class files packed into single file which is memory mapped and
+ * classes are read from slices of the mapped file. Every entry
+ * keeps CRC32 of the original class file so that the archive can be checked
+ * against changed classes.
+ * <pre>
+ * int magic 'JJCA'
+ * u2 version
+ * int number of entries
+ * int index length
+ * int CRC32 of the index
+ * index: [u2 name length, name bytes, int offset, int length, int CRC32]*
+ * class data
+ * </pre>
+ * It can be used as a tool to make archive from folders with class files.
+ */
+public final class JSEClassArchive implements JSEProviderImpl.ClassBufferLoader {
+
+    public static final int MAGIC = 0x4A4A4341;
+    public static final int VERSION = 1;
+
+    private static final int HEADER_LENGTH = 4 + 2 + 4 + 4 + 4;
+
+    private static final class Entry {
+
+        private final int offset;
+        private final int length;
+        private final int checksum;
+        private volatile boolean verified;
+
+        private Entry(final int offset, final int length, final int checksum) {
+            this.offset = offset;
+            this.length = length;
+            this.checksum = checksum;
+        }
+    }
+
+    private final ByteBuffer data;
+    private final Map<String, Entry> entries;
+
+    private JSEClassArchive(final ByteBuffer data) throws IOException {
+        this.data = data;
+
+        if (data.remaining() < HEADER_LENGTH || data.getInt(0) != MAGIC) {
+            throw new IOException("Not class archive");
+        }
+        final int version = data.getShort(4) & 0xFFFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported class archive version [" + version + ']');
+        }
+        final int numberOfEntries = data.getInt(6);
+        final int indexLength = data.getInt(10);
+        final int indexChecksum = data.getInt(14);
+        if (indexLength < 0 || HEADER_LENGTH + indexLength > data.limit()) {
+            throw new IOException("Broken class archive index");
+        }
+
+        final ByteBuffer index = data.duplicate();
+        index.position(HEADER_LENGTH);
+        index.limit(HEADER_LENGTH + indexLength);
+        if (calcChecksum(index.duplicate()) != indexChecksum) {
+            throw new IOException("Wrong checksum of class archive index");
+        }
+
+        this.entries = new HashMap<String, Entry>(numberOfEntries * 2);
+        for (int i = 0; i < numberOfEntries; i++) {
+            final byte[] name = new byte[JJJVMImplUtils.readUnsignedShort(index)];
+            index.get(name);
+            final Entry entry = new Entry(index.getInt(), index.getInt(), index.getInt());
+            if (entry.offset < 0 || entry.length < 0 || entry.offset + entry.length > data.limit()) {
+                throw new IOException("Broken class archive entry [" + new String(name, "UTF-8") + ']');
+            }
+            this.entries.put(new String(name, "UTF-8"), entry);
+        }
+    }
+
+    /**
+     * Open archive file, the file is mapped into memory.
+     *
+     * @param file the archive file, must not be null
+     * @return the opened archive, must not be null
+     * @throws IOException it will be thrown for wrong archive or transport error
+     */
+    public static JSEClassArchive open(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final MappedByteBuffer mapped = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length());
+            return new JSEClassArchive(mapped);
+        } finally {
+            // the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Open archive from buffer.
+     *
+     * @param buffer buffer contains the archive, must not be null
+     * @return the opened archive, must not be null
+     * @throws IOException it will be thrown for wrong archive
+     */
+    public static JSEClassArchive wrap(final ByteBuffer buffer) throws IOException {
+        return new JSEClassArchive(buffer.slice());
+    }
+
+    private static int calcChecksum(final ByteBuffer buffer) {
+        final CRC32 crc = new CRC32();
+        if (buffer.hasArray()) {
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } else {
+            // CRC32.update(ByteBuffer) is not available on Java 1.5, mapped data is read by chunks
+            final byte[] chunk = new byte[Math.min(buffer.remaining(), 8192)];
+            while (buffer.hasRemaining()) {
+                final int length = Math.min(chunk.length, buffer.remaining());
+                buffer.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    private static int calcChecksum(final byte[] array) {
+        final CRC32 crc = new CRC32();
+        crc.update(array, 0, array.length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Write archive of classes.
+     *
+     * @param out     stream to write archive, must not be null
+     * @param classes map of jvm formatted class names and class bodies, must not
+     *                be null
+     * @throws IOException it will be thrown for transport errors
+     */
+    public static void write(final OutputStream out, final Map<String, byte[]> classes) throws IOException {
+        final List<Map.Entry<String, byte[]>> sorted = new ArrayList<Map.Entry<String, byte[]>>(classes.entrySet());
+        Collections.sort(sorted, new Comparator<Map.Entry<String, byte[]>>() {
+            @Override
+            public int compare(final Map.Entry<String, byte[]> o1, final Map.Entry<String, byte[]> o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+
+        int indexLength = 0;
+        for (final Map.Entry<String, byte[]> e : sorted) {
+            indexLength += 2 + e.getKey().getBytes("UTF-8").length + 12;
+        }
+
+        final ByteArrayOutputStream indexBuffer = new ByteArrayOutputStream(indexLength);
+        final DataOutputStream index = new DataOutputStream(indexBuffer);
+        int offset = HEADER_LENGTH + indexLength;
+        for (final Map.Entry<String, byte[]> e : sorted) {
+            final byte[] name = e.getKey().getBytes("UTF-8");
+            index.writeShort(name.length);
+            index.write(name);
+            index.writeInt(offset);
+            index.writeInt(e.getValue().length);
+            index.writeInt(calcChecksum(e.getValue()));
+            offset += e.getValue().length;
+        }
+        index.flush();
+        final byte[] indexArray = indexBuffer.toByteArray();
+
+        final DataOutputStream dout = new DataOutputStream(out);
+        dout.writeInt(MAGIC);
+        dout.writeShort(VERSION);
+        dout.writeInt(sorted.size());
+        dout.writeInt(indexArray.length);
+        dout.writeInt(calcChecksum(indexArray));
+        dout.write(indexArray);
+        for (final Map.Entry<String, byte[]> e : sorted) {
+            dout.write(e.getValue());
+        }
+        dout.flush();
+    }
+
+    /**
+     * Write archive of loaded classes, the classes are saved in the form they
+     * were parsed from.
+     *
+     * @param file    the archive file, must not be null
+     * @param classes loaded classes, must not be null
+     * @throws IOException it will be thrown for transport errors
+     * @see JSEProviderImpl#getLoadedClasses()
+     */
+    public static void write(final File file, final Collection<? extends JJJVMClass> classes) throws IOException {
+        final Map<String, byte[]> bodies = new HashMap<String, byte[]>();
+        for (final JJJVMClass klazz : classes) {
+            if (klazz instanceof JJJVMClassImpl) {
+                final ByteBuffer classData = ((JJJVMClassImpl) klazz).getClassData();
+                final byte[] body = new byte[classData.remaining()];
+                classData.get(body);
+                bodies.put(klazz.getClassName(), body);
+            }
+        }
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(file));
+        try {
+            write(out, bodies);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get names of all classes in the archive.
+     *
+     * @return set of jvm formatted class names, must not be null
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    /**
+     * Check that the archive contains the same version of a class.
+     *
+     * @param jvmFormattedClassName the class name, must not be null
+     * @param classBody             the current class body, must not be null
+     * @return true if the archive has the class and its checksum is the same,
+     * false otherwise
+     */
+    public boolean isUpToDate(final String jvmFormattedClassName, final byte[] classBody) {
+        final Entry entry = this.entries.get(jvmFormattedClassName);
+        return entry != null && entry.length == classBody.length && entry.checksum == calcChecksum(classBody);
+    }
+
+    @Override
+    public ByteBuffer loadClassBuffer(final String jvmFormattedClassName) throws IOException {
+        final Entry entry = this.entries.get(jvmFormattedClassName);
+        if (entry == null) {
+            return null;
+        }
+        final ByteBuffer result = this.data.duplicate();
+        result.position(entry.offset);
+        result.limit(entry.offset + entry.length);
+        if (!entry.verified) {
+            if (calcChecksum(result.duplicate()) != entry.checksum) {
+                throw new IOException("Wrong checksum of archived class [" + jvmFormattedClassName + ']');
+            }
+            entry.verified = true;
+        }
+        return result.slice();
+    }
+
+    @Override
+    public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+        final ByteBuffer buffer = loadClassBuffer(jvmFormattedClassName);
+        if (buffer == null) {
+            return null;
+        }
+        final byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+
+    private static void collectClasses(final File folder, final String prefix, final Map<String, byte[]> result) throws IOException {
+        final File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (final File f : files) {
+            if (f.isDirectory()) {
+                collectClasses(f, prefix + f.getName() + '/', result);
+            } else if (f.getName().endsWith(".class")) {
+                final InputStream in = new FileInputStream(f);
+                try {
+                    result.put(prefix + f.getName().substring(0, f.getName().length() - 6), JJJVMImplUtils.readAll(in));
+                } finally {
+                    in.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Make archive from folders contain class files.
+     *
+     * @param args the archive file name and one or more class folders
+     * @throws IOException it will be thrown for transport errors
+     */
+    public static void main(final String... args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: JSEClassArchive <archive file> <class folder>...");
+            System.exit(1);
+        }
+        final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        for (int i = 1; i < args.length; i++) {
+            collectClasses(new File(args[i]), "", classes);
+        }
+        final OutputStream out = new BufferedOutputStream(new FileOutputStream(args[0]));
+        try {
+            write(out, classes);
+        } finally {
+            out.close();
+        }
+        System.out.println("Archived " + classes.size() + " class(es) into " + args[0]);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl.jse;
+
+import com.igormaznitsa.jjjvm.impl.JJJVMClassHeader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads headers of many classes in parallel without making classes, for
+ * instance to find entry points or to build dependency graph of a bundle.
+ * Classes are split into batches, every batch is processed by one task.
+ *
+ * @see JJJVMClassHeader
+ */
+public final class JSEClassScanner {
+
+    private static final int BATCH_SIZE = 256;
+
+    /**
+     * Result of scanning.
+     */
+    public static final class Result {
+
+        private final Map<String, JJJVMClassHeader> headers;
+        private final Map<String, Throwable> failures;
+
+        private Result(final Map<String, JJJVMClassHeader> headers, final Map<String, Throwable> failures) {
+            this.headers = Collections.unmodifiableMap(headers);
+            this.failures = Collections.unmodifiableMap(failures);
+        }
+
+        /**
+         * Get headers of successfully read classes.
+         *
+         * @return map of headers in the order of class names, must not be null
+         */
+        public Map<String, JJJVMClassHeader> getHeaders() {
+            return this.headers;
+        }
+
+        /**
+         * Get errors for classes which can't be read, a class not found by the
+         * loader has ClassNotFoundException.
+         *
+         * @return map of errors in the order of class names, must not be null
+         */
+        public Map<String, Throwable> getFailures() {
+            return this.failures;
+        }
+
+        public boolean isSuccessful() {
+            return this.failures.isEmpty();
+        }
+    }
+
+    private JSEClassScanner() {
+    }
+
+    /**
+     * Read header of a class provided by a loader.
+     *
+     * @param loader                the loader, must not be null
+     * @param jvmFormattedClassName the class name, must not be null
+     * @return the header, must not be null
+     * @throws Throwable it will be thrown if the class can't be loaded or read
+     */
+    public static JJJVMClassHeader scan(final JSEProviderImpl.ClassDataLoader loader, final String jvmFormattedClassName) throws Throwable {
+        final ByteBuffer buffer;
+        if (loader instanceof JSEProviderImpl.ClassBufferLoader) {
+            buffer = ((JSEProviderImpl.ClassBufferLoader) loader).loadClassBuffer(jvmFormattedClassName);
+        } else {
+            final byte[] body = loader.loadClassBody(jvmFormattedClassName);
+            buffer = body == null ? null : ByteBuffer.wrap(body);
+        }
+        if (buffer == null) {
+            throw new ClassNotFoundException(jvmFormattedClassName);
+        }
+        return JJJVMClassHeader.read(buffer);
+    }
+
+    /**
+     * Read headers of classes in parallel. The method waits for all classes,
+     * failure of a class doesn't stop processing of other ones.
+     *
+     * @param loader     the loader of classes, must be thread safe, must not be
+     *                   null
+     * @param classNames jvm formatted names of classes, must not be null
+     * @param executor   executor to run tasks, must not be null
+     * @return result of scanning, must not be null
+     * @throws InterruptedException if the current thread has been interrupted
+     *                              during waiting
+     */
+    public static Result scan(final JSEProviderImpl.ClassDataLoader loader, final Collection<String> classNames, final Executor executor) throws InterruptedException {
+        final List<String> names = new ArrayList<String>(classNames);
+        final JJJVMClassHeader[] headers = new JJJVMClassHeader[names.size()];
+        final Throwable[] failures = new Throwable[names.size()];
+
+        final List<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>();
+        for (int start = 0; start < names.size(); start += BATCH_SIZE) {
+            final int from = start;
+            final int to = Math.min(start + BATCH_SIZE, names.size());
+            final FutureTask<Void> task = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    for (int i = from; i < to; i++) {
+                        try {
+                            headers[i] = scan(loader, names.get(i));
+                        } catch (Throwable thr) {
+                            failures[i] = thr;
+                        }
+                    }
+                    return null;
+                }
+            });
+            tasks.add(task);
+            executor.execute(task);
+        }
+
+        for (final FutureTask<Void> task : tasks) {
+            try {
+                task.get();
+            } catch (ExecutionException ex) {
+                throw new IllegalStateException("Unexpected error during scanning", ex.getCause());
+            }
+        }
+
+        final Map<String, JJJVMClassHeader> headerMap = new LinkedHashMap<String, JJJVMClassHeader>();
+        final Map<String, Throwable> failureMap = new LinkedHashMap<String, Throwable>();
+        for (int i = 0; i < headers.length; i++) {
+            if (failures[i] == null) {
+                headerMap.put(names.get(i), headers[i]);
+            } else {
+                failureMap.put(names.get(i), failures[i]);
+            }
+        }
+        return new Result(headerMap, failureMap);
+    }
+}
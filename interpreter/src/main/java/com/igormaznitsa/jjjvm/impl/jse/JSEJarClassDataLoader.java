@@ -0,0 +1,260 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.impl.jse;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Class loader over JAR or ZIP files. Files are memory mapped and their
+ * central directories are indexed once, stored entries are returned as slices
+ * of the mapped files and deflated entries are inflated into buffers of their
+ * exact size. Inflaters and input buffers are pooled. The loader is thread
+ * safe. ZIP64 archives are not supported.
+ * {@link https://pkware.cachefly.net/webdocs/casestudies/APPNOTE.TXT}
+ */
+public final class JSEJarClassDataLoader implements JSEProviderImpl.ClassBufferLoader {
+
+    private static final int SIGNATURE_END = 0x06054B50;
+    private static final int SIGNATURE_CENTRAL = 0x02014B50;
+    private static final int SIGNATURE_LOCAL = 0x04034B50;
+
+    private static final int END_RECORD_LENGTH = 22;
+    private static final int CENTRAL_RECORD_LENGTH = 46;
+    private static final int LOCAL_RECORD_LENGTH = 30;
+
+    private static final int METHOD_STORED = 0;
+    private static final int METHOD_DEFLATED = 8;
+
+    private static final class Entry {
+
+        private final ByteBuffer archive;
+        private final int method;
+        private final int compressedSize;
+        private final int size;
+        private final int localHeaderOffset;
+
+        private Entry(final ByteBuffer archive, final int method, final int compressedSize, final int size, final int localHeaderOffset) {
+            this.archive = archive;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localHeaderOffset = localHeaderOffset;
+        }
+    }
+
+    private static final class InflaterContext {
+
+        private final Inflater inflater = new Inflater(true);
+        private byte[] input = new byte[8192];
+    }
+
+    private final Map<String, Entry> entries = new HashMap<String, Entry>();
+    private final ConcurrentLinkedQueue<InflaterContext> inflaters = new ConcurrentLinkedQueue<InflaterContext>();
+
+    /**
+     * Make loader over archives. If several archives contain the same class
+     * then the class from the first archive is used.
+     *
+     * @param archives JAR or ZIP files, must not be null
+     * @throws IOException it will be thrown for transport errors or wrong
+     *                     archive
+     */
+    public JSEJarClassDataLoader(final File... archives) throws IOException {
+        for (final File file : archives) {
+            final RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                indexArchive(file.getName(), raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, raf.length()));
+            } finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Make loader over archive in buffer.
+     *
+     * @param archive buffer contains JAR or ZIP archive, must not be null
+     * @throws IOException it will be thrown for wrong archive
+     */
+    public JSEJarClassDataLoader(final ByteBuffer archive) throws IOException {
+        indexArchive("buffer", archive.slice());
+    }
+
+    private void indexArchive(final String archiveName, final ByteBuffer mapped) throws IOException {
+        final ByteBuffer archive = mapped.order(ByteOrder.LITTLE_ENDIAN);
+        final int endRecord = findEndRecord(archive);
+        if (endRecord < 0) {
+            throw new IOException("Can't find end of central directory [" + archiveName + ']');
+        }
+
+        final int numberOfEntries = archive.getShort(endRecord + 10) & 0xFFFF;
+        final long directoryOffset = archive.getInt(endRecord + 16) & 0xFFFFFFFFL;
+        if (numberOfEntries == 0xFFFF || directoryOffset == 0xFFFFFFFFL) {
+            throw new IOException("ZIP64 is not supported [" + archiveName + ']');
+        }
+
+        int offset = (int) directoryOffset;
+        for (int i = 0; i < numberOfEntries; i++) {
+            if (offset + CENTRAL_RECORD_LENGTH > archive.limit() || archive.getInt(offset) != SIGNATURE_CENTRAL) {
+                throw new IOException("Broken central directory [" + archiveName + ']');
+            }
+            final int method = archive.getShort(offset + 10) & 0xFFFF;
+            final int compressedSize = archive.getInt(offset + 20);
+            final int size = archive.getInt(offset + 24);
+            final int nameLength = archive.getShort(offset + 28) & 0xFFFF;
+            final int extraLength = archive.getShort(offset + 30) & 0xFFFF;
+            final int commentLength = archive.getShort(offset + 32) & 0xFFFF;
+            final int localHeaderOffset = archive.getInt(offset + 42);
+
+            final String name = readName(archive, offset + CENTRAL_RECORD_LENGTH, nameLength);
+            if (name.endsWith(".class")) {
+                final String className = name.substring(0, name.length() - 6);
+                if (!this.entries.containsKey(className)) {
+                    this.entries.put(className, new Entry(archive, method, compressedSize, size, localHeaderOffset));
+                }
+            }
+            offset += CENTRAL_RECORD_LENGTH + nameLength + extraLength + commentLength;
+        }
+    }
+
+    private static int findEndRecord(final ByteBuffer archive) {
+        // the record is followed by comment up to 65535 bytes
+        final int lowest = Math.max(0, archive.limit() - END_RECORD_LENGTH - 0xFFFF);
+        for (int i = archive.limit() - END_RECORD_LENGTH; i >= lowest; i--) {
+            if (archive.getInt(i) == SIGNATURE_END) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String readName(final ByteBuffer archive, final int offset, final int length) throws IOException {
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            final int b = archive.get(offset + i);
+            if (b < 0) {
+                // not ASCII name, decode it as UTF-8
+                final byte[] bytes = new byte[length];
+                for (int j = 0; j < length; j++) {
+                    bytes[j] = archive.get(offset + j);
+                }
+                return new String(bytes, "UTF-8");
+            }
+            chars[i] = (char) b;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Get names of all classes in archives.
+     *
+     * @return set of jvm formatted class names, must not be null
+     */
+    public Set<String> getClassNames() {
+        return Collections.unmodifiableSet(this.entries.keySet());
+    }
+
+    @Override
+    public ByteBuffer loadClassBuffer(final String jvmFormattedClassName) throws IOException {
+        final Entry entry = this.entries.get(jvmFormattedClassName);
+        if (entry == null) {
+            return null;
+        }
+
+        final ByteBuffer archive = entry.archive;
+        final int header = entry.localHeaderOffset;
+        if (archive.getInt(header) != SIGNATURE_LOCAL) {
+            throw new IOException("Broken local header of entry [" + jvmFormattedClassName + ']');
+        }
+        final int dataOffset = header + LOCAL_RECORD_LENGTH + (archive.getShort(header + 26) & 0xFFFF) + (archive.getShort(header + 28) & 0xFFFF);
+
+        final ByteBuffer data = archive.duplicate();
+        data.position(dataOffset);
+        data.limit(dataOffset + entry.compressedSize);
+
+        switch (entry.method) {
+            case METHOD_STORED:
+                return data.slice();
+            case METHOD_DEFLATED:
+                return ByteBuffer.wrap(inflate(jvmFormattedClassName, data, entry.size));
+            default:
+                throw new IOException("Unsupported compression method [" + jvmFormattedClassName + ", " + entry.method + ']');
+        }
+    }
+
+    private byte[] inflate(final String name, final ByteBuffer compressed, final int size) throws IOException {
+        InflaterContext context = this.inflaters.poll();
+        if (context == null) {
+            context = new InflaterContext();
+        }
+        try {
+            final int length = compressed.remaining();
+            if (context.input.length < length) {
+                context.input = new byte[Math.max(length, context.input.length * 2)];
+            }
+            compressed.get(context.input, 0, length);
+
+            final Inflater inflater = context.inflater;
+            inflater.setInput(context.input, 0, length);
+            final byte[] result = new byte[size];
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                final int count = inflater.inflate(result, inflated, size - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflated += count;
+            }
+            if (inflated != size) {
+                throw new IOException("Wrong size of inflated entry [" + name + ']');
+            }
+            return result;
+        } catch (DataFormatException ex) {
+            final IOException error = new IOException("Can't inflate entry [" + name + ']');
+            error.initCause(ex);
+            throw error;
+        } finally {
+            context.inflater.reset();
+            this.inflaters.offer(context);
+        }
+    }
+
+    @Override
+    public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+        final ByteBuffer buffer = loadClassBuffer(jvmFormattedClassName);
+        if (buffer == null) {
+            return null;
+        }
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        final byte[] result = new byte[buffer.remaining()];
+        buffer.get(result);
+        return result;
+    }
+}
@@ -15,14 +15,25 @@
  */
 package com.igormaznitsa.jjjvm.impl.jse;
 
+import com.igormaznitsa.jjjvm.JJJVMCache;
+import com.igormaznitsa.jjjvm.JJJVMLambda;
 import com.igormaznitsa.jjjvm.model.*;
+import com.igormaznitsa.jjjvm.impl.JJJVMClassImage;
 import com.igormaznitsa.jjjvm.impl.JJJVMClassImpl;
 import com.igormaznitsa.jjjvm.impl.JJJVMImplUtils;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.lang.reflect.*;
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of provider optimized for Java SE 1.5+.
@@ -47,6 +58,26 @@ public class JSEProviderImpl implements JJJVMProvider {
         byte[] loadClassBody(String jvmFormattedClassName) throws IOException;
     }
 
+    /**
+     * Loader which can provide class data as byte buffer, for instance a slice
+     * of memory mapped file. The content is copied into the shared class image
+     * once, so no intermediate byte array is made and the mapping is not kept
+     * by the image.
+     */
+    public interface ClassBufferLoader extends ClassDataLoader {
+
+        /**
+         * Load class byte-code as buffer.
+         *
+         * @param jvmFormattedClassName the JVM formatted class name, must not be
+         *                              null.
+         * @return buffer contains byte-code of the class between its position
+         * and limit, or null if class not found
+         * @throws IOException it must be throws for transport error
+         */
+        ByteBuffer loadClassBuffer(String jvmFormattedClassName) throws IOException;
+    }
+
     private static final sun.misc.Unsafe UNSAFE = getUnsafe();
 
     private static sun.misc.Unsafe getUnsafe() {
@@ -59,56 +90,751 @@ public class JSEProviderImpl implements JJJVMProvider {
         }
     }
 
-    private final Map<String, Object> classCache = new HashMap<>();
-    protected final Map<String, Class[]> parsedArgsCache = new HashMap<>();
-    protected final Map<String, Map<String, Boolean>> cachedCast = new HashMap<>();
+    /**
+     * Loading of a class, it is placed into the class cache while the class is
+     * loading so that other threads wait for the result instead of parsing
+     * the class again.
+     */
+    private static final class ClassLoading {
+
+        /**
+         * Result of a failed prefetch, waiting threads load the class again by
+         * their own rules.
+         */
+        private static final Object RETRY = new Object();
+
+        private final Thread owner = Thread.currentThread();
+        private final boolean prefetch = PREFETCH_DEPTH.get() != null;
+        private volatile Object registered;
+        private boolean done;
+        private Object result;
+        private Throwable error;
+
+        private synchronized void complete(final Object result, final Throwable error) {
+            this.result = result;
+            this.error = error;
+            this.done = true;
+            this.notifyAll();
+        }
+
+        private synchronized Object await() throws Throwable {
+            while (!this.done) {
+                this.wait();
+            }
+            if (this.error != null) {
+                // prefetch doesn't allow host classes, so its errors are not errors of demand loading
+                if (this.prefetch) {
+                    return RETRY;
+                }
+                throw this.error;
+            }
+            return this.result;
+        }
+    }
+
+    /**
+     * Rule defines source of classes which names start with a prefix.
+     */
+    private static final class ClassSourceRule {
+
+        private final String prefix;
+        private final ClassDataLoader loader;
+
+        private ClassSourceRule(final String prefix, final ClassDataLoader loader) {
+            this.prefix = prefix;
+            this.loader = loader;
+        }
+    }
+
+    /**
+     * Settings of prefetching of classes referenced by loaded classes.
+     */
+    private static final class Prefetch {
+
+        private final Executor executor;
+        private final int maxDepth;
+        private final AtomicInteger budget;
+
+        private Prefetch(final Executor executor, final int maxDepth, final int maxClasses) {
+            this.executor = executor;
+            this.maxDepth = maxDepth;
+            this.budget = new AtomicInteger(maxClasses);
+        }
+    }
+
+    /**
+     * Weak reference to an interpreted class placed into the class cache when
+     * weak class references are enabled.
+     */
+    private static final class ClassReference extends WeakReference<JJJVMClass> {
+
+        private final String className;
+
+        private ClassReference(final String className, final JJJVMClass klazz, final ReferenceQueue<JJJVMClass> queue) {
+            super(klazz, queue);
+            this.className = className;
+        }
+    }
+
+    /**
+     * Key of the cache of type checks.
+     */
+    protected static final class CastKey {
+
+        private final String target;
+        private final String checked;
+        private final int hash;
+
+        protected CastKey(final String target, final String checked) {
+            this.target = target;
+            this.checked = checked;
+            this.hash = target.hashCode() * 31 + checked.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj instanceof CastKey) {
+                final CastKey that = (CastKey) obj;
+                return this.hash == that.hash && this.target.equals(that.target) && this.checked.equals(that.checked);
+            }
+            return false;
+        }
+    }
+
+    // depth of the class loading by prefetch task, zero for loading on demand
+    private static final ThreadLocal<Integer> PREFETCH_DEPTH = new ThreadLocal<Integer>();
+
+    private final JJJVMCache<String, Object> classCache;
+    private final Map<String, Boolean> absentClassNames = new ConcurrentHashMap<>();
+    private final List<ClassSourceRule> classSourceRules = new CopyOnWriteArrayList<>();
+    private final AtomicLong classCacheHits = new AtomicLong();
+    private final AtomicLong classCacheMisses = new AtomicLong();
+    private final AtomicLong absentClassHits = new AtomicLong();
+    private final AtomicLong definedClassHits = new AtomicLong();
+    private final Map<Thread, ClassLoading> waitingThreads = new ConcurrentHashMap<>();
+    protected final JJJVMCache<String, Class[]> parsedArgsCache;
+    protected final JJJVMCache<CastKey, Boolean> cachedCast;
+    private final Map<String, JJJVMNativeMethod> nativeMethods = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Boolean> prefetchScheduled = new ConcurrentHashMap<>();
+    private final AtomicLong prefetchedClasses = new AtomicLong();
+    private volatile Prefetch prefetch;
+    private final Map<String, Integer> classGenerations = new ConcurrentHashMap<>();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final ReferenceQueue<JJJVMClass> collectedClasses = new ReferenceQueue<JJJVMClass>();
+    private volatile boolean weakClassReferences;
+    private volatile JSEAotCache aotCache;
 
     protected final ClassDataLoader classDataLoader;
 
     public JSEProviderImpl() {
-        this.classDataLoader = jvmFormattedClassName -> null;
+        this(jvmFormattedClassName -> null);
     }
 
     public JSEProviderImpl(final ClassDataLoader classLoader) {
+        this(classLoader, new JSECacheConfig());
+    }
+
+    /**
+     * Make provider with defined sizes of caches.
+     *
+     * @param classLoader loader of class data, must not be null
+     * @param config      sizes of caches, must not be null
+     */
+    public JSEProviderImpl(final ClassDataLoader classLoader, final JSECacheConfig config) {
         if (classLoader == null) {
             throw new NullPointerException("Loader is null");
         }
+        JJJVMImplUtils.assertNotNull("Config is null", config);
         this.classDataLoader = classLoader;
+        this.classCache = new JJJVMCache<String, Object>("classes", config.getClassCacheSize()) {
+            @Override
+            protected boolean isEvictable(final String key, final Object value) {
+                return !(value instanceof ClassLoading);
+            }
+
+            @Override
+            protected void evicted(final String key, final Object value) {
+                classGenerations.remove(key);
+            }
+        };
+        this.parsedArgsCache = new JJJVMCache<String, Class[]>("parsedArgs", config.getParsedArgsCacheSize());
+        this.cachedCast = new JJJVMCache<CastKey, Boolean>("casts", config.getCastCacheSize());
+        addHostClassPrefix("java/");
+        addHostClassPrefix("javax/");
+    }
+
+    /**
+     * Add rule to take classes which names start with a prefix directly from
+     * the host JVM without asking any loader. Rules are checked in the order of
+     * adding, by default there are rules for "java/" and "javax/".
+     *
+     * @param jvmFormattedPrefix prefix of jvm formatted class names like
+     *                           "java/", must not be null
+     * @see #addClassLoaderPrefix(java.lang.String, com.igormaznitsa.jjjvm.impl.jse.JSEProviderImpl.ClassDataLoader)
+     */
+    public void addHostClassPrefix(final String jvmFormattedPrefix) {
+        JJJVMImplUtils.assertNotNull("Prefix is null", jvmFormattedPrefix);
+        this.classSourceRules.add(new ClassSourceRule(jvmFormattedPrefix, null));
+    }
+
+    /**
+     * Add rule to load classes which names start with a prefix by a loader.
+     * Classes not found by the loader are taken from the host JVM. Rules are
+     * checked in the order of adding, names which don't match any rule are
+     * loaded by the provider loader.
+     *
+     * @param jvmFormattedPrefix prefix of jvm formatted class names, must not
+     *                           be null
+     * @param loader             loader for the classes, must not be null
+     */
+    public void addClassLoaderPrefix(final String jvmFormattedPrefix, final ClassDataLoader loader) {
+        JJJVMImplUtils.assertNotNull("Prefix is null", jvmFormattedPrefix);
+        JJJVMImplUtils.assertNotNull("Loader is null", loader);
+        this.classSourceRules.add(new ClassSourceRule(jvmFormattedPrefix, loader));
+    }
+
+    /**
+     * Remove all class source rules including default ones.
+     */
+    public void clearClassSourceRules() {
+        this.classSourceRules.clear();
+    }
+
+    /**
+     * Get caches of the provider to read their counters or to change their
+     * sizes.
+     *
+     * @return list of caches for classes, parsed arguments and type checks,
+     * must not be null
+     */
+    public List<JJJVMCache<?, ?>> getCaches() {
+        return Arrays.<JJJVMCache<?, ?>>asList(this.classCache, this.parsedArgsCache, this.cachedCast);
+    }
+
+    /**
+     * Number of class resolutions served by the class cache.
+     *
+     * @return number of hits
+     */
+    public long getClassCacheHits() {
+        return this.classCacheHits.get();
+    }
+
+    /**
+     * Number of class resolutions which needed class loading.
+     *
+     * @return number of misses
+     */
+    public long getClassCacheMisses() {
+        return this.classCacheMisses.get();
+    }
+
+    /**
+     * Number of times when a loader was not asked because it didn't have the
+     * class before.
+     *
+     * @return number of hits in the cache of absent class names
+     */
+    public long getAbsentClassHits() {
+        return this.absentClassHits.get();
+    }
+
+    /**
+     * Number of class definitions which returned already defined class
+     * because the class data was byte identical.
+     *
+     * @return number of hits
+     * @see #defineClass(java.nio.ByteBuffer)
+     */
+    public long getDefinedClassHits() {
+        return this.definedClassHits.get();
+    }
+
+    /**
+     * Define interpreted class from class data. Class data is looked up in the
+     * process-wide image cache by its hash, so byte identical data is parsed
+     * only once. If the provider already has the class made from the same
+     * data then the class is returned as is, with its static state and links.
+     *
+     * @param classData buffer contains a compiled java class between its
+     *                  position and limit, must not be null
+     * @return the defined class, must not be null
+     * @throws LinkageError if the provider has other class with the same name
+     * @throws Throwable    it will be thrown for errors
+     * @see JJJVMClassImage#of(java.nio.ByteBuffer)
+     */
+    public synchronized JJJVMClass defineClass(final ByteBuffer classData) throws Throwable {
+        JJJVMImplUtils.assertNotNull("Class data is null", classData);
+        final JJJVMClassImage image = JJJVMClassImage.of(classData);
+        final String className = image.getClassName();
+
+        final Object existing = dereference(this.classCache.peek(className));
+        if (existing != null) {
+            if (existing instanceof JJJVMClassImpl && ((JJJVMClassImpl) existing).getImage() == image) {
+                this.definedClassHits.incrementAndGet();
+                return (JJJVMClass) existing;
+            }
+            throw new LinkageError("Duplicate class definition [" + className + ']');
+        }
+
+        final JJJVMClassImpl result = new JJJVMClassImpl(image, this);
+        final JSEAotCache cache = this.aotCache;
+        if (cache != null) {
+            cache.installInto(result);
+        }
+        this.classGenerations.put(className, this.generation.get());
+        this.absentClassNames.remove(className);
+        return result;
+    }
+
+    /**
+     * Get all interpreted classes loaded by the provider.
+     *
+     * @return list of loaded classes, must not be null
+     */
+    public List<JJJVMClass> getLoadedClasses() {
+        final List<JJJVMClass> result = new ArrayList<JJJVMClass>();
+        for (final Object cached : this.classCache.values()) {
+            final Object klazz = dereference(cached);
+            if (klazz instanceof JJJVMClass) {
+                result.add((JJJVMClass) klazz);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Enable weak references to interpreted classes loaded after the call.
+     * Such classes are kept only while there are their instances or other
+     * strong references to them, a collected class is loaded again on demand
+     * and gets new static state. It suits stateless scripts only.
+     *
+     * @param flag true to keep weak references, false to keep strong ones
+     */
+    public void setWeakClassReferences(final boolean flag) {
+        this.weakClassReferences = flag;
+    }
+
+    /**
+     * Attach cache of classes translated ahead of time, compiled code from the
+     * cache is installed into interpreted classes loaded after the call.
+     *
+     * @param cache the cache, null to detach the cache
+     */
+    public void setAotCache(final JSEAotCache cache) {
+        this.aotCache = cache;
+    }
+
+    public JSEAotCache getAotCache() {
+        return this.aotCache;
+    }
+
+    /**
+     * Get the current generation, classes are marked by the generation which
+     * was current at the moment of their loading.
+     *
+     * @return the current generation, initially zero
+     */
+    public int getGeneration() {
+        return this.generation.get();
+    }
+
+    /**
+     * Start new generation of classes. Classes loaded after the call are
+     * marked by the new generation and can be unloaded together. The cache of
+     * absent class names is cleared because a new version of code can bring
+     * new classes.
+     *
+     * @return the new generation
+     * @see #unloadGeneration(int)
+     */
+    public int newGeneration() {
+        this.absentClassNames.clear();
+        return this.generation.incrementAndGet();
+    }
+
+    /**
+     * Get generation of a loaded interpreted class.
+     *
+     * @param jvmFormattedClassName the jvm formatted class name, must not be
+     *                              null
+     * @return the generation of the class or -1 if the class is not loaded
+     */
+    public int getClassGeneration(final String jvmFormattedClassName) {
+        final Integer result = this.classGenerations.get(jvmFormattedClassName);
+        return result == null ? -1 : result;
+    }
+
+    /**
+     * Unload interpreted class and all loaded classes depending on it.
+     *
+     * @param jvmFormattedClassName the jvm formatted class name, must not be
+     *                              null
+     * @return names of unloaded classes, must not be null
+     * @see #unload(java.util.Set)
+     */
+    public Set<String> unloadClass(final String jvmFormattedClassName) {
+        JJJVMImplUtils.assertNotNull("Class name is null", jvmFormattedClassName);
+        return unload(Collections.singleton(jvmFormattedClassName));
+    }
+
+    /**
+     * Unload all interpreted classes which names start with a prefix and all
+     * loaded classes depending on them.
+     *
+     * @param jvmFormattedPrefix prefix of jvm formatted class names like
+     *                           "com/tenant/", must not be null
+     * @return names of unloaded classes, must not be null
+     * @see #unload(java.util.Set)
+     */
+    public Set<String> unloadPackage(final String jvmFormattedPrefix) {
+        JJJVMImplUtils.assertNotNull("Prefix is null", jvmFormattedPrefix);
+        final Set<String> names = new HashSet<String>();
+        for (final String name : this.classGenerations.keySet()) {
+            if (name.startsWith(jvmFormattedPrefix)) {
+                names.add(name);
+            }
+        }
+        for (final Iterator<String> iterator = this.absentClassNames.keySet().iterator(); iterator.hasNext();) {
+            if (iterator.next().startsWith(jvmFormattedPrefix)) {
+                iterator.remove();
+            }
+        }
+        return unload(names);
+    }
+
+    /**
+     * Unload all interpreted classes loaded in a generation and all loaded
+     * classes depending on them.
+     *
+     * @param generation the generation
+     * @return names of unloaded classes, must not be null
+     * @see #newGeneration()
+     * @see #unload(java.util.Set)
+     */
+    public Set<String> unloadGeneration(final int generation) {
+        final Set<String> names = new HashSet<String>();
+        for (final Map.Entry<String, Integer> entry : this.classGenerations.entrySet()) {
+            if (entry.getValue() == generation) {
+                names.add(entry.getKey());
+            }
+        }
+        return unload(names);
+    }
+
+    /**
+     * Unload interpreted classes. Loaded classes which refer to unloaded ones
+     * through their constant pools (including subclasses and implementations)
+     * are unloaded too, caches of the provider and dispatch caches of remaining
+     * classes are cleared from unloaded classes. Unloaded classes are loaded
+     * again on the next resolution, existing instances keep their old classes.
+     *
+     * @param jvmFormattedClassNames names of classes to be unloaded, must not
+     *                               be null
+     * @return names of unloaded classes, must not be null
+     */
+    public synchronized Set<String> unload(final Set<String> jvmFormattedClassNames) {
+        final Map<String, JJJVMClass> loaded = new HashMap<String, JJJVMClass>();
+        for (final String name : this.classCache.keySet()) {
+            final Object klazz = dereference(this.classCache.peek(name));
+            if (klazz instanceof JJJVMClass) {
+                loaded.put(name, (JJJVMClass) klazz);
+            }
+        }
+
+        final Set<String> unloaded = new HashSet<String>();
+        for (final String name : jvmFormattedClassNames) {
+            if (loaded.remove(name) != null) {
+                unloaded.add(name);
+            }
+        }
+
+        boolean changed = !unloaded.isEmpty();
+        while (changed) {
+            changed = false;
+            for (final Iterator<Map.Entry<String, JJJVMClass>> iterator = loaded.entrySet().iterator(); iterator.hasNext();) {
+                final Map.Entry<String, JJJVMClass> entry = iterator.next();
+                if (refersTo(entry.getValue(), unloaded)) {
+                    iterator.remove();
+                    unloaded.add(entry.getKey());
+                    changed = true;
+                }
+            }
+        }
+
+        if (unloaded.isEmpty()) {
+            return unloaded;
+        }
+
+        for (final String name : unloaded) {
+            final Object cached = this.classCache.peek(name);
+            if (cached != null && !(cached instanceof ClassLoading)) {
+                this.classCache.remove(name, cached);
+            }
+            this.classGenerations.remove(name);
+            this.prefetchScheduled.remove(name);
+        }
+
+        for (final Iterator<CastKey> iterator = this.cachedCast.keySet().iterator(); iterator.hasNext();) {
+            final CastKey key = iterator.next();
+            if (unloaded.contains(key.target) || unloaded.contains(key.checked)) {
+                iterator.remove();
+            }
+        }
+        for (final Iterator<String> iterator = this.parsedArgsCache.keySet().iterator(); iterator.hasNext();) {
+            if (refersTo(iterator.next(), unloaded)) {
+                iterator.remove();
+            }
+        }
+        for (final JJJVMClass klazz : loaded.values()) {
+            if (klazz instanceof JJJVMClassImpl) {
+                ((JJJVMClassImpl) klazz).clearDispatchCaches();
+            }
+        }
+        return unloaded;
+    }
+
+    private static boolean refersTo(final JJJVMClass klazz, final Set<String> classNames) {
+        final JJJVMConstantPool cpool = klazz.getConstantPool();
+        for (int i = 1; i < cpool.size(); i++) {
+            if (cpool.getTagAt(i) == JJJVMConstantPoolItem.CONSTANT_CLASSREF) {
+                final String name = cpool.getUtf8At(cpool.getIntAt(i));
+                if (name.charAt(0) == '[' ? refersTo(name, classNames) : classNames.contains(name)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean refersTo(final String signature, final Set<String> classNames) {
+        int start = signature.indexOf('L');
+        while (start >= 0) {
+            final int end = signature.indexOf(';', start);
+            if (end < 0) {
+                break;
+            }
+            if (classNames.contains(signature.substring(start + 1, end))) {
+                return true;
+            }
+            start = signature.indexOf('L', end);
+        }
+        return false;
+    }
+
+    private Object dereference(final Object cached) {
+        return cached instanceof ClassReference ? ((ClassReference) cached).get() : cached;
+    }
+
+    private void expungeCollectedClasses() {
+        ClassReference reference;
+        while ((reference = (ClassReference) this.collectedClasses.poll()) != null) {
+            if (this.classCache.remove(reference.className, reference)) {
+                this.classGenerations.remove(reference.className);
+            }
+        }
+    }
+
+    /**
+     * Enable prefetching of classes. When a class is loaded, interpreted
+     * classes referenced by its constant pool are loaded in background so that
+     * they are ready when requested. Prefetched classes are only loaded, not
+     * initialized; loading errors are ignored and repeated on demand.
+     *
+     * @param executor   executor for background loading, null to disable
+     *                   prefetching
+     * @param maxDepth   max depth of references from a class loaded on demand,
+     *                   1 means only direct references
+     * @param maxClasses max number of classes to be prefetched
+     */
+    public void setPrefetch(final Executor executor, final int maxDepth, final int maxClasses) {
+        this.prefetch = executor == null ? null : new Prefetch(executor, maxDepth, maxClasses);
+    }
+
+    /**
+     * Number of classes loaded by prefetching.
+     *
+     * @return number of prefetched classes
+     */
+    public long getPrefetchedClasses() {
+        return this.prefetchedClasses.get();
+    }
+
+    private void schedulePrefetch(final JJJVMClass klazz) {
+        final Prefetch settings = this.prefetch;
+        if (settings == null) {
+            return;
+        }
+        final Integer currentDepth = PREFETCH_DEPTH.get();
+        final int depth = currentDepth == null ? 1 : currentDepth + 1;
+        if (depth > settings.maxDepth) {
+            return;
+        }
+
+        final JJJVMConstantPool cpool = klazz.getConstantPool();
+        for (int i = 1; i < cpool.size(); i++) {
+            if (cpool.getTagAt(i) != JJJVMConstantPoolItem.CONSTANT_CLASSREF) {
+                continue;
+            }
+            final String className = cpool.getUtf8At(cpool.getIntAt(i));
+            if (className.charAt(0) == '[' || this.classCache.containsKey(className) || this.absentClassNames.containsKey(className)) {
+                continue;
+            }
+            final ClassSourceRule rule = findClassSourceRule(className);
+            if ((rule != null && rule.loader == null) || this.prefetchScheduled.putIfAbsent(className, Boolean.TRUE) != null) {
+                // host classes are not prefetched
+                continue;
+            }
+            if (settings.budget.decrementAndGet() < 0) {
+                return;
+            }
+            settings.executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    PREFETCH_DEPTH.set(depth);
+                    try {
+                        if (!classCache.containsKey(className)) {
+                            loadClass(className, false);
+                            prefetchedClasses.incrementAndGet();
+                        }
+                    } catch (Throwable thr) {
+                        // it will be reported during loading on demand
+                    } finally {
+                        PREFETCH_DEPTH.remove();
+                    }
+                }
+            });
+        }
+    }
+
+    private ClassSourceRule findClassSourceRule(final String jvmFormattedClassName) {
+        for (final ClassSourceRule rule : this.classSourceRules) {
+            if (jvmFormattedClassName.startsWith(rule.prefix)) {
+                return rule;
+            }
+        }
+        return null;
     }
 
+    /**
+     * Load class by the default class data loader of the provider.
+     *
+     * @param jvmFormattedClassName the jvm formatted class name, must not be
+     *                              null
+     * @return loaded class, must not be null
+     * @throws ClassNotFoundException if the loader doesn't have the class
+     * @throws Throwable              it will be thrown for errors
+     */
     protected JJJVMClass loadClassFromLoader(final String jvmFormattedClassName) throws Throwable {
-        final byte[] classBody = this.classDataLoader.loadClassBody(jvmFormattedClassName);
-        if (classBody == null) {
+        final JJJVMClass result = defineClassFromLoader(this.classDataLoader, jvmFormattedClassName);
+        if (result == null) {
             throw new ClassNotFoundException("Can't find body for class '" + jvmFormattedClassName + '\'');
         }
-        return new JJJVMClassImpl(new ByteArrayInputStream(classBody), this);
+        return result;
     }
 
-    public JJJVMClass resolveInnerClass(final JJJVMClass caller, final JJJVMInnerClassRecord innerClassRecord) throws Throwable {
-        final String outerClassName = innerClassRecord.getOuterClassInfo() == null ? null : innerClassRecord.getOuterClassInfo().getClassName();
-        final String innerClassName = innerClassRecord.getInnerClassInfo().getClassName();
-
-        JJJVMClass result;
-
-        synchronized (this.classCache) {
-            result = (JJJVMClass) this.classCache.get(innerClassName);
-            if (result == null) {
-                if (outerClassName != null && !this.classCache.containsKey(outerClassName) && !JJJVMClassImpl.isClassLoading(outerClassName)) {
-                    final JJJVMClass outerClass = loadClassFromLoader(outerClassName);
-                    this.classCache.put(outerClassName, outerClass);
-                    result = (JJJVMClass) this.classCache.get(innerClassName);
-                    if (result == null) {
-                        throw new Error("Unexpected state, inner class [" + innerClassName + "] is not loaded");
-                    }
+    /**
+     * Load class by a loader. Requests to the default class data loader go
+     * through {@link #loadClassFromLoader(java.lang.String)} so its overrides
+     * are still used.
+     *
+     * @param loader                the loader, must not be null
+     * @param jvmFormattedClassName the jvm formatted class name, must not be
+     *                              null
+     * @return loaded class or null if the loader doesn't have the class
+     * @throws Throwable it will be thrown for errors
+     */
+    protected JJJVMClass loadClassFromLoader(final ClassDataLoader loader, final String jvmFormattedClassName) throws Throwable {
+        if (loader == this.classDataLoader) {
+            try {
+                return loadClassFromLoader(jvmFormattedClassName);
+            } catch (ClassNotFoundException ex) {
+                return null;
+            }
+        }
+        return defineClassFromLoader(loader, jvmFormattedClassName);
+    }
+
+    private JJJVMClass defineClassFromLoader(final ClassDataLoader loader, final String jvmFormattedClassName) throws Throwable {
+        final JJJVMClass result;
+        if (loader instanceof ClassBufferLoader) {
+            final ByteBuffer classBuffer = ((ClassBufferLoader) loader).loadClassBuffer(jvmFormattedClassName);
+            result = classBuffer == null ? null : new JJJVMClassImpl(classBuffer, this);
+        } else {
+            final byte[] classBody = loader.loadClassBody(jvmFormattedClassName);
+            result = classBody == null ? null : new JJJVMClassImpl(ByteBuffer.wrap(classBody), this);
+        }
+        final JSEAotCache cache = this.aotCache;
+        if (cache != null) {
+            cache.installInto(result);
+        }
+        return result;
+    }
+
+    private Object findClass(final String jvmFormattedClassName, final boolean allowHostClass) throws Throwable {
+        final ClassSourceRule rule = findClassSourceRule(jvmFormattedClassName);
+        final ClassDataLoader loader = rule == null ? this.classDataLoader : rule.loader;
+
+        Object result = null;
+        if (loader != null) {
+            if (this.absentClassNames.containsKey(jvmFormattedClassName)) {
+                this.absentClassHits.incrementAndGet();
+            } else {
+                final JJJVMClass loaded = loadClassFromLoader(loader, jvmFormattedClassName);
+                if (loaded == null) {
+                    this.absentClassNames.put(jvmFormattedClassName, Boolean.TRUE);
                 } else {
-                    result = loadClassFromLoader(innerClassName);
-                    this.classCache.put(innerClassName, result);
+                    schedulePrefetch(loaded);
                 }
+                result = loaded;
+            }
+        }
+
+        if (result == null) {
+            if (!allowHostClass) {
+                throw new ClassNotFoundException("Can't find body for class '" + jvmFormattedClassName + '\'');
             }
+            result = Class.forName(jvmFormattedClassName.replace('/', '.'));
         }
         return result;
     }
 
+    /**
+     * Register host implementation of a native method of an interpreted class.
+     * Classes loaded before the registration bind the implementation on the
+     * first call of the method.
+     *
+     * @param jvmFormattedClassName the jvm formatted name of the class declaring
+     *                              the method, must not be null
+     * @param methodName            the method name, must not be null
+     * @param methodSignature       the method signature, must not be null
+     * @param implementation        the implementation, must not be null
+     */
+    public void registerNativeMethod(final String jvmFormattedClassName, final String methodName, final String methodSignature, final JJJVMNativeMethod implementation) {
+        JJJVMImplUtils.assertNotNull("Class name is null", jvmFormattedClassName);
+        JJJVMImplUtils.assertNotNull("Method name is null", methodName);
+        JJJVMImplUtils.assertNotNull("Method signature is null", methodSignature);
+        JJJVMImplUtils.assertNotNull("Implementation is null", implementation);
+        this.nativeMethods.put(jvmFormattedClassName + '.' + methodName + methodSignature, implementation);
+    }
+
+    public JJJVMNativeMethod findNativeMethod(final JJJVMClass klazz, final String methodName, final String methodSignature) {
+        return this.nativeMethods.get(klazz.getClassName() + '.' + methodName + methodSignature);
+    }
+
+    public JJJVMClass resolveInnerClass(final JJJVMClass caller, final JJJVMInnerClassRecord innerClassRecord) throws Throwable {
+        // nested classes are resolved lazily like any other class, the outer class is not needed
+        return (JJJVMClass) loadClass(innerClassRecord.getInnerClassInfo().getClassName(), false);
+    }
+
     public void registerExternalClass(final String jvmFormattedClassName, final Object clazz) {
         if (clazz == null) {
             throw new NullPointerException("Class is null");
@@ -122,24 +848,101 @@ public class JSEProviderImpl implements JJJVMProvider {
             throw new IllegalArgumentException("Unexpected class object [" + clazz + ']');
         }
 
-        synchronized (this.classCache) {
+        final Object current = this.classCache.peek(jvmFormattedClassName);
+        if (current instanceof ClassLoading && ((ClassLoading) current).owner == Thread.currentThread()) {
+            // a class registers itself during loading, it will be visible for other threads when the loading is completed
+            ((ClassLoading) current).registered = clazz;
+        } else {
             this.classCache.put(jvmFormattedClassName, clazz);
         }
     }
 
     public Object resolveClass(final String jvmFormattedClassName) throws Throwable {
-        Object result;
-        synchronized (this.classCache) {
-            result = this.classCache.get(jvmFormattedClassName);
-            if (result == null) {
+        final Object cached = dereference(this.classCache.get(jvmFormattedClassName));
+        if (cached != null && !(cached instanceof ClassLoading)) {
+            this.classCacheHits.incrementAndGet();
+            return cached;
+        }
+        return loadClass(jvmFormattedClassName, true);
+    }
+
+    private Object loadClass(final String jvmFormattedClassName, final boolean allowHostClass) throws Throwable {
+        expungeCollectedClasses();
+        Object current = this.classCache.peek(jvmFormattedClassName);
+        if (current instanceof ClassReference && ((ClassReference) current).get() == null) {
+            // the class has been collected
+            this.classCache.remove(jvmFormattedClassName, current);
+            current = this.classCache.peek(jvmFormattedClassName);
+        }
+        if (current == null) {
+            final ClassLoading loading = new ClassLoading();
+            current = this.classCache.putIfAbsent(jvmFormattedClassName, loading);
+            if (current == null) {
+                Object result = null;
+                Throwable error = null;
+                this.classCacheMisses.incrementAndGet();
                 try {
-                    result = loadClassFromLoader(jvmFormattedClassName);
-                } catch (ClassNotFoundException ex) {
-                    result = Class.forName(jvmFormattedClassName.replace('/', '.'));
+                    result = findClass(jvmFormattedClassName, allowHostClass);
+                    if (result instanceof JJJVMClass) {
+                        this.classGenerations.put(jvmFormattedClassName, this.generation.get());
+                        this.classCache.put(jvmFormattedClassName, this.weakClassReferences ? new ClassReference(jvmFormattedClassName, (JJJVMClass) result, this.collectedClasses) : result);
+                    } else {
+                        this.classCache.put(jvmFormattedClassName, result);
+                    }
+                    return result;
+                } catch (Throwable thr) {
+                    error = thr;
+                    this.classCache.remove(jvmFormattedClassName, loading);
+                    throw thr;
+                } finally {
+                    loading.complete(result, error);
                 }
-                this.classCache.put(jvmFormattedClassName, result);
             }
         }
+
+        if (current instanceof ClassLoading) {
+            final Object result = awaitLoading(jvmFormattedClassName, (ClassLoading) current);
+            return result == ClassLoading.RETRY ? loadClass(jvmFormattedClassName, allowHostClass) : result;
+        }
+        final Object result = dereference(current);
+        return result == null ? loadClass(jvmFormattedClassName, allowHostClass) : result;
+    }
+
+    private Object awaitLoading(final String jvmFormattedClassName, final ClassLoading loading) throws Throwable {
+        final Thread thread = Thread.currentThread();
+        if (loading.owner == thread) {
+            // recursive loading
+            return getRegisteredDuringLoading(jvmFormattedClassName, loading);
+        }
+
+        this.waitingThreads.put(thread, loading);
+        try {
+            if (isWaitingFor(loading, thread)) {
+                // threads load classes referring each other, waiting would be deadlock
+                return getRegisteredDuringLoading(jvmFormattedClassName, loading);
+            }
+            return loading.await();
+        } finally {
+            this.waitingThreads.remove(thread);
+        }
+    }
+
+    private boolean isWaitingFor(final ClassLoading loading, final Thread thread) {
+        ClassLoading current = loading;
+        for (int i = 0; current != null && i <= this.waitingThreads.size(); i++) {
+            if (current.owner == thread) {
+                return true;
+            }
+            current = this.waitingThreads.get(current.owner);
+        }
+        return false;
+    }
+
+    private static Object getRegisteredDuringLoading(final String jvmFormattedClassName, final ClassLoading loading) {
+        final Object result = loading.registered;
+        if (result == null) {
+            throw new ClassCircularityError(jvmFormattedClassName.replace('/', '.'));
+        }
         return result;
     }
 
@@ -158,12 +961,21 @@ public class JSEProviderImpl implements JJJVMProvider {
         }
 
         final Object resolvedClass = resolveClass(jvmFormattedClassName);
-        Class[] paramClasses;
-        synchronized (this.parsedArgsCache) {
-            paramClasses = this.parsedArgsCache.get(methodSignature);
-            if (paramClasses == null) {
-                paramClasses = parseArgsFromMethodSignature(methodSignature);
-                this.parsedArgsCache.put(methodSignature, paramClasses);
+        Class[] paramClasses = this.parsedArgsCache.get(methodSignature);
+        if (paramClasses == null) {
+            // concurrent parsing gives equal arrays
+            paramClasses = parseArgsFromMethodSignature(methodSignature);
+            this.parsedArgsCache.put(methodSignature, paramClasses);
+        }
+
+        if (arguments != null) {
+            // interpreted objects passed into host code as interfaces are represented by proxies
+            for (int i = 0; i < arguments.length; i++) {
+                final Object arg = arguments[i];
+                final Class<?> paramClass = paramClasses[i];
+                if (arg instanceof JJJVMObject && paramClass.isInterface()) {
+                    arguments[i] = ((JJJVMObject) arg).asInterface(paramClass);
+                }
             }
         }
 
@@ -432,39 +1244,32 @@ public class JSEProviderImpl implements JJJVMProvider {
         if ("java/lang/Object".equals(jvmFormattedClassName)) {
             return true;
         }
-        synchronized (this.cachedCast) {
-            Map<String, Boolean> record =
-                    this.cachedCast.computeIfAbsent(jvmFormattedClassName, k -> new HashMap<>());
+        if (value instanceof JJJVMLambda) {
+            return ((JJJVMLambda) value).isInstanceOf(jvmFormattedClassName);
+        } else if (value instanceof JJJVMBufferArray) {
+            return ((JJJVMBufferArray) value).getTypeSignature().equals(jvmFormattedClassName);
+        }
 
-            boolean result = true;
-            if (value instanceof JJJVMObject) {
-                final JJJVMObject jjjvmObj = (JJJVMObject) value;
-                final String objClassName = jjjvmObj.getDeclaringClass().getClassName();
+        final boolean interpreted = value instanceof JJJVMObject;
+        final CastKey key = new CastKey(jvmFormattedClassName, interpreted ? ((JJJVMObject) value).getDeclaringClass().getClassName() : value.getClass().getName());
+        final Boolean flag = this.cachedCast.get(key);
+        if (flag != null) {
+            return flag;
+        }
 
-                Boolean flag = record.get(objClassName);
-                if (flag == null) {
-                    result = findClassForNameInHierarchy(jjjvmObj.getDeclaringClass(), jvmFormattedClassName) != null;
-                    record.put(objClassName, result);
-                } else {
-                    result = flag;
-                }
-            } else {
-                final String klazzName = value.getClass().getName();
-                Boolean flag = record.get(klazzName);
-                if (flag == null) {
-                    final Object theclazz = this.resolveClass(jvmFormattedClassName);
-                    try {
-                        ((Class<?>) theclazz).cast(value);
-                    } catch (ClassCastException ex) {
-                        result = false;
-                    }
-                    record.put(klazzName, result);
-                } else {
-                    result = flag;
-                }
+        boolean result = true;
+        if (interpreted) {
+            result = findClassForNameInHierarchy(((JJJVMObject) value).getDeclaringClass(), jvmFormattedClassName) != null;
+        } else {
+            final Object theclazz = this.resolveClass(jvmFormattedClassName);
+            try {
+                ((Class<?>) theclazz).cast(value);
+            } catch (ClassCastException ex) {
+                result = false;
             }
-            return result;
         }
+        this.cachedCast.put(key, result);
+        return result;
     }
 
     public void doThrow(final JJJVMClass caller, final Object objectProvidedAsThrowable) throws Throwable {
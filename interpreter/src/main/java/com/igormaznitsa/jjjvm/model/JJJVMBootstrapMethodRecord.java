@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Structure describes a bootstrap method used by invokedynamic call sites.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.7.21}
+ */
+public class JJJVMBootstrapMethodRecord {
+
+    /**
+     * The Declaring class.
+     */
+    protected final JJJVMClass declaringClass;
+    /**
+     * The Index in the declaring class constant pool of the bootstrap method
+     * handle.
+     */
+    protected final int methodRefIndex;
+    /**
+     * Indexes in the declaring class constant pool of static arguments.
+     */
+    protected final int[] argumentIndexes;
+
+    public JJJVMBootstrapMethodRecord(final JJJVMClass declaring, final int methodRefIndex, final int[] argumentIndexes) {
+        this.declaringClass = declaring;
+        this.methodRefIndex = methodRefIndex;
+        this.argumentIndexes = argumentIndexes;
+    }
+
+    public JJJVMBootstrapMethodRecord(final JJJVMClass declaring, final ByteBuffer inBuffer) {
+        this(declaring, inBuffer.getShort() & 0xFFFF, readArgumentIndexes(inBuffer));
+    }
+
+    private static int[] readArgumentIndexes(final ByteBuffer inBuffer) {
+        final int[] result = new int[inBuffer.getShort() & 0xFFFF];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = inBuffer.getShort() & 0xFFFF;
+        }
+        return result;
+    }
+
+    public JJJVMConstantPoolItem getMethodHandle() {
+        return this.declaringClass.getConstantPool().getItemAt(this.methodRefIndex);
+    }
+
+    public int getNumberOfArguments() {
+        return this.argumentIndexes.length;
+    }
+
+    public JJJVMConstantPoolItem getArgument(final int index) {
+        return this.declaringClass.getConstantPool().getItemAt(this.argumentIndexes[index]);
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Host buffer presented to interpreted code as an array without copying.
+ * Array load, store and length instructions work directly with the buffer,
+ * elements are addressed by absolute index, so the buffer position and limit
+ * are not changed. Such arrays can't be passed to host methods expecting Java
+ * arrays.
+ *
+ * @see #ofBytes(java.nio.ByteBuffer)
+ * @see #ofInts(java.nio.IntBuffer)
+ * @see #ofLongs(java.nio.LongBuffer)
+ */
+public abstract class JJJVMBufferArray {
+
+    private final String typeSignature;
+    private final int length;
+
+    private JJJVMBufferArray(final String typeSignature, final int length) {
+        this.typeSignature = typeSignature;
+        this.length = length;
+    }
+
+    /**
+     * Present bytes between position and limit of a buffer as byte[].
+     *
+     * @param buffer the buffer, must not be null
+     * @return the array view, must not be null
+     */
+    public static JJJVMBufferArray ofBytes(final ByteBuffer buffer) {
+        return new ByteView(buffer.slice());
+    }
+
+    /**
+     * Present ints between position and limit of a buffer as int[].
+     *
+     * @param buffer the buffer, must not be null
+     * @return the array view, must not be null
+     */
+    public static JJJVMBufferArray ofInts(final IntBuffer buffer) {
+        return new IntView(buffer.slice());
+    }
+
+    /**
+     * Present longs between position and limit of a buffer as long[].
+     *
+     * @param buffer the buffer, must not be null
+     * @return the array view, must not be null
+     */
+    public static JJJVMBufferArray ofLongs(final LongBuffer buffer) {
+        return new LongView(buffer.slice());
+    }
+
+    /**
+     * Get JVM type signature of the array presented by the view.
+     *
+     * @return the signature like "[B", must not be null
+     */
+    public final String getTypeSignature() {
+        return this.typeSignature;
+    }
+
+    /**
+     * Get number of array elements.
+     *
+     * @return the length of the array
+     */
+    public final int getLength() {
+        return this.length;
+    }
+
+    protected final void checkIndex(final int index) {
+        if (index < 0 || index >= this.length) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+    }
+
+    /**
+     * Read element as int, byte elements are sign extended.
+     *
+     * @param index the element index
+     * @return the element value
+     */
+    public int getInt(final int index) {
+        throw new UnsupportedOperationException("Not an int array [" + this.typeSignature + ']');
+    }
+
+    /**
+     * Write element as int, it is narrowed for byte elements.
+     *
+     * @param index the element index
+     * @param value the value
+     */
+    public void setInt(final int index, final int value) {
+        throw new UnsupportedOperationException("Not an int array [" + this.typeSignature + ']');
+    }
+
+    /**
+     * Read element as long.
+     *
+     * @param index the element index
+     * @return the element value
+     */
+    public long getLong(final int index) {
+        throw new UnsupportedOperationException("Not a long array [" + this.typeSignature + ']');
+    }
+
+    /**
+     * Write element as long.
+     *
+     * @param index the element index
+     * @param value the value
+     */
+    public void setLong(final int index, final long value) {
+        throw new UnsupportedOperationException("Not a long array [" + this.typeSignature + ']');
+    }
+
+    @Override
+    public String toString() {
+        return this.typeSignature + '(' + this.length + ")@" + Integer.toHexString(System.identityHashCode(this));
+    }
+
+    private static final class ByteView extends JJJVMBufferArray {
+
+        private final ByteBuffer buffer;
+
+        private ByteView(final ByteBuffer buffer) {
+            super("[B", buffer.remaining());
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int getInt(final int index) {
+            checkIndex(index);
+            return this.buffer.get(index);
+        }
+
+        @Override
+        public void setInt(final int index, final int value) {
+            checkIndex(index);
+            this.buffer.put(index, (byte) value);
+        }
+    }
+
+    private static final class IntView extends JJJVMBufferArray {
+
+        private final IntBuffer buffer;
+
+        private IntView(final IntBuffer buffer) {
+            super("[I", buffer.remaining());
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int getInt(final int index) {
+            checkIndex(index);
+            return this.buffer.get(index);
+        }
+
+        @Override
+        public void setInt(final int index, final int value) {
+            checkIndex(index);
+            this.buffer.put(index, value);
+        }
+    }
+
+    private static final class LongView extends JJJVMBufferArray {
+
+        private final LongBuffer buffer;
+
+        private LongView(final LongBuffer buffer) {
+            super("[J", buffer.remaining());
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long getLong(final int index) {
+            checkIndex(index);
+            return this.buffer.get(index);
+        }
+
+        @Override
+        public void setLong(final int index, final long value) {
+            checkIndex(index);
+            this.buffer.put(index, value);
+        }
+    }
+}
@@ -29,6 +29,10 @@ public interface JJJVMClass  {
 
     JJJVMMethod findDeclaredMethod(String methodName, String methodSignature);
 
+    JJJVMMethod findMethod(JJJVMSymbol methodName, JJJVMSymbol methodSignature) throws Throwable;
+
+    JJJVMMethod findDeclaredMethod(JJJVMSymbol methodName, JJJVMSymbol methodSignature);
+
     JJJVMField findDeclaredField(String fieldName);
 
     Map<String, JJJVMField> getAllDeclaredFields();
@@ -51,14 +55,24 @@ public interface JJJVMClass  {
 
     String getSourceFileName();
 
+    JJJVMBootstrapMethodRecord[] getBootstrapMethods();
+
     Object readStaticField(String fieldName) throws Throwable;
 
     void writeStaticField(String fieldName, Object value) throws Throwable;
 
+    boolean isInitialized();
+
+    void initialize();
+
+    void prelink() throws Throwable;
+
     JJJVMObject newInstance(boolean callDefaultConstructor) throws Throwable;
 
     JJJVMObject newInstance(String constructorSignature, Object[] args, Object[] stack, Object[] localVariables) throws Throwable;
 
     JJJVMObject initInstanceFields(JJJVMObject obj) throws Throwable;
 
+    <T> T asInterface(JJJVMObject instance, Class<T> hostInterface) throws Throwable;
+
 }
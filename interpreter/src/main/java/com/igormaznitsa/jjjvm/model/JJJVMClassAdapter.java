@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+/**
+ * Base for own implementations of {@link JJJVMClass}. It provides default
+ * implementation of methods which were added to the interface later, so that
+ * such implementations don't need changes when the interface grows. The
+ * default class is always initialized and has nothing to pre-link.
+ */
+public abstract class JJJVMClassAdapter implements JJJVMClass {
+
+    public JJJVMMethod findMethod(final JJJVMSymbol methodName, final JJJVMSymbol methodSignature) throws Throwable {
+        return findMethod(methodName.getText(), methodSignature.getText());
+    }
+
+    public JJJVMMethod findDeclaredMethod(final JJJVMSymbol methodName, final JJJVMSymbol methodSignature) {
+        return findDeclaredMethod(methodName.getText(), methodSignature.getText());
+    }
+
+    public JJJVMBootstrapMethodRecord[] getBootstrapMethods() {
+        return JJJVMConstants.EMPTY_BOOTSTRAP_ARRAY;
+    }
+
+    public boolean isInitialized() {
+        return true;
+    }
+
+    public void initialize() {
+    }
+
+    public void prelink() throws Throwable {
+    }
+
+    public <T> T asInterface(final JJJVMObject instance, final Class<T> hostInterface) throws Throwable {
+        throw new UnsupportedOperationException("Class '" + getName() + "' doesn't provide host interfaces");
+    }
+}
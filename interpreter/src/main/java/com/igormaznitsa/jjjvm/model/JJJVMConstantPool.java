@@ -42,4 +42,60 @@ public interface JJJVMConstantPool {
      * @return the constant pool item for its index.
      */
     JJJVMConstantPoolItem getItemAt(int itemIndex);
+
+    /**
+     * Get type of constant pool item without making the item object.
+     *
+     * @param itemIndex the index of constant pool item
+     * @return the item type, one of CONSTANT_ constants, 0 for unused slots
+     */
+    int getTagAt(int itemIndex);
+
+    /**
+     * Get int value of constant pool item. It is the value for integer items,
+     * raw bits for float items, the index for class, string and method type
+     * items and packed indexes (high and low unsigned shorts) for other items.
+     *
+     * @param itemIndex the index of constant pool item
+     * @return the int value of the item
+     */
+    int getIntAt(int itemIndex);
+
+    /**
+     * Get long value of constant pool item. It is the value for long items and
+     * raw bits for double items.
+     *
+     * @param itemIndex the index of constant pool item
+     * @return the long value of the item
+     */
+    long getLongAt(int itemIndex);
+
+    /**
+     * Get string of UTF8 or UNICODE item.
+     *
+     * @param itemIndex the index of constant pool item
+     * @return the string, must not be null
+     * @throws IllegalArgumentException if the item is not a string item
+     */
+    String getUtf8At(int itemIndex);
+
+    /**
+     * Get canonical symbol of UTF8 or UNICODE item. It is used for class,
+     * member and descriptor names, other strings are not interned as symbols.
+     *
+     * @param itemIndex the index of constant pool item
+     * @return the symbol, must not be null
+     * @throws IllegalArgumentException if the item is not a string item
+     */
+    JJJVMSymbol getSymbolAt(int itemIndex);
+
+    /**
+     * Get resolved field or method reference.
+     *
+     * @param itemIndex the index of Fieldref, Methodref or InterfaceMethodref
+     *                  item
+     * @return the reference, it is made once and cached by the pool
+     * @throws IllegalArgumentException if the item is not a member reference
+     */
+    JJJVMMemberRef getMemberRefAt(int itemIndex);
 }
@@ -16,8 +16,8 @@
 package com.igormaznitsa.jjjvm.model;
 
 /**
- * Describing structure and contains data of a constant pool item. Data for
- * multi-field items presented as packed integer object
+ * Describing structure of a constant pool item. The item is a view of the
+ * pool data, multi-field items presented as packed integer.
  */
 public class JJJVMConstantPoolItem {
 
@@ -110,64 +110,147 @@ public class JJJVMConstantPoolItem {
      */
     public static final int CONSTANT_INVOKEDYNAMIC = 18;
 
+    /**
+     * Method handle reference kind REF_getField.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_GETFIELD = 1;
+
+    /**
+     * Method handle reference kind REF_getStatic.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_GETSTATIC = 2;
+
+    /**
+     * Method handle reference kind REF_putField.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_PUTFIELD = 3;
+
+    /**
+     * Method handle reference kind REF_putStatic.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_PUTSTATIC = 4;
+
+    /**
+     * Method handle reference kind REF_invokeVirtual.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_INVOKEVIRTUAL = 5;
+
+    /**
+     * Method handle reference kind REF_invokeStatic.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_INVOKESTATIC = 6;
+
+    /**
+     * Method handle reference kind REF_invokeSpecial.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_INVOKESPECIAL = 7;
+
+    /**
+     * Method handle reference kind REF_newInvokeSpecial.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_NEWINVOKESPECIAL = 8;
+
+    /**
+     * Method handle reference kind REF_invokeInterface.
+     * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-5.html#jvms-5.4.3.5}
+     */
+    public static final int REF_INVOKEINTERFACE = 9;
+
     /**
      * The Field contains the type of class pool item.
      */
     protected final int type;
 
     /**
-     * The Value contains content of the class pool item as Object, multi-value
-     * items are packed as Integer
+     * Index of the item in the constant pool, the item data is kept by the
+     * pool.
      */
-    protected final Object value;
+    protected final int index;
 
     /**
      * The Link to the owning constant pool.
      */
     protected final JJJVMConstantPool cpool;
 
-    public JJJVMConstantPoolItem(final JJJVMConstantPool cp, final int type, final Object value) {
+    /**
+     * Object linked with the item during execution, for instance a linked
+     * invokedynamic call site.
+     */
+    private volatile Object linkedObject;
+
+    public JJJVMConstantPoolItem(final JJJVMConstantPool cp, final int index) {
         this.cpool = cp;
-        this.type = type;
-        this.value = value;
+        this.index = index;
+        this.type = cp.getTagAt(index);
     }
 
     public int getType() {
         return this.type;
     }
 
+    public int getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Get value of the item as object.
+     *
+     * @return String for string items, Integer, Float, Long or Double for
+     * numeric items and Integer with the int value for other items
+     */
     public Object getValue() {
-        return this.value;
+        switch (this.type) {
+            case CONSTANT_UTF8:
+            case CONSTANT_UNICODE:
+                return this.cpool.getUtf8At(this.index);
+            case CONSTANT_FLOAT:
+                return Float.intBitsToFloat(this.cpool.getIntAt(this.index));
+            case CONSTANT_LONG:
+                return this.cpool.getLongAt(this.index);
+            case CONSTANT_DOUBLE:
+                return Double.longBitsToDouble(this.cpool.getLongAt(this.index));
+            default:
+                return this.cpool.getIntAt(this.index);
+        }
     }
 
     public int asInt() {
-        return (Integer) this.value;
+        return this.cpool.getIntAt(this.index);
     }
 
     public Integer asInteger() {
-        return (Integer) this.value;
+        return (Integer) getValue();
     }
 
     public Double asDouble() {
-        return (Double) this.value;
+        return (Double) getValue();
     }
 
     public Float asFloat() {
-        return (Float) this.value;
+        return (Float) getValue();
     }
 
     public Long asLong() {
-        return (Long) this.value;
+        return (Long) getValue();
     }
 
     public String asString() {
         switch (this.type) {
             case CONSTANT_UTF8:
             case CONSTANT_UNICODE:
-                return (String) this.value;
+                return this.cpool.getUtf8At(this.index);
             case CONSTANT_CLASSREF:
             case CONSTANT_STRING:
-                return (String) this.cpool.getItemAt(this.asInt()).asObject();
+            case CONSTANT_METHODTYPE:
+                return this.cpool.getUtf8At(this.asInt());
             default:
                 throw new IllegalArgumentException("Type is not compatible with String [" + this.type + ']');
         }
@@ -185,13 +268,13 @@ public class JJJVMConstantPoolItem {
         final String result;
         switch (this.type) {
             case CONSTANT_CLASSREF: {
-                result = this.cpool.getItemAt(this.asInt()).asString();
+                result = this.cpool.getUtf8At(this.asInt());
             }
             break;
             case CONSTANT_METHODREF:
             case CONSTANT_INTERFACEMETHOD:
             case CONSTANT_FIELDREF: {
-                result = this.cpool.getItemAt(extractHighUShort()).asString();
+                result = this.cpool.getMemberRefAt(this.index).getClassName();
             }
             break;
             default: {
@@ -205,13 +288,17 @@ public class JJJVMConstantPoolItem {
         final String result;
         switch (this.type) {
             case CONSTANT_NAMETYPEREF: {
-                result = this.cpool.getItemAt(this.extractLowUShort()).asString();
+                result = this.cpool.getUtf8At(this.extractLowUShort());
             }
             break;
             case CONSTANT_METHODREF:
             case CONSTANT_INTERFACEMETHOD:
             case CONSTANT_FIELDREF: {
-                result = this.cpool.getItemAt(this.cpool.getItemAt(extractLowUShort()).extractLowUShort()).asString();
+                result = this.cpool.getMemberRefAt(this.index).getSignature();
+            }
+            break;
+            case CONSTANT_INVOKEDYNAMIC: {
+                result = this.cpool.getUtf8At(this.cpool.getIntAt(extractLowUShort()) & 0xFFFF);
             }
             break;
             default: {
@@ -225,13 +312,17 @@ public class JJJVMConstantPoolItem {
         final String result;
         switch (this.type) {
             case CONSTANT_NAMETYPEREF: {
-                result = this.cpool.getItemAt(this.extractHighUShort()).asString();
+                result = this.cpool.getUtf8At(this.extractHighUShort());
             }
             break;
             case CONSTANT_METHODREF:
             case CONSTANT_INTERFACEMETHOD:
             case CONSTANT_FIELDREF: {
-                result = this.cpool.getItemAt(this.cpool.getItemAt(this.extractLowUShort()).extractHighUShort()).asString();
+                result = this.cpool.getMemberRefAt(this.index).getName();
+            }
+            break;
+            case CONSTANT_INVOKEDYNAMIC: {
+                result = this.cpool.getUtf8At(this.cpool.getIntAt(extractLowUShort()) >>> 16);
             }
             break;
             default: {
@@ -241,8 +332,76 @@ public class JJJVMConstantPoolItem {
         return result;
     }
 
+    /**
+     * Get resolved member reference of Fieldref, Methodref or
+     * InterfaceMethodref item.
+     *
+     * @return the reference, must not be null
+     * @throws IllegalArgumentException if the item is not a member reference
+     */
+    public JJJVMMemberRef getMemberRef() {
+        return this.cpool.getMemberRefAt(this.index);
+    }
+
     public Object asObject() {
-        return this.value;
+        return getValue();
+    }
+
+    /**
+     * Get the reference kind of a method handle item.
+     *
+     * @return the reference kind, one of REF_ constants
+     * @throws IllegalArgumentException if the item is not a method handle
+     */
+    public int getMethodHandleKind() {
+        if (this.type != CONSTANT_METHODHANDLE) {
+            throw new IllegalArgumentException("Illegal constant pool item");
+        }
+        return extractHighUShort();
+    }
+
+    /**
+     * Get the field or method reference of a method handle item.
+     *
+     * @return the referenced constant pool item
+     * @throws IllegalArgumentException if the item is not a method handle
+     */
+    public JJJVMConstantPoolItem getMethodHandleReference() {
+        if (this.type != CONSTANT_METHODHANDLE) {
+            throw new IllegalArgumentException("Illegal constant pool item");
+        }
+        return this.cpool.getItemAt(extractLowUShort());
+    }
+
+    /**
+     * Get index of the bootstrap method record for an invokedynamic item.
+     *
+     * @return index in the bootstrap method table of the class
+     * @throws IllegalArgumentException if the item is not invokedynamic
+     */
+    public int getBootstrapMethodIndex() {
+        if (this.type != CONSTANT_INVOKEDYNAMIC) {
+            throw new IllegalArgumentException("Illegal constant pool item");
+        }
+        return extractHighUShort();
+    }
+
+    /**
+     * Get object linked with the item.
+     *
+     * @return the linked object or null if the item has not been linked yet
+     */
+    public Object getLinkedObject() {
+        return this.linkedObject;
+    }
+
+    /**
+     * Link an object with the item.
+     *
+     * @param obj object to be linked with the item, can be null
+     */
+    public void setLinkedObject(final Object obj) {
+        this.linkedObject = obj;
     }
 
 }
@@ -51,9 +51,12 @@ public interface JJJVMConstants {
     String ATRNAME_CONSTANTVALUE = "ConstantValue";
     String ATTRNAME_INNERCLASSES = "InnerClasses";
     String ATTRNAME_SOURCEFILE = "SourceFile";
+    String ATTRNAME_BOOTSTRAPMETHODS = "BootstrapMethods";
 
     String[] EMPTY_STRING_ARRAY = new String[0];
+    Object[] EMPTY_OBJECT_ARRAY = new Object[0];
     JJJVMInnerClassRecord[] EMPTY_INNERCLASS_ARRAY = new JJJVMInnerClassRecord[0];
     JJJVMTryCatchRecord[] EMPTY_CATCBLOCK_ARRAY = new JJJVMTryCatchRecord[0];
+    JJJVMBootstrapMethodRecord[] EMPTY_BOOTSTRAP_ARRAY = new JJJVMBootstrapMethodRecord[0];
 
 }
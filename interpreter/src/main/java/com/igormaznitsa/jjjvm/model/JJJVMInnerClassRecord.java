@@ -15,8 +15,7 @@
  */
 package com.igormaznitsa.jjjvm.model;
 
-import java.io.DataInputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Structure describes an inner class.
@@ -54,8 +53,8 @@ public class JJJVMInnerClassRecord {
         this.flags = flags;
     }
 
-    public JJJVMInnerClassRecord(final JJJVMClass declaring, final DataInputStream inStream) throws IOException {
-        this(declaring, inStream.readUnsignedShort(), inStream.readUnsignedShort(), inStream.readUnsignedShort(), inStream.readUnsignedShort());
+    public JJJVMInnerClassRecord(final JJJVMClass declaring, final ByteBuffer inBuffer) {
+        this(declaring, inBuffer.getShort() & 0xFFFF, inBuffer.getShort() & 0xFFFF, inBuffer.getShort() & 0xFFFF, inBuffer.getShort() & 0xFFFF);
     }
 
     public int getFlags() {
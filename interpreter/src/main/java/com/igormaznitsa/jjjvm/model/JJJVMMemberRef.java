@@ -0,0 +1,127 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+/**
+ * Resolved symbolic reference to a field or a method, made from Fieldref,
+ * Methodref or InterfaceMethodref constant pool item.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-4.html#jvms-4.4.2}
+ */
+public final class JJJVMMemberRef {
+
+    private final int type;
+    private final String className;
+    private final JJJVMSymbol name;
+    private final JJJVMSymbol signature;
+    private final char[] argTypes;
+
+    public JJJVMMemberRef(final int type, final String className, final JJJVMSymbol name, final JJJVMSymbol signature) {
+        this.type = type;
+        this.className = className;
+        this.name = name;
+        this.signature = signature;
+        this.argTypes = type == JJJVMConstantPoolItem.CONSTANT_FIELDREF ? null : parseArgTypes(signature.getText());
+    }
+
+    /**
+     * Get types of method arguments, object and array arguments are presented
+     * by 'L'.
+     *
+     * @param methodSignature the method signature, must not be null
+     * @return array of argument types, must not be null
+     */
+    public static char[] parseArgTypes(final String methodSignature) {
+        final StringBuilder buffer = new StringBuilder(methodSignature.length());
+        boolean className = false;
+        boolean array = false;
+        for (int i = 1; i < methodSignature.length(); i++) {
+            final char chr = methodSignature.charAt(i);
+            if (className) {
+                if (chr == ';') {
+                    className = false;
+                }
+                continue;
+            }
+            if (chr == ')') {
+                break;
+            }
+            if (chr == JJJVMConstants.TYPE_ARRAY) {
+                array = true;
+                continue;
+            }
+            if (chr == JJJVMConstants.TYPE_CLASS) {
+                className = true;
+            }
+            buffer.append(array ? JJJVMConstants.TYPE_CLASS : chr);
+            array = false;
+        }
+        final char[] result = new char[buffer.length()];
+        buffer.getChars(0, result.length, result, 0);
+        return result;
+    }
+
+    /**
+     * Get type of the constant pool item.
+     *
+     * @return one of CONSTANT_FIELDREF, CONSTANT_METHODREF or
+     * CONSTANT_INTERFACEMETHOD
+     */
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Get jvm formatted name of the class owning the member.
+     *
+     * @return the class name, must not be null
+     */
+    public String getClassName() {
+        return this.className;
+    }
+
+    public String getName() {
+        return this.name.getText();
+    }
+
+    public String getSignature() {
+        return this.signature.getText();
+    }
+
+    public JJJVMSymbol getNameSymbol() {
+        return this.name;
+    }
+
+    public JJJVMSymbol getSignatureSymbol() {
+        return this.signature;
+    }
+
+    /**
+     * Get types of arguments of the referenced method, they are parsed once
+     * when the reference is resolved.
+     *
+     * @return array of argument types, object and array arguments are
+     * presented by 'L', null for field references. The array must not be
+     * changed.
+     */
+    public char[] getArgTypes() {
+        return this.argTypes;
+    }
+
+    @Override
+    public String toString() {
+        return this.className + '.' + this.name + (this.type == JJJVMConstantPoolItem.CONSTANT_FIELDREF ? ":" : "") + this.signature;
+    }
+}
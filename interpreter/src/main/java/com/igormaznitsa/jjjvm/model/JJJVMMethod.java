@@ -77,6 +77,14 @@ public interface JJJVMMethod {
      */
     String[] getDeclaredExceptions();
 
+    /**
+     * Host implementation bound to the native method.
+     *
+     * @return the implementation or null if the method is not native or the
+     * implementation is not found
+     */
+    JJJVMNativeMethod getNativeImplementation();
+
     /**
      * get try..catch records for the method byte code.
      *
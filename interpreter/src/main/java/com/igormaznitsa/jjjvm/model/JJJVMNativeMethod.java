@@ -0,0 +1,38 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+/**
+ * Host implementation of a native method declared by an interpreted class.
+ * The implementation is bound to the method during class linking, so the
+ * interpreter calls it without any search.
+ * {@link https://docs.oracle.com/javase/specs/jvms/se7/html/jvms-2.html#jvms-2.5.6}
+ *
+ * @see JJJVMProvider#findNativeMethod(com.igormaznitsa.jjjvm.model.JJJVMClass, java.lang.String, java.lang.String)
+ */
+public interface JJJVMNativeMethod {
+
+    /**
+     * Execute the native method.
+     *
+     * @param instance  the 'this' object, null for static method
+     * @param arguments arguments in the interpreter format (boolean, byte, char
+     *                  and short values are Integer), must not be null
+     * @return result in the interpreter format, null for void method
+     * @throws Throwable it will be thrown for errors
+     */
+    Object invoke(JJJVMObject instance, Object[] arguments) throws Throwable;
+}
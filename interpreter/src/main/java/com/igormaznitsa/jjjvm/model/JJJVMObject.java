@@ -98,6 +98,21 @@ public final class JJJVMObject {
         return this.baseClass;
     }
 
+    /**
+     * Get implementation of a host interface for the object.
+     *
+     * @param <T>           type of the interface
+     * @param hostInterface the host interface implemented by the object class,
+     *                      must not be null
+     * @return object implementing the interface and calling methods of the
+     * object, must not be null
+     * @throws Throwable it will be thrown for errors
+     * @see JJJVMClass#asInterface(com.igormaznitsa.jjjvm.model.JJJVMObject, java.lang.Class)
+     */
+    public <T> T asInterface(final Class<T> hostInterface) throws Throwable {
+        return this.baseClass.asInterface(this, hostInterface);
+    }
+
     public boolean isFinalized() {
         return this.objectFinalized.get();
     }
@@ -205,4 +205,16 @@ public interface JJJVMProvider {
      * @see #resolveClass(java.lang.String)
      */
     JJJVMClass resolveInnerClass(JJJVMClass caller, JJJVMInnerClassRecord innerClassRecord) throws Throwable;
+
+    /**
+     * Find host implementation of a native method of an interpreted class.
+     * It is called during class linking for every native method.
+     *
+     * @param klazz           the class declaring the method, must not be null
+     * @param methodName      the method name, must not be null
+     * @param methodSignature the method signature, must not be null
+     * @return the implementation or null if there is no implementation
+     * @see JJJVMNativeMethod
+     */
+    JJJVMNativeMethod findNativeMethod(JJJVMClass klazz, String methodName, String methodSignature);
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+/**
+ * Base for own implementations of {@link JJJVMProvider}. It provides default
+ * implementation of methods which were added to the interface later. The
+ * default provider has no host implementations of native methods.
+ */
+public abstract class JJJVMProviderAdapter implements JJJVMProvider {
+
+    public JJJVMNativeMethod findNativeMethod(final JJJVMClass klazz, final String methodName, final String methodSignature) {
+        return null;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2015 Igor Maznitsa (http://www.igormaznitsa.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.igormaznitsa.jjjvm.model;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Canonical representation of a class, member or descriptor name. Symbols are
+ * interned process-wide so that equal names decoded from different classes
+ * share one string and can be compared by identity, hash is precomputed. The
+ * table keeps symbols weakly, a symbol is removed when no loaded class uses it.
+ */
+public final class JJJVMSymbol {
+
+    /**
+     * Weak reference to an interned symbol.
+     */
+    private static final class SymbolReference extends WeakReference<JJJVMSymbol> {
+
+        private final String text;
+
+        private SymbolReference(final JJJVMSymbol symbol, final ReferenceQueue<JJJVMSymbol> queue) {
+            super(symbol, queue);
+            this.text = symbol.text;
+        }
+    }
+
+    private static final ConcurrentMap<String, SymbolReference> SYMBOLS = new ConcurrentHashMap<String, SymbolReference>(4096);
+    private static final ReferenceQueue<JJJVMSymbol> COLLECTED_SYMBOLS = new ReferenceQueue<JJJVMSymbol>();
+
+    private final String text;
+    private final int hash;
+
+    private JJJVMSymbol(final String text) {
+        this.text = text;
+        this.hash = text.hashCode();
+    }
+
+    /**
+     * Get canonical symbol for a text, the symbol is made if not exists.
+     *
+     * @param text the text, must not be null
+     * @return the symbol, the same object for equal texts
+     */
+    public static JJJVMSymbol of(final String text) {
+        expungeCollectedSymbols();
+        SymbolReference reference = SYMBOLS.get(text);
+        JJJVMSymbol result = reference == null ? null : reference.get();
+        if (result == null) {
+            final JJJVMSymbol newSymbol = new JJJVMSymbol(text);
+            final SymbolReference newReference = new SymbolReference(newSymbol, COLLECTED_SYMBOLS);
+            while (result == null) {
+                reference = SYMBOLS.putIfAbsent(text, newReference);
+                if (reference == null) {
+                    result = newSymbol;
+                } else {
+                    // other thread has made the same symbol
+                    result = reference.get();
+                    if (result == null) {
+                        SYMBOLS.remove(text, reference);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find existing symbol for a text, no new symbol is made.
+     *
+     * @param text the text, must not be null
+     * @return the symbol or null if there is no such symbol, in the case no
+     * loaded class has such name
+     */
+    public static JJJVMSymbol find(final String text) {
+        final SymbolReference reference = SYMBOLS.get(text);
+        return reference == null ? null : reference.get();
+    }
+
+    /**
+     * Get number of interned symbols.
+     *
+     * @return number of symbols in the table
+     */
+    public static int size() {
+        expungeCollectedSymbols();
+        return SYMBOLS.size();
+    }
+
+    private static void expungeCollectedSymbols() {
+        SymbolReference reference;
+        while ((reference = (SymbolReference) COLLECTED_SYMBOLS.poll()) != null) {
+            SYMBOLS.remove(reference.text, reference);
+        }
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public String toString() {
+        return this.text;
+    }
+}
@@ -15,8 +15,7 @@
  */
 package com.igormaznitsa.jjjvm.model;
 
-import java.io.DataInputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Record contains data about try..catch block.
@@ -50,14 +49,27 @@ public class JJJVMTryCatchRecord {
     }
 
     public JJJVMTryCatchRecord(final int pcStart, final int pcEnd, final int pcAddress, final JJJVMConstantPoolItem classRef) {
-        this.jvmFormattedClassName = classRef == null ? null : classRef.asString();
+        this(pcStart, pcEnd, pcAddress, classRef == null ? null : classRef.asString());
+    }
+
+    /**
+     * Make record.
+     *
+     * @param pcStart               start of the block, inclusive
+     * @param pcEnd                 end of the block
+     * @param pcAddress             address of the handler
+     * @param jvmFormattedClassName name of the caught class, null for any
+     *                              throwable
+     */
+    public JJJVMTryCatchRecord(final int pcStart, final int pcEnd, final int pcAddress, final String jvmFormattedClassName) {
+        this.jvmFormattedClassName = jvmFormattedClassName;
         this.pcStart = pcStart;
         this.pcEnd = pcEnd;
         this.codeAddress = pcAddress;
     }
 
-    public JJJVMTryCatchRecord(final JJJVMConstantPool constantPool, final DataInputStream inStream) throws IOException {
-        this(inStream.readUnsignedShort(), inStream.readUnsignedShort(), inStream.readUnsignedShort(), constantPool.getItemAt(inStream.readUnsignedShort()));
+    public JJJVMTryCatchRecord(final JJJVMConstantPool constantPool, final ByteBuffer inBuffer) {
+        this(inBuffer.getShort() & 0xFFFF, inBuffer.getShort() & 0xFFFF, inBuffer.getShort() & 0xFFFF, constantPool.getItemAt(inBuffer.getShort() & 0xFFFF));
     }
 
 }
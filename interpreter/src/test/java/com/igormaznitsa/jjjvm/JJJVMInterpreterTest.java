@@ -1,20 +1,48 @@
 package com.igormaznitsa.jjjvm;
 
+import com.igormaznitsa.jjjvm.testclasses.TestClassInheritance;
+import com.igormaznitsa.jjjvm.testclasses.TestJit;
 import com.igormaznitsa.jjjvm.testclasses.TestObject;
 import com.igormaznitsa.jjjvm.utils.TestProviderImpl;
 import com.igormaznitsa.jjjvm.utils.TestHelper;
 import com.igormaznitsa.jjjvm.utils.Branch;
+import com.igormaznitsa.jjjvm.model.JJJVMBufferArray;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPool;
+import com.igormaznitsa.jjjvm.model.JJJVMConstantPoolItem;
+import com.igormaznitsa.jjjvm.model.JJJVMInnerClassRecord;
+import com.igormaznitsa.jjjvm.model.JJJVMMemberRef;
 import com.igormaznitsa.jjjvm.model.JJJVMMethod;
+import com.igormaznitsa.jjjvm.model.JJJVMNativeMethod;
 import com.igormaznitsa.jjjvm.model.JJJVMProvider;
+import com.igormaznitsa.jjjvm.model.JJJVMSymbol;
 import com.igormaznitsa.jjjvm.model.JJJVMClass;
 import com.igormaznitsa.jjjvm.model.JJJVMObject;
+import com.igormaznitsa.jjjvm.impl.JJJVMClassHeader;
+import com.igormaznitsa.jjjvm.impl.JJJVMClassImage;
 import com.igormaznitsa.jjjvm.impl.JJJVMClassImpl;
+import com.igormaznitsa.jjjvm.impl.jse.JSEAotCache;
+import com.igormaznitsa.jjjvm.impl.jse.JSECacheConfig;
+import com.igormaznitsa.jjjvm.impl.jse.JSEClassArchive;
+import com.igormaznitsa.jjjvm.impl.jse.JSEClassScanner;
+import com.igormaznitsa.jjjvm.impl.jse.JSEJarClassDataLoader;
 import com.igormaznitsa.jjjvm.impl.jse.JSEProviderImpl;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.*;
 import java.util.concurrent.atomic.*;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 import org.apache.bcel.generic.*;
 import org.junit.Test;
@@ -1193,6 +1221,35 @@ public class JJJVMInterpreterTest extends TestHelper implements JSEProviderImpl.
         assertTrue(calledSet.get());
     }
 
+    @Test
+    public void test_GETFIELD_otherClass_long() throws Throwable {
+        final AtomicInteger calledGet = new AtomicInteger();
+
+        final JJJVMProvider processor = new TestProviderImpl() {
+            private TestObject obj;
+
+            @Override
+            public Object allocate(JJJVMClass source, String jvmFormattedClassName) {
+                obj = new TestObject();
+                return obj;
+            }
+
+            @Override
+            public Object get(final JJJVMClass source, final Object obj, final String fieldName, final String fieldSignature) {
+                assertSame(this.obj, obj);
+                assertEquals("lfield", fieldName);
+                assertEquals("J", fieldSignature);
+                calledGet.incrementAndGet();
+                return 1234567890123L;
+            }
+        };
+
+        // long values of host fields take two stack slots like any other long
+        final JJJVMClassImpl test = prepareTestClass(processor, "public long test(long a){ com.igormaznitsa.jjjvm.testclasses.TestObject obj = new com.igormaznitsa.jjjvm.testclasses.TestObject(); return obj.lfield * a + obj.lfield;}");
+        assertEquals(1234567890123L * 3L + 1234567890123L, executeTestMethod(test, Long.class, null, 3L).longValue());
+        assertEquals(2, calledGet.get());
+    }
+
     @Test
     public void testIFNULL() throws Throwable {
         final JJJVMClassImpl test = prepareTestClass(new TestProviderImpl(), Type.OBJECT, new ALOAD(1), new Branch(IFNULL.class, 4), new ICONST(1), new RETURN(), new ICONST(2), new RETURN());
@@ -1432,6 +1489,18 @@ public class JJJVMInterpreterTest extends TestHelper implements JSEProviderImpl.
 
         final JJJVMMethod test = testKlazz.findMethod("test", "(II)I");
         assertEquals(96, test.invoke(instance, new Object[]{123, 456}));
+
+        // nested classes are resolved without loading of their outer class
+        final JSEProviderImpl otherProvider = new JSEProviderImpl(this);
+        int nested = 0;
+        for (final JJJVMInnerClassRecord record : ((JJJVMClassImpl) testKlazz).getInnerClassRecords()) {
+            final String name = record.getInnerClassInfo().getClassName();
+            if (name.startsWith(testKlazz.getClassName() + '$')) {
+                assertEquals(name, otherProvider.resolveInnerClass(testKlazz, record).getClassName());
+                nested++;
+            }
+        }
+        assertTrue(nested > 0);
     }
 
     @Test
@@ -1492,6 +1561,58 @@ public class JJJVMInterpreterTest extends TestHelper implements JSEProviderImpl.
         assertEquals((123 * 999) / 345 + 678, testKlazz.findMethod("calc", "(I)I").invoke(obj, new Object[]{999}));
     }
 
+    @Test
+    public void testIntegration_CallHandle() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClassImpl testKlazz = (JJJVMClassImpl) loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz3");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+        obj.setFieldValue("field1", 123, true);
+        obj.setFieldValue("field2", 345, true);
+        obj.setFieldValue("field3", 678, true);
+
+        final JJJVMCallHandle handle = testKlazz.bind("calc", "(I)I");
+        assertSame(handle, testKlazz.bind("calc", "(I)I"));
+        assertEquals(1, handle.getNumberOfArgs());
+        assertEquals((123 * 999) / 345 + 678, handle.invokeInt(obj, 999));
+
+        final Object[] buffer = handle.getArgumentBuffer();
+        assertSame(buffer, handle.getArgumentBuffer());
+        buffer[0] = 1000;
+        assertEquals((123 * 1000) / 345 + 678, handle.invokeObject(obj, buffer));
+        assertNull(buffer[0]);
+
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int base = i * 1000;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int a = base; a < base + 1000; a++) {
+                            if (handle.invokeInt(obj, a) != (123 * a) / 345 + 678) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable thr) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, errors.get());
+
+        try {
+            testKlazz.bind("unknown", "()V");
+            fail("Must throw NoSuchMethodException");
+        } catch (NoSuchMethodException ex) {
+        }
+    }
+
     @Test
     public void testIntegration_FillMultidimensionalArray_Int() throws Throwable {
         final JJJVMClassImpl test = prepareTestClass(new JSEProviderImpl(this),
@@ -1508,12 +1629,1257 @@ public class JJJVMInterpreterTest extends TestHelper implements JSEProviderImpl.
                         + "}"
         );
 
-        final int[][] result = (int[][]) executeTestMethod(test, Object.class, null, null);
+        final int[][] result = (int[][]) executeTestMethod(test, Object.class, null, (Object[]) null);
         assertEquals(2, result.length);
         assertArrayEquals(new int[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9}, result[0]);
         assertArrayEquals(new int[]{10, 11, 12, 13, 14, 15, 16, 17, 18, 19}, result[1]);
     }
 
+    @Test
+    public void testIntegration_TestLambda() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestLambda");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+
+        assertEquals(42, testKlazz.findMethod("runRunnable", "()I").invoke(obj, null));
+
+        final JJJVMMethod makeNonCapturing = testKlazz.findMethod("makeNonCapturing", "()Ljava/lang/Runnable;");
+        final Runnable nonCapturing = (Runnable) makeNonCapturing.invoke(obj, null);
+        nonCapturing.run();
+        assertSame(nonCapturing, makeNonCapturing.invoke(obj, null));
+
+        final TreeSet<String> set = new TreeSet<String>((Comparator<String>) testKlazz.findMethod("makeComparator", "()Ljava/util/Comparator;").invoke(obj, null));
+        set.addAll(Arrays.asList("b", "c", "a"));
+        assertArrayEquals(new Object[]{"c", "b", "a"}, set.toArray());
+
+        final java.util.function.Function<Integer, Integer> adder = (java.util.function.Function<Integer, Integer>) testKlazz.findMethod("makeAdder", "(I)Ljava/util/function/Function;").invoke(obj, new Object[]{10});
+        assertEquals(Integer.valueOf(115), adder.apply(5));
+        assertNotSame(adder, testKlazz.findMethod("makeAdder", "(I)Ljava/util/function/Function;").invoke(obj, new Object[]{10}));
+
+        assertEquals(106, testKlazz.findMethod("calcInterpreted", "(II)I").invoke(obj, new Object[]{2, 3}));
+
+        final java.util.function.Predicate<String> predicate = (java.util.function.Predicate<String>) testKlazz.findMethod("makePredicate", "()Ljava/util/function/Predicate;").invoke(obj, null);
+        assertTrue(predicate.test("hello"));
+        assertFalse(predicate.test("he"));
+
+        final java.util.function.Supplier<List<String>> listFactory = (java.util.function.Supplier<List<String>>) testKlazz.findMethod("makeListFactory", "()Ljava/util/function/Supplier;").invoke(obj, null);
+        assertTrue(listFactory.get() instanceof ArrayList);
+
+        final java.util.function.Function<String, Integer> length = (java.util.function.Function<String, Integer>) testKlazz.findMethod("makeLength", "()Ljava/util/function/Function;").invoke(obj, null);
+        assertEquals(Integer.valueOf(5), length.apply("hello"));
+
+        // default methods of host functional interfaces
+        final Comparator<String> reversed = ((Comparator<String>) testKlazz.findMethod("makeComparator", "()Ljava/util/Comparator;").invoke(obj, null)).reversed();
+        assertTrue(reversed.compare("a", "b") < 0);
+        assertEquals(Integer.valueOf(225), adder.andThen(adder).apply(5));
+        assertFalse(predicate.negate().test("hello"));
+        assertEquals(Arrays.asList("ccc", "bb", "dd", "a"), testKlazz.findMethod("sortByLengthReversed", "(Ljava/util/List;)Ljava/util/List;").invoke(obj, new Object[]{Arrays.asList("a", "dd", "ccc", "bb")}));
+        assertEquals(110, testKlazz.findMethod("composeFunctions", "(I)I").invoke(obj, new Object[]{5}));
+        assertEquals(2, testKlazz.findMethod("countShort", "(Ljava/util/List;)I").invoke(obj, new Object[]{Arrays.asList("abc", "hello", "a")}));
+    }
+
+    @Test
+    public void testIntegration_TestHostInterface() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestHostInterface");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+
+        final Comparator<String> comparator = obj.asInterface(Comparator.class);
+        final TreeSet<String> set = new TreeSet<String>(comparator);
+        set.addAll(Arrays.asList("ccc", "a", "bb", "b"));
+        assertArrayEquals(new Object[]{"a", "b", "bb", "ccc"}, set.toArray());
+        assertTrue((Integer) testKlazz.findMethod("getCalls", "()I").invoke(obj, null) > 0);
+
+        final java.util.function.Predicate<String> predicate = obj.asInterface(java.util.function.Predicate.class);
+        assertTrue(predicate.test("abc"));
+        assertFalse(predicate.test("xyz"));
+
+        assertEquals("TestHostInterface", comparator.toString());
+        assertTrue(comparator.equals(comparator));
+        assertFalse(comparator.equals(predicate));
+        assertSame(comparator.getClass(), obj.asInterface(Comparator.class).getClass());
+
+        final List<String> sorted = (List<String>) testKlazz.findMethod("sortWithSelf", "(Ljava/util/List;)Ljava/util/List;").invoke(obj, new Object[]{new ArrayList<String>(Arrays.asList("zz", "y", "xxx"))});
+        assertEquals(Arrays.asList("y", "zz", "xxx"), sorted);
+    }
+
+    @Test
+    public void testIntegration_TestBufferArray() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestBufferArray");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+
+        final java.nio.ByteBuffer bytes = java.nio.ByteBuffer.allocateDirect(16);
+        for (int i = 0; i < 16; i++) {
+            bytes.put((byte) (i - 4));
+        }
+        bytes.position(2);
+        final JJJVMBufferArray byteArray = JJJVMBufferArray.ofBytes(bytes);
+        assertEquals(14, byteArray.getLength());
+
+        assertEquals(63, testKlazz.findMethod("sumBytes", "([B)I").invoke(obj, new Object[]{byteArray}));
+        testKlazz.findMethod("invertBytes", "([B)V").invoke(obj, new Object[]{byteArray});
+        assertEquals((byte) ~(-2), bytes.get(2));
+        assertEquals((byte) ~11, bytes.get(15));
+        assertEquals(2, bytes.position());
+        assertEquals(1, testKlazz.findMethod("isByteArray", "(Ljava/lang/Object;)Z").invoke(obj, new Object[]{byteArray}));
+        assertEquals(-1, testKlazz.findMethod("readOutOfBounds", "([B)I").invoke(obj, new Object[]{byteArray}));
+
+        final java.nio.IntBuffer ints = java.nio.ByteBuffer.allocateDirect(12).asIntBuffer();
+        ints.put(0, 2).put(1, -3).put(2, 4);
+        testKlazz.findMethod("squareInts", "([I)V").invoke(obj, new Object[]{JJJVMBufferArray.ofInts(ints)});
+        assertEquals(4, ints.get(0));
+        assertEquals(9, ints.get(1));
+        assertEquals(16, ints.get(2));
+
+        final java.nio.LongBuffer longs = java.nio.LongBuffer.wrap(new long[]{1L, Long.MAX_VALUE - 1L});
+        assertEquals(Long.MAX_VALUE, testKlazz.findMethod("sumLongs", "([J)J").invoke(obj, new Object[]{JJJVMBufferArray.ofLongs(longs)}));
+        assertEquals(-1L, longs.get(0));
+
+        assertEquals(6, testKlazz.findMethod("sumBytes", "([B)I").invoke(obj, new Object[]{new byte[]{1, 2, 3}}));
+    }
+
+    @Test
+    public void testIntegration_TestNative() throws Throwable {
+        final JSEProviderImpl provider = new JSEProviderImpl(this);
+        provider.registerNativeMethod("com/igormaznitsa/jjjvm/testclasses/TestNative", "checksum", "([BII)I", new JJJVMNativeMethod() {
+            @Override
+            public Object invoke(final JJJVMObject instance, final Object[] arguments) throws Throwable {
+                assertNull(instance);
+                final byte[] data = (byte[]) arguments[0];
+                int result = 0;
+                for (int i = (Integer) arguments[1]; i < (Integer) arguments[2]; i++) {
+                    result = result * 31 + data[i];
+                }
+                return result;
+            }
+        });
+
+        final JJJVMClassImpl testKlazz = (JJJVMClassImpl) loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestNative");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+
+        assertNotNull(testKlazz.findMethod("checksum", "([BII)I").getNativeImplementation());
+        assertNull(testKlazz.findMethod("mix", "(J)J").getNativeImplementation());
+
+        provider.registerNativeMethod("com/igormaznitsa/jjjvm/testclasses/TestNative", "mix", "(J)J", new JJJVMNativeMethod() {
+            @Override
+            public Object invoke(final JJJVMObject instance, final Object[] arguments) throws Throwable {
+                return ((Long) arguments[0]) * 1000L + (Integer) instance.getFieldValue("seed", false);
+            }
+        });
+
+        assertEquals((1 * 31 + 2) * 31 + 3 + 7007, testKlazz.findMethod("calc", "([B)I").invoke(obj, new Object[]{new byte[]{1, 2, 3}}));
+        assertEquals(-1, testKlazz.findMethod("callUnbound", "()I").invoke(obj, null));
+        assertEquals(7L * 1000L + 7, testKlazz.bind("mix", "(J)J").invokeLong(obj, 7L));
+    }
+
+    @Test
+    public void testConcurrentClassResolving() throws Throwable {
+        final Map<String, AtomicInteger> loadCounters = new java.util.concurrent.ConcurrentHashMap<String, AtomicInteger>();
+        final JJJVMProvider provider = new JSEProviderImpl(new JSEProviderImpl.ClassDataLoader() {
+            @Override
+            public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+                final byte[] result = JJJVMInterpreterTest.this.loadClassBody(jvmFormattedClassName);
+                if (result != null) {
+                    loadCounters.putIfAbsent(jvmFormattedClassName, new AtomicInteger());
+                    loadCounters.get(jvmFormattedClassName).incrementAndGet();
+                    try {
+                        Thread.sleep(50L);
+                    } catch (InterruptedException ex) {
+                        throw new IOException(ex);
+                    }
+                }
+                return result;
+            }
+        });
+
+        final String[] names = new String[]{
+            "com/igormaznitsa/jjjvm/testclasses/TestInnerClasses",
+            "com/igormaznitsa/jjjvm/testclasses/TestInvoke",
+            "java/lang/String"
+        };
+
+        final Object[][] resolved = new Object[8][];
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[resolved.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        final Object[] result = new Object[names.length];
+                        for (int n = 0; n < names.length; n++) {
+                            result[n] = provider.resolveClass(names[(n + index) % names.length]);
+                        }
+                        resolved[index] = result;
+                    } catch (Throwable thr) {
+                        thr.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, errors.get());
+        for (int i = 0; i < resolved.length; i++) {
+            for (int n = 0; n < names.length; n++) {
+                assertSame(resolved[0][n], resolved[i][(n - i % names.length + names.length) % names.length]);
+            }
+        }
+        assertSame(String.class, provider.resolveClass("java/lang/String"));
+        assertFalse(loadCounters.isEmpty());
+        for (final Map.Entry<String, AtomicInteger> e : loadCounters.entrySet()) {
+            assertEquals(e.getKey(), 1, e.getValue().get());
+        }
+    }
+
+    @Test
+    public void testClassLoadingIsTrackedPerProvider() throws Throwable {
+        final String className = "com/igormaznitsa/jjjvm/testclasses/TestInvoke";
+        final JSEProviderImpl other = new JSEProviderImpl(this);
+        final AtomicInteger checks = new AtomicInteger();
+        final JSEProviderImpl provider = new JSEProviderImpl(this) {
+            @Override
+            public void registerExternalClass(final String jvmFormattedClassName, final Object clazz) {
+                if (className.equals(jvmFormattedClassName)) {
+                    assertTrue(JJJVMClassImpl.isClassLoading(this, className));
+                    assertTrue(JJJVMClassImpl.isClassLoading(className));
+                    assertFalse(JJJVMClassImpl.isClassLoading(other, className));
+                    checks.incrementAndGet();
+                }
+                super.registerExternalClass(jvmFormattedClassName, clazz);
+            }
+        };
+
+        provider.resolveClass(className);
+        assertEquals(1, checks.get());
+        assertFalse(JJJVMClassImpl.isClassLoading(provider, className));
+        assertFalse(JJJVMClassImpl.isClassLoading(className));
+        assertNotSame(provider.resolveClass(className), other.resolveClass(className));
+        assertEquals(0, JJJVMClassImpl.getNumberOfLoadingClasses());
+    }
+
+    @Test
+    public void testLoadClassFromLoaderOverride() throws Throwable {
+        final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+        final JSEProviderImpl provider = new JSEProviderImpl(this) {
+            @Override
+            protected JJJVMClass loadClassFromLoader(final String jvmFormattedClassName) throws Throwable {
+                requested.add(jvmFormattedClassName);
+                return super.loadClassFromLoader(jvmFormattedClassName);
+            }
+        };
+
+        assertTrue(provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke") instanceof JJJVMClass);
+        assertSame(Test.class, provider.resolveClass("org/junit/Test"));
+        assertEquals(Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestInvoke", "org/junit/Test"), requested);
+    }
+
+    @Test
+    public void testClassResolvingRules() throws Throwable {
+        final List<String> requested = Collections.synchronizedList(new ArrayList<String>());
+        final JSEProviderImpl provider = new JSEProviderImpl(new JSEProviderImpl.ClassDataLoader() {
+            @Override
+            public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+                requested.add(jvmFormattedClassName);
+                return JJJVMInterpreterTest.this.loadClassBody(jvmFormattedClassName);
+            }
+        });
+
+        assertSame(String.class, provider.resolveClass("java/lang/String"));
+        assertSame(String.class, provider.resolveClass("java/lang/String"));
+        assertTrue(requested.isEmpty());
+        assertEquals(1L, provider.getClassCacheHits());
+        assertEquals(1L, provider.getClassCacheMisses());
+
+        assertSame(Test.class, provider.resolveClass("org/junit/Test"));
+        assertEquals(Arrays.asList("org/junit/Test"), requested);
+
+        for (int i = 0; i < 2; i++) {
+            try {
+                provider.resolveClass("com/igormaznitsa/jjjvm/unknown/Unknown");
+                fail("Must throw ClassNotFoundException");
+            } catch (ClassNotFoundException ex) {
+            }
+        }
+        assertEquals(Arrays.asList("org/junit/Test", "com/igormaznitsa/jjjvm/unknown/Unknown"), requested);
+        assertEquals(1L, provider.getAbsentClassHits());
+
+        final List<String> requestedByOther = new ArrayList<String>();
+        provider.addClassLoaderPrefix("com/igormaznitsa/jjjvm/testclasses/TestInvoke", new JSEProviderImpl.ClassDataLoader() {
+            @Override
+            public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+                requestedByOther.add(jvmFormattedClassName);
+                return JJJVMInterpreterTest.this.loadClassBody(jvmFormattedClassName);
+            }
+        });
+        assertTrue(provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke") instanceof JJJVMClass);
+        assertEquals(Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestInvoke"), requestedByOther);
+        assertEquals(2, requested.size());
+    }
+
+    @Test
+    public void testParseClassFromMappedBuffer() throws Throwable {
+        final String className = "com/igormaznitsa/jjjvm/testclasses/TestClassData";
+        final File classFile = File.createTempFile("jjjvm", ".class");
+        classFile.deleteOnExit();
+        final byte[] body = loadClassBody(className);
+        final FileOutputStream out = new FileOutputStream(classFile);
+        try {
+            // put some garbage before the class to check that position of the buffer is respected
+            out.write(new byte[]{1, 2, 3});
+            out.write(body);
+        } finally {
+            out.close();
+        }
+
+        final RandomAccessFile file = new RandomAccessFile(classFile, "r");
+        final MappedByteBuffer mapped;
+        try {
+            mapped = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0L, classFile.length());
+        } finally {
+            file.close();
+        }
+        mapped.position(3);
+
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = new JJJVMClassImpl(mapped, provider);
+        assertEquals(3, mapped.position());
+        assertEquals(className, testKlazz.getClassName());
+
+        final JJJVMObject obj = testKlazz.newInstance(true);
+        assertEquals(new com.igormaznitsa.jjjvm.testclasses.TestClassData().describe(3), testKlazz.findMethod("describe", "(I)Ljava/lang/String;").invoke(obj, new Object[]{3}));
+        assertEquals(0x1234567890ABCDEFL + 2L, testKlazz.findMethod("mix", "()J").invoke(obj, null));
+
+        final JJJVMClass fromStream = new JJJVMClassImpl(new ByteArrayInputStream(body), provider);
+        assertEquals(testKlazz.findField("GREETING").getStaticValue(), fromStream.findField("GREETING").getStaticValue());
+    }
+
+    @Test
+    public void testLazyMethodBody() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        final JJJVMObject obj = testKlazz.newInstance(true);
+        final JJJVMMethod method = testKlazz.findMethod("mix", "()J");
+
+        final byte[][] bytecodes = new byte[8][];
+        final Object[] results = new Object[bytecodes.length];
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[bytecodes.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        bytecodes[index] = method.getBytecode();
+                        results[index] = method.invoke(obj, null);
+                    } catch (Throwable thr) {
+                        thr.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, errors.get());
+        for (int i = 0; i < threads.length; i++) {
+            assertSame(bytecodes[0], bytecodes[i]);
+            assertEquals(0x1234567890ABCDEFL + 2L, results[i]);
+        }
+        assertTrue(method.getMaxStackDepth() > 0);
+        assertEquals(0, method.getTryCatchRecords().length);
+
+        final JJJVMMethod nativeMethod = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestNative").findMethod("mix", "(J)J");
+        assertNull(nativeMethod.getBytecode());
+        assertEquals(-1, nativeMethod.getMaxLocals());
+    }
+
+    @Test
+    public void testCompactConstantPool() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass testKlazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        final JJJVMConstantPool cpool = testKlazz.getConstantPool();
+
+        assertNull(cpool.getItemAt(0));
+
+        boolean foundLong = false;
+        boolean foundAppend = false;
+        for (int i = 1; i < cpool.size(); i++) {
+            final JJJVMConstantPoolItem item = cpool.getItemAt(i);
+            if (item == null) {
+                // the second slot of long or double
+                final int prevType = cpool.getTagAt(i - 1);
+                assertTrue(prevType == JJJVMConstantPoolItem.CONSTANT_LONG || prevType == JJJVMConstantPoolItem.CONSTANT_DOUBLE);
+                continue;
+            }
+            assertSame(item, cpool.getItemAt(i));
+            assertEquals(cpool.getTagAt(i), item.getType());
+            switch (item.getType()) {
+                case JJJVMConstantPoolItem.CONSTANT_LONG: {
+                    if (item.asLong() == 0x1234567890ABCDEFL) {
+                        foundLong = true;
+                    }
+                }
+                break;
+                case JJJVMConstantPoolItem.CONSTANT_FIELDREF:
+                case JJJVMConstantPoolItem.CONSTANT_METHODREF:
+                case JJJVMConstantPoolItem.CONSTANT_INTERFACEMETHOD: {
+                    final JJJVMMemberRef ref = cpool.getMemberRefAt(i);
+                    assertSame(ref, item.getMemberRef());
+                    assertEquals(item.getType(), ref.getType());
+                    assertEquals(item.getClassName(), ref.getClassName());
+                    assertEquals(item.getName(), ref.getName());
+                    assertEquals(item.getSignature(), ref.getSignature());
+                    if ("java/lang/StringBuilder".equals(ref.getClassName()) && "append".equals(ref.getName())) {
+                        assertEquals("(Ljava/lang/String;)Ljava/lang/StringBuilder;", ref.getSignature());
+                        assertArrayEquals(new char[]{'L'}, ref.getArgTypes());
+                        foundAppend = true;
+                    }
+                }
+                break;
+                default: {
+                    try {
+                        cpool.getMemberRefAt(i);
+                        fail("Must throw IllegalArgumentException");
+                    } catch (IllegalArgumentException ex) {
+                    }
+                }
+                break;
+            }
+        }
+        assertTrue(foundLong);
+        assertTrue(foundAppend);
+        assertArrayEquals(new char[]{'J', 'L', 'L', 'I', 'D'}, JJJVMMemberRef.parseArgTypes("(J[[ILjava/lang/String;ID)V"));
+    }
+
+    @Test
+    public void testSymbolTable() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass klazz1 = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        final JJJVMClass klazz2 = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestNative");
+
+        final JJJVMSymbol init = JJJVMSymbol.of("<init>");
+        final JJJVMSymbol voidSignature = JJJVMSymbol.of("()V");
+        assertSame(init, JJJVMSymbol.find(new String("<init>".toCharArray())));
+        assertNull(JJJVMSymbol.find("someNeverUsedName" + System.nanoTime()));
+
+        final JJJVMMethod constructor1 = klazz1.findDeclaredMethod(init, voidSignature);
+        final JJJVMMethod constructor2 = klazz2.findDeclaredMethod(init, voidSignature);
+        assertNotNull(constructor1);
+        assertNotNull(constructor2);
+        assertSame(constructor1, klazz1.findDeclaredMethod("<init>", "()V"));
+        assertSame(constructor1.getName(), constructor2.getName());
+        assertSame(constructor1.getSignature(), constructor2.getSignature());
+
+        assertNull(klazz1.findDeclaredMethod("mix", "(J)J"));
+        assertNull(klazz1.findMethod("unknownMethod" + System.nanoTime(), "()V"));
+        assertSame(klazz1.findDeclaredMethod("mix", "()J"), klazz1.getAllDeclaredMethods().get("mix.()J"));
+        assertEquals(3, klazz1.getAllDeclaredMethods().size());
+
+        // string literals are not names so they are not kept in the table
+        assertTrue(((String) klazz1.findMethod("describe", "(I)Ljava/lang/String;").invoke(klazz1.newInstance(true), new Object[]{2})).endsWith("!\u2713\u2713"));
+        assertNull(JJJVMSymbol.find("\u2713"));
+    }
+
+    @Test
+    public void testClassArchive() throws Throwable {
+        final JSEProviderImpl provider = new JSEProviderImpl(this);
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+
+        final File archiveFile = File.createTempFile("jjjvm", ".jjca");
+        archiveFile.deleteOnExit();
+        JSEClassArchive.write(archiveFile, provider.getLoadedClasses());
+
+        final JSEClassArchive archive = JSEClassArchive.open(archiveFile);
+        assertEquals(new HashSet<String>(Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestClassData", "com/igormaznitsa/jjjvm/testclasses/TestInvoke")), archive.getClassNames());
+        assertTrue(archive.isUpToDate("com/igormaznitsa/jjjvm/testclasses/TestClassData", loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestClassData")));
+        assertFalse(archive.isUpToDate("com/igormaznitsa/jjjvm/testclasses/TestClassData", loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke")));
+        assertNull(archive.loadClassBuffer("com/igormaznitsa/jjjvm/testclasses/TestNative"));
+
+        final JSEProviderImpl archivedProvider = new JSEProviderImpl(archive);
+        final JJJVMClass testKlazz = (JJJVMClass) archivedProvider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        assertEquals(0x1234567890ABCDEFL + 2L, testKlazz.findMethod("mix", "()J").invoke(testKlazz.newInstance(true), null));
+
+        final byte[] content = archive.loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final Map<String, byte[]> classes = new HashMap<String, byte[]>();
+        classes.put("com/igormaznitsa/jjjvm/testclasses/TestInvoke", content);
+        JSEClassArchive.write(buffer, classes);
+        final byte[] broken = buffer.toByteArray();
+        broken[broken.length - 10] ^= 0x55;
+        try {
+            JSEClassArchive.wrap(ByteBuffer.wrap(broken)).loadClassBuffer("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+            fail("Must throw IOException");
+        } catch (IOException ex) {
+        }
+    }
+
+    @Test
+    public void testLazyClassInitialization() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass child = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child");
+        final JJJVMClass parent = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit");
+        assertFalse(child.isInitialized());
+        assertFalse(parent.isInitialized());
+
+        final JJJVMMethod next = child.findMethod("next", "()I");
+        final AtomicInteger errors = new AtomicInteger();
+        final Set<Object> results = Collections.synchronizedSet(new HashSet<Object>());
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        results.add(next.invoke(null, null));
+                    } catch (Throwable thr) {
+                        thr.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertEquals(threads.length, results.size());
+        assertTrue(parent.isInitialized());
+        assertTrue(child.isInitialized());
+        assertEquals("parent;child;", parent.findMethod("getLog", "()Ljava/lang/String;").invoke(null, null));
+
+        final JJJVMClass broken = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Broken");
+        try {
+            broken.readStaticField("value");
+            fail("Must throw ExceptionInInitializerError");
+        } catch (ExceptionInInitializerError ex) {
+            assertTrue(ex.getCause() instanceof ArithmeticException);
+        }
+        try {
+            broken.findMethod("getValue", "()I").invoke(null, null);
+            fail("Must throw NoClassDefFoundError");
+        } catch (NoClassDefFoundError ex) {
+        }
+    }
+
+    @Test
+    public void testPrelink() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            final List<JJJVMPrelinker.Result> results = JJJVMPrelinker.prelink(provider, Arrays.asList(
+                    "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child",
+                    "com/igormaznitsa/jjjvm/testclasses/TestClassData",
+                    "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Broken",
+                    "java/lang/String",
+                    "com/igormaznitsa/jjjvm/unknown/Unknown",
+                    "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$WithDefault"), executor);
+
+            assertEquals(6, results.size());
+            assertTrue(results.get(0).isSuccessful());
+            assertTrue(((JJJVMClass) results.get(0).getResolvedClass()).isInitialized());
+            assertTrue(((JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit")).isInitialized());
+            assertTrue(results.get(1).isSuccessful());
+            assertTrue(results.get(1).getTimeNanos() > 0L);
+            assertTrue(results.get(2).getFailure() instanceof ExceptionInInitializerError);
+            assertNotNull(results.get(2).getResolvedClass());
+            assertSame(String.class, results.get(3).getResolvedClass());
+            assertTrue(results.get(4).getFailure() instanceof ClassNotFoundException);
+            assertNull(results.get(4).getResolvedClass());
+            // the method is inherited as default one from the interface
+            assertNull(results.get(5).getFailure());
+            assertTrue(results.get(5).isSuccessful());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testClassPrefetch() throws Throwable {
+        final Map<String, AtomicInteger> loadCounters = new java.util.concurrent.ConcurrentHashMap<String, AtomicInteger>();
+        final Set<String> loadingThreads = Collections.synchronizedSet(new HashSet<String>());
+        final JSEProviderImpl provider = new JSEProviderImpl(new JSEProviderImpl.ClassDataLoader() {
+            @Override
+            public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+                final byte[] result = JJJVMInterpreterTest.this.loadClassBody(jvmFormattedClassName);
+                if (result != null) {
+                    loadCounters.putIfAbsent(jvmFormattedClassName, new AtomicInteger());
+                    loadCounters.get(jvmFormattedClassName).incrementAndGet();
+                    loadingThreads.add(Thread.currentThread().getName());
+                }
+                return result;
+            }
+        });
+        provider.addHostClassPrefix("org/");
+
+        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+        try {
+            provider.setPrefetch(executor, 2, 16);
+            final JJJVMClass klazz3 = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz3");
+
+            final long deadline = System.currentTimeMillis() + 5000L;
+            while (provider.getPrefetchedClasses() < 2L && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10L);
+            }
+            assertTrue(provider.getPrefetchedClasses() >= 2L);
+
+            final long misses = provider.getClassCacheMisses();
+            assertTrue(provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz2") instanceof JJJVMClass);
+            assertTrue(provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz1") instanceof JJJVMClass);
+            assertEquals(misses, provider.getClassCacheMisses());
+            assertTrue(loadingThreads.size() > 1);
+            for (final Map.Entry<String, AtomicInteger> e : loadCounters.entrySet()) {
+                assertEquals(e.getKey(), 1, e.getValue().get());
+            }
+            assertNotNull(klazz3.findMethod("<init>", "()V"));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testClassPrefetchFailureIsNotPublished() throws Throwable {
+        final String hostOnly = "com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz2";
+        final AtomicReference<Thread> demand = new AtomicReference<Thread>();
+        final java.util.concurrent.CountDownLatch prefetchStarted = new java.util.concurrent.CountDownLatch(1);
+        final AtomicBoolean first = new AtomicBoolean(true);
+
+        // no host class prefix, the class is found only by the host fallback of demand loading
+        final JSEProviderImpl provider = new JSEProviderImpl(new JSEProviderImpl.ClassDataLoader() {
+            @Override
+            public byte[] loadClassBody(final String jvmFormattedClassName) throws IOException {
+                if (!hostOnly.equals(jvmFormattedClassName)) {
+                    return JJJVMInterpreterTest.this.loadClassBody(jvmFormattedClassName);
+                }
+                if (first.getAndSet(false)) {
+                    // keep the prefetch running until the demand loading waits for it
+                    prefetchStarted.countDown();
+                    final long deadline = System.currentTimeMillis() + 5000L;
+                    while (System.currentTimeMillis() < deadline) {
+                        final Thread waiting = demand.get();
+                        if (waiting != null && waiting.getState() == Thread.State.WAITING) {
+                            break;
+                        }
+                        Thread.yield();
+                    }
+                }
+                return null;
+            }
+        });
+
+        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+        try {
+            provider.setPrefetch(executor, 1, 16);
+            provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz3");
+            assertTrue(prefetchStarted.await(5L, java.util.concurrent.TimeUnit.SECONDS));
+
+            final Object[] result = new Object[1];
+            final Throwable[] error = new Throwable[1];
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        result[0] = provider.resolveClass(hostOnly);
+                    } catch (Throwable thr) {
+                        error[0] = thr;
+                    }
+                }
+            });
+            demand.set(thread);
+            thread.start();
+            thread.join(10000L);
+
+            assertNull(error[0]);
+            assertSame(TestClassInheritance.Klazz2.class, result[0]);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testJarClassDataLoader() throws Throwable {
+        final byte[] stored = loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        final byte[] deflated = loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+
+        final File jarFile = File.createTempFile("jjjvm", ".jar");
+        jarFile.deleteOnExit();
+        final ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jarFile));
+        try {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\n".getBytes("UTF-8"));
+            zip.closeEntry();
+
+            final ZipEntry storedEntry = new ZipEntry("com/igormaznitsa/jjjvm/testclasses/TestClassData.class");
+            final CRC32 crc = new CRC32();
+            crc.update(stored);
+            storedEntry.setMethod(ZipEntry.STORED);
+            storedEntry.setSize(stored.length);
+            storedEntry.setCompressedSize(stored.length);
+            storedEntry.setCrc(crc.getValue());
+            zip.putNextEntry(storedEntry);
+            zip.write(stored);
+            zip.closeEntry();
+
+            zip.putNextEntry(new ZipEntry("com/igormaznitsa/jjjvm/testclasses/TestInvoke.class"));
+            zip.write(deflated);
+            zip.closeEntry();
+            zip.setComment("test archive");
+        } finally {
+            zip.close();
+        }
+
+        final JSEJarClassDataLoader loader = new JSEJarClassDataLoader(jarFile);
+        assertEquals(new HashSet<String>(Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestClassData", "com/igormaznitsa/jjjvm/testclasses/TestInvoke")), loader.getClassNames());
+        assertNull(loader.loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestNative"));
+        assertTrue(loader.loadClassBuffer("com/igormaznitsa/jjjvm/testclasses/TestClassData").isDirect());
+
+        final AtomicInteger errors = new AtomicInteger();
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < 100; j++) {
+                            if (!Arrays.equals(stored, loader.loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestClassData"))
+                                    || !Arrays.equals(deflated, loader.loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke"))) {
+                                errors.incrementAndGet();
+                            }
+                        }
+                    } catch (Throwable thr) {
+                        thr.printStackTrace();
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        for (final Thread t : threads) {
+            t.start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, errors.get());
+
+        final JSEProviderImpl provider = new JSEProviderImpl(loader);
+        final JJJVMClass testKlazz = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        assertEquals(0x1234567890ABCDEFL + 2L, testKlazz.findMethod("mix", "()J").invoke(testKlazz.newInstance(true), null));
+        assertNotNull(provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke"));
+    }
+
+    @Test
+    public void testClassUnloading() throws Throwable {
+        final JSEProviderImpl provider = new JSEProviderImpl(this);
+        final String childName = "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child";
+        final String parentName = "com/igormaznitsa/jjjvm/testclasses/TestLazyInit";
+
+        final JJJVMClass child = (JJJVMClass) provider.resolveClass(childName);
+        final JJJVMClass other = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        assertEquals(101, child.findMethod("next", "()I").invoke(null, null));
+        assertEquals(102, child.findMethod("next", "()I").invoke(null, null));
+        assertEquals(0, provider.getClassGeneration(childName));
+
+        // the parent refers to its nested class so it is unloaded too
+        assertEquals(new HashSet<String>(Arrays.asList(childName, parentName)), provider.unloadClass(childName));
+        assertTrue(provider.unloadClass(childName).isEmpty());
+        assertEquals(-1, provider.getClassGeneration(childName));
+        assertSame(other, provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData"));
+
+        final JJJVMClass reloaded = (JJJVMClass) provider.resolveClass(childName);
+        assertNotSame(child, reloaded);
+        assertEquals(101, reloaded.findMethod("next", "()I").invoke(null, null));
+
+        final int generation = provider.newGeneration();
+        assertEquals(1, generation);
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+        assertEquals(generation, provider.getClassGeneration("com/igormaznitsa/jjjvm/testclasses/TestInvoke"));
+        assertEquals(Collections.singleton("com/igormaznitsa/jjjvm/testclasses/TestInvoke"), provider.unloadGeneration(generation));
+        assertEquals(new HashSet<String>(Arrays.asList(childName, parentName)), provider.unloadPackage("com/igormaznitsa/jjjvm/testclasses/TestLazy"));
+        assertEquals(1, provider.getLoadedClasses().size());
+
+        final JSEProviderImpl weakProvider = new JSEProviderImpl(this);
+        weakProvider.setWeakClassReferences(true);
+        JJJVMClass weakClass = (JJJVMClass) weakProvider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        assertSame(weakClass, weakProvider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData"));
+        weakClass = null;
+        for (int i = 0; i < 50 && !weakProvider.getLoadedClasses().isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertTrue(weakProvider.getLoadedClasses().isEmpty());
+        assertNotNull(weakProvider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData"));
+        assertEquals(2, weakProvider.getClassCacheMisses());
+    }
+
+    @Test
+    public void testCallHandleDoesNotKeepReceiverClasses() throws Throwable {
+        final String baseName = "com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz1";
+        final String receiverName = "com/igormaznitsa/jjjvm/testclasses/TestClassInheritance$Klazz3";
+        final JSEProviderImpl provider = new JSEProviderImpl(this);
+        provider.setWeakClassReferences(true);
+        final JJJVMClassImpl base = (JJJVMClassImpl) provider.resolveClass(baseName);
+        final JJJVMCallHandle handle = base.bind("method1", "(I)I");
+
+        JJJVMObject obj = ((JJJVMClass) provider.resolveClass(receiverName)).newInstance(true);
+        obj.setFieldValue("field1", 3, true);
+        assertEquals(21, handle.invokeInt(obj, 7));
+        obj = null;
+
+        for (int i = 0; i < 50 && isClassLoaded(provider, receiverName); i++) {
+            System.gc();
+            Thread.sleep(10L);
+        }
+        assertFalse(isClassLoaded(provider, receiverName));
+        assertSame(base, provider.resolveClass(baseName));
+    }
+
+    private static boolean isClassLoaded(final JSEProviderImpl provider, final String className) {
+        for (final JJJVMClass klazz : provider.getLoadedClasses()) {
+            if (klazz.getClassName().equals(className)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testSharedClassImage() throws Throwable {
+        final JSEProviderImpl provider1 = new JSEProviderImpl(this);
+        final JSEProviderImpl provider2 = new JSEProviderImpl(this);
+
+        final JJJVMClassImpl class1 = (JJJVMClassImpl) provider1.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child");
+        final JJJVMClassImpl class2 = (JJJVMClassImpl) provider2.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child");
+        assertNotSame(class1, class2);
+        assertSame(class1.getImage(), class2.getImage());
+        assertEquals(64, class1.getImage().getHash().length());
+        assertTrue(JJJVMClassImage.getNumberOfCachedImages() > 0);
+
+        // byte code is shared but static state is not
+        final JJJVMMethod next1 = class1.findMethod("next", "()I");
+        final JJJVMMethod next2 = class2.findMethod("next", "()I");
+        assertNotSame(next1, next2);
+        assertSame(next1.getBytecode(), next2.getBytecode());
+        assertEquals(101, next1.invoke(null, null));
+        assertEquals(102, next1.invoke(null, null));
+        assertEquals(101, next2.invoke(null, null));
+        assertSame(class2, next2.getDeclaringClass());
+        assertNotSame(class1.getConstantPool().getItemAt(1), class2.getConstantPool().getItemAt(1));
+
+        final JJJVMClassImpl fromImage = new JJJVMClassImpl(class1.getImage(), new JSEProviderImpl(this));
+        assertEquals(class1.getClassName(), fromImage.getClassName());
+        assertEquals(101, fromImage.findMethod("next", "()I").invoke(null, null));
+    }
+
+    @Test
+    public void testContentAddressedClassCache() throws Throwable {
+        final byte[] data = loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        final byte[] other = loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+
+        final JJJVMClassImage image = JJJVMClassImage.of(ByteBuffer.wrap(data));
+        final long hits = JJJVMClassImage.getCacheHits();
+        final long misses = JJJVMClassImage.getCacheMisses();
+        assertSame(image, JJJVMClassImage.of(ByteBuffer.wrap(data.clone())));
+        assertEquals(hits + 1, JJJVMClassImage.getCacheHits());
+        assertEquals(misses, JJJVMClassImage.getCacheMisses());
+
+        final int limit = JJJVMClassImage.getRetainedImagesLimit();
+        try {
+            JJJVMClassImage.setRetainedImagesLimit(1);
+            final long evictions = JJJVMClassImage.getCacheEvictions();
+            JJJVMClassImage.of(ByteBuffer.wrap(other));
+            assertEquals(evictions + 1, JJJVMClassImage.getCacheEvictions());
+        } finally {
+            JJJVMClassImage.setRetainedImagesLimit(limit);
+        }
+
+        final JSEProviderImpl provider = new JSEProviderImpl();
+        final JJJVMClass defined = provider.defineClass(ByteBuffer.wrap(data));
+        assertSame(image, ((JJJVMClassImpl) defined).getImage());
+        assertEquals(0x1234567890ABCDEFL + 2L, defined.findMethod("mix", "()J").invoke(defined.newInstance(true), null));
+        assertSame(defined, provider.defineClass(ByteBuffer.wrap(data.clone())));
+        assertEquals(1, provider.getDefinedClassHits());
+        assertSame(defined, provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData"));
+
+        // the image doesn't depend on the buffer of the caller
+        final byte[] reused = new byte[data.length + 1];
+        System.arraycopy(data, 0, reused, 0, data.length);
+        reused[data.length] = 0x55;
+        final JJJVMClassImage reusedImage = JJJVMClassImage.of(ByteBuffer.wrap(reused));
+        Arrays.fill(reused, (byte) 0);
+        final JJJVMClass fromReused = new JJJVMClassImpl(reusedImage, new JSEProviderImpl(this));
+        assertEquals("com/igormaznitsa/jjjvm/testclasses/TestClassData", fromReused.getClassName());
+        assertEquals(0x1234567890ABCDEFL + 2L, fromReused.findMethod("mix", "()J").invoke(fromReused.newInstance(true), null));
+
+        final byte[] changed = data.clone();
+        changed[changed.length - 1] ^= 1;
+        try {
+            provider.defineClass(ByteBuffer.wrap(changed));
+            fail("Must throw LinkageError");
+        } catch (LinkageError ex) {
+        }
+    }
+
+    @Test
+    public void testBoundedCaches() throws Throwable {
+        final JJJVMCache<String, Integer> cache = new JJJVMCache<String, Integer>("test", 2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        assertEquals(Integer.valueOf(1), cache.get("a"));
+        assertNull(cache.get("z"));
+        cache.put("c", 3);
+        // "a" has been used so "b" is evicted
+        assertEquals(2, cache.size());
+        assertTrue(cache.containsKey("a"));
+        assertFalse(cache.containsKey("b"));
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+
+        final JJJVMCache<String, Integer> shared = new JJJVMCache<String, Integer>("shared", 4);
+        shared.put("a", 1);
+        final Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int a = 0; a < 1000; a++) {
+                        shared.get("a");
+                        shared.get("z");
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (final Thread t : threads) {
+            t.join();
+        }
+        assertEquals(4000, shared.getHits());
+        assertEquals(4000, shared.getMisses());
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put("a", i);
+        }
+        assertEquals(2, cache.size());
+        cache.setMaxSize(1);
+        assertEquals(1, cache.size());
+
+        final JSECacheConfig config = new JSECacheConfig();
+        config.setClassCacheSize(2);
+        final JSEProviderImpl provider = new JSEProviderImpl(this, config);
+        final JJJVMCache<?, ?> classes = provider.getCaches().get(0);
+        assertEquals("classes", classes.getName());
+
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestInvoke");
+        provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestLazyInit");
+        assertTrue(classes.size() <= 2);
+        assertTrue(classes.getEvictions() > 0);
+        final JJJVMClass klazz = (JJJVMClass) provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+        assertEquals(0x1234567890ABCDEFL + 2L, klazz.findMethod("mix", "()J").invoke(klazz.newInstance(true), null));
+
+    }
+
+    @Test
+    public void testClassHeaderScanner() throws Throwable {
+        final JJJVMClassHeader child = JSEClassScanner.scan(this, "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child");
+        assertEquals("com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child", child.getClassName());
+        assertEquals("com/igormaznitsa/jjjvm/testclasses/TestLazyInit", child.getSuperClassName());
+        assertTrue(child.getInterfaceNames().isEmpty());
+        assertTrue(child.getReferencedClassNames().contains("com/igormaznitsa/jjjvm/testclasses/TestLazyInit"));
+        assertFalse(child.getReferencedClassNames().contains(child.getClassName()));
+        assertNotNull(child.findMethod("next", "()I"));
+        assertNull(child.findMethod("next", "()J"));
+        assertEquals("counter", child.getFields().get(0).getName());
+        assertEquals("I", child.getFields().get(0).getDescriptor());
+
+        final java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(4);
+        try {
+            final List<String> names = Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestClassData", "com/igormaznitsa/jjjvm/testclasses/TestInvoke", "com/igormaznitsa/jjjvm/unknown/Unknown", "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child");
+            final JSEClassScanner.Result result = JSEClassScanner.scan(this, names, executor);
+            assertFalse(result.isSuccessful());
+            assertEquals(Arrays.asList("com/igormaznitsa/jjjvm/testclasses/TestClassData", "com/igormaznitsa/jjjvm/testclasses/TestInvoke", "com/igormaznitsa/jjjvm/testclasses/TestLazyInit$Child"), new ArrayList<String>(result.getHeaders().keySet()));
+            assertEquals(Collections.singleton("com/igormaznitsa/jjjvm/unknown/Unknown"), result.getFailures().keySet());
+            assertEquals("java/lang/Object", result.getHeaders().get("com/igormaznitsa/jjjvm/testclasses/TestClassData").getSuperClassName());
+        } finally {
+            executor.shutdown();
+        }
+
+        try {
+            JJJVMClassHeader.read(ByteBuffer.wrap(Arrays.copyOf(loadClassBody("com/igormaznitsa/jjjvm/testclasses/TestInvoke"), 100)));
+            fail("Must throw IOException");
+        } catch (IOException ex) {
+        }
+    }
+
+    @Test
+    public void testJitTier() throws Throwable {
+        final boolean enabled = JJJVMJit.isEnabled();
+        final int threshold = JJJVMJit.getThreshold();
+        JJJVMJit.setEnabled(true);
+        JJJVMJit.setThreshold(3);
+        try {
+            final JJJVMProvider provider = new JSEProviderImpl(this);
+            final JJJVMClass klazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestJit");
+
+            // backward jumps of the loop make the method hot after the first call
+            final JJJVMMethod sum = klazz.findMethod("sumOfSquares", "(I)J");
+            assertEquals(328350L, sum.invoke(null, new Object[]{100}));
+            assertFalse(JJJVMMethodProfile.of(sum).isCompiled());
+            assertTrue(JJJVMMethodProfile.of(sum).getBackEdges() >= 99);
+            for (int i = 0; i < 4; i++) {
+                assertEquals(328350L, sum.invoke(null, new Object[]{100}));
+            }
+            assertTrue(JJJVMMethodProfile.of(sum).isCompiled());
+            assertEquals(5, klazz.findField("calls").getStaticValue());
+
+            final JJJVMMethod fib = klazz.findMethod("fib", "(I)I");
+            assertNotNull(JJJVMJit.compile(fib));
+            assertEquals(6765, fib.invoke(null, new Object[]{20}));
+
+            final JJJVMMethod classify = klazz.findMethod("classify", "(I)Ljava/lang/String;");
+            for (int i = 0; i < 4; i++) {
+                assertEquals("zero", classify.invoke(null, new Object[]{0}));
+            }
+            assertTrue(JJJVMMethodProfile.of(classify).isCompiled());
+            assertEquals("two", classify.invoke(null, new Object[]{2}));
+            assertEquals("negative", classify.invoke(null, new Object[]{-5}));
+            assertEquals("42", classify.invoke(null, new Object[]{42}));
+
+            final JJJVMObject obj = klazz.newInstance(true);
+            final JJJVMMethod shifted = klazz.findMethod("shifted", "(I)I");
+            for (int i = 0; i < 5; i++) {
+                assertEquals(12, shifted.invoke(obj, new Object[]{5}));
+            }
+            assertTrue(JJJVMMethodProfile.of(shifted).isCompiled());
+            assertEquals(7, shifted.invoke(obj, new Object[]{-5}));
+
+            // array instructions are not compiled, the method stays interpreted
+            final JJJVMMethod first = klazz.findMethod("first", "([I)I");
+            for (int i = 0; i < 5; i++) {
+                assertEquals(42, first.invoke(null, new Object[]{new int[]{42}}));
+            }
+            assertTrue(JJJVMMethodProfile.of(first).isCompilationFailed());
+            assertTrue(JJJVMMethodProfile.of(first).getCompilationFailure() instanceof UnsupportedOperationException);
+
+            // switched off tier neither counts nor uses compiled code
+            JJJVMJit.setEnabled(false);
+            final int invocations = JJJVMMethodProfile.of(sum).getInvocations();
+            assertEquals(328350L, sum.invoke(null, new Object[]{100}));
+            assertEquals(invocations, JJJVMMethodProfile.of(sum).getInvocations());
+            assertEquals(6, klazz.findField("calls").getStaticValue());
+
+            final JJJVMClass interpreted = loadClassFromClassPath(new JSEProviderImpl(this), "com/igormaznitsa/jjjvm/testclasses/TestJit");
+            final JJJVMMethod loop = interpreted.findMethod("sumOfSquares", "(I)J");
+            assertEquals(328350L, loop.invoke(null, new Object[]{100}));
+            assertEquals(0, JJJVMMethodProfile.of(loop).getBackEdges());
+        } finally {
+            JJJVMJit.setEnabled(enabled);
+            JJJVMJit.setThreshold(threshold);
+        }
+    }
+
+    @Test
+    public void testClosureTier() throws Throwable {
+        final boolean enabled = JJJVMJit.isEnabled();
+        final int threshold = JJJVMJit.getThreshold();
+        final JJJVMJit.Policy policy = JJJVMJit.getPolicy();
+        JJJVMJit.setEnabled(true);
+        JJJVMJit.setThreshold(2);
+        JJJVMJit.setPolicy(new JJJVMJit.Policy() {
+            public int selectTier(final JJJVMMethod method) {
+                return JJJVMJit.TIER_CLOSURES;
+            }
+        });
+        try {
+            final JJJVMProvider provider = new JSEProviderImpl(this);
+            final JJJVMClass klazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestJit");
+
+            final JJJVMMethod sum = klazz.findMethod("sumOfSquares", "(I)J");
+            for (int i = 0; i < 3; i++) {
+                assertEquals(328350L, sum.invoke(null, new Object[]{100}));
+            }
+            assertEquals(JJJVMJit.TIER_CLOSURES, JJJVMMethodProfile.of(sum).getCompiledTier());
+            assertEquals(3, klazz.findField("calls").getStaticValue());
+
+            final JJJVMMethod fib = klazz.findMethod("fib", "(I)I");
+            assertNotNull(JJJVMJit.compile(fib));
+            assertEquals(6765, fib.invoke(null, new Object[]{20}));
+
+            final JJJVMMethod classify = klazz.findMethod("classify", "(I)Ljava/lang/String;");
+            assertNotNull(JJJVMJit.compile(classify));
+            assertEquals("zero", classify.invoke(null, new Object[]{0}));
+            assertEquals("two", classify.invoke(null, new Object[]{2}));
+            assertEquals("negative", classify.invoke(null, new Object[]{-5}));
+            assertEquals("42", classify.invoke(null, new Object[]{42}));
+
+            final JJJVMMethod shifted = klazz.findMethod("shifted", "(I)I");
+            assertNotNull(JJJVMJit.compile(shifted));
+            assertEquals(12, shifted.invoke(klazz.newInstance(true), new Object[]{5}));
+
+            // exception handlers are supported by the closure tier only
+            final JJJVMMethod safeDivide = klazz.findMethod("safeDivide", "(II)I");
+            assertNotNull(JJJVMJit.compile(safeDivide));
+            assertEquals(JJJVMJit.TIER_CLOSURES, JJJVMMethodProfile.of(safeDivide).getCompiledTier());
+            assertEquals(5, safeDivide.invoke(null, new Object[]{10, 2}));
+            assertEquals(-1, safeDivide.invoke(null, new Object[]{10, 0}));
+
+            final JJJVMMethod scale = klazz.findMethod("scale", "(JD)D");
+            assertNotNull(JJJVMJit.compile(scale));
+            assertEquals(12.5d, (Double) scale.invoke(null, new Object[]{10L, 1.5d}), 0.0d);
+
+            // the default policy falls back to closures for methods with exception handlers
+            JJJVMJit.setPolicy(null);
+            final JJJVMClass other = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestJit");
+            final JJJVMMethod otherDivide = other.findMethod("safeDivide", "(II)I");
+            assertNotNull(JJJVMJit.compile(otherDivide));
+            assertEquals(JJJVMJit.TIER_CLOSURES, JJJVMMethodProfile.of(otherDivide).getCompiledTier());
+            assertEquals(-1, otherDivide.invoke(null, new Object[]{1, 0}));
+            final JJJVMMethod otherFib = other.findMethod("fib", "(I)I");
+            assertNotNull(JJJVMJit.compile(otherFib));
+            assertEquals(JJJVMJit.TIER_BYTECODE, JJJVMMethodProfile.of(otherFib).getCompiledTier());
+
+            // the policy can keep a method interpreted
+            JJJVMJit.setPolicy(new JJJVMJit.Policy() {
+                public int selectTier(final JJJVMMethod method) {
+                    return JJJVMJit.TIER_INTERPRETER;
+                }
+            });
+            final JJJVMMethod otherScale = other.findMethod("scale", "(JD)D");
+            assertNull(JJJVMJit.compile(otherScale));
+            assertEquals(JJJVMJit.TIER_INTERPRETER, JJJVMMethodProfile.of(otherScale).getCompiledTier());
+            assertEquals(12.5d, (Double) otherScale.invoke(null, new Object[]{10L, 1.5d}), 0.0d);
+        } finally {
+            JJJVMJit.setEnabled(enabled);
+            JJJVMJit.setThreshold(threshold);
+            JJJVMJit.setPolicy(policy);
+        }
+    }
+
+    @Test
+    public void testRegisterCode() throws Throwable {
+        final JJJVMProvider provider = new JSEProviderImpl(this);
+        final JJJVMClass klazz = loadClassFromClassPath(provider, "com/igormaznitsa/jjjvm/testclasses/TestJit");
+
+        // loads and stores are merged into arithmetic nodes
+        final JJJVMMethod sum = klazz.findMethod("sumOfSquares", "(I)J");
+        final JJJVMClosureCompiler.Code plain = new JJJVMClosureCompiler(sum).withoutOptimization().translate();
+        final JJJVMClosureCompiler.Code optimized = new JJJVMClosureCompiler(sum).translate();
+        assertTrue(optimized.getNumberOfNodes() * 10 <= plain.getNumberOfNodes() * 7);
+        assertEquals(328350L, optimized.invoke(null, new Object[]{100}));
+        assertEquals(328350L, plain.invoke(null, new Object[]{100}));
+
+        // handler sees local variables written before the failed division
+        final JJJVMClosureCompiler.Code recover = new JJJVMClosureCompiler(klazz.findMethod("recover", "(I)I")).translate();
+        assertEquals(TestJit.recover(10), recover.invoke(null, new Object[]{10}));
+
+        final JJJVMClosureCompiler.Code chain = new JJJVMClosureCompiler(klazz.findMethod("chain", "(I)J")).translate();
+        assertEquals(TestJit.chain(5), chain.invoke(null, new Object[]{5}));
+        assertEquals(TestJit.chain(-5), chain.invoke(null, new Object[]{-5}));
+    }
+
+    @Test
+    public void testAheadOfTimeTranslation() throws Throwable {
+        final boolean enabled = JJJVMJit.isEnabled();
+        final int threshold = JJJVMJit.getThreshold();
+        JJJVMJit.setEnabled(true);
+        JJJVMJit.setThreshold(Integer.MAX_VALUE);
+        try {
+            final String className = "com/igormaznitsa/jjjvm/testclasses/TestJit";
+            final File directory = File.createTempFile("jjjvm", ".aot");
+            directory.delete();
+            // files registered later are deleted earlier
+            directory.deleteOnExit();
+            final File classFile = new File(directory.getParentFile(), directory.getName() + ".class");
+            classFile.deleteOnExit();
+            final FileOutputStream out = new FileOutputStream(classFile);
+            try {
+                out.write(loadClassBody(className));
+            } finally {
+                out.close();
+            }
+
+            JSEAotCache.main(directory.getAbsolutePath(), classFile.getAbsolutePath());
+            final JSEAotCache cache = new JSEAotCache(directory);
+
+            final JSEProviderImpl provider = new JSEProviderImpl(this);
+            provider.setAotCache(cache);
+            final JJJVMClass klazz = (JJJVMClass) provider.resolveClass(className);
+            assertTrue(cache.getFile((JJJVMClassImpl) klazz).isFile());
+            cache.getFile((JJJVMClassImpl) klazz).deleteOnExit();
+            assertEquals(1, cache.getHits());
+
+            // compiled code is used from the first call
+            final JJJVMMethod sum = klazz.findMethod("sumOfSquares", "(I)J");
+            assertTrue(JJJVMMethodProfile.of(sum).isCompiled());
+            assertEquals(328350L, sum.invoke(null, new Object[]{100}));
+            assertEquals(0, JJJVMMethodProfile.of(sum).getBackEdges());
+            assertEquals("42", klazz.findMethod("classify", "(I)Ljava/lang/String;").invoke(null, new Object[]{42}));
+
+            // not translated method is interpreted
+            final JJJVMMethod first = klazz.findMethod("first", "([I)I");
+            assertFalse(JJJVMMethodProfile.of(first).isCompiled());
+            assertEquals(42, first.invoke(null, new Object[]{new int[]{42}}));
+
+            provider.resolveClass("com/igormaznitsa/jjjvm/testclasses/TestClassData");
+            assertEquals(1, cache.getMisses());
+
+            // broken file is ignored
+            final FileOutputStream broken = new FileOutputStream(cache.getFile((JJJVMClassImpl) klazz));
+            try {
+                broken.write(new byte[]{1, 2, 3, 4, 5});
+            } finally {
+                broken.close();
+            }
+            final JSEProviderImpl otherProvider = new JSEProviderImpl(this);
+            otherProvider.setAotCache(cache);
+            final JJJVMClass otherKlazz = (JJJVMClass) otherProvider.resolveClass(className);
+            assertFalse(JJJVMMethodProfile.of(otherKlazz.findMethod("sumOfSquares", "(I)J")).isCompiled());
+            assertEquals(328350L, otherKlazz.findMethod("sumOfSquares", "(I)J").invoke(null, new Object[]{100}));
+            assertEquals(2, cache.getMisses());
+
+            // damaged length of compiled code is not trusted
+            final DataOutputStream damaged = new DataOutputStream(new FileOutputStream(cache.getFile((JJJVMClassImpl) klazz)));
+            try {
+                damaged.writeInt(0x4A4A4A41);
+                damaged.writeShort(JJJVMAot.FORMAT_VERSION);
+                damaged.writeShort(JJJVMJitCompiler.REVISION);
+                damaged.writeUTF(className);
+                damaged.writeInt(1);
+                damaged.writeUTF("sumOfSquares");
+                damaged.writeUTF("(I)J");
+                damaged.writeUTF("jjjvm/jit/Damaged");
+                damaged.writeInt(Integer.MAX_VALUE);
+            } finally {
+                damaged.close();
+            }
+            final JSEProviderImpl thirdProvider = new JSEProviderImpl(this);
+            thirdProvider.setAotCache(cache);
+            final JJJVMClass thirdKlazz = (JJJVMClass) thirdProvider.resolveClass(className);
+            assertFalse(JJJVMMethodProfile.of(thirdKlazz.findMethod("sumOfSquares", "(I)J")).isCompiled());
+            assertEquals(3, cache.getMisses());
+        } finally {
+            JJJVMJit.setEnabled(enabled);
+            JJJVMJit.setThreshold(threshold);
+        }
+    }
+
     @Test
     public void testSynchronization_staticMethods() throws Throwable {
 
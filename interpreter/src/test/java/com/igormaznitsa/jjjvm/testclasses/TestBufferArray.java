@@ -0,0 +1,45 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+public class TestBufferArray {
+
+    public int sumBytes(final byte[] data) {
+        int result = 0;
+        for (int i = 0; i < data.length; i++) {
+            result += data[i];
+        }
+        return result;
+    }
+
+    public void invertBytes(final byte[] data) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ~data[i];
+        }
+    }
+
+    public void squareInts(final int[] data) {
+        for (int i = 0; i < data.length; i++) {
+            data[i] = data[i] * data[i];
+        }
+    }
+
+    public long sumLongs(final long[] data) {
+        long result = 0L;
+        for (int i = 0; i < data.length; i++) {
+            result += data[i];
+            data[i] = -data[i];
+        }
+        return result;
+    }
+
+    public boolean isByteArray(final Object obj) {
+        return obj instanceof byte[];
+    }
+
+    public int readOutOfBounds(final byte[] data) {
+        try {
+            return data[data.length];
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            return -1;
+        }
+    }
+}
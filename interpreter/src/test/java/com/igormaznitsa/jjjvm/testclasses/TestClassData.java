@@ -0,0 +1,21 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+public class TestClassData {
+
+    public static final String GREETING = "Привет, été € \u0000!";
+
+    private final long big = 0x1234567890ABCDEFL;
+    private final double ratio = 2.5d;
+
+    public String describe(final int count) {
+        final StringBuilder result = new StringBuilder(GREETING);
+        for (int i = 0; i < count; i++) {
+            result.append("✓");
+        }
+        return result.toString();
+    }
+
+    public long mix() {
+        return this.big + (long) this.ratio;
+    }
+}
@@ -0,0 +1,37 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+public class TestHostInterface implements Comparator<String>, Predicate<String> {
+
+    private int calls;
+
+    @Override
+    public int compare(final String o1, final String o2) {
+        this.calls++;
+        final int result = o1.length() - o2.length();
+        return result == 0 ? o1.compareTo(o2) : result;
+    }
+
+    @Override
+    public boolean test(final String t) {
+        return t.indexOf('a') >= 0;
+    }
+
+    public List<String> sortWithSelf(final List<String> list) {
+        Collections.sort(list, this);
+        return list;
+    }
+
+    public int getCalls() {
+        return this.calls;
+    }
+
+    @Override
+    public String toString() {
+        return "TestHostInterface";
+    }
+}
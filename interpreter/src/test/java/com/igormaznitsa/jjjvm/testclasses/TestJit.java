@@ -0,0 +1,77 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+public class TestJit {
+
+    public static int calls = 0;
+
+    private final int base = 7;
+
+    public static long sumOfSquares(final int count) {
+        long result = 0L;
+        for (int i = 0; i < count; i++) {
+            result += (long) i * i;
+        }
+        calls++;
+        return result;
+    }
+
+    public static int fib(final int n) {
+        return n < 2 ? n : fib(n - 1) + fib(n - 2);
+    }
+
+    public static String classify(final int value) {
+        switch (value) {
+            case 0:
+                return "zero";
+            case 1:
+                return "one";
+            case 2:
+                return "two";
+            default:
+                return value < 0 ? "negative" : Integer.toString(value);
+        }
+    }
+
+    public int shifted(final int value) {
+        return this.base + Math.max(value, 0);
+    }
+
+    public static int safeDivide(final int a, final int b) {
+        try {
+            return a / b;
+        } catch (ArithmeticException ex) {
+            return -1;
+        }
+    }
+
+    public static double scale(final long value, final double factor) {
+        return value * factor - (float) value / 4;
+    }
+
+    public static int recover(final int count) {
+        int total = 0;
+        int last = -1;
+        for (int i = 0; i < count; i++) {
+            try {
+                last = total;
+                total += 100 / (i % 3);
+            } catch (ArithmeticException ex) {
+                total = last + 1;
+            }
+        }
+        return total;
+    }
+
+    public static long chain(final int value) {
+        int a;
+        int b;
+        a = b = value * 2;
+        long c = a;
+        c += b << 1;
+        return value > 0 ? c + a : c - b;
+    }
+
+    public static int first(final int[] values) {
+        return values[0];
+    }
+}
@@ -0,0 +1,76 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+public class TestLambda {
+    private interface Calculator {
+        int calc(int a, int b);
+    }
+
+    private int base = 100;
+
+    public int runRunnable() {
+        final int[] holder = new int[1];
+        final Runnable r = () -> holder[0] = 42;
+        r.run();
+        return holder[0];
+    }
+
+    public Runnable makeNonCapturing() {
+        return () -> {
+        };
+    }
+
+    public Comparator<String> makeComparator() {
+        return (a, b) -> b.compareTo(a);
+    }
+
+    public Function<Integer, Integer> makeAdder(final int delta) {
+        return x -> x + delta + this.base;
+    }
+
+    public int calcInterpreted(final int a, final int b) {
+        final Calculator calculator = (x, y) -> x * y + this.base;
+        return calculator.calc(a, b);
+    }
+
+    public Predicate<String> makePredicate() {
+        return s -> s.length() > 3;
+    }
+
+    public Supplier<List<String>> makeListFactory() {
+        return ArrayList::new;
+    }
+
+    public Function<String, Integer> makeLength() {
+        return String::length;
+    }
+
+    public List<String> sortByLengthReversed(final List<String> values) {
+        final Comparator<String> byLength = (a, b) -> a.length() - b.length();
+        final List<String> result = new ArrayList<String>(values);
+        result.sort(byLength.reversed().thenComparing((a, b) -> a.compareTo(b)));
+        return result;
+    }
+
+    public int composeFunctions(final int value) {
+        final Function<Integer, Integer> twice = x -> x * 2;
+        return twice.andThen(x -> x + this.base).apply(value);
+    }
+
+    public int countShort(final List<String> values) {
+        final Predicate<String> isShort = makePredicate().negate();
+        int result = 0;
+        for (final String value : values) {
+            if (isShort.test(value)) {
+                result++;
+            }
+        }
+        return result;
+    }
+}
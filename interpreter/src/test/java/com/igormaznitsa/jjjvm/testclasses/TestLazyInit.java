@@ -0,0 +1,55 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+public class TestLazyInit {
+
+    public static final StringBuilder LOG = new StringBuilder();
+
+    static {
+        LOG.append("parent;");
+    }
+
+    public static String getLog() {
+        return LOG.toString();
+    }
+
+    public static class Child extends TestLazyInit {
+
+        public static int counter = init();
+
+        private static int init() {
+            LOG.append("child;");
+            return 100;
+        }
+
+        public static synchronized int next() {
+            return ++counter;
+        }
+    }
+
+    public static class Broken {
+
+        public static int value = 10 / zero();
+
+        private static int zero() {
+            return 0;
+        }
+
+        public static int getValue() {
+            return value;
+        }
+    }
+
+    public interface Named {
+
+        default String name() {
+            return "named";
+        }
+    }
+
+    public static class WithDefault implements Named {
+
+        public static String describe() {
+            return new WithDefault().name();
+        }
+    }
+}
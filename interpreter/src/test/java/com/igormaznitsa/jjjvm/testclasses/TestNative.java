@@ -0,0 +1,25 @@
+package com.igormaznitsa.jjjvm.testclasses;
+
+public class TestNative {
+
+    private int seed = 7;
+
+    public static native int checksum(byte[] data, int start, int length);
+
+    public native long mix(long value);
+
+    public native void unbound();
+
+    public int calc(final byte[] data) {
+        return checksum(data, 0, data.length) + (int) mix(this.seed);
+    }
+
+    public int callUnbound() {
+        try {
+            unbound();
+            return 0;
+        } catch (UnsatisfiedLinkError ex) {
+            return -1;
+        }
+    }
+}
@@ -3,4 +3,5 @@ package com.igormaznitsa.jjjvm.testclasses;
 public class TestObject {
     public static int sfield;
     public int field = 0;
+    public long lfield = 0L;
 }
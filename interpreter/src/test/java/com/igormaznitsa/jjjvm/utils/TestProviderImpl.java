@@ -2,11 +2,11 @@ package com.igormaznitsa.jjjvm.utils;
 
 import com.igormaznitsa.jjjvm.model.JJJVMInnerClassRecord;
 import com.igormaznitsa.jjjvm.model.JJJVMClass;
-import com.igormaznitsa.jjjvm.model.JJJVMProvider;
+import com.igormaznitsa.jjjvm.model.JJJVMProviderAdapter;
 
 import static org.junit.Assert.fail;
 
-public class TestProviderImpl implements JJJVMProvider {
+public class TestProviderImpl extends JJJVMProviderAdapter {
 
     public Object invoke(final JJJVMClass source, final Object obj, final String clazzName, final String methodName, final String methodSignature, final Object[] _arguments) throws Throwable {
         if (!(methodName.equals("<init>") && methodSignature.equals("()V"))) fail("invoke");